@@ -59,6 +59,7 @@ public class HiC {
     private final String eigString = "Eigenvector";
     private final String ctrlEigString = "Ctrl_Eigenvector";
     private final ZoomActionTracker zoomActionTracker = new ZoomActionTracker();
+    private final ViewportPrefetcher prefetcher = new ViewportPrefetcher();
     private final List<Feature2D> highlightedFeatures = new ArrayList<>();
     private double scaleFactor;
     private String xPosition;
@@ -130,6 +131,7 @@ public class HiC {
         obsNormalizationType = NormalizationHandler.NONE;
         ctrlNormalizationType = NormalizationHandler.NONE;
         zoomActionTracker.clear();
+        prefetcher.cancel();
         clearFeatures();
     }
 
@@ -510,6 +512,7 @@ public class HiC {
      * @param dyBins -- delta y in bins
      */
     public void moveBy(double dxBins, double dyBins) {
+        prefetcher.recordMotion(dxBins, dyBins);
         final double newX = xContext.getBinOrigin() + dxBins;
         final double newY = yContext.getBinOrigin() + dyBins;
         moveTo(newX, newY);
@@ -538,6 +541,7 @@ public class HiC {
             yContext.setBinOrigin(y);
 
             superAdapter.repaint();
+            prefetcher.viewportChanged(this, wBins, hBins);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -862,6 +866,9 @@ public class HiC {
             }
         }
 
+        prefetcher.viewportChanged(this, superAdapter.getHeatmapPanel().getWidth() / getScaleFactor(),
+                superAdapter.getHeatmapPanel().getHeight() / getScaleFactor());
+
         return true;
     }
 
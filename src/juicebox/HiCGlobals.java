@@ -27,8 +27,6 @@ package juicebox;
 import java.awt.*;
 import java.io.File;
 import java.util.ArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * @author Muhammad Shamim
@@ -69,6 +67,12 @@ public class HiCGlobals {
     public static double hicMapScale = 1;
     // whether MatrixZoomData should cache or not
     public static boolean useCache = true;
+    // open .hic files with only the master and norm vector indices; expected values are read on first use
+    public static boolean useLazyFooterLoading = true;
+    // where combined maps persist their merged blocks; null disables persistence
+    public static File combinedBlockCacheDirectory = null;
+    // directory for .hic index sidecars; null disables them
+    public static File hicIndexCacheDirectory = null;
     public static boolean guiIsCurrentlyActive = false;
     public static boolean allowDynamicBlockIndex = true;
     public static boolean printVerboseComments = false;
@@ -119,9 +123,5 @@ public class HiCGlobals {
         return Math.max(1, Runtime.getRuntime().availableProcessors());
     }
 
-    public static ExecutorService newFixedThreadPool() {
-        return Executors.newFixedThreadPool(getIdealThreadCount());
-    }
-
     public enum menuType {MAP, LOCATION, STATE}
 }
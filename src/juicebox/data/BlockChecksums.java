@@ -0,0 +1,109 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2021 Broad Institute, Aiden Lab, Rice University, Baylor College of Medicine
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.data;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import htsjdk.tribble.util.LittleEndianInputStream;
+import org.broad.igv.tdf.BufferedByteWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * CRC32C of the compressed bytes of every block, recorded by pre (--block-checksums) in a footer section listed
+ * under MASTER_INDEX_KEY. Lets validation and remote readers check a block without decoding it.
+ * <p>
+ * Layout (little endian, strings null terminated):
+ * nMatrixZoomDatas x (zoom data key, nBlocks, nBlocks x (block number, checksum))
+ */
+public class BlockChecksums {
+
+    public static final String MASTER_INDEX_KEY = "blockChecksums";
+    private static final HashFunction CRC32C = Hashing.crc32c();
+    private final Map<String, Map<Integer, Integer>> checksums = new ConcurrentHashMap<>();
+
+    public static int compute(byte[] compressedBytes) {
+        return CRC32C.hashBytes(compressedBytes).asInt();
+    }
+
+    public static BlockChecksums read(byte[] bytes) throws IOException {
+        BlockChecksums blockChecksums = new BlockChecksums();
+        LittleEndianInputStream dis = new LittleEndianInputStream(new ByteArrayInputStream(bytes));
+        int nZoomDatas = dis.readInt();
+        for (int i = 0; i < nZoomDatas; i++) {
+            String key = dis.readString();
+            int nBlocks = dis.readInt();
+            Map<Integer, Integer> blocks = new HashMap<>(nBlocks * 2);
+            for (int j = 0; j < nBlocks; j++) {
+                int blockNumber = dis.readInt();
+                blocks.put(blockNumber, dis.readInt());
+            }
+            blockChecksums.checksums.put(key, blocks);
+        }
+        return blockChecksums;
+    }
+
+    /**
+     * @param zdKey key of the zoom data, as in MatrixZoomData.getKey()
+     */
+    public void add(String zdKey, int blockNumber, int checksum) {
+        Map<Integer, Integer> blocks = checksums.get(zdKey);
+        if (blocks == null) {
+            checksums.putIfAbsent(zdKey, new ConcurrentHashMap<Integer, Integer>());
+            blocks = checksums.get(zdKey);
+        }
+        blocks.put(blockNumber, checksum);
+    }
+
+    /**
+     * @return the recorded checksum, or null if none was recorded for this block
+     */
+    public Integer get(String zdKey, int blockNumber) {
+        Map<Integer, Integer> blocks = checksums.get(zdKey);
+        return blocks == null ? null : blocks.get(blockNumber);
+    }
+
+    public boolean isEmpty() {
+        return checksums.isEmpty();
+    }
+
+    public byte[] getBytes() {
+        BufferedByteWriter buffer = new BufferedByteWriter();
+        buffer.putInt(checksums.size());
+        for (Map.Entry<String, Map<Integer, Integer>> entry : checksums.entrySet()) {
+            buffer.putNullTerminatedString(entry.getKey());
+            buffer.putInt(entry.getValue().size());
+            for (Map.Entry<Integer, Integer> block : entry.getValue().entrySet()) {
+                buffer.putInt(block.getKey());
+                buffer.putInt(block.getValue());
+            }
+        }
+        return buffer.getBytes();
+    }
+}
@@ -0,0 +1,406 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2021 Broad Institute, Aiden Lab, Rice University, Baylor College of Medicine
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package juicebox.data;
+
+import htsjdk.tribble.util.LittleEndianOutputStream;
+import juicebox.data.basics.Chromosome;
+import juicebox.tools.dev.ParallelizedJuicerTools;
+import juicebox.track.feature.Feature2D;
+import juicebox.track.feature.Feature2DList;
+import juicebox.windowui.HiCZoom;
+import juicebox.windowui.MatrixType;
+import juicebox.windowui.NormalizationHandler;
+import juicebox.windowui.NormalizationType;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Runs the same query over every dataset of a cohort and streams the results with one value column per dataset.
+ * <p>
+ * Datasets are queried in parallel on the shared pool. Results are produced in batches whose columns fit in the
+ * memory budget (a region is split into stripes of rows, a feature list into runs of features), and each batch
+ * is handed to the sink before the next one is read. Each task drops the blocks it read from the block cache
+ * when it finishes, so cached blocks scale with the number of threads rather than the number of datasets.
+ * A dataset without the matrix or normalization queried gets NaN for the whole column.
+ */
+public class CohortQuery {
+
+    public static final byte[] COLUMNAR_MAGIC = "HICCOHO1".getBytes(StandardCharsets.US_ASCII);
+    private static final int BYTES_PER_ROW = 16;
+
+    private final List<Dataset> datasets;
+    private final NormalizationType norm;
+    private final MatrixType matrixType;
+    private final long memoryBudget;
+
+    /**
+     * @param matrixType   OBSERVED or OE
+     * @param memoryBudget bytes available for the values of one batch across all datasets
+     */
+    public CohortQuery(List<Dataset> datasets, NormalizationType norm, MatrixType matrixType, long memoryBudget) {
+        this.datasets = datasets;
+        this.norm = norm;
+        this.matrixType = matrixType;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Queries every bin pair in [binXStart, binXEnd) x [binYStart, binYEnd); rows where all datasets are 0 are
+     * skipped. Intra-chromosomal pairs are reported once, from the upper triangle where the region covers both.
+     */
+    public void queryRegion(String chr1Name, String chr2Name, HiCZoom zoom, long binXStart, long binXEnd,
+                            long binYStart, long binYEnd, Sink sink) throws IOException {
+        Chromosome chr1 = datasets.get(0).getChromosomeHandler().getChromosomeFromName(chr1Name);
+        Chromosome chr2 = datasets.get(0).getChromosomeHandler().getChromosomeFromName(chr2Name);
+        if (chr2.getIndex() < chr1.getIndex()) {
+            // matrices are stored with the lower chromosome index first
+            queryRegion(chr2Name, chr1Name, zoom, binYStart, binYEnd, binXStart, binXEnd, sink);
+            return;
+        }
+
+        final int width = (int) (binYEnd - binYStart);
+        if (width <= 0 || binXEnd <= binXStart) return;
+
+        final List<ZoomDataOfDataset> zds = getZoomData(chr1Name, chr2Name, zoom);
+        boolean isIntra = chr1.getIndex() == chr2.getIndex();
+
+        long bytesPerRow = (long) width * (8L * datasets.size() + BYTES_PER_ROW);
+        int rowsPerStripe = (int) Math.max(1, Math.min(Math.min(binXEnd - binXStart, Integer.MAX_VALUE / width),
+                memoryBudget / bytesPerRow));
+
+        for (long x0 = binXStart; x0 < binXEnd; x0 += rowsPerStripe) {
+            final long stripeStart = x0;
+            final long stripeEnd = Math.min(binXEnd, x0 + rowsPerStripe);
+            List<Callable<float[]>> tasks = new ArrayList<>();
+            for (final ZoomDataOfDataset zd : zds) {
+                tasks.add(new Callable<float[]>() {
+                    @Override
+                    public float[] call() {
+                        return zd.fillStripe(stripeStart, stripeEnd, binYStart, binYEnd, width);
+                    }
+                });
+            }
+            List<float[]> stripes = ParallelizedJuicerTools.invokeAll(null, tasks);
+            sink.write(toBatch(chr1, chr2, zoom.getBinSize(), stripes, stripeStart, stripeEnd, binXStart, binXEnd,
+                    binYStart, binYEnd, isIntra));
+        }
+    }
+
+    /**
+     * Sums each dataset's values over the bins covered by each feature; one row per feature, in the order of the
+     * chromosomes of the first dataset.
+     */
+    public void queryFeatures(Feature2DList features, HiCZoom zoom, Sink sink) throws IOException {
+        int featuresPerRun = (int) Math.max(1, Math.min(Integer.MAX_VALUE,
+                memoryBudget / (4L * datasets.size() + BYTES_PER_ROW)));
+        Chromosome[] chromosomes = datasets.get(0).getChromosomeHandler().getChromosomeArrayWithoutAllByAll();
+
+        for (int i = 0; i < chromosomes.length; i++) {
+            for (int j = i; j < chromosomes.length; j++) {
+                List<Feature2D> pairFeatures = features.get(chromosomes[i].getIndex(), chromosomes[j].getIndex());
+                if (pairFeatures == null || pairFeatures.isEmpty()) continue;
+
+                final List<ZoomDataOfDataset> zds = getZoomData(chromosomes[i].getName(), chromosomes[j].getName(), zoom);
+                for (int start = 0; start < pairFeatures.size(); start += featuresPerRun) {
+                    final List<Feature2D> run = pairFeatures.subList(start, Math.min(pairFeatures.size(), start + featuresPerRun));
+                    List<Callable<float[]>> tasks = new ArrayList<>();
+                    for (final ZoomDataOfDataset zd : zds) {
+                        tasks.add(new Callable<float[]>() {
+                            @Override
+                            public float[] call() {
+                                return zd.sumFeatures(run);
+                            }
+                        });
+                    }
+                    List<float[]> columns = ParallelizedJuicerTools.invokeAll(null, tasks);
+
+                    Batch batch = new Batch(chromosomes[i], chromosomes[j], run.size(), columns.toArray(new float[0][]));
+                    for (int k = 0; k < run.size(); k++) {
+                        Feature2D feature = run.get(k);
+                        batch.x1[k] = feature.getStart1();
+                        batch.x2[k] = feature.getEnd1();
+                        batch.y1[k] = feature.getStart2();
+                        batch.y2[k] = feature.getEnd2();
+                    }
+                    sink.write(batch);
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the matrices on this thread, since Dataset caches them in a plain map
+     */
+    private List<ZoomDataOfDataset> getZoomData(String chr1Name, String chr2Name, HiCZoom zoom) {
+        List<ZoomDataOfDataset> zds = new ArrayList<>();
+        for (int i = 0; i < datasets.size(); i++) {
+            Dataset ds = datasets.get(i);
+            ChromosomeHandler handler = ds.getChromosomeHandler();
+            Chromosome chr1 = handler.getChromosomeFromName(chr1Name);
+            Chromosome chr2 = handler.getChromosomeFromName(chr2Name);
+            MatrixZoomData zd = chr1 == null || chr2 == null ? null
+                    : HiCFileTools.getMatrixZoomData(ds, chr1, chr2, ds.getZoomForBPResolution(zoom.getBinSize()));
+
+            ExpectedValueFunction df = null;
+            if (zd != null && !norm.equals(NormalizationHandler.NONE)
+                    && (ds.getNormalizationVector(chr1.getIndex(), zd.getZoom(), norm) == null
+                    || ds.getNormalizationVector(chr2.getIndex(), zd.getZoom(), norm) == null)) {
+                zd = null;
+            } else if (zd != null && matrixType == MatrixType.OE && zd.getChr1Idx() == zd.getChr2Idx()) {
+                df = ds.getExpectedValues(zd.getZoom(), norm);
+                if (df == null) {
+                    zd = null;
+                }
+            }
+            if (zd == null) {
+                System.err.println("No " + matrixType + " " + norm.getLabel() + " " + chr1Name + "-" + chr2Name + " at "
+                        + zoom.getBinSize() + " in dataset " + (i + 1) + "; its column is NaN");
+            }
+            zds.add(new ZoomDataOfDataset(zd, df));
+        }
+        return zds;
+    }
+
+    private Batch toBatch(Chromosome chr1, Chromosome chr2, int binSize, List<float[]> stripes, long stripeStart,
+                          long stripeEnd, long binXStart, long binXEnd, long binYStart, long binYEnd, boolean isIntra) {
+        int width = (int) (binYEnd - binYStart);
+        int numCells = (int) ((stripeEnd - stripeStart) * width);
+        boolean[] keep = new boolean[numCells];
+        int n = 0;
+        for (int c = 0; c < numCells; c++) {
+            long x = stripeStart + c / width;
+            long y = binYStart + c % width;
+            if (isIntra && x > y && y >= binXStart && y < binXEnd && x >= binYStart && x < binYEnd) continue;
+            for (float[] stripe : stripes) {
+                if (stripe[c] != 0 && !Float.isNaN(stripe[c])) {
+                    keep[c] = true;
+                    n++;
+                    break;
+                }
+            }
+        }
+
+        float[][] columns = new float[stripes.size()][n];
+        Batch batch = new Batch(chr1, chr2, n, columns);
+        int row = 0;
+        for (int c = 0; c < numCells; c++) {
+            if (!keep[c]) continue;
+            batch.x1[row] = (stripeStart + c / width) * binSize;
+            batch.x2[row] = batch.x1[row] + binSize;
+            batch.y1[row] = (binYStart + c % width) * binSize;
+            batch.y2[row] = batch.y1[row] + binSize;
+            for (int d = 0; d < columns.length; d++) {
+                columns[d][row] = stripes.get(d)[c];
+            }
+            row++;
+        }
+        return batch;
+    }
+
+    public interface Sink {
+        void write(Batch batch) throws IOException;
+
+        void close() throws IOException;
+    }
+
+    /**
+     * Rows of a query; positions are in bp, and columns[d][i] is the value of dataset d for row i
+     */
+    public static class Batch {
+        public final Chromosome chr1, chr2;
+        public final int numRows;
+        public final long[] x1, x2, y1, y2;
+        public final float[][] columns;
+
+        Batch(Chromosome chr1, Chromosome chr2, int numRows, float[][] columns) {
+            this.chr1 = chr1;
+            this.chr2 = chr2;
+            this.numRows = numRows;
+            this.x1 = new long[numRows];
+            this.x2 = new long[numRows];
+            this.y1 = new long[numRows];
+            this.y2 = new long[numRows];
+            this.columns = columns;
+        }
+    }
+
+    /**
+     * Tab-delimited rows of "chr1 x1 x2 chr2 y1 y2" followed by a value per dataset, under a header line
+     */
+    public static class TextSink implements Sink {
+        private final PrintWriter pw;
+
+        public TextSink(PrintWriter pw, List<String> datasetNames) {
+            this.pw = pw;
+            StringBuilder header = new StringBuilder("#chr1\tx1\tx2\tchr2\ty1\ty2");
+            for (String name : datasetNames) {
+                header.append('\t').append(name);
+            }
+            pw.println(header);
+        }
+
+        @Override
+        public void write(Batch batch) {
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < batch.numRows; i++) {
+                line.setLength(0);
+                line.append(batch.chr1.getName()).append('\t').append(batch.x1[i]).append('\t').append(batch.x2[i])
+                        .append('\t').append(batch.chr2.getName()).append('\t').append(batch.y1[i]).append('\t').append(batch.y2[i]);
+                for (float[] column : batch.columns) {
+                    line.append('\t').append(column[i]);
+                }
+                pw.println(line);
+            }
+        }
+
+        @Override
+        public void close() {
+            pw.close();
+        }
+    }
+
+    /**
+     * Little-endian header of {@link #COLUMNAR_MAGIC} and the number of datasets, then one chunk per batch of
+     * (int n, int chr1Idx, int chr2Idx, long[n] x1, long[n] x2, long[n] y1, long[n] y2, and float[n] per dataset),
+     * and a terminating chunk with n = 0
+     */
+    public static class ColumnarSink implements Sink {
+        private final LittleEndianOutputStream los;
+
+        public ColumnarSink(LittleEndianOutputStream los, int numDatasets) throws IOException {
+            this.los = los;
+            los.write(COLUMNAR_MAGIC);
+            los.writeInt(numDatasets);
+        }
+
+        @Override
+        public void write(Batch batch) throws IOException {
+            if (batch.numRows == 0) return;
+            los.writeInt(batch.numRows);
+            los.writeInt(batch.chr1.getIndex());
+            los.writeInt(batch.chr2.getIndex());
+            for (long[] positions : Arrays.asList(batch.x1, batch.x2, batch.y1, batch.y2)) {
+                for (int i = 0; i < batch.numRows; i++) {
+                    los.writeLong(positions[i]);
+                }
+            }
+            for (float[] column : batch.columns) {
+                for (int i = 0; i < batch.numRows; i++) {
+                    los.writeFloat(column[i]);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            los.writeInt(0);
+            los.close();
+        }
+    }
+
+    private class ZoomDataOfDataset {
+        private final MatrixZoomData zd;
+        private final ExpectedValueFunction df;
+        private final boolean isIntra;
+
+        ZoomDataOfDataset(MatrixZoomData zd, ExpectedValueFunction df) {
+            this.zd = zd;
+            this.df = df;
+            this.isIntra = zd != null && zd.getChr1Idx() == zd.getChr2Idx();
+        }
+
+        float[] fillStripe(long binXStart, long binXEnd, long binYStart, long binYEnd, int width) {
+            float[] values = new float[(int) (binXEnd - binXStart) * width];
+            if (zd == null) {
+                Arrays.fill(values, Float.NaN);
+                return values;
+            }
+            for (Block b : zd.getNormalizedBlocksOverlapping(binXStart, binYStart, binXEnd, binYEnd, norm, false, isIntra)) {
+                if (b == null) continue;
+                for (ContactRecord rec : b.getContactRecords()) {
+                    float value = getValue(rec);
+                    addToStripe(values, rec.getBinX(), rec.getBinY(), value, binXStart, binXEnd, binYStart, binYEnd, width);
+                    if (isIntra && rec.getBinX() != rec.getBinY()) {
+                        addToStripe(values, rec.getBinY(), rec.getBinX(), value, binXStart, binXEnd, binYStart, binYEnd, width);
+                    }
+                }
+            }
+            zd.clearCache(false);
+            return values;
+        }
+
+        float[] sumFeatures(List<Feature2D> features) {
+            float[] sums = new float[features.size()];
+            if (zd == null) {
+                Arrays.fill(sums, Float.NaN);
+                return sums;
+            }
+            int binSize = zd.getBinSize();
+            for (int k = 0; k < features.size(); k++) {
+                Feature2D feature = features.get(k);
+                long binXStart = feature.getStart1() / binSize;
+                long binXEnd = Math.max(binXStart + 1, (feature.getEnd1() + binSize - 1) / binSize);
+                long binYStart = feature.getStart2() / binSize;
+                long binYEnd = Math.max(binYStart + 1, (feature.getEnd2() + binSize - 1) / binSize);
+                double sum = 0;
+                for (Block b : zd.getNormalizedBlocksOverlapping(binXStart, binYStart, binXEnd, binYEnd, norm, false, isIntra)) {
+                    if (b == null) continue;
+                    for (ContactRecord rec : b.getContactRecords()) {
+                        int x = rec.getBinX();
+                        int y = rec.getBinY();
+                        if ((x >= binXStart && x < binXEnd && y >= binYStart && y < binYEnd)
+                                || (isIntra && x != y && y >= binXStart && y < binXEnd && x >= binYStart && x < binYEnd)) {
+                            sum += getValue(rec);
+                        }
+                    }
+                }
+                sums[k] = (float) sum;
+            }
+            zd.clearCache(false);
+            return sums;
+        }
+
+        private float getValue(ContactRecord rec) {
+            if (matrixType != MatrixType.OE) {
+                return rec.getCounts();
+            }
+            double expected = df != null ? df.getExpectedValue(zd.getChr1Idx(), Math.abs(rec.getBinX() - rec.getBinY()))
+                    : zd.getAverageCount();
+            return expected > 0 ? (float) (rec.getCounts() / expected) : Float.NaN;
+        }
+
+        private void addToStripe(float[] values, long x, long y, float value, long binXStart, long binXEnd,
+                                 long binYStart, long binYEnd, int width) {
+            if (x >= binXStart && x < binXEnd && y >= binYStart && y < binYEnd && !Float.isNaN(value)) {
+                values[(int) ((x - binXStart) * width + (y - binYStart))] += value;
+            }
+        }
+    }
+}
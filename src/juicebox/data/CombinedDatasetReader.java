@@ -28,15 +28,18 @@ import juicebox.HiC;
 import juicebox.HiCGlobals;
 import juicebox.MainWindow;
 import juicebox.data.basics.ListOfDoubleArrays;
+import juicebox.tools.dev.ParallelizedJuicerTools;
 import juicebox.windowui.HiCZoom;
 import juicebox.windowui.NormalizationType;
 
 import javax.swing.*;
 import java.awt.event.ActionListener;
+import java.io.File;
 import java.io.IOException;
 import java.text.DecimalFormat;
 import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 //import java.util.List;
 
@@ -48,6 +51,7 @@ import java.util.*;
 public class CombinedDatasetReader implements DatasetReader {
 
     private final List<DatasetReaderV2> readers;
+    private final Map<String, MergedBlockCache> persistedBlockCaches = new HashMap<>();
     private boolean hasFrags;
     private int version;
 
@@ -149,18 +153,86 @@ public class CombinedDatasetReader implements DatasetReader {
     @Override
     public Block readNormalizedBlock(int blockNumber, MatrixZoomData zd, NormalizationType no) throws IOException {
 
-        List<Block> blockList = Collections.synchronizedList(new ArrayList<>());
-        for (DatasetReader r : readers) {
+        String key = zd.getBlockKey(blockNumber, no);
+        List<DatasetReaderV2> activeReaders = new ArrayList<>();
+        for (DatasetReaderV2 r : readers) {
             if (r.isActive()) {
-                Block cb = r.readNormalizedBlock(blockNumber, zd, no);
+                activeReaders.add(r);
+            }
+        }
+
+        MergedBlockCache persistedBlocks = getPersistedBlockCache(activeReaders);
+        if (persistedBlocks != null) {
+            Block cachedBlock = persistedBlocks.get(blockNumber, key);
+            if (cachedBlock != null) {
+                return cachedBlock;
+            }
+        }
+
+        List<Block> blockList = readReplicateBlocks(activeReaders, blockNumber, zd, no);
+        Block block = blockList.size() == 0 ? new Block(blockNumber, key) : mergeBlocks(blockList, key);
+        if (persistedBlocks != null) {
+            persistedBlocks.put(key, block);
+        }
+        return block;
+    }
+
+    /**
+     * Reads the block from each replicate concurrently.
+     *
+     * @return non-null blocks, in replicate order
+     */
+    private List<Block> readReplicateBlocks(List<DatasetReaderV2> activeReaders, final int blockNumber,
+                                            final MatrixZoomData zd, final NormalizationType no) throws IOException {
+        List<Block> blockList = new ArrayList<>(activeReaders.size());
+        if (activeReaders.size() == 1) {
+            Block cb = activeReaders.get(0).readNormalizedBlock(blockNumber, zd, no);
+            if (cb != null) {
+                blockList.add(cb);
+            }
+            return blockList;
+        }
+
+        // replicates are read on the shared pool, so no threads outlive the reader
+        List<Callable<Block>> tasks = new ArrayList<>(activeReaders.size());
+        for (final DatasetReaderV2 r : activeReaders) {
+            tasks.add(new Callable<Block>() {
+                @Override
+                public Block call() throws IOException {
+                    return r.readNormalizedBlock(blockNumber, zd, no);
+                }
+            });
+        }
+        try {
+            for (Block cb : ParallelizedJuicerTools.invokeAll(null, tasks)) {
                 if (cb != null) {
                     blockList.add(cb);
                 }
             }
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Unable to read block " + blockNumber, e.getCause() != null ? e.getCause() : e);
         }
-        String key = zd.getBlockKey(blockNumber, no);
-        return blockList.size() == 0 ? new Block(blockNumber, key) : mergeBlocks(blockList, key);
+        return blockList;
+    }
+
+    private MergedBlockCache getPersistedBlockCache(List<DatasetReaderV2> activeReaders) {
+        File root = HiCGlobals.combinedBlockCacheDirectory;
+        if (root == null || activeReaders.isEmpty()) return null;
 
+        StringBuilder cacheKey = new StringBuilder(root.getPath());
+        for (DatasetReaderV2 r : activeReaders) {
+            cacheKey.append('\t').append(r.getPath());
+        }
+        synchronized (persistedBlockCaches) {
+            String key = cacheKey.toString();
+            if (!persistedBlockCaches.containsKey(key)) {
+                persistedBlockCaches.put(key, MergedBlockCache.create(root, activeReaders));
+            }
+            return persistedBlockCaches.get(key);
+        }
     }
 
     /**
@@ -553,37 +625,148 @@ public class CombinedDatasetReader implements DatasetReader {
     }
 
     /**
-     * Merge the contact records from multiple blocks to create a new block.  Contact records are sorted in row then
-     * column order.
-     *
-     * @param blockList Blocks to merge
-     * @param blockKey
-     * @return new Block
+     * Sums records with the same coordinates across replicates using a k-way merge over
+     * packed (binX, binY) keys. Counts are added in replicate order, and the merged records
+     * come out sorted by binX, then binY.
      */
     private Block mergeBlocks(List<Block> blockList, String blockKey) {
-        // First combine contact records for all blocks
         final Block firstBlock = blockList.get(0);
-        int repSize = firstBlock.getContactRecords().size();
         int blockNumber = firstBlock.getNumber(); // TODO -- this should be checked, all blocks should have same number
 
-        HashMap<String, ContactRecord> mergedRecordMap = new HashMap<>(blockList.size() * repSize * 2);
-
-        for (Block b : blockList) {
-            Collection<ContactRecord> records = b.getContactRecords();
-            for (ContactRecord rec : records) {
-                String key = rec.getBinX() + "_" + rec.getBinY();
-                ContactRecord mergedRecord = mergedRecordMap.get(key);
-                if (mergedRecord == null) {
-                    mergedRecord = new ContactRecord(rec.getBinX(), rec.getBinY(), rec.getCounts());
-                    mergedRecordMap.put(key, mergedRecord);
-                } else {
-                    mergedRecord.incrementCount(rec.getCounts());
+        final int k = blockList.size();
+        final long[][] keys = new long[k][];
+        final float[][] counts = new float[k][];
+        int totalRecords = 0;
+        for (int i = 0; i < k; i++) {
+            List<ContactRecord> records = blockList.get(i).getContactRecords();
+            int n = records.size();
+            keys[i] = new long[n];
+            counts[i] = new float[n];
+            boolean isSorted = true;
+            for (int j = 0; j < n; j++) {
+                ContactRecord rec = records.get(j);
+                keys[i][j] = ContactRecordIndex.pack(rec.getBinX(), rec.getBinY());
+                counts[i][j] = rec.getCounts();
+                if (j > 0 && keys[i][j] < keys[i][j - 1]) {
+                    isSorted = false;
                 }
             }
+            if (!isSorted) {
+                sortByKey(keys[i], counts[i], 0, n - 1);
+            }
+            totalRecords += n;
         }
 
-        List<ContactRecord> mergedRecords = new ArrayList<>(mergedRecordMap.values());
+        // min-heap of replicate indices, ordered by current key and then replicate index
+        final int[] cursor = new int[k];
+        int[] heap = new int[k];
+        int heapSize = 0;
+        for (int i = 0; i < k; i++) {
+            if (keys[i].length > 0) {
+                heap[heapSize] = i;
+                siftUp(heap, heapSize++, keys, cursor);
+            }
+        }
+
+        List<ContactRecord> mergedRecords = new ArrayList<>(totalRecords);
+        while (heapSize > 0) {
+            int r = heap[0];
+            long key = keys[r][cursor[r]];
+            float sum = counts[r][cursor[r]];
+            heapSize = advance(heap, heapSize, keys, cursor);
+            while (heapSize > 0 && keys[heap[0]][cursor[heap[0]]] == key) {
+                sum += counts[heap[0]][cursor[heap[0]]];
+                heapSize = advance(heap, heapSize, keys, cursor);
+            }
+            mergedRecords.add(new ContactRecord((int) (key >>> 32), (int) key, sum));
+        }
         return new Block(blockNumber, mergedRecords, blockKey);
     }
 
+    private static boolean isBefore(int a, int b, long[][] keys, int[] cursor) {
+        long keyA = keys[a][cursor[a]];
+        long keyB = keys[b][cursor[b]];
+        return keyA < keyB || (keyA == keyB && a < b);
+    }
+
+    private static void siftUp(int[] heap, int index, long[][] keys, int[] cursor) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (!isBefore(heap[index], heap[parent], keys, cursor)) break;
+            int tmp = heap[index];
+            heap[index] = heap[parent];
+            heap[parent] = tmp;
+            index = parent;
+        }
+    }
+
+    /**
+     * Moves the replicate at the top of the heap to its next record, dropping it when exhausted.
+     *
+     * @return new heap size
+     */
+    private static int advance(int[] heap, int heapSize, long[][] keys, int[] cursor) {
+        int r = heap[0];
+        cursor[r]++;
+        if (cursor[r] >= keys[r].length) {
+            heap[0] = heap[--heapSize];
+        }
+        int index = 0;
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= heapSize) break;
+            int smallest = left;
+            if (left + 1 < heapSize && isBefore(heap[left + 1], heap[left], keys, cursor)) {
+                smallest = left + 1;
+            }
+            if (!isBefore(heap[smallest], heap[index], keys, cursor)) break;
+            int tmp = heap[index];
+            heap[index] = heap[smallest];
+            heap[smallest] = tmp;
+            index = smallest;
+        }
+        return heapSize;
+    }
+
+    private static void sortByKey(long[] keys, float[] values, int lo, int hi) {
+        while (hi - lo > 16) {
+            long pivot = keys[(lo + hi) >>> 1];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (keys[i] < pivot) i++;
+                while (keys[j] > pivot) j--;
+                if (i <= j) {
+                    long tmpKey = keys[i];
+                    keys[i] = keys[j];
+                    keys[j] = tmpKey;
+                    float tmpValue = values[i];
+                    values[i] = values[j];
+                    values[j] = tmpValue;
+                    i++;
+                    j--;
+                }
+            }
+            // recurse into the smaller side to bound the stack depth
+            if (j - lo < hi - i) {
+                sortByKey(keys, values, lo, j);
+                lo = i;
+            } else {
+                sortByKey(keys, values, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            long key = keys[i];
+            float value = values[i];
+            int j = i - 1;
+            while (j >= lo && keys[j] > key) {
+                keys[j + 1] = keys[j];
+                values[j + 1] = values[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            values[j + 1] = value;
+        }
+    }
+
 }
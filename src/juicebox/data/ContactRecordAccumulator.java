@@ -0,0 +1,131 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2021 Broad Institute, Aiden Lab, Rice University, Baylor College of Medicine
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package juicebox.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Sums counts per (binX, binY) in an open-addressing hash table over packed long coordinates.
+ * Used to bin the records of higher resolution blocks into a lower resolution without
+ * allocating a ContactRecord (or boxed map entries) per incoming record.
+ * Not thread safe; give each worker its own accumulator and merge them with addAll.
+ */
+public class ContactRecordAccumulator {
+
+    private static final long EMPTY = -1L;
+    private static final int INITIAL_CAPACITY = 64;
+    private long[] keys;
+    private double[] sums;
+    private int mask;
+    private int size;
+
+    public ContactRecordAccumulator() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        sums = new double[capacity];
+        mask = capacity - 1;
+    }
+
+    public void add(int binX, int binY, double value) {
+        add(ContactRecordIndex.pack(binX, binY), value);
+    }
+
+    private void add(long key, double value) {
+        int slot = ContactRecordIndex.hash(key) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                sums[slot] += value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        sums[slot] = value;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        double[] oldSums = sums;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = ContactRecordIndex.hash(oldKeys[i]) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                sums[slot] = oldSums[i];
+            }
+        }
+    }
+
+    public void addAll(ContactRecordAccumulator other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != EMPTY) {
+                add(other.keys[i], other.sums[i]);
+            }
+        }
+    }
+
+    private double get(long key) {
+        int slot = ContactRecordIndex.hash(key) & mask;
+        while (keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return sums[slot];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return an unmodifiable list of the summed records, sorted by binX and then binY
+     */
+    public List<ContactRecord> toContactRecords() {
+        long[] sortedKeys = new long[size];
+        int n = 0;
+        for (long key : keys) {
+            if (key != EMPTY) {
+                sortedKeys[n++] = key;
+            }
+        }
+        Arrays.sort(sortedKeys);
+        List<ContactRecord> records = new ArrayList<>(size);
+        for (long key : sortedKeys) {
+            records.add(new ContactRecord((int) (key >>> 32), (int) key, (float) get(key)));
+        }
+        return Collections.unmodifiableList(records);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2021 Broad Institute, Aiden Lab, Rice University, Baylor College of Medicine
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.data;
+
+import java.util.List;
+
+/**
+ * Lookup of the contact records of a block by (binX, binY), using an open-addressing hash
+ * table over packed long coordinates. Used to join observed records against control records
+ * without building a String key per record.
+ * If a coordinate appears more than once, the last record wins.
+ */
+public class ContactRecordIndex {
+
+    private static final ContactRecordIndex EMPTY = new ContactRecordIndex(null);
+    private final long[] keys;
+    private final ContactRecord[] values;
+    private final int mask;
+
+    private ContactRecordIndex(List<ContactRecord> records) {
+        int n = records == null ? 0 : records.size();
+        int capacity = 2;
+        while (capacity < 2 * n) {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        values = new ContactRecord[capacity];
+        mask = capacity - 1;
+        if (records != null) {
+            for (ContactRecord record : records) {
+                put(record);
+            }
+        }
+    }
+
+    public static ContactRecordIndex create(Block block) {
+        if (block == null || block.getContactRecords() == null || block.getContactRecords().isEmpty()) {
+            return EMPTY;
+        }
+        return new ContactRecordIndex(block.getContactRecords());
+    }
+
+    public static long pack(int binX, int binY) {
+        return ((long) binX << 32) | (binY & 0xFFFFFFFFL);
+    }
+
+    static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    private void put(ContactRecord record) {
+        long key = pack(record.getBinX(), record.getBinY());
+        int slot = hash(key) & mask;
+        while (values[slot] != null && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = record;
+    }
+
+    public ContactRecord get(int binX, int binY) {
+        long key = pack(binX, binY);
+        int slot = hash(key) & mask;
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    public ContactRecord get(ContactRecord record) {
+        return get(record.getBinX(), record.getBinY());
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2021 Broad Institute, Aiden Lab, Rice University, Baylor College of Medicine
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package juicebox.data;
+
+import htsjdk.tribble.util.LittleEndianInputStream;
+import juicebox.data.basics.Chromosome;
+import juicebox.data.basics.ListOfFloatArrays;
+import juicebox.windowui.HiCZoom;
+import juicebox.windowui.NormalizationType;
+import org.broad.igv.tdf.BufferedByteWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coverage (marginal) vectors of the intra-chromosomal matrices: the row sums of each matrix, raw and under each
+ * normalization, for every resolution. Computed by addNorm (and so by pre) while the contact records are already
+ * loaded for the normalizations, and stored in a footer section listed under MASTER_INDEX_KEY. Pre reserves the
+ * master index entry and addNorm fills it in, as the master index cannot grow once the norms are written.
+ * <p>
+ * Layout (little endian, strings null terminated):
+ * nVectors x (normalization type, chromosome index, unit, bin size, nValues, nValues x float)
+ */
+public class CoverageVectors {
+
+    public static final String MASTER_INDEX_KEY = "coverageVectors";
+    private final Map<String, Vector> vectors = new ConcurrentHashMap<>();
+
+    public static CoverageVectors read(byte[] bytes) throws IOException {
+        CoverageVectors coverageVectors = new CoverageVectors();
+        LittleEndianInputStream dis = new LittleEndianInputStream(new ByteArrayInputStream(bytes));
+        int nVectors = dis.readInt();
+        for (int i = 0; i < nVectors; i++) {
+            String type = dis.readString();
+            int chrIdx = dis.readInt();
+            String unit = dis.readString();
+            int binSize = dis.readInt();
+            float[] values = new float[dis.readInt()];
+            for (int j = 0; j < values.length; j++) {
+                values[j] = dis.readFloat();
+            }
+            Vector vector = new Vector(type, chrIdx, unit, binSize, values);
+            coverageVectors.vectors.put(vector.getKey(), vector);
+        }
+        return coverageVectors;
+    }
+
+    /**
+     * Row sums of an intra-chromosomal matrix in one pass over its records. Off-diagonal records count in both
+     * their row and their column. Each normalized sum skips the records whose bins have no valid norm value.
+     *
+     * @param numBins     number of rows of the matrix
+     * @param normVectors norm vectors to compute normalized sums for; may be empty
+     * @return the raw sums, followed by the normalized sums in the order of normVectors
+     */
+    public static float[][] computeMarginals(Iterator<ContactRecord> iterator, int numBins, List<ListOfFloatArrays> normVectors) {
+        double[][] sums = new double[normVectors.size() + 1][numBins];
+        while (iterator.hasNext()) {
+            ContactRecord record = iterator.next();
+            int x = record.getBinX();
+            int y = record.getBinY();
+            float counts = record.getCounts();
+            if (x >= numBins || y >= numBins || Float.isNaN(counts)) continue;
+
+            sums[0][x] += counts;
+            if (x != y) sums[0][y] += counts;
+            for (int k = 0; k < normVectors.size(); k++) {
+                ListOfFloatArrays nv = normVectors.get(k);
+                if (x >= nv.getLength() || y >= nv.getLength()) continue;
+                float nvX = nv.get(x);
+                float nvY = nv.get(y);
+                if (nvX > 0 && nvY > 0) {
+                    double value = counts / ((double) nvX * nvY);
+                    sums[k + 1][x] += value;
+                    if (x != y) sums[k + 1][y] += value;
+                }
+            }
+        }
+
+        float[][] marginals = new float[sums.length][numBins];
+        for (int k = 0; k < sums.length; k++) {
+            for (int i = 0; i < numBins; i++) {
+                marginals[k][i] = (float) sums[k][i];
+            }
+        }
+        return marginals;
+    }
+
+    /**
+     * @param fragCountMap fragment counts per chromosome for fragment zooms, null for bp zooms
+     */
+    public static int getNumberOfBins(Chromosome chr, HiCZoom zoom, Map<String, Integer> fragCountMap) {
+        long length = chr.getLength();
+        if (fragCountMap != null) {
+            Integer numFrags = fragCountMap.get(chr.getName());
+            length = numFrags == null ? 0 : numFrags;
+        }
+        return (int) (length / zoom.getBinSize() + 1);
+    }
+
+    public void put(NormalizationType type, int chrIdx, HiCZoom zoom, float[] values) {
+        Vector vector = new Vector(type.toString(), chrIdx, zoom.getUnit().toString(), zoom.getBinSize(), values);
+        vectors.put(vector.getKey(), vector);
+    }
+
+    /**
+     * @return the stored vector, or null if none was stored for this chromosome, zoom and normalization
+     */
+    public float[] get(NormalizationType type, int chrIdx, HiCZoom zoom) {
+        Vector vector = vectors.get(NormalizationVector.getKey(type, chrIdx, zoom.getUnit().toString(), zoom.getBinSize()));
+        return vector == null ? null : vector.values;
+    }
+
+    public boolean isEmpty() {
+        return vectors.isEmpty();
+    }
+
+    public byte[] getBytes() {
+        BufferedByteWriter buffer = new BufferedByteWriter();
+        buffer.putInt(vectors.size());
+        for (Vector vector : vectors.values()) {
+            buffer.putNullTerminatedString(vector.type);
+            buffer.putInt(vector.chrIdx);
+            buffer.putNullTerminatedString(vector.unit);
+            buffer.putInt(vector.binSize);
+            buffer.putInt(vector.values.length);
+            for (float value : vector.values) {
+                buffer.putFloat(value);
+            }
+        }
+        return buffer.getBytes();
+    }
+
+    private static class Vector {
+        private final String type;
+        private final int chrIdx;
+        private final String unit;
+        private final int binSize;
+        private final float[] values;
+
+        Vector(String type, int chrIdx, String unit, int binSize, float[] values) {
+            this.type = type;
+            this.chrIdx = chrIdx;
+            this.unit = unit;
+            this.binSize = binSize;
+            this.values = values;
+        }
+
+        String getKey() {
+            return type + "_" + chrIdx + "_" + unit + "_" + binSize;
+        }
+    }
+}
@@ -29,6 +29,7 @@ import juicebox.data.anchor.MotifAnchor;
 import juicebox.data.basics.Chromosome;
 import juicebox.data.censoring.CustomMZDRegionHandler;
 import juicebox.data.censoring.RegionPair;
+import juicebox.tools.dev.ParallelizedJuicerTools;
 import juicebox.windowui.HiCZoom;
 import juicebox.windowui.NormalizationType;
 import org.broad.igv.util.Pair;
@@ -37,8 +38,6 @@ import org.broad.igv.util.collections.LRUCache;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -147,7 +146,7 @@ public class CustomMatrixZoomData extends MatrixZoomData {
             System.err.println("no y?");
         }
 
-        ExecutorService executor = HiCGlobals.newFixedThreadPool();
+        List<Runnable> workers = new ArrayList<>();
         // todo change to be by chromosome?
         for (Pair<MotifAnchor, MotifAnchor> xRegion : xAxisRegions) {
             for (Pair<MotifAnchor, MotifAnchor> yRegion : yAxisRegions) {
@@ -190,14 +189,10 @@ public class CustomMatrixZoomData extends MatrixZoomData {
                         }
                     }
                 };
-                executor.execute(worker);
+                workers.add(worker);
             }
         }
-        executor.shutdown();
-
-        // Wait until all threads finish
-        while (!executor.isTerminated()) {
-        }
+        ParallelizedJuicerTools.runAll(null, workers);
 
         // Actually load new blocks
         actuallyLoadGivenBlocks(blockList, no, blocksNumsToLoadForZd);
@@ -221,7 +216,7 @@ public class CustomMatrixZoomData extends MatrixZoomData {
     private void actuallyLoadGivenBlocks(final List<Block> blockList, final NormalizationType no,
                                          Map<MatrixZoomData, Map<RegionPair, List<Integer>>> blocksNumsToLoadForZd) {
         final AtomicInteger errorCounter = new AtomicInteger();
-        ExecutorService service = HiCGlobals.newFixedThreadPool();
+        List<Runnable> loaders = new ArrayList<>();
 
         long[] timesPassed = new long[3];
         long overallTimeStart = System.currentTimeMillis();
@@ -271,27 +266,10 @@ public class CustomMatrixZoomData extends MatrixZoomData {
                         }
                     }
                 };
-                service.submit(loader);
-            }
-        }
-
-        // done submitting all jobs
-        service.shutdown();
-
-        // Wait until all threads finish
-        while (!service.isTerminated()) {
-        }
-
-        // wait for all to finish
-        try {
-            service.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-        } catch (InterruptedException e) {
-            //String.format("Pending tasks: %d", executor.getQueue().size())
-            System.err.println("Error loading custom mzd data " + e.getLocalizedMessage());
-            if (HiCGlobals.printVerboseComments) {
-                e.printStackTrace();
+                loaders.add(loader);
             }
         }
+        ParallelizedJuicerTools.runAll(null, loaders);
 
         long timeFinalOverall = System.currentTimeMillis();
         //System.out.println("Time taken in actuallyLoadGivenBlocks (seconds): " + timesPassed[0] / 1000.0 + " - " + timesPassed[1] / 1000.0 + " - " + timesPassed[2] / 1000.0);
@@ -28,6 +28,7 @@ import com.google.common.primitives.Ints;
 import juicebox.HiC;
 import juicebox.HiCGlobals;
 import juicebox.data.basics.Chromosome;
+import juicebox.data.basics.ListOfFloatArrays;
 import juicebox.tools.dev.Private;
 import juicebox.tools.utils.original.Preprocessor;
 import juicebox.windowui.HiCZoom;
@@ -56,8 +57,10 @@ public class Dataset {
     private final DatasetReader reader;
     private final LRUCache<String, double[]> eigenvectorCache;
     private final LRUCache<String, NormalizationVector> normalizationVectorCache;
+    private final LRUCache<String, double[]> coverageVectorCache;
     private final Map<String, NormalizationVector> normalizationsVectorsOnlySavedInRAMCache;
     Map<String, ExpectedValueFunction> expectedValueFunctionMap;
+    private volatile boolean expectedValuesDeferred = false;
     String genomeId;
     String restrictionEnzyme = null;
     List<HiCZoom> bpZooms, dynamicZooms, fragZooms;
@@ -73,6 +76,7 @@ public class Dataset {
         this.reader = reader;
         eigenvectorCache = new LRUCache<>(25);
         normalizationVectorCache = new LRUCache<>(25);
+        coverageVectorCache = new LRUCache<>(25);
         normalizationsVectorsOnlySavedInRAMCache = new HashMap<>();
         normalizationTypes = new ArrayList<>();
     }
@@ -288,6 +292,7 @@ public class Dataset {
     }
 
     public ExpectedValueFunction getExpectedValues(HiCZoom zoom, NormalizationType type) {
+        loadDeferredExpectedValues();
         if (expectedValueFunctionMap == null || zoom == null || type == null) return null;
         String key = ExpectedValueFunctionImpl.getKey(zoom, type);
         return expectedValueFunctionMap.get(key);
@@ -303,11 +308,37 @@ public class Dataset {
     }
 
     public Map<String, ExpectedValueFunction> getExpectedValueFunctionMap() {
+        loadDeferredExpectedValues();
         return expectedValueFunctionMap;
     }
 
     public void setExpectedValueFunctionMap(Map<String, ExpectedValueFunction> df) {
         this.expectedValueFunctionMap = df;
+        expectedValuesDeferred = false;
+    }
+
+    /**
+     * Set by a lazy footer read; the expected value map is then filled in on first access
+     */
+    void setExpectedValuesDeferred(boolean deferred) {
+        expectedValuesDeferred = deferred;
+    }
+
+    private void loadDeferredExpectedValues() {
+        if (!expectedValuesDeferred) return;
+        synchronized (this) {
+            if (!expectedValuesDeferred) return;
+            try {
+                expectedValueFunctionMap = ((DatasetReaderV2) reader).readDeferredExpectedValueFunctions();
+            } catch (IOException e) {
+                System.err.println("Error reading expected values from " + reader.getPath());
+                if (HiCGlobals.printVerboseComments) {
+                    e.printStackTrace();
+                }
+                expectedValueFunctionMap = new LinkedHashMap<>();
+            }
+            expectedValuesDeferred = false;
+        }
     }
 
     public ChromosomeHandler getChromosomeHandler() {
@@ -372,6 +403,8 @@ public class Dataset {
         NumberFormat numberFormat = NumberFormat.getNumberInstance(Locale.US);
         while (lines.hasMoreTokens()) {
             String current = lines.nextToken();
+            // statistics computed by pre are padded out to the space reserved in the header
+            if (current.trim().isEmpty()) continue;
             StringTokenizer colon = new StringTokenizer(current, ":");
             if (colon.countTokens() != 2) {
                 System.err.println("Incorrect form in original statistics attribute. Offending line:");
@@ -874,16 +907,18 @@ public class Dataset {
         String key = chr.getName() + "_" + zoom.getKey() + "_" + number + "_" + type;
         if (!eigenvectorCache.containsKey(key)) {
 
-            double[] eigenvector;
-            //eigenvector = reader.readEigenvector(chr.getName(), zoom, number, type.toString());
+            // precomputed by addEigenvectors, if the file has it
+            double[] eigenvector = reader.readEigenvector(chr.getName(), zoom, number, type.toString());
 
-            ExpectedValueFunction df = getExpectedValues(zoom, type);
-            Matrix m = getMatrix(chr, chr);
-            MatrixZoomData mzd = m.getZoomData(zoom);
-            if (df != null && mzd.getPearsons(df) != null && zoom.getBinSize() >= HiCGlobals.MAX_EIGENVECTOR_ZOOM) {
-                eigenvector = mzd.computeEigenvector(df, number);
-            } else {
-                eigenvector = new double[0];
+            if (eigenvector == null) {
+                ExpectedValueFunction df = getExpectedValues(zoom, type);
+                Matrix m = getMatrix(chr, chr);
+                MatrixZoomData mzd = m.getZoomData(zoom);
+                if (df != null && mzd.getPearsons(df) != null && zoom.getBinSize() >= HiCGlobals.MAX_EIGENVECTOR_ZOOM) {
+                    eigenvector = mzd.computeEigenvector(df, number);
+                } else {
+                    eigenvector = new double[0];
+                }
             }
 
             eigenvectorCache.put(key, eigenvector);
@@ -915,6 +950,73 @@ public class Dataset {
         return normalizationVectorCache.get(key);
     }
 
+    /**
+     * Coverage vector for display; when the file has none stored, it is only computed for bp resolutions of at
+     * least HiCGlobals.MAX_EIGENVECTOR_ZOOM, since computing it reads the whole matrix
+     */
+    public double[] getCoverageVector(Chromosome chr, HiCZoom zoom, NormalizationType type) {
+        return getCoverageVector(chr, zoom, type,
+                zoom.getUnit() == HiC.Unit.BP && zoom.getBinSize() >= HiCGlobals.MAX_EIGENVECTOR_ZOOM);
+    }
+
+    /**
+     * Coverage of the intra-chromosomal matrix: its row sums, raw for NONE or normalized by the given type.
+     * Read from the file when addNorm stored them, otherwise computed from the contact records.
+     *
+     * @param computeIfNotStored whether to compute the vector when the file has none stored
+     * @return the coverage vector, or null if the matrix or the normalization is not available
+     */
+    public double[] getCoverageVector(Chromosome chr, HiCZoom zoom, NormalizationType type, boolean computeIfNotStored) {
+
+        String key = NormalizationVector.getKey(type, chr.getIndex(), zoom.getUnit().toString(), zoom.getBinSize());
+        if (!coverageVectorCache.containsKey(key)) {
+            float[] values = null;
+            if (reader instanceof DatasetReaderV2) {
+                try {
+                    CoverageVectors stored = ((DatasetReaderV2) reader).getCoverageVectors();
+                    if (stored != null) {
+                        values = stored.get(type, chr.getIndex(), zoom);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Error reading coverage vectors from " + reader.getPath());
+                }
+            }
+            if (values == null) {
+                if (!computeIfNotStored) {
+                    return null;
+                }
+                values = computeCoverageVector(chr, zoom, type);
+            }
+
+            double[] coverage = null;
+            if (values != null) {
+                coverage = new double[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    coverage[i] = values[i];
+                }
+            }
+            coverageVectorCache.put(key, coverage);
+        }
+
+        return coverageVectorCache.get(key);
+    }
+
+    private float[] computeCoverageVector(Chromosome chr, HiCZoom zoom, NormalizationType type) {
+        MatrixZoomData zd = HiCFileTools.getMatrixZoomData(this, chr, chr, zoom);
+        if (zd == null) return null;
+
+        List<ListOfFloatArrays> normVectors = new ArrayList<>();
+        if (!type.equals(NormalizationHandler.NONE)) {
+            NormalizationVector nv = getNormalizationVector(chr.getIndex(), zoom, type);
+            if (nv == null) return null;
+            normVectors.add(nv.getFloatData());
+        }
+        Map<String, Integer> fcm = zoom.getUnit() == HiC.Unit.FRAG ? fragmentCounts : null;
+        float[][] marginals = CoverageVectors.computeMarginals(zd.getIteratorContainer().getNewContactRecordIterator(),
+                CoverageVectors.getNumberOfBins(chr, zoom, fcm), normVectors);
+        return marginals[normVectors.size()];
+    }
+
     public NormalizationVector getPartNormalizationVector(int chrIdx, HiCZoom zoom, NormalizationType type, int bound1, int bound2) {
         String key = NormalizationVector.getKey(type, chrIdx, zoom.getUnit().toString(), zoom.getBinSize());
         NormalizationVector nv;
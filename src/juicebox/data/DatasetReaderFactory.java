@@ -69,7 +69,7 @@ public class DatasetReaderFactory {
 
         if(magicString != null) {
             if (magicString.equals("HIC")) {
-                return new DatasetReaderV2(file);
+                return createReaderV2(file);
             } else {
                 System.err.println("This version is deprecated and is no longer supported.");
                 //reader = new DatasetReaderV1(file);
@@ -80,6 +80,15 @@ public class DatasetReaderFactory {
         return null;
     }
 
+    /**
+     * Reader for a single v2 file, backed by an index sidecar when HiCGlobals.hicIndexCacheDirectory is set
+     */
+    public static DatasetReaderV2 createReaderV2(String file) throws IOException {
+        DatasetReaderV2 reader = new DatasetReaderV2(file);
+        reader.setIndexSidecar(HiCIndexSidecar.create(HiCGlobals.hicIndexCacheDirectory, file));
+        return reader;
+    }
+
     static String getMagicString(String path) throws IOException {
 
         SeekableStream stream = null;
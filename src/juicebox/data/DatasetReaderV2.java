@@ -47,6 +47,10 @@ import javax.swing.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -59,6 +63,13 @@ public class DatasetReaderV2 extends AbstractDatasetReader {
 
     private static final int maxLengthEntryName = 100;
     private static final int MAX_BYTE_READ_SIZE = Integer.MAX_VALUE - 10;
+    private static final int FOOTER_SKIP_BUFFER_SIZE = 65536;
+    private static final int MIN_MAPPED_NORM_VECTOR_BYTES = 1 << 20;
+    /**
+     * Master index key of the list of bp resolutions appended after the file was written
+     * (see ResolutionUpdater); the header's resolution list cannot grow in place.
+     */
+    public static final String ADDED_BP_RESOLUTIONS_KEY = "addedBpResolutions";
     /**
      * Cache of chromosome name -> array of restriction sites
      */
@@ -72,6 +83,13 @@ public class DatasetReaderV2 extends AbstractDatasetReader {
     private long masterIndexPos;
     private long normVectorFilePosition;
     private long nviHeaderPosition;
+    private long nviPosition, nviSize;
+    private long expectedValuesFilePosition;
+    private int[] addedBpResolutions = new int[0];
+    private HiCIndexSidecar indexSidecar;
+    private BlockChecksums blockChecksums;
+    private CoverageVectors coverageVectors;
+    private StoredEigenvectors storedEigenvectors;
     private boolean activeStatus = true;
     public static double[] globalTimeDiffThings = new double[5];
     private final IGVSeekableStreamFactory streamFactory = IGVSeekableStreamFactory.getInstance();
@@ -115,9 +133,9 @@ public class DatasetReaderV2 extends AbstractDatasetReader {
 
             if (version > 8) {
                 // read NVI todo
-                nviHeaderPosition = position; // todo use
-                long nvi = dis.readLong();
-                long nviSize = dis.readLong();
+                nviHeaderPosition = position;
+                nviPosition = dis.readLong();
+                nviSize = dis.readLong();
                 position += 16;
             }
     
@@ -224,7 +242,14 @@ public class DatasetReaderV2 extends AbstractDatasetReader {
             }
 
 
-            readFooter(masterIndexPos);
+            if (!readIndexSidecar()) {
+                readFooter(masterIndexPos);
+                if (indexSidecar != null) {
+                    indexSidecar.write(version, masterIndexPos, normVectorFilePosition, expectedValuesFilePosition,
+                            masterIndex, normVectorIndex, dataset.getNormalizationTypes());
+                }
+            }
+            readAddedBpResolutions(bpBinSizes);
 
             stream.close();
         } catch (IOException e) {
@@ -236,6 +261,86 @@ public class DatasetReaderV2 extends AbstractDatasetReader {
 
     }
 
+    void setIndexSidecar(HiCIndexSidecar indexSidecar) {
+        this.indexSidecar = indexSidecar;
+    }
+
+    /**
+     * Takes the master index, norm vector index and footer offsets from the sidecar instead of the footer.
+     * Expected values are then deferred exactly as for a lazy footer read.
+     *
+     * @return false if there is no usable sidecar
+     */
+    private boolean readIndexSidecar() {
+        if (indexSidecar == null) return false;
+        Map<String, LargeIndexEntry> sidecarNormVectorIndex = new HashMap<>();
+        List<String> normTypes = new ArrayList<>();
+        synchronized (masterIndex) {
+            if (!indexSidecar.load(version, masterIndexPos, masterIndex, sidecarNormVectorIndex, normTypes)) {
+                return false;
+            }
+        }
+        normVectorFilePosition = indexSidecar.getNormVectorFilePosition();
+        expectedValuesFilePosition = indexSidecar.getExpectedValuesFilePosition();
+        for (String type : normTypes) {
+            dataset.addNormalizationType(dataset.getNormalizationHandler().getNormTypeFromString(type));
+        }
+        normVectorIndex = sidecarNormVectorIndex;
+        dataset.setExpectedValuesDeferred(true);
+        return true;
+    }
+
+    /**
+     * Adds the resolutions listed under ADDED_BP_RESOLUTIONS_KEY, if any, to the dataset's bp zooms.
+     */
+    private void readAddedBpResolutions(int[] headerBpBinSizes) throws IOException {
+        IndexEntry idx = masterIndex.get(ADDED_BP_RESOLUTIONS_KEY);
+        if (idx == null) return;
+
+        LittleEndianInputStream dis = new LittleEndianInputStream(new ByteArrayInputStream(seekAndFullyReadCompressedBytes(idx)));
+        int nAdded = dis.readInt();
+        addedBpResolutions = new int[nAdded];
+        Set<Integer> allBinSizes = new TreeSet<>(Collections.<Integer>reverseOrder());
+        for (int binSize : headerBpBinSizes) {
+            allBinSizes.add(binSize);
+        }
+        for (int i = 0; i < nAdded; i++) {
+            addedBpResolutions[i] = dis.readInt();
+            allBinSizes.add(addedBpResolutions[i]);
+        }
+
+        int[] bpBinSizes = new int[allBinSizes.size()];
+        int i = 0;
+        for (int binSize : allBinSizes) {
+            bpBinSizes[i++] = binSize;
+        }
+        dataset.setBpZooms(bpBinSizes);
+    }
+
+    public int[] getAddedBpResolutions() {
+        return addedBpResolutions;
+    }
+
+    public Map<String, IndexEntry> getMasterIndex() {
+        return Collections.unmodifiableMap(masterIndex);
+    }
+
+    public long getMasterIndexPosition() {
+        return masterIndexPos;
+    }
+
+    public long getExpectedValuesFilePosition() {
+        return expectedValuesFilePosition;
+    }
+
+    public long getNviPosition() {
+        return nviPosition;
+    }
+
+    public long getNviSize() {
+        return nviSize;
+    }
+
     private SeekableStream getValidStream() throws IOException {
         SeekableStream stream;
         do {
@@ -492,6 +597,15 @@ public class DatasetReaderV2 extends AbstractDatasetReader {
             }
         }
 
+        expectedValuesFilePosition = currentPosition;
+
+        if (HiCGlobals.useLazyFooterLoading && readNormVectorIndexFromHeader()) {
+            // expected values are parsed on first use, see readDeferredExpectedValueFunctions
+            stream.close();
+            dataset.setExpectedValuesDeferred(true);
+            return;
+        }
+
         Map<String, ExpectedValueFunction> expectedValuesMap = new LinkedHashMap<>();
 
         // Expected values from non-normalized matrix
@@ -499,14 +613,68 @@ public class DatasetReaderV2 extends AbstractDatasetReader {
         currentPosition += 4;
         //System.err.println(nExpectedValues);
 
-        for (int i = 0; i < nExpectedValues; i++) {
-            NormalizationType no = NormalizationHandler.NONE;
+        currentPosition = readExpectedValueFunctions(stream, dis, currentPosition, nExpectedValues, false,
+                HiCGlobals.useLazyFooterLoading, expectedValuesMap);
+        dataset.setExpectedValueFunctionMap(expectedValuesMap);
+
+        // Normalized expected values (v6 and greater only)
+        if (version >= 6) {
+            //System.out.println(stream.position());
+            //System.out.println(normVectorFilePosition);
+            stream.seek(normVectorFilePosition);
+            currentPosition = normVectorFilePosition;
+            dis = new LittleEndianInputStream(new BufferedInputStream(stream, HiCGlobals.bufferSize));
+
+            int nNormExpectedValueVectors;
+            try {
+                nNormExpectedValueVectors = dis.readInt();
+                currentPosition += 4;
+                //System.out.println(nExpectedValues);
+            } catch (EOFException | HttpResponseException e) {
+                if (HiCGlobals.printVerboseComments) {
+                    System.out.println("No normalization vectors");
+                }
+                return;
+            }
+
+            currentPosition = readExpectedValueFunctions(stream, dis, currentPosition, nNormExpectedValueVectors, true,
+                    HiCGlobals.useLazyFooterLoading, expectedValuesMap);
+
+            // Normalization vectors (indexed)
+            if (HiCGlobals.printVerboseComments) {
+                System.out.println("NVI " + currentPosition);
+            }
+
+            stream.seek(currentPosition);
+            dis = new LittleEndianInputStream(new BufferedInputStream(stream, HiCGlobals.bufferSize));
+            readNormVectorIndex(dis);
+        }
+        stream.close();
+    }
+
+    /**
+     * Reads a run of expected value vectors whose headers start at the current position of dis.
+     * Vectors for small bin sizes (or every vector, when deferAll is set) are not decoded here;
+     * only their file position is kept and they are read on first use.
+     *
+     * @return file position just past the last vector read
+     */
+    private long readExpectedValueFunctions(SeekableStream stream, LittleEndianInputStream dis, long currentPosition,
+                                            int nVectors, boolean isNormalized, boolean deferAll,
+                                            Map<String, ExpectedValueFunction> expectedValuesMap) throws IOException {
+        for (int i = 0; i < nVectors; i++) {
+            String typeString = NormalizationHandler.NONE.toString();
+            if (isNormalized) {
+                typeString = dis.readString();
+                currentPosition += (typeString.length() + 1);
+            }
             String unitString = dis.readString();
             currentPosition += (unitString.length() + 1);
             HiC.Unit unit = HiC.valueOfUnit(unitString);
             int binSize = dis.readInt();
             currentPosition += 4;
-            String key = unitString + "_" + binSize + "_" + no;
+            String key = unitString + "_" + binSize + "_" + typeString;
+
             long nValues;
             if (version > 8) {
                 nValues = dis.readLong();
@@ -515,10 +683,11 @@ public class DatasetReaderV2 extends AbstractDatasetReader {
                 nValues = dis.readInt();
                 currentPosition += 4;
             }
-            //System.err.println(nValues);
 
+            NormalizationType type = isNormalized ?
+                    dataset.getNormalizationHandler().getNormTypeFromString(typeString) : NormalizationHandler.NONE;
 
-            if (binSize >= 500) {
+            if (binSize >= 500 && !deferAll) {
                 ListOfDoubleArrays values = new ListOfDoubleArrays(nValues);
                 if (version > 8) {
                     currentPosition += readVectorOfFloats(dis, nValues, values);
@@ -526,148 +695,111 @@ public class DatasetReaderV2 extends AbstractDatasetReader {
                     currentPosition += readVectorOfDoubles(dis, nValues, values);
                 }
 
-                //System.out.println(binSize + " " + stream.position());
                 int nNormalizationFactors = dis.readInt();
                 currentPosition += 4;
 
                 NormFactorMapReader hmReader = new NormFactorMapReader(nNormalizationFactors, version, dis);
                 currentPosition += hmReader.getOffset();
 
-                expectedValuesMap.put(key, new ExpectedValueFunctionImpl(no, unit, binSize, values, hmReader.getNormFactors()));
+                expectedValuesMap.put(key, new ExpectedValueFunctionImpl(type, unit, binSize, values, hmReader.getNormFactors()));
             } else {
-                long skipPosition = currentPosition;
                 long expectedVectorIndexPosition = currentPosition;
-                if (version > 8) {
-                    skipPosition += (nValues * 4);
-                } else {
-                    skipPosition += (nValues * 8);
-                }
+                long skipPosition = currentPosition + (version > 8 ? nValues * 4 : nValues * 8);
 
+                // only the norm factors and the next header follow, so don't refill the full footer buffer
                 stream.seek(skipPosition);
-                dis = new LittleEndianInputStream(new BufferedInputStream(stream, HiCGlobals.bufferSize));
-                //long skipPosition = stream.position();
+                dis = new LittleEndianInputStream(new BufferedInputStream(stream, FOOTER_SKIP_BUFFER_SIZE));
                 int nNormalizationFactors = dis.readInt();
+                if (isNormalized && HiCGlobals.guiIsCurrentlyActive && HiCGlobals.printVerboseComments) {
+                    System.out.println(currentPosition + " " + skipPosition + " " + nValues + " " + nNormalizationFactors);
+                }
                 currentPosition = skipPosition + 4;
 
                 NormFactorMapReader hmReader = new NormFactorMapReader(nNormalizationFactors, version, dis);
                 currentPosition += hmReader.getOffset();
 
-                expectedValuesMap.put(key, new ExpectedValueFunctionImpl(no, unit, binSize, nValues,
+                expectedValuesMap.put(key, new ExpectedValueFunctionImpl(type, unit, binSize, nValues,
                         expectedVectorIndexPosition, hmReader.getNormFactors(), this));
             }
         }
-        dataset.setExpectedValueFunctionMap(expectedValuesMap);
-
-        // Normalized expected values (v6 and greater only)
-        if (version >= 6) {
-            //System.out.println(stream.position());
-            //System.out.println(normVectorFilePosition);
-            stream.seek(normVectorFilePosition);
-            currentPosition = normVectorFilePosition;
-            dis = new LittleEndianInputStream(new BufferedInputStream(stream, HiCGlobals.bufferSize));
-
-            int nNormExpectedValueVectors;
-            try {
-                nNormExpectedValueVectors = dis.readInt();
-                currentPosition += 4;
-                //System.out.println(nExpectedValues);
-            } catch (EOFException | HttpResponseException e) {
-                if (HiCGlobals.printVerboseComments) {
-                    System.out.println("No normalization vectors");
-                }
-                return;
-            }
-
-            for (int i = 0; i < nNormExpectedValueVectors; i++) {
-                String typeString = dis.readString();
-                currentPosition += (typeString.length() + 1);
-                String unitString = dis.readString();
-                currentPosition += (unitString.length() + 1);
-                HiC.Unit unit = HiC.valueOfUnit(unitString);
-                int binSize = dis.readInt();
-                currentPosition += 4;
-                String key = unitString + "_" + binSize + "_" + typeString;
-                //System.out.println(key);
-    
-                long nValues;
-                if (version > 8) {
-                    nValues = dis.readLong();
-                    currentPosition += 8;
-                    //System.out.println(nValues);
-                } else {
-                    nValues = dis.readInt();
-                    currentPosition += 4;
-                }
-
-                if (binSize >= 500) {
-                    ListOfDoubleArrays values = new ListOfDoubleArrays(nValues);
-                    if (version > 8) {
-                        currentPosition += readVectorOfFloats(dis, nValues, values);
-                    } else {
-                        currentPosition += readVectorOfDoubles(dis, nValues, values);
-                    }
-
-                    int nNormalizationFactors = dis.readInt();
-                    currentPosition += 4;
-
-                    NormFactorMapReader hmReader = new NormFactorMapReader(nNormalizationFactors, version, dis);
-                    currentPosition += hmReader.getOffset();
-
-                    NormalizationType type = dataset.getNormalizationHandler().getNormTypeFromString(typeString);
-                    ExpectedValueFunction df = new ExpectedValueFunctionImpl(type, unit, binSize, values, hmReader.getNormFactors());
-                    expectedValuesMap.put(key, df);
-                } else {
-                    long skipPosition = currentPosition;
-                    long expectedVectorIndexPosition = currentPosition;
-                    if (version > 8) {
-                        skipPosition += (nValues * 4);
-                    } else {
-                        skipPosition += (nValues * 8);
-                    }
-
-                    stream.seek(skipPosition);
-                    dis = new LittleEndianInputStream(new BufferedInputStream(stream, HiCGlobals.bufferSize));
-                    //long skipPosition = stream.position();
-                    int nNormalizationFactors = dis.readInt();
-                    if (HiCGlobals.guiIsCurrentlyActive && HiCGlobals.printVerboseComments) {
-                        System.out.println(currentPosition + " " + skipPosition + " " + nValues + " " + nNormalizationFactors);
-                    }
-                    currentPosition = skipPosition + 4;
-
-                    NormFactorMapReader hmReader = new NormFactorMapReader(nNormalizationFactors, version, dis);
-                    currentPosition += hmReader.getOffset();
+        return currentPosition;
+    }
 
-                    NormalizationType type = dataset.getNormalizationHandler().getNormTypeFromString(typeString);
-                    ExpectedValueFunction df = new ExpectedValueFunctionImpl(type, unit, binSize, nValues,
-                            expectedVectorIndexPosition, hmReader.getNormFactors(), this);
-                    expectedValuesMap.put(key, df);
+    /**
+     * Parses the expected value sections skipped by a lazy footer read.
+     * Every vector is returned offset-backed and decoded on first use.
+     */
+    Map<String, ExpectedValueFunction> readDeferredExpectedValueFunctions() throws IOException {
+        Map<String, ExpectedValueFunction> expectedValuesMap = new LinkedHashMap<>();
+        SeekableStream stream = getValidStream();
+        try {
+            stream.seek(expectedValuesFilePosition);
+            LittleEndianInputStream dis = new LittleEndianInputStream(new BufferedInputStream(stream, FOOTER_SKIP_BUFFER_SIZE));
+            int nExpectedValues = dis.readInt();
+            readExpectedValueFunctions(stream, dis, expectedValuesFilePosition + 4, nExpectedValues, false,
+                    true, expectedValuesMap);
+
+            if (version >= 6) {
+                stream.seek(normVectorFilePosition);
+                dis = new LittleEndianInputStream(new BufferedInputStream(stream, FOOTER_SKIP_BUFFER_SIZE));
+                int nNormExpectedValueVectors;
+                try {
+                    nNormExpectedValueVectors = dis.readInt();
+                } catch (EOFException | HttpResponseException e) {
+                    return expectedValuesMap;
                 }
+                readExpectedValueFunctions(stream, dis, normVectorFilePosition + 4, nNormExpectedValueVectors, true,
+                        true, expectedValuesMap);
             }
+        } finally {
+            stream.close();
+        }
+        return expectedValuesMap;
+    }
 
-            // Normalization vectors (indexed)
+    /**
+     * v9 headers point straight at the normalization vector index, so it can be read
+     * without walking the expected value sections first.
+     *
+     * @return false if the header pointer is unset or not usable
+     */
+    private boolean readNormVectorIndexFromHeader() {
+        if (version < 9 || nviPosition < normVectorFilePosition || nviSize <= 0 || nviSize > MAX_BYTE_READ_SIZE) {
+            return false;
+        }
+        try {
+            byte[] buffer = seekAndFullyReadCompressedBytes(new IndexEntry(nviPosition, (int) nviSize));
+            readNormVectorIndex(new LittleEndianInputStream(new ByteArrayInputStream(buffer)));
+            return true;
+        } catch (IOException e) {
             if (HiCGlobals.printVerboseComments) {
-                System.out.println("NVI " + currentPosition);
+                System.err.println("Unable to read normalization vector index from header; reading full footer");
+                e.printStackTrace();
             }
+            normVectorIndex = null;
+            return false;
+        }
+    }
 
-            int nNormVectors = dis.readInt();
-            normVectorIndex = new HashMap<>(nNormVectors * 2);
-            for (int i = 0; i < nNormVectors; i++) {
+    private void readNormVectorIndex(LittleEndianInputStream dis) throws IOException {
+        int nNormVectors = dis.readInt();
+        Map<String, LargeIndexEntry> index = new HashMap<>(nNormVectors * 2);
+        for (int i = 0; i < nNormVectors; i++) {
 
-                NormalizationType type = dataset.getNormalizationHandler().getNormTypeFromString(dis.readString());
-                int chrIdx = dis.readInt();
-                String unit = dis.readString();
-                int resolution = dis.readInt();
-                long filePosition = dis.readLong();
-                long sizeInBytes = version > 8 ? dis.readLong() : dis.readInt();
+            NormalizationType type = dataset.getNormalizationHandler().getNormTypeFromString(dis.readString());
+            int chrIdx = dis.readInt();
+            String unit = dis.readString();
+            int resolution = dis.readInt();
+            long filePosition = dis.readLong();
+            long sizeInBytes = version > 8 ? dis.readLong() : dis.readInt();
 
-                String key = NormalizationVector.getKey(type, chrIdx, unit, resolution);
+            String key = NormalizationVector.getKey(type, chrIdx, unit, resolution);
 
-                dataset.addNormalizationType(type);
+            dataset.addNormalizationType(type);
 
-                normVectorIndex.put(key, new LargeIndexEntry(filePosition, sizeInBytes));
-            }
+            index.put(key, new LargeIndexEntry(filePosition, sizeInBytes));
         }
-        stream.close();
+        normVectorIndex = index;
     }
 
     private long readVectorOfFloats(LittleEndianInputStream dis, long nValues,
@@ -704,6 +836,11 @@ public class DatasetReaderV2 extends AbstractDatasetReader {
             return null;
         }
 
+        ByteBuffer sidecarMetadata = indexSidecar == null ? null : indexSidecar.getMatrixMetadata(key);
+        if (sidecarMetadata != null) {
+            return readMatrixFromSidecar(sidecarMetadata);
+        }
+
         byte[] buffer = seekAndFullyReadCompressedBytes(idx);
         LittleEndianInputStream dis = new LittleEndianInputStream(new ByteArrayInputStream(buffer));
 
@@ -747,6 +884,55 @@ public class DatasetReaderV2 extends AbstractDatasetReader {
         return new Matrix(c1, c2, zdList);
     }
 
+    /**
+     * Same as readMatrix, but parses the matrix metadata copied into the index sidecar
+     * and searches the block indexes in place.
+     */
+    private Matrix readMatrixFromSidecar(ByteBuffer metadata) throws IOException {
+        int c1 = metadata.getInt();
+        int c2 = metadata.getInt();
+        if (c1 < 0 || c1 > dataset.getChromosomeHandler().getChromosomeArray().length ||
+                c2 < 0 || c2 > dataset.getChromosomeHandler().getChromosomeArray().length) {
+            return null;
+        }
+
+        Chromosome chr1 = dataset.getChromosomeHandler().getChromosomeFromIndex(c1);
+        Chromosome chr2 = dataset.getChromosomeHandler().getChromosomeFromIndex(c2);
+
+        int nResolutions = metadata.getInt();
+        List<MatrixZoomData> zdList = new ArrayList<>();
+        int[] chr1Sites = retrieveFragmentSitesFromCache(chr1);
+        int[] chr2Sites = retrieveFragmentSitesFromCache(chr2);
+
+        for (int i = 0; i < nResolutions; i++) {
+            HiC.Unit unit = HiC.valueOfUnit(HiCIndexSidecar.readString(metadata));
+            metadata.getInt();                // Old "zoom" index -- not used
+            double sumCounts = metadata.getFloat();
+            metadata.getFloat();              // occupiedCellCount
+            metadata.getFloat();              // stdDev
+            metadata.getFloat();              // percent95
+            int binSize = metadata.getInt();
+            int blockBinCount = metadata.getInt();
+            int blockColumnCount = metadata.getInt();
+            int nBlocks = metadata.getInt();
+
+            MatrixZoomData zd = new MatrixZoomData(chr1, chr2, new HiCZoom(unit, binSize), blockBinCount,
+                    blockColumnCount, chr1Sites, chr2Sites, this);
+            BlockIndex blockIndex = MappedBlockIndex.create(metadata, nBlocks);
+            metadata.position(metadata.position() + nBlocks * 16);
+            synchronized (blockIndexMap) {
+                blockIndexMap.put(zd.getKey(), blockIndex);
+            }
+
+            long nBins1 = chr1.getLength() / binSize;
+            long nBins2 = chr2.getLength() / binSize;
+            zd.setAverageCount((sumCounts / nBins1) / nBins2);
+            zdList.add(zd);
+        }
+
+        return new Matrix(c1, c2, zdList);
+    }
+
     int getFragCount(Chromosome chromosome) {
         FragIndexEntry entry = null;
         if (fragmentSitesIndex != null)
@@ -807,20 +993,42 @@ public class DatasetReaderV2 extends AbstractDatasetReader {
             useVCForVCSQRT = true;
         }
         if (idx == null) return null;
-    
-        List<byte[]> buffer = seekAndFullyReadLargeCompressedBytes(idx);
-        List<ByteArrayInputStream> disList = new ArrayList<>();
-        for (int i = 0; i < buffer.size(); i++) {
-            disList.add(new ByteArrayInputStream(buffer.get(i)));
+
+        if (idx.size > MAX_BYTE_READ_SIZE) {
+            return readLargeNormalizationVector(idx, type, chrIdx, unit, binSize, useVCForVCSQRT);
         }
-        LittleEndianInputStream dis = new LittleEndianInputStream(new SequenceInputStream(Collections.enumeration(disList)));
-    
+
+        ByteBuffer region = readNormVectorRegion(idx.position, (int) idx.size);
+        long nValues = version > 8 ? region.getLong(0) : region.getInt(0);
+        region.position(version > 8 ? 8 : 4);
+        return createNormalizationVector(region.slice().order(ByteOrder.LITTLE_ENDIAN), (int) nValues,
+                type, chrIdx, unit, binSize, useVCForVCSQRT);
+    }
+
+    private NormalizationVector readLargeNormalizationVector(LargeIndexEntry idx, NormalizationType type, int chrIdx,
+                                                             HiC.Unit unit, int binSize, boolean useVCForVCSQRT) throws IOException {
+        LittleEndianInputStream dis = openLargeRegion(idx);
         long nValues;
         if (version > 8) {
             nValues = dis.readLong();
         } else {
             nValues = dis.readInt();
         }
+        return readNormalizationValues(dis, nValues, type, chrIdx, unit, binSize, useVCForVCSQRT);
+    }
+
+    private LittleEndianInputStream openLargeRegion(LargeIndexEntry idx) throws IOException {
+        List<byte[]> buffer = seekAndFullyReadLargeCompressedBytes(idx);
+        List<ByteArrayInputStream> disList = new ArrayList<>();
+        for (int i = 0; i < buffer.size(); i++) {
+            disList.add(new ByteArrayInputStream(buffer.get(i)));
+        }
+        return new LittleEndianInputStream(new SequenceInputStream(Collections.enumeration(disList)));
+    }
+
+    private NormalizationVector readNormalizationValues(LittleEndianInputStream dis, long nValues, NormalizationType type,
+                                                        int chrIdx, HiC.Unit unit, int binSize,
+                                                        boolean useVCForVCSQRT) throws IOException {
         ListOfDoubleArrays values = new ListOfDoubleArrays(nValues);
         boolean allNaN = true;
         for (long i = 0; i < nValues; i++) {
@@ -853,31 +1061,75 @@ public class DatasetReaderV2 extends AbstractDatasetReader {
 
         long partPosition = version > 8 ? idx.position + 8 + 4*bound1 : idx.position + 4 + 8*bound1;
         long partSize = version > 8 ? (bound2-bound1+1) * 4 : (bound2-bound1+1) * 8;
-        LargeIndexEntry partIdx = new LargeIndexEntry(partPosition, partSize);
+        if (partSize > MAX_BYTE_READ_SIZE) {
+            return readNormalizationValues(openLargeRegion(new LargeIndexEntry(partPosition, partSize)),
+                    bound2 - bound1 + 1, type, chrIdx, unit, binSize, useVCForVCSQRT);
+        }
 
-        List<byte[]> buffer = seekAndFullyReadLargeCompressedBytes(partIdx);
-        List<ByteArrayInputStream> disList = new ArrayList<>();
-        for (int i = 0; i < buffer.size(); i++) {
-            disList.add(new ByteArrayInputStream(buffer.get(i)));
+        ByteBuffer region = readNormVectorRegion(partPosition, (int) partSize);
+        return createNormalizationVector(region, bound2 - bound1 + 1, type, chrIdx, unit, binSize, useVCForVCSQRT);
+    }
+
+    /**
+     * Stored norm vector bytes as a little endian buffer. Large regions of local files are mapped,
+     * so the vector is a view of the file rather than a copy; everything else is read into memory.
+     */
+    private ByteBuffer readNormVectorRegion(long position, int size) throws IOException {
+        File file = new File(path);
+        if (size >= MIN_MAPPED_NORM_VECTOR_BYTES && file.isFile()) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN);
+            }
         }
-        LittleEndianInputStream dis = new LittleEndianInputStream(new SequenceInputStream(Collections.enumeration(disList)));
+        return ByteBuffer.wrap(seekAndFullyReadCompressedBytes(new IndexEntry(position, size))).order(ByteOrder.LITTLE_ENDIAN);
+    }
 
-        long nValues = bound2-bound1+1;
-        ListOfDoubleArrays values = new ListOfDoubleArrays(nValues);
-        boolean allNaN = true;
-        for (long i = 0; i < nValues; i++) {
-            double val = version > 8 ? (double) dis.readFloat() : dis.readDouble();
-            if (!useVCForVCSQRT) {
-                values.set(i, val);
-            } else {
-                values.set(i, Math.sqrt(val));
+    /**
+     * Decodes nValues from a little endian buffer of stored norm values in bulk.
+     * v9 vectors stay float backed: mapped buffers are used as is, others are copied to a float[].
+     * VC_SQRT stand-ins and v8 double vectors are widened into a ListOfDoubleArrays as before.
+     *
+     * @return null if every value is NaN
+     */
+    private NormalizationVector createNormalizationVector(ByteBuffer values, int nValues, NormalizationType type,
+                                                          int chrIdx, HiC.Unit unit, int binSize, boolean useVCForVCSQRT) {
+        if (version > 8 && !useVCForVCSQRT) {
+            FloatBuffer floats = values.asFloatBuffer();
+            floats.limit(nValues);
+            if (!values.isDirect()) {
+                float[] array = new float[nValues];
+                floats.get(array);
+                floats = FloatBuffer.wrap(array);
             }
-            if (!Double.isNaN(val)) {
+            for (int i = 0; i < nValues; i++) {
+                if (!Float.isNaN(floats.get(i))) {
+                    return new NormalizationVector(type, chrIdx, unit, binSize, floats);
+                }
+            }
+            return null;
+        }
+
+        ListOfDoubleArrays list = new ListOfDoubleArrays(nValues);
+        double[] array = nValues > 0 ? list.getValues().get(0) : new double[0];
+        if (version > 8) {
+            FloatBuffer floats = values.asFloatBuffer();
+            for (int i = 0; i < nValues; i++) {
+                array[i] = floats.get(i);
+            }
+        } else {
+            values.asDoubleBuffer().get(array);
+        }
+        boolean allNaN = true;
+        for (int i = 0; i < nValues; i++) {
+            if (!Double.isNaN(array[i])) {
                 allNaN = false;
             }
+            if (useVCForVCSQRT) {
+                array[i] = Math.sqrt(array[i]);
+            }
         }
         if (allNaN) return null;
-        else return new NormalizationVector(type, chrIdx, unit, binSize, values);
+        else return new NormalizationVector(type, chrIdx, unit, binSize, list);
     }
 
     @Override
@@ -945,8 +1197,6 @@ public class DatasetReaderV2 extends AbstractDatasetReader {
                 }
                 return null;
             }
-            ListOfDoubleArrays nv1Data = nv1.getData();
-            ListOfDoubleArrays nv2Data = nv2.getData();
             timeDiffThings[1] = System.currentTimeMillis();
             Block rawBlock = readBlock(blockNumber, zd);
             timeDiffThings[2] = System.currentTimeMillis();
@@ -957,7 +1207,7 @@ public class DatasetReaderV2 extends AbstractDatasetReader {
             for (ContactRecord rec : records) {
                 int x = rec.getBinX();
                 int y = rec.getBinY();
-                double denominator = nv1Data.get(x) * nv2Data.get(y);
+                double denominator = nv1.get(x) * nv2.get(y);
                 float counts = (float) (rec.getCounts() / denominator);
                 if (!Float.isNaN(counts)) {
                     normRecords.add(new ContactRecord(x, y, counts));
@@ -995,35 +1245,8 @@ public class DatasetReaderV2 extends AbstractDatasetReader {
                     throw new RuntimeException("Block read error: " + e.getMessage());
                 }
 
-                LittleEndianInputStream dis = new LittleEndianInputStream(new ByteArrayInputStream(buffer));
-                int nRecords = dis.readInt();
-                List<ContactRecord> records = new ArrayList<>(nRecords);
                 timeDiffThings[4] = System.currentTimeMillis();
-
-                if (version < 7) {
-                    for (int i = 0; i < nRecords; i++) {
-                        int binX = dis.readInt();
-                        int binY = dis.readInt();
-                        float counts = dis.readFloat();
-                        records.add(new ContactRecord(binX, binY, counts));
-                    }
-                } else {
-
-                    int binXOffset = dis.readInt();
-                    int binYOffset = dis.readInt();
-
-                    boolean useShort = dis.readByte() == 0;
-                    boolean useShortBinX = true, useShortBinY = true;
-                    if (version > 8) {
-                        useShortBinX = dis.readByte() == 0;
-                        useShortBinY = dis.readByte() == 0;
-                    }
-
-                    byte type = dis.readByte();
-                    BinReader.handleBinType(dis, type, binXOffset, binYOffset, records,
-                            useShortBinX, useShortBinY, useShort);
-
-                }
+                List<ContactRecord> records = decodeRecords(buffer);
                 b = new Block(blockNumber, records, zd.getBlockKey(blockNumber, NormalizationHandler.NONE));
                 timeDiffThings[5] = System.currentTimeMillis();
                 for (int ii = 0; ii < timeDiffThings.length - 1; ii++) {
@@ -1039,6 +1262,155 @@ public class DatasetReaderV2 extends AbstractDatasetReader {
         return b;
     }
 
+    private List<ContactRecord> decodeRecords(byte[] buffer) throws IOException {
+        LittleEndianInputStream dis = new LittleEndianInputStream(new ByteArrayInputStream(buffer));
+        int nRecords = dis.readInt();
+        List<ContactRecord> records = new ArrayList<>(nRecords);
+
+        if (version < 7) {
+            for (int i = 0; i < nRecords; i++) {
+                int binX = dis.readInt();
+                int binY = dis.readInt();
+                float counts = dis.readFloat();
+                records.add(new ContactRecord(binX, binY, counts));
+            }
+        } else {
+
+            int binXOffset = dis.readInt();
+            int binYOffset = dis.readInt();
+
+            boolean useShort = dis.readByte() == 0;
+            boolean useShortBinX = true, useShortBinY = true;
+            if (version > 8) {
+                useShortBinX = dis.readByte() == 0;
+                useShortBinY = dis.readByte() == 0;
+            }
+
+            byte type = dis.readByte();
+            BinReader.handleBinType(dis, type, binXOffset, binYOffset, records,
+                    useShortBinX, useShortBinY, useShort);
+
+        }
+        return records;
+    }
+
+    /**
+     * @return the block checksums written by pre, or null if the file has none
+     */
+    public BlockChecksums getBlockChecksums() throws IOException {
+        synchronized (masterIndex) {
+            if (blockChecksums == null) {
+                IndexEntry idx = masterIndex.get(BlockChecksums.MASTER_INDEX_KEY);
+                if (idx == null) return null;
+                blockChecksums = BlockChecksums.read(seekAndFullyReadCompressedBytes(idx));
+            }
+            return blockChecksums;
+        }
+    }
+
+    /**
+     * @return the coverage vectors written by addNorm, or null if the file has none
+     */
+    public CoverageVectors getCoverageVectors() throws IOException {
+        synchronized (masterIndex) {
+            if (coverageVectors == null) {
+                IndexEntry idx = masterIndex.get(CoverageVectors.MASTER_INDEX_KEY);
+                if (idx == null || idx.size == 0) return null;
+                coverageVectors = CoverageVectors.read(seekAndFullyReadCompressedBytes(idx));
+            }
+            return coverageVectors;
+        }
+    }
+
+    /**
+     * @return the eigenvectors written by addEigenvectors, or null if the file has none
+     */
+    public StoredEigenvectors getStoredEigenvectors() throws IOException {
+        synchronized (masterIndex) {
+            if (storedEigenvectors == null) {
+                IndexEntry idx = masterIndex.get(StoredEigenvectors.MASTER_INDEX_KEY);
+                if (idx == null || idx.size == 0) return null;
+                storedEigenvectors = StoredEigenvectors.read(seekAndFullyReadCompressedBytes(idx));
+            }
+            return storedEigenvectors;
+        }
+    }
+
+    /**
+     * Eigenvectors come from the file's stored section only; null if this one was not precomputed
+     */
+    @Override
+    public double[] readEigenvector(String chrName, HiCZoom zoom, int number, String type) {
+        try {
+            StoredEigenvectors stored = getStoredEigenvectors();
+            return stored == null ? null : stored.get(chrName, zoom, number, type);
+        } catch (IOException e) {
+            System.err.println("Error reading stored eigenvectors " + e.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Finds where the position and size of a master index entry are stored, so the entry can be updated in place.
+     *
+     * @return file position of the entry's position field, or -1 if the master index has no such key
+     */
+    public long getMasterIndexEntryPosition(String key) throws IOException {
+        SeekableStream stream = getValidStream();
+        stream.seek(masterIndexPos);
+        LittleEndianInputStream dis = new LittleEndianInputStream(new BufferedInputStream(stream, HiCGlobals.bufferSize));
+        long currentPosition = masterIndexPos;
+        if (version > 8) {
+            dis.readLong();
+            currentPosition += 8;
+        } else {
+            dis.readInt();
+            currentPosition += 4;
+        }
+
+        int nEntries = dis.readInt();
+        currentPosition += 4;
+        for (int i = 0; i < nEntries; i++) {
+            String entryKey = dis.readString();
+            currentPosition += (entryKey.length() + 1);
+            if (entryKey.equals(key)) {
+                return currentPosition;
+            }
+            dis.readLong();
+            dis.readInt();
+            currentPosition += 12;
+        }
+        return -1;
+    }
+
+    /**
+     * Reads a block and checks it against its recorded checksum, if there is one. With decode set, or when no
+     * checksum was recorded, the block is also decompressed and parsed.
+     *
+     * @return the size in bytes of the compressed block, or 0 if the block is not in the index
+     * @throws IOException if the block cannot be read, does not match its checksum or cannot be decoded
+     */
+    public int verifyBlock(int blockNumber, MatrixZoomData zd, boolean decode) throws IOException {
+        BlockIndex blockIndex = blockIndexMap.get(zd.getKey());
+        IndexEntry idx = blockIndex == null ? null : blockIndex.getBlock(blockNumber);
+        if (idx == null) return 0;
+
+        byte[] compressedBytes = seekAndFullyReadCompressedBytes(idx);
+        BlockChecksums checksums = getBlockChecksums();
+        Integer expected = checksums == null ? null : checksums.get(zd.getKey(), blockNumber);
+        if (expected != null && expected != BlockChecksums.compute(compressedBytes)) {
+            throw new IOException("Checksum mismatch in block " + blockNumber + " of " + zd.getKey());
+        }
+        if (decode || expected == null) {
+            try {
+                decodeRecords(decompress(compressedBytes));
+            } catch (IOException | RuntimeException e) {
+                throw new IOException("Unable to decode block " + blockNumber + " of " + zd.getKey(), e);
+            }
+        }
+        return idx.size;
+    }
+
     private byte[] decompress(byte[] compressedBytes) {
         return compressionUtils.decompress(compressedBytes);
     }
@@ -24,11 +24,20 @@
 
 package juicebox.data;
 
+import juicebox.HiCGlobals;
+import juicebox.tools.dev.ParallelizedJuicerTools;
 import juicebox.windowui.HiCZoom;
 import juicebox.windowui.NormalizationType;
 
 import java.util.*;
+import java.util.concurrent.Callable;
 
+/**
+ * Zoom data for a resolution which is not stored in the file, built on demand by summing
+ * the records of a higher resolution whose bin size divides this one.
+ * Blocks use the plain grid numbering (row * blockColumnCount + column) of the higher resolution's
+ * block dimensions; once built they are immutable and cached per zoom, normalization and block number.
+ */
 public class DynamicMatrixZoomData extends MatrixZoomData {
 
     private final MatrixZoomData higherResZD;
@@ -48,67 +57,137 @@ public class DynamicMatrixZoomData extends MatrixZoomData {
     @Override
     public List<Block> getNormalizedBlocksOverlapping(long binX1, long binY1, long binX2, long binY2,
                                                       final NormalizationType norm, boolean isImportant, boolean fillUnderDiagonal) {
-        // for V8 will be ints
-        int higherBinX1 = (int) (binX1 * scaleFactor);
-        int higherBinY1 = (int) (binY1 * scaleFactor);
-        int higherBinX2 = (int) (binX2 * scaleFactor);
-        int higherBinY2 = (int) (binY2 * scaleFactor);
-        List<Block> blocksFromHigherRes = higherResZD.getNormalizedBlocksOverlapping(higherBinX1, higherBinY1, higherBinX2, higherBinY2,
-                norm, isImportant, fillUnderDiagonal);
-        return createBlocksForLowerRes(blocksFromHigherRes, norm);
-    }
-
-    private List<Block> createBlocksForLowerRes(List<Block> highResBlocks, NormalizationType norm) {
-
-        Map<Integer, Map<Integer, ContactRecord>> condensedRecords = new HashMap<>();
-
-        for (Block b : highResBlocks) {
-            for (ContactRecord record : b.getContactRecords()) {
-                int binX = record.getBinX() / scaleFactor;
-                int binY = record.getBinY() / scaleFactor;
-                float counts = record.getCounts();
-                if (!condensedRecords.containsKey(binX)) {
-                    condensedRecords.put(binX, new HashMap<>());
-                }
+        int col1 = (int) (binX1 / blockBinCount);
+        int row1 = (int) (binY1 / blockBinCount);
+        int col2 = (int) (binX2 / blockBinCount);
+        int row2 = (int) (binY2 / blockBinCount);
 
-                if (condensedRecords.get(binX).containsKey(binY)) {
-                    condensedRecords.get(binX).get(binY).incrementCount(counts);
-                } else {
-                    ContactRecord recordNew = new ContactRecord(binX, binY, counts);
-                    condensedRecords.get(binX).put(binY, recordNew);
+        List<Block> blockList = new ArrayList<>();
+        Set<Integer> blocksToCreate = new HashSet<>();
+        for (int r = row1; r <= row2; r++) {
+            for (int c = col1; c <= col2; c++) {
+                addBlockOrMarkMissing(r, c, norm, blockList, blocksToCreate);
+            }
+        }
+        if (fillUnderDiagonal && binY1 < binX2) {
+            for (int r = row1; r <= row2; r++) {
+                for (int c = col1; c <= col2; c++) {
+                    addBlockOrMarkMissing(c, r, norm, blockList, blocksToCreate);
                 }
             }
         }
 
-        Set<Integer> blockNumbers = new HashSet<>();
+        if (!blocksToCreate.isEmpty()) {
+            blockList.addAll(createBlocksForLowerRes(blocksToCreate, norm, isImportant, fillUnderDiagonal));
+        }
+        return new ArrayList<>(new HashSet<>(blockList));
+    }
+
+    private void addBlockOrMarkMissing(int r, int c, NormalizationType norm, List<Block> blockList, Set<Integer> blocksToCreate) {
+        int blockNumber = r * blockColumnCount + c;
+        String key = getBlockKey(blockNumber, norm);
+        if (HiCGlobals.useCache && blockCache.containsKey(key)) {
+            blockList.add(blockCache.get(key));
+        } else {
+            blocksToCreate.add(blockNumber);
+        }
+    }
+
+    /**
+     * Reads the higher resolution blocks covering the requested blocks once, and bins their records
+     * in parallel on the shared pool; each worker sums into its own accumulators, which are merged at the end.
+     */
+    private List<Block> createBlocksForLowerRes(Set<Integer> blocksToCreate, NormalizationType norm,
+                                                boolean isImportant, boolean fillUnderDiagonal) {
+        final int[] targets = new int[blocksToCreate.size()];
+        int index = 0;
+        int minCol = Integer.MAX_VALUE, maxCol = 0, minRow = Integer.MAX_VALUE, maxRow = 0;
+        for (int blockNumber : blocksToCreate) {
+            targets[index++] = blockNumber;
+            int c = blockNumber % blockColumnCount;
+            int r = blockNumber / blockColumnCount;
+            minCol = Math.min(minCol, c);
+            maxCol = Math.max(maxCol, c);
+            minRow = Math.min(minRow, r);
+            maxRow = Math.max(maxRow, r);
+        }
+        Arrays.sort(targets);
 
-        for (int bx : condensedRecords.keySet()) {
-            int cx = bx / blockBinCount;
-            Map<Integer, ContactRecord> yMap = condensedRecords.get(bx);
-            for (int by : yMap.keySet()) {
-                ContactRecord cr = yMap.get(by);
-                int ry = by / blockBinCount;
+        long highResBlockWidth = (long) blockBinCount * scaleFactor;
+        final List<Block> highResBlocks = higherResZD.getNormalizedBlocksOverlapping(
+                minCol * highResBlockWidth, minRow * highResBlockWidth,
+                (maxCol + 1) * highResBlockWidth - 1, (maxRow + 1) * highResBlockWidth - 1,
+                norm, isImportant, fillUnderDiagonal);
 
-                int blockNumber = ry * blockColumnCount + cx;
-                blockNumbers.add(blockNumber);
-                String key = getBlockKey(blockNumber, norm);
+        final int numWorkers = Math.max(1, Math.min(ParallelizedJuicerTools.getNumThreads(), highResBlocks.size()));
+        List<ContactRecordAccumulator[]> partials;
+        if (numWorkers == 1) {
+            partials = Collections.singletonList(binHighResBlocks(highResBlocks, targets));
+        } else {
+            List<Callable<ContactRecordAccumulator[]>> tasks = new ArrayList<>();
+            for (int w = 0; w < numWorkers; w++) {
+                final int workerIndex = w;
+                tasks.add(new Callable<ContactRecordAccumulator[]>() {
+                    @Override
+                    public ContactRecordAccumulator[] call() {
+                        List<Block> share = new ArrayList<>();
+                        for (int i = workerIndex; i < highResBlocks.size(); i += numWorkers) {
+                            share.add(highResBlocks.get(i));
+                        }
+                        return binHighResBlocks(share, targets);
+                    }
+                });
+            }
+            // a failed worker is rethrown here, so partially binned blocks never reach the cache
+            partials = ParallelizedJuicerTools.invokeAll(null, tasks);
+        }
+        boolean complete = !partials.contains(null) && !Thread.currentThread().isInterrupted();
 
-                DynamicBlock b;
-                if (blockCache.containsKey(key)) {
-                    b = (DynamicBlock) blockCache.get(key);
-                    b.addContactRecord(cr);
+        List<Block> blockList = new ArrayList<>();
+        for (int t = 0; t < targets.length; t++) {
+            ContactRecordAccumulator merged = null;
+            for (ContactRecordAccumulator[] partial : partials) {
+                if (partial == null || partial[t] == null) continue;
+                if (merged == null) {
+                    merged = partial[t];
                 } else {
-                    DynamicBlock block = new DynamicBlock(blockNumber, cr, key);
-                    blockCache.put(key, block);
+                    merged.addAll(partial[t]);
                 }
             }
+            String key = getBlockKey(targets[t], norm);
+            Block b;
+            if (merged == null) {
+                b = new Block(targets[t], key);   // An empty block
+            } else {
+                b = new Block(targets[t], merged.toContactRecords(), key);
+            }
+            if (HiCGlobals.useCache && complete) {
+                blockCache.put(key, b);
+            }
+            blockList.add(b);
         }
+        return blockList;
+    }
 
-        List<Block> blockList = new ArrayList<>();
-        for (Integer num : blockNumbers) {
-            blockList.add(blockCache.get(getBlockKey(num, norm)));
+    /**
+     * @return accumulators indexed like targets, null where no record landed
+     */
+    private ContactRecordAccumulator[] binHighResBlocks(List<Block> highResBlocks, int[] targets) {
+        ContactRecordAccumulator[] accumulators = new ContactRecordAccumulator[targets.length];
+        for (Block b : highResBlocks) {
+            for (ContactRecord record : b.getContactRecords()) {
+                int binX = record.getBinX() / scaleFactor;
+                int binY = record.getBinY() / scaleFactor;
+                int blockNumber = (binY / blockBinCount) * blockColumnCount + binX / blockBinCount;
+                int t = Arrays.binarySearch(targets, blockNumber);
+                if (t < 0) continue;
+                if (accumulators[t] == null) {
+                    accumulators[t] = new ContactRecordAccumulator();
+                }
+                accumulators[t].add(binX, binY, record.getCounts());
+            }
         }
-        return blockList;
+        return accumulators;
     }
 
     @Override
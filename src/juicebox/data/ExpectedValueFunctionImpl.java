@@ -50,13 +50,13 @@ public class ExpectedValueFunctionImpl implements ExpectedValueFunction {
 
     private final Map<Integer, Double> normFactors;
 	
-	private ListOfDoubleArrays expectedValues;
+	private volatile ListOfDoubleArrays expectedValues;
 	private final long nValues;
 
 	private final long filePosition;
 
-	private long streamBound1 = 0;
-	private long streamBound2 = 0;
+	// last streamed window, replaced as a whole so concurrent callers never see a torn window
+	private volatile ExpectedValuesWindow window;
 	private final int streamSize = 500000;
 	
 	public ExpectedValueFunctionImpl(NormalizationType type, HiC.Unit unit, int binSize, ListOfDoubleArrays expectedValues, Map<Integer, Double> normFactors) {
@@ -99,17 +99,30 @@ public class ExpectedValueFunctionImpl implements ExpectedValueFunction {
 	 */
 	@Override
 	public ListOfDoubleArrays getExpectedValuesNoNormalization() {
-		if (expectedValues == null && (streamBound1==0 && streamBound2 == 0)) {
-			try {
-				expectedValues = reader.readExpectedVectorPart(filePosition, nValues);
-				streamBound1 = 0;
-				streamBound2 = 0;
-			} catch (IOException e) {
-				System.err.println("Error reading expected vector");
-				e.printStackTrace();
+		return loadExpectedValues();
+	}
+
+	/**
+	 * Full stored vector, read once and shared by every caller
+	 */
+	private ListOfDoubleArrays loadExpectedValues() {
+		ListOfDoubleArrays values = expectedValues;
+		if (values == null) {
+			synchronized (this) {
+				values = expectedValues;
+				if (values == null) {
+					try {
+						values = reader.readExpectedVectorPart(filePosition, nValues);
+						expectedValues = values;
+						window = null;
+					} catch (IOException e) {
+						System.err.println("Error reading expected vector");
+						e.printStackTrace();
+					}
+				}
 			}
 		}
-		return expectedValues;
+		return values;
 	}
 	
 	/**
@@ -122,70 +135,65 @@ public class ExpectedValueFunctionImpl implements ExpectedValueFunction {
 	@Override
 	public double getExpectedValue(int chrIdx, long distance) {
 		double normFactor = 1.0;
-		long streamIndex;
 		if (normFactors != null && normFactors.containsKey(chrIdx)) {
 			normFactor = normFactors.get(chrIdx);
 		}
-		if (expectedValues == null) {
-			streamBound1 = Math.max(0, distance-(streamSize/2));
-			streamBound2 = streamBound1 + streamSize;
-			long position = version > 8? filePosition + (streamBound1*4): filePosition + (streamBound1*8);
-			try {
-				expectedValues = reader.readExpectedVectorPart(position, streamSize);
-			} catch (IOException e) {
-				System.err.println("Error reading expected vector");
-				e.printStackTrace();
-			}
+
+		ListOfDoubleArrays values = expectedValues;
+		if (values == null && nValues <= streamSize) {
+			values = loadExpectedValues();
 		}
 
-		if (streamBound1==0 && streamBound2==0) {
-			if (expectedValues.getLength() > 0) {
-				if (distance >= expectedValues.getLength()) {
-					return expectedValues.getLastValue() / normFactor;
+		if (values != null) {
+			if (values.getLength() > 0) {
+				if (distance >= values.getLength()) {
+					return values.getLastValue() / normFactor;
 				} else {
-					return expectedValues.get(distance) / normFactor;
+					return values.get(distance) / normFactor;
 				}
 			} else {
 				System.err.println("Expected values array is empty");
 				return -1;
 			}
-		} else if (distance >= streamBound1 && distance < streamBound2) {
-			streamIndex = distance - streamBound1;
-			return expectedValues.get(streamIndex) / normFactor;
-		} else {
-			streamBound1 = Math.max(0, distance-(streamSize/2));
-			streamBound2 = streamBound1 + streamSize;
-			long position = version > 8? filePosition + (streamBound1*4): filePosition + (streamBound1*8);
-			try {
-				expectedValues = reader.readExpectedVectorPart(position, streamSize);
-			} catch (IOException e) {
-				System.err.println("Error reading expected vector");
-				e.printStackTrace();
-			}
-			streamIndex = distance - streamBound1;
-			return expectedValues.get(streamIndex) / normFactor;
+		}
+
+		if (distance >= nValues) {
+			distance = nValues - 1;
+		}
+		ExpectedValuesWindow current = window;
+		if (current == null || !current.contains(distance)) {
+			current = readExpectedValuesWindow(distance);
+			if (current == null) return -1;
+			window = current;
+		}
+		return current.get(distance) / normFactor;
+	}
+
+	/**
+	 * Reads a window of streamSize values around distance, kept within the stored vector
+	 */
+	private ExpectedValuesWindow readExpectedValuesWindow(long distance) {
+		long bound1 = Math.max(0, Math.min(distance - (streamSize / 2), nValues - streamSize));
+		long position = version > 8 ? filePosition + (bound1 * 4) : filePosition + (bound1 * 8);
+		try {
+			return new ExpectedValuesWindow(bound1, reader.readExpectedVectorPart(position, streamSize));
+		} catch (IOException e) {
+			System.err.println("Error reading expected vector");
+			e.printStackTrace();
+			return null;
 		}
 	}
 	
 	@Override
 	public ListOfDoubleArrays getExpectedValuesWithNormalization(int chrIdx) {
-		if (expectedValues == null && (streamBound1==0 && streamBound2 == 0)) {
-			try {
-				expectedValues = reader.readExpectedVectorPart(filePosition, nValues);
-				streamBound1 = 0;
-				streamBound2 = 0;
-			} catch (IOException e) {
-				System.err.println("Error reading expected vector");
-				e.printStackTrace();
-			}
-		}
+		ListOfDoubleArrays values = loadExpectedValues();
 		double normFactor = 1.0;
 		if (normFactors != null && normFactors.containsKey(chrIdx)) {
 			normFactor = normFactors.get(chrIdx);
 		}
 		
-		if (expectedValues.getLength() > 0) {
-			ListOfDoubleArrays normedExpectedValues = expectedValues.deepClone();
+		if (values != null && values.getLength() > 0) {
+			ListOfDoubleArrays normedExpectedValues = values.deepClone();
 			normedExpectedValues.multiplyEverythingBy(1.0 / normFactor);
 			return normedExpectedValues;
 		} else {
@@ -214,4 +222,21 @@ public class ExpectedValueFunctionImpl implements ExpectedValueFunction {
         return binSize;
     }
 
+	private static class ExpectedValuesWindow {
+		private final long bound1;
+		private final ListOfDoubleArrays values;
+
+		ExpectedValuesWindow(long bound1, ListOfDoubleArrays values) {
+			this.bound1 = bound1;
+			this.values = values;
+		}
+
+		boolean contains(long distance) {
+			return distance >= bound1 && distance < bound1 + values.getLength();
+		}
+
+		double get(long distance) {
+			return values.get(distance - bound1);
+		}
+	}
 }
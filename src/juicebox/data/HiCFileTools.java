@@ -28,6 +28,7 @@ import juicebox.HiCGlobals;
 import juicebox.data.basics.Chromosome;
 import juicebox.data.basics.ListOfDoubleArrays;
 import juicebox.tools.chrom.sizes.ChromosomeSizes;
+import juicebox.tools.dev.ParallelizedJuicerTools;
 import juicebox.tools.utils.common.MatrixTools;
 import juicebox.windowui.HiCZoom;
 import juicebox.windowui.NormalizationType;
@@ -35,6 +36,7 @@ import org.apache.commons.math.linear.RealMatrix;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.regex.Pattern;
 
 /**
@@ -45,31 +47,7 @@ public class HiCFileTools {
     public static Dataset extractDatasetForCLT(List<String> files, boolean allowPrinting) {
         Dataset dataset = null;
         try {
-            DatasetReader reader = null;
-            if (files.size() == 1) {
-                if (allowPrinting)
-                    System.out.println("Reading file: " + files.get(0));
-                String magicString = DatasetReaderFactory.getMagicString(files.get(0));
-                if (magicString.equals("HIC")) {
-                    reader = new DatasetReaderV2(files.get(0));
-                } else {
-                    System.err.println("This version of HIC is no longer supported");
-                    System.exit(32);
-                }
-                dataset = reader.read();
-
-            } else {
-                if (allowPrinting)
-                    System.out.println("Reading summed files: " + files);
-                reader = DatasetReaderFactory.getReader(files);
-                if (reader == null) {
-                    System.err.println("Error while reading files");
-                    System.exit(33);
-                } else {
-                    dataset = reader.read();
-                }
-            }
-            HiCGlobals.verifySupportedHiCFileVersion(reader.getVersion());
+            dataset = readDataset(files, allowPrinting);
         } catch (Exception e) {
             System.err.println("Could not read hic file: " + e.getMessage());
             System.exit(34);
@@ -78,6 +56,92 @@ public class HiCFileTools {
         return dataset;
     }
 
+    /**
+     * Opens the datasets of a cohort concurrently on the shared pool. Each entry is a file, or files to be
+     * summed joined with "+". Datasets with the same chromosomes are given one shared ChromosomeHandler,
+     * so chromosomes resolved against any of them can be used with all of them.
+     */
+    public static List<Dataset> extractDatasetsForCLT(List<String> fileGroups, final boolean allowPrinting) {
+        List<Callable<Dataset>> tasks = new ArrayList<>();
+        for (final String fileGroup : fileGroups) {
+            tasks.add(new Callable<Dataset>() {
+                @Override
+                public Dataset call() throws Exception {
+                    return readDataset(Arrays.asList(fileGroup.split("\\+")), allowPrinting);
+                }
+            });
+        }
+
+        List<Dataset> datasets = new ArrayList<>();
+        try {
+            datasets = ParallelizedJuicerTools.invokeAll("Opening " + fileGroups.size() + " datasets", tasks);
+        } catch (RuntimeException e) {
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            System.err.println("Could not read hic file: " + cause.getMessage());
+            System.exit(34);
+        }
+
+        List<ChromosomeHandler> handlers = new ArrayList<>();
+        for (Dataset dataset : datasets) {
+            ChromosomeHandler handler = dataset.getChromosomeHandler();
+            boolean shared = false;
+            for (ChromosomeHandler existing : handlers) {
+                if (haveSameChromosomes(existing, handler)) {
+                    dataset.setChromosomeHandler(existing);
+                    shared = true;
+                    break;
+                }
+            }
+            if (!shared) {
+                handlers.add(handler);
+            }
+        }
+        return datasets;
+    }
+
+    private static Dataset readDataset(List<String> files, boolean allowPrinting) throws IOException {
+        Dataset dataset;
+        DatasetReader reader = null;
+        if (files.size() == 1) {
+            if (allowPrinting)
+                System.out.println("Reading file: " + files.get(0));
+            String magicString = DatasetReaderFactory.getMagicString(files.get(0));
+            if (magicString.equals("HIC")) {
+                reader = DatasetReaderFactory.createReaderV2(files.get(0));
+            } else {
+                System.err.println("This version of HIC is no longer supported");
+                System.exit(32);
+            }
+            dataset = reader.read();
+
+        } else {
+            if (allowPrinting)
+                System.out.println("Reading summed files: " + files);
+            reader = DatasetReaderFactory.getReader(files);
+            if (reader == null) {
+                System.err.println("Error while reading files");
+                System.exit(33);
+            }
+            dataset = reader.read();
+        }
+        HiCGlobals.verifySupportedHiCFileVersion(reader.getVersion());
+        return dataset;
+    }
+
+    private static boolean haveSameChromosomes(ChromosomeHandler handler1, ChromosomeHandler handler2) {
+        Chromosome[] chromosomes1 = handler1.getChromosomeArray();
+        Chromosome[] chromosomes2 = handler2.getChromosomeArray();
+        if (chromosomes1.length != chromosomes2.length) return false;
+        for (int i = 0; i < chromosomes1.length; i++) {
+            if (chromosomes1[i].getIndex() != chromosomes2[i].getIndex()
+                    || chromosomes1[i].getLength() != chromosomes2[i].getLength()
+                    || !chromosomes1[i].getName().equals(chromosomes2[i].getName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public static DatasetReader extractDatasetReaderForCLT(List<String> files, boolean allowPrinting) {
         DatasetReader reader = null;
         try {
@@ -86,7 +150,7 @@ public class HiCFileTools {
                     System.out.println("Reading file: " + files.get(0));
                 String magicString = DatasetReaderFactory.getMagicString(files.get(0));
                 if (magicString.equals("HIC")) {
-                    reader = new DatasetReaderV2(files.get(0));
+                    reader = DatasetReaderFactory.createReaderV2(files.get(0));
                 } else {
                     System.err.println("This version of HIC is no longer supported");
                     System.exit(32);
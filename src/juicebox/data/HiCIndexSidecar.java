@@ -0,0 +1,257 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2021 Broad Institute, Aiden Lab, Rice University, Baylor College of Medicine
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.data;
+
+import htsjdk.tribble.util.LittleEndianOutputStream;
+import juicebox.HiCGlobals;
+import juicebox.tools.utils.original.IndexEntry;
+import juicebox.tools.utils.original.LargeIndexEntry;
+import juicebox.windowui.NormalizationType;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Sidecar copy of the indexes of a local .hic file, so that short-lived processes can skip
+ * the footer and per-matrix index parsing on open.
+ * The sidecar holds the master index, the raw metadata of every matrix (zoom headers and block
+ * indexes, copied verbatim from the .hic), the norm vector index and the expected value offsets.
+ * It is memory mapped on open; block indexes are searched in place rather than loaded into maps.
+ * Sidecars live in a cache directory, named after a digest of the .hic path, and record the
+ * size and modification time of the file they describe so stale copies are ignored and rebuilt.
+ * <p>
+ * Layout (little endian, strings null terminated):
+ * magic, hic length, hic modification time, hic path, version, master index position,
+ * norm vector file position, expected values position,
+ * nMatrices x (key, position, size, raw matrix metadata),
+ * nNormTypes x type, nNormVectors x (key, position, size)
+ */
+class HiCIndexSidecar {
+
+    private static final byte[] MAGIC = "JBIDX001".getBytes(StandardCharsets.US_ASCII);
+
+    private final File file;
+    private final File hicFile;
+    private final Map<String, Integer> matrixOffsets = new HashMap<>();
+    private ByteBuffer buffer;
+    private long normVectorFilePosition, expectedValuesFilePosition;
+
+    private HiCIndexSidecar(File file, File hicFile) {
+        this.file = file;
+        this.hicFile = hicFile;
+    }
+
+    /**
+     * @return sidecar location for the given .hic, or null if caching is disabled or the file is not local
+     */
+    static HiCIndexSidecar create(File rootDirectory, String path) {
+        if (rootDirectory == null) return null;
+        File hicFile = new File(path);
+        if (!hicFile.isFile()) return null;
+        try {
+            String canonicalPath = hicFile.getCanonicalPath();
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(canonicalPath.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest.digest()) {
+                name.append(String.format("%02x", b));
+            }
+            if (!rootDirectory.isDirectory() && !rootDirectory.mkdirs()) {
+                System.err.println("Unable to create index cache at " + rootDirectory.getAbsolutePath());
+                return null;
+            }
+            return new HiCIndexSidecar(new File(rootDirectory, name + ".hicidx"), new File(canonicalPath));
+        } catch (IOException | NoSuchAlgorithmException e) {
+            if (HiCGlobals.printVerboseComments) {
+                e.printStackTrace();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Maps the sidecar and fills in the given indexes if it matches the current .hic file.
+     * Nothing is modified when the sidecar is missing, stale or unreadable.
+     *
+     * @return true if the sidecar was loaded
+     */
+    boolean load(int version, long masterIndexPos, Map<String, IndexEntry> masterIndex,
+                 Map<String, LargeIndexEntry> normVectorIndex, List<String> normTypes) {
+        if (!file.isFile() || file.length() > Integer.MAX_VALUE) return false;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            ByteBuffer mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+            byte[] magic = new byte[MAGIC.length];
+            mapped.get(magic);
+            if (!Arrays.equals(magic, MAGIC)
+                    || mapped.getLong() != hicFile.length()
+                    || mapped.getLong() != hicFile.lastModified()
+                    || !readString(mapped).equals(hicFile.getPath())
+                    || mapped.getInt() != version
+                    || mapped.getLong() != masterIndexPos) {
+                return false;
+            }
+            long normPosition = mapped.getLong();
+            long expectedPosition = mapped.getLong();
+
+            Map<String, IndexEntry> matrices = new HashMap<>();
+            Map<String, Integer> offsets = new HashMap<>();
+            int nMatrices = mapped.getInt();
+            for (int i = 0; i < nMatrices; i++) {
+                String key = readString(mapped);
+                long position = mapped.getLong();
+                int size = mapped.getInt();
+                matrices.put(key, new IndexEntry(position, size));
+                offsets.put(key, mapped.position());
+                mapped.position(mapped.position() + size);
+            }
+
+            List<String> types = new ArrayList<>();
+            int nTypes = mapped.getInt();
+            for (int i = 0; i < nTypes; i++) {
+                types.add(readString(mapped));
+            }
+
+            Map<String, LargeIndexEntry> norms = new HashMap<>();
+            int nNormVectors = mapped.getInt();
+            for (int i = 0; i < nNormVectors; i++) {
+                String key = readString(mapped);
+                norms.put(key, new LargeIndexEntry(mapped.getLong(), mapped.getLong()));
+            }
+
+            buffer = mapped;
+            matrixOffsets.putAll(offsets);
+            normVectorFilePosition = normPosition;
+            expectedValuesFilePosition = expectedPosition;
+            masterIndex.putAll(matrices);
+            normVectorIndex.putAll(norms);
+            normTypes.addAll(types);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring unreadable index cache " + file.getAbsolutePath());
+            if (HiCGlobals.printVerboseComments) {
+                e.printStackTrace();
+            }
+            return false;
+        }
+    }
+
+    long getNormVectorFilePosition() {
+        return normVectorFilePosition;
+    }
+
+    long getExpectedValuesFilePosition() {
+        return expectedValuesFilePosition;
+    }
+
+    /**
+     * @return little endian view of the matrix metadata for key, positioned at its start, or null
+     */
+    ByteBuffer getMatrixMetadata(String key) {
+        Integer offset = matrixOffsets.get(key);
+        if (offset == null) return null;
+        ByteBuffer view = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        view.position(offset);
+        return view;
+    }
+
+    /**
+     * Writes the sidecar from a freshly read .hic; the matrix metadata is copied from the file itself.
+     * A temporary file is renamed into place so concurrent readers never see a partial sidecar.
+     */
+    void write(int version, long masterIndexPos, long normVectorFilePosition, long expectedValuesFilePosition,
+               Map<String, IndexEntry> masterIndex, Map<String, LargeIndexEntry> normVectorIndex,
+               List<NormalizationType> normTypes) {
+        long length = hicFile.length();
+        long lastModified = hicFile.lastModified();
+        File tmpFile = new File(file.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+        try (RandomAccessFile hic = new RandomAccessFile(hicFile, "r");
+             LittleEndianOutputStream los = new LittleEndianOutputStream(
+                     new BufferedOutputStream(new FileOutputStream(tmpFile), HiCGlobals.bufferSize))) {
+            los.write(MAGIC);
+            los.writeLong(length);
+            los.writeLong(lastModified);
+            los.writeString(hicFile.getPath());
+            los.writeInt(version);
+            los.writeLong(masterIndexPos);
+            los.writeLong(normVectorFilePosition);
+            los.writeLong(expectedValuesFilePosition);
+
+            List<String> keys = new ArrayList<>(masterIndex.keySet());
+            Collections.sort(keys);
+            los.writeInt(keys.size());
+            for (String key : keys) {
+                IndexEntry idx = masterIndex.get(key);
+                byte[] metadata = new byte[idx.size];
+                hic.seek(idx.position);
+                hic.readFully(metadata);
+                los.writeString(key);
+                los.writeLong(idx.position);
+                los.writeInt(idx.size);
+                los.write(metadata);
+            }
+
+            los.writeInt(normTypes.size());
+            for (NormalizationType type : normTypes) {
+                los.writeString(type.getLabel());
+            }
+
+            los.writeInt(normVectorIndex == null ? 0 : normVectorIndex.size());
+            if (normVectorIndex != null) {
+                for (Map.Entry<String, LargeIndexEntry> entry : normVectorIndex.entrySet()) {
+                    los.writeString(entry.getKey());
+                    los.writeLong(entry.getValue().position);
+                    los.writeLong(entry.getValue().size);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Unable to write index cache for " + hicFile.getPath());
+            if (HiCGlobals.printVerboseComments) {
+                e.printStackTrace();
+            }
+            tmpFile.delete();
+            return;
+        }
+        if (tmpFile.length() > Integer.MAX_VALUE || hicFile.lastModified() != lastModified || !tmpFile.renameTo(file)) {
+            tmpFile.delete();
+        }
+    }
+
+    static String readString(ByteBuffer buffer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte b;
+        while ((b = buffer.get()) != 0) {
+            bytes.write(b);
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2021 Broad Institute, Aiden Lab, Rice University, Baylor College of Medicine
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.data;
+
+import juicebox.tools.utils.original.IndexEntry;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Block index read in place from a mapped region of 16 byte (block number, position, size) records,
+ * as written in the .hic matrix metadata. Lookups binary search the records, which are sorted by
+ * block number, so nothing is copied onto the heap when the index is opened.
+ */
+class MappedBlockIndex extends BlockIndex {
+
+    private static final int RECORD_SIZE = 16;
+    private final ByteBuffer records;
+
+    private MappedBlockIndex(ByteBuffer records, int nBlocks) {
+        super(nBlocks);
+        this.records = records;
+    }
+
+    /**
+     * @param buffer  little endian buffer positioned at the first record
+     * @param nBlocks number of records
+     * @return a mapped index, or a regular populated one if the records are not sorted
+     */
+    static BlockIndex create(ByteBuffer buffer, int nBlocks) {
+        ByteBuffer records = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        records.limit(nBlocks * RECORD_SIZE);
+
+        boolean isSorted = true;
+        for (int i = 1; i < nBlocks && isSorted; i++) {
+            isSorted = records.getInt((i - 1) * RECORD_SIZE) < records.getInt(i * RECORD_SIZE);
+        }
+        if (isSorted) {
+            return new MappedBlockIndex(records, nBlocks);
+        }
+
+        BlockIndex blockIndex = new BlockIndex(nBlocks);
+        for (int i = 0; i < nBlocks; i++) {
+            int offset = i * RECORD_SIZE;
+            blockIndex.blockIndex.put(records.getInt(offset),
+                    new IndexEntry(records.getLong(offset + 4), records.getInt(offset + 12)));
+        }
+        return blockIndex;
+    }
+
+    @Override
+    public List<Integer> getBlockNumbers() {
+        List<Integer> blockNumbers = new ArrayList<>(numBlocks);
+        for (int i = 0; i < numBlocks; i++) {
+            blockNumbers.add(records.getInt(i * RECORD_SIZE));
+        }
+        return blockNumbers;
+    }
+
+    @Override
+    public IndexEntry getBlock(int blockNumber) {
+        int lo = 0;
+        int hi = numBlocks - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int offset = mid * RECORD_SIZE;
+            int midBlockNumber = records.getInt(offset);
+            if (midBlockNumber < blockNumber) {
+                lo = mid + 1;
+            } else if (midBlockNumber > blockNumber) {
+                hi = mid - 1;
+            } else {
+                return new IndexEntry(records.getLong(offset + 4), records.getInt(offset + 12));
+            }
+        }
+        return null;
+    }
+}
@@ -41,6 +41,7 @@ import juicebox.gui.SuperAdapter;
 import juicebox.matrix.BasicMatrix;
 import juicebox.matrix.RealMatrixWrapper;
 import juicebox.tools.clt.old.Pearsons;
+import juicebox.tools.dev.ParallelizedJuicerTools;
 import juicebox.track.HiCFixedGridAxis;
 import juicebox.track.HiCFragmentAxis;
 import juicebox.track.HiCGridAxis;
@@ -54,11 +55,9 @@ import org.apache.commons.math3.linear.RealVector;
 import org.broad.igv.util.collections.LRUCache;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 
@@ -74,7 +73,10 @@ public class MatrixZoomData {
     protected final int blockBinCount;   // block size in bins
     protected final int blockColumnCount;     // number of block columns
     // Cache the last 20 blocks loaded
-    protected final LRUCache<String, Block> blockCache = new LRUCache<>(500);
+    private static final int BLOCK_CACHE_SIZE = 500;
+    protected final LRUCache<String, Block> blockCache = new LRUCache<>(BLOCK_CACHE_SIZE);
+    // keys of blocks put in the cache by the prefetcher, but not yet requested for painting
+    private final Set<String> prefetchedBlockKeys = Collections.synchronizedSet(new HashSet<>());
     private final HashMap<NormalizationType, BasicMatrix> pearsonsMap;
     private final HashMap<NormalizationType, BasicMatrix> normSquaredMaps;
     //private BigContactRecordList localCacheOfRecords = null;
@@ -225,18 +227,71 @@ public class MatrixZoomData {
         
         final List<Block> blockList = Collections.synchronizedList(new ArrayList<>());
         if (reader.getVersion() > 8 && isIntra) {
-            return addNormalizedBlocksToListV9(blockList, (int) binX1, (int) binY1, (int) binX2, (int) binY2, no);
+            return recordPrefetchHits(addNormalizedBlocksToListV9(blockList, (int) binX1, (int) binY1, (int) binX2, (int) binY2, no), no);
         } else {
             if (HiCGlobals.isAssemblyMatCheck) {
                 return addNormalizedBlocksToList(blockList, (int) binX1, (int) binY1, (int) binX2, (int) binY2, no, 1, 1);
             } else if (SuperAdapter.assemblyModeCurrentlyActive && !HiCGlobals.isAssemblyMatCheck) {
                 return addNormalizedBlocksToListAssembly(blockList, (int) binX1, (int) binY1, (int) binX2, (int) binY2, no);
             } else {
-                return addNormalizedBlocksToList(blockList, (int) binX1, (int) binY1, (int) binX2, (int) binY2, no, fillUnderDiagonal);
+                return recordPrefetchHits(addNormalizedBlocksToList(blockList, (int) binX1, (int) binY1, (int) binX2, (int) binY2, no, fillUnderDiagonal), no);
             }
         }
     }
 
+    private List<Block> recordPrefetchHits(List<Block> blocks, NormalizationType no) {
+        int hits = 0;
+        if (!prefetchedBlockKeys.isEmpty()) {
+            for (Block b : blocks) {
+                if (prefetchedBlockKeys.remove(getBlockKey(b.getNumber(), no))) {
+                    hits++;
+                }
+            }
+        }
+        ViewportPrefetcher.recordDemand(blocks.size(), hits);
+        return blocks;
+    }
+
+    /**
+     * Returns the numbers of the blocks overlapping the region which are not yet in the block cache.
+     * Used by the prefetcher; the units are "bins".
+     */
+    public List<Integer> getUncachedBlockNumbersOverlapping(long binX1, long binY1, long binX2, long binY2,
+                                                            NormalizationType no) {
+        List<Block> alreadyCached = new ArrayList<>();
+        Set<Integer> blocksToLoad = new HashSet<>();
+        if (reader.getVersion() > 8 && isIntra) {
+            populateBlocksToLoadForRegionV9(alreadyCached, blocksToLoad, (int) binX1, (int) binY1, (int) binX2, (int) binY2, no);
+        } else {
+            populateBlocksToLoadForRegion(alreadyCached, blocksToLoad, (int) binX1, (int) binY1, (int) binX2, (int) binY2, no, false);
+        }
+        List<Integer> blockNumbers = new ArrayList<>(blocksToLoad);
+        Collections.sort(blockNumbers);
+        return blockNumbers;
+    }
+
+    /**
+     * Speculatively reads a block into the block cache.
+     *
+     * @return approximate size of the block in bytes, or 0 if nothing was loaded
+     */
+    public long prefetchBlock(int blockNumber, NormalizationType no) throws IOException {
+        if (!HiCGlobals.useCache || SuperAdapter.assemblyModeCurrentlyActive) return 0;
+        String key = getBlockKey(blockNumber, no);
+        if (blockCache.containsKey(key)) return 0;
+        Block b = reader.readNormalizedBlock(blockNumber, MatrixZoomData.this, no);
+        if (b == null) {
+            b = new Block(blockNumber, key);   // An empty block
+        }
+        blockCache.put(key, b);
+        if (prefetchedBlockKeys.size() > BLOCK_CACHE_SIZE) {
+            // anything beyond the cache capacity has been evicted
+            prefetchedBlockKeys.clear();
+        }
+        prefetchedBlockKeys.add(key);
+        return ViewportPrefetcher.estimateBlockSizeInBytes(b);
+    }
+
     /**
      * // for reference
      * public int getBlockNumberVersion9(int binI, int binJ) {
@@ -291,7 +346,15 @@ public class MatrixZoomData {
                                                     final NormalizationType norm) {
 
         Set<Integer> blocksToLoad = new HashSet<>();
+        populateBlocksToLoadForRegionV9(blockList, blocksToLoad, binX1, binY1, binX2, binY2, norm);
+
+        actuallyLoadGivenBlocks(blockList, blocksToLoad, norm);
+        
+        return new ArrayList<>(new HashSet<>(blockList));
+    }
 
+    private void populateBlocksToLoadForRegionV9(List<Block> blockList, Set<Integer> blocksToLoad, int binX1, int binY1,
+                                                 int binX2, int binY2, NormalizationType norm) {
         // PAD = positionAlongDiagonal (~projected)
         // Depth is axis perpendicular to diagonal; nearer means closer to diagonal
         int translatedLowerPAD = (binX1 + binY1) / 2 / blockBinCount;
@@ -311,10 +374,6 @@ public class MatrixZoomData {
                 populateBlocksToLoadV9(pad, depth, norm, blockList, blocksToLoad);
             }
         }
-
-        actuallyLoadGivenBlocks(blockList, blocksToLoad, norm);
-        
-        return new ArrayList<>(new HashSet<>(blockList));
     }
     
     private void populateBlocksToLoad(int r, int c, NormalizationType no, List<Block> blockList, Set<Integer> blocksToLoad) {
@@ -342,7 +401,15 @@ public class MatrixZoomData {
                                                   final NormalizationType norm, boolean getBelowDiagonal) {
 
         Set<Integer> blocksToLoad = new HashSet<>();
+        populateBlocksToLoadForRegion(blockList, blocksToLoad, binX1, binY1, binX2, binY2, norm, getBelowDiagonal);
+
+        actuallyLoadGivenBlocks(blockList, blocksToLoad, norm);
 
+        return new ArrayList<>(new HashSet<>(blockList));
+    }
+
+    private void populateBlocksToLoadForRegion(List<Block> blockList, Set<Integer> blocksToLoad, int binX1, int binY1,
+                                               int binX2, int binY2, NormalizationType norm, boolean getBelowDiagonal) {
         // have to do this regardless (just in case)
         int col1 = binX1 / blockBinCount;
         int row1 = binY1 / blockBinCount;
@@ -362,10 +429,6 @@ public class MatrixZoomData {
                 }
             }
         }
-
-        actuallyLoadGivenBlocks(blockList, blocksToLoad, norm);
-
-        return new ArrayList<>(new HashSet<>(blockList));
     }
 
     private List<Block> addNormalizedBlocksToList(final List<Block> blockList, int binX1, int binY1, int binX2, int binY2,
@@ -511,9 +574,11 @@ public class MatrixZoomData {
 
     private void actuallyLoadGivenBlocks(final List<Block> blockList, Set<Integer> blocksToLoad,
                                          final NormalizationType no) {
+        if (blocksToLoad.isEmpty()) return;
+        ViewportPrefetcher.recordDemandMisses(blocksToLoad.size());
         final AtomicInteger errorCounter = new AtomicInteger();
 
-        ExecutorService service = HiCGlobals.newFixedThreadPool();
+        List<Runnable> loaders = new ArrayList<>(blocksToLoad.size());
 
         final int binSize = getBinSize();
         final int chr1Index = chr1.getIndex();
@@ -525,6 +590,7 @@ public class MatrixZoomData {
                 public void run() {
                     try {
                         String key = getBlockKey(blockNumber, no);
+                        prefetchedBlockKeys.remove(key); // evicted before it was used
                         Block b = reader.readNormalizedBlock(blockNumber, MatrixZoomData.this, no);
                         if (b == null) {
                             b = new Block(blockNumber, key);   // An empty block
@@ -543,21 +609,11 @@ public class MatrixZoomData {
                 }
             };
 
-            service.submit(loader);
+            loaders.add(loader);
         }
 
-        // done submitting all jobs
-        service.shutdown();
-
-        // wait for all to finish
-        try {
-            service.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-        } catch (InterruptedException e) {
-            System.err.println("Error loading mzd data " + e.getLocalizedMessage());
-            if (HiCGlobals.printVerboseComments) {
-                e.printStackTrace();
-            }
-        }
+        // blocks are read on the shared pool, so block loads nested in HiCCUPS/APA tasks stay within --threads
+        ParallelizedJuicerTools.runAll(null, loaders);
 
         // error printing
         if (errorCounter.get() > 0) {
@@ -569,7 +625,7 @@ public class MatrixZoomData {
                                          final NormalizationType no, final int chr1Id, final int chr2Id) {
         final AtomicInteger errorCounter = new AtomicInteger();
 
-        ExecutorService service = Executors.newFixedThreadPool(200);
+        List<Runnable> loaders = new ArrayList<>(blocksToLoad.size());
 
         final int binSize = getBinSize();
 
@@ -597,21 +653,11 @@ public class MatrixZoomData {
                 }
             };
 
-            service.submit(loader);
+            loaders.add(loader);
         }
 
-        // done submitting all jobs
-        service.shutdown();
-
-        // wait for all to finish
-        try {
-            service.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-        } catch (InterruptedException e) {
-            System.err.println("Error loading mzd data " + e.getLocalizedMessage());
-            if (HiCGlobals.printVerboseComments) {
-                e.printStackTrace();
-            }
-        }
+        // blocks are read on the shared pool, so block loads nested in HiCCUPS/APA tasks stay within --threads
+        ParallelizedJuicerTools.runAll(null, loaders);
 
         // error printing
         if (errorCounter.get() > 0) {
@@ -940,6 +986,29 @@ public class MatrixZoomData {
     }
     
     
+    /**
+     * Streams the sparse matrix to the output in the given format; see {@link StreamingMatrixDump}.
+     * The stream is closed when done.
+     */
+    public void dump(OutputStream outputStream, StreamingMatrixDump.Format format, NormalizationType norm, MatrixType matrixType,
+                     boolean useRegionIndices, long[] regionIndices, ExpectedValueFunction df) throws IOException {
+        List<Integer> blocksToIterateOver = getBlockNumbersToDump(useRegionIndices, regionIndices);
+        new StreamingMatrixDump(this, reader, norm, matrixType, useRegionIndices, regionIndices, df, format)
+                .write(blocksToIterateOver, outputStream);
+        outputStream.close();
+    }
+
+    private List<Integer> getBlockNumbersToDump(boolean useRegionIndices, long[] regionIndices) throws IOException {
+        List<Integer> blocksToIterateOver;
+        if (useRegionIndices) {
+            blocksToIterateOver = getBlockNumbersForRegionFromGenomePosition(regionIndices);
+        } else {
+            blocksToIterateOver = reader.getBlockNumbers(this);
+            Collections.sort(blocksToIterateOver);
+        }
+        return blocksToIterateOver;
+    }
+
     public void dump(PrintWriter printWriter, LittleEndianOutputStream les, NormalizationType norm, MatrixType matrixType,
                      boolean useRegionIndices, long[] regionIndices, ExpectedValueFunction df, boolean dense) throws IOException {
         
@@ -951,70 +1020,18 @@ public class MatrixZoomData {
         boolean isIntraChromosomal = chr1.getIndex() == chr2.getIndex();
         
         // Get the block index keys, and sort
-        List<Integer> blocksToIterateOver;
-        if (useRegionIndices) {
-            blocksToIterateOver = getBlockNumbersForRegionFromGenomePosition(regionIndices);
-        } else {
-            blocksToIterateOver = reader.getBlockNumbers(this);
-            Collections.sort(blocksToIterateOver);
-        }
+        List<Integer> blocksToIterateOver = getBlockNumbersToDump(useRegionIndices, regionIndices);
 
         if (!dense) {
-            for (Integer blockNumber : blocksToIterateOver) {
-                Block b = reader.readNormalizedBlock(blockNumber, MatrixZoomData.this, norm);
-                if (b != null) {
-                    for (ContactRecord rec : b.getContactRecords()) {
-                        float counts = rec.getCounts();
-                        int x = rec.getBinX();
-                        int y = rec.getBinY();
-                        int xActual = x * zoom.getBinSize();
-                        int yActual = y * zoom.getBinSize();
-                        float oeVal = 0f;
-                        if (matrixType == MatrixType.OE) {
-                            double expected = 0;
-                            if (chr1 == chr2) {
-                                if (df != null) {
-                                    int dist = Math.abs(x - y);
-                                    expected = df.getExpectedValue(chr1.getIndex(), dist);
-                                }
-                            } else {
-                                expected = (averageCount > 0 ? averageCount : 1);
-                            }
-
-                            double observed = rec.getCounts(); // Observed is already normalized
-                            oeVal = (float) (observed / expected);
-                        }
-                        if (!useRegionIndices || // i.e. use full matrix
-                                // or check regions that overlap with upper left
-                                (xActual >= regionIndices[0] && xActual <= regionIndices[1] &&
-                                        yActual >= regionIndices[2] && yActual <= regionIndices[3]) ||
-                                // or check regions that overlap with lower left
-                                (isIntraChromosomal && yActual >= regionIndices[0] && yActual <= regionIndices[1] &&
-                                        xActual >= regionIndices[2] && xActual <= regionIndices[3])) {
-                            // but leave in upper right triangle coordinates
-                            if (usePrintWriter) {
-                                if (matrixType == MatrixType.OBSERVED) {
-                                    printWriter.println(xActual + "\t" + yActual + "\t" + counts);
-                                } else if (matrixType == MatrixType.OE) {
-                                    printWriter.println(xActual + "\t" + yActual + "\t" + oeVal);
-                                }
-                            } else {
-                                // TODO I suspect this is wrong - should be writing xActual - but this is for binary dumping and we never use it
-                                if (matrixType == MatrixType.OBSERVED) {
-                                    les.writeInt(x);
-                                    les.writeInt(y);
-                                    les.writeFloat(counts);
-                                } else if (matrixType == MatrixType.OE) {
-                                    les.writeInt(x);
-                                    les.writeInt(y);
-                                    les.writeFloat(oeVal);
-                                }
-                            }
-                        }
-                    }
-                }
+            StreamingMatrixDump.Format format = usePrintWriter ? StreamingMatrixDump.Format.TEXT : StreamingMatrixDump.Format.COO;
+            StreamingMatrixDump streamingDump = new StreamingMatrixDump(this, reader, norm, matrixType,
+                    useRegionIndices, regionIndices, df, format);
+            if (usePrintWriter) {
+                streamingDump.write(blocksToIterateOver, printWriter);
+            } else {
+                // TODO I suspect this is wrong - should be writing xActual - but this is for binary dumping and we never use it
+                streamingDump.write(blocksToIterateOver, les);
             }
-
         }
         else {
             int maxX = 0;
@@ -1198,6 +1215,7 @@ public class MatrixZoomData {
         if (HiCGlobals.useCache) {
             blockCache.clear();
         }
+        prefetchedBlockKeys.clear();
         if (iteratorContainer != null) {
             iteratorContainer.clear();
             iteratorContainer = null;
@@ -0,0 +1,138 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2021 Broad Institute, Aiden Lab, Rice University, Baylor College of Medicine
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.data;
+
+import juicebox.HiCGlobals;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * On-disk cache of merged blocks for a combined map, so that reopening the same set of replicates
+ * does not have to read and merge every replicate again.
+ * Entries live in a sub-directory named after a digest of the replicate paths, sizes and
+ * modification times; editing or replacing any replicate therefore starts a fresh cache.
+ * Only local files can be fingerprinted, so combinations containing remote files are not persisted.
+ */
+class MergedBlockCache {
+
+    private final File directory;
+
+    private MergedBlockCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return cache for the given replicates, or null if persistence is disabled or not possible
+     */
+    static MergedBlockCache create(File rootDirectory, List<? extends DatasetReader> replicates) {
+        if (rootDirectory == null) return null;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (DatasetReader reader : replicates) {
+                File file = new File(reader.getPath());
+                if (!file.isFile()) return null;
+                String fingerprint = file.getCanonicalPath() + "\t" + file.length() + "\t" + file.lastModified() + "\n";
+                digest.update(fingerprint.getBytes(StandardCharsets.UTF_8));
+            }
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest.digest()) {
+                name.append(String.format("%02x", b));
+            }
+            File directory = new File(rootDirectory, name.toString());
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                System.err.println("Unable to create merged block cache at " + directory.getAbsolutePath());
+                return null;
+            }
+            return new MergedBlockCache(directory);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            if (HiCGlobals.printVerboseComments) {
+                e.printStackTrace();
+            }
+            return null;
+        }
+    }
+
+    private File getFile(String blockKey) {
+        String name = blockKey.replaceAll("[^A-Za-z0-9._-]", "_") + "_" + Integer.toHexString(blockKey.hashCode());
+        return new File(directory, name + ".blk");
+    }
+
+    /**
+     * @return the cached block, or null if it has not been stored
+     */
+    Block get(int blockNumber, String blockKey) {
+        File file = getFile(blockKey);
+        if (!file.isFile()) return null;
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(
+                new InflaterInputStream(new FileInputStream(file))))) {
+            int numRecords = dis.readInt();
+            List<ContactRecord> records = new ArrayList<>(numRecords);
+            for (int i = 0; i < numRecords; i++) {
+                int binX = dis.readInt();
+                int binY = dis.readInt();
+                records.add(new ContactRecord(binX, binY, dis.readFloat()));
+            }
+            return new Block(blockNumber, records, blockKey);
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable merged block " + file.getAbsolutePath());
+            if (HiCGlobals.printVerboseComments) {
+                e.printStackTrace();
+            }
+            return null;
+        }
+    }
+
+    void put(String blockKey, Block block) {
+        File file = getFile(blockKey);
+        File tmpFile = new File(file.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+        List<ContactRecord> records = block.getContactRecords();
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+                new DeflaterOutputStream(new FileOutputStream(tmpFile))))) {
+            dos.writeInt(records.size());
+            for (ContactRecord record : records) {
+                dos.writeInt(record.getBinX());
+                dos.writeInt(record.getBinY());
+                dos.writeFloat(record.getCounts());
+            }
+        } catch (IOException e) {
+            System.err.println("Unable to persist merged block " + blockKey);
+            if (HiCGlobals.printVerboseComments) {
+                e.printStackTrace();
+            }
+            tmpFile.delete();
+            return;
+        }
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+        }
+    }
+}
@@ -34,6 +34,8 @@ import juicebox.tools.utils.norm.ZeroScale;
 import juicebox.windowui.HiCZoom;
 import juicebox.windowui.NormalizationType;
 
+import java.nio.FloatBuffer;
+
 /**
  * @author jrobinso
  *         Date: 2/10/13
@@ -46,6 +48,8 @@ public class NormalizationVector {
     private final HiC.Unit unit;
     private final int resolution;
     private final ListOfDoubleArrays data;
+    private final FloatBuffer floatData;
+    private volatile ListOfDoubleArrays widenedData;
     private boolean needsToBeScaledTo = false;
     
     public NormalizationVector(NormalizationType type, int chrIdx, HiC.Unit unit, int resolution, ListOfDoubleArrays data) {
@@ -54,6 +58,20 @@ public class NormalizationVector {
         this.unit = unit;
         this.resolution = resolution;
         this.data = data;
+        this.floatData = null;
+    }
+
+    /**
+     * Float backed vector, either a read-only view of the mapped .hic or a wrapped float[].
+     * Values are widened to double as they are read.
+     */
+    public NormalizationVector(NormalizationType type, int chrIdx, HiC.Unit unit, int resolution, FloatBuffer floatData) {
+        this.type = type;
+        this.chrIdx = chrIdx;
+        this.unit = unit;
+        this.resolution = resolution;
+        this.data = null;
+        this.floatData = floatData;
     }
     
     public NormalizationVector(NormalizationType type, int chrIdx, HiC.Unit unit, int resolution, ListOfDoubleArrays data, boolean needsToBeScaledTo) {
@@ -77,8 +95,59 @@ public class NormalizationVector {
         return NormalizationVector.getKey(type, chrIdx, unit.toString(), resolution);
     }
     
+    /**
+     * For float backed vectors this is widened once and cached; prefer get and getLength for lookups
+     */
     public ListOfDoubleArrays getData() {
-        return data;
+        if (data != null) {
+            return data;
+        }
+        ListOfDoubleArrays widened = widenedData;
+        if (widened == null) {
+            synchronized (this) {
+                widened = widenedData;
+                if (widened == null) {
+                    int length = floatData.limit();
+                    widened = new ListOfDoubleArrays(length);
+                    double[] values = widened.getValues().isEmpty() ? new double[0] : widened.getValues().get(0);
+                    for (int i = 0; i < length; i++) {
+                        values[i] = floatData.get(i);
+                    }
+                    widenedData = widened;
+                }
+            }
+        }
+        return widened;
+    }
+
+    /**
+     * Values as floats, read straight from the buffer for float backed vectors
+     */
+    public ListOfFloatArrays getFloatData() {
+        if (data != null) {
+            return data.convertToFloats();
+        }
+        int length = floatData.limit();
+        ListOfFloatArrays values = new ListOfFloatArrays(length);
+        for (int i = 0; i < length; i++) {
+            values.set(i, floatData.get(i));
+        }
+        return values;
+    }
+
+    public double get(long index) {
+        if (data != null) {
+            return data.get(index);
+        }
+        if (index < floatData.limit()) {
+            return floatData.get((int) index);
+        }
+        System.err.println("index exceeds length of normalization vector while getting: " + index + " " + floatData.limit());
+        return Double.NaN;
+    }
+
+    public long getLength() {
+        return data != null ? data.getLength() : floatData.limit();
     }
 
     public boolean doesItNeedToBeScaledTo() {
@@ -94,7 +163,7 @@ public class NormalizationVector {
 
     public NormalizationVector mmbaScaleToVector(IteratorContainer ic) {
 
-        ListOfFloatArrays newNormVector = ZeroScale.scale(ic, data.convertToFloats(), getKey());
+        ListOfFloatArrays newNormVector = ZeroScale.scale(ic, getFloatData(), getKey());
         if (newNormVector != null) {
             newNormVector = ZeroScale.normalizeVectorByScaleFactor(newNormVector, ic);
         }
@@ -0,0 +1,151 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2021 Broad Institute, Aiden Lab, Rice University, Baylor College of Medicine
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package juicebox.data;
+
+import htsjdk.tribble.util.LittleEndianInputStream;
+import juicebox.windowui.HiCZoom;
+import org.broad.igv.tdf.BufferedByteWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Intra-chromosomal eigenvectors precomputed by addEigenvectors and stored in a footer section listed under
+ * MASTER_INDEX_KEY, so eigenvector tracks and compartment tools do not redo the Pearson's and eigen decomposition.
+ * Signs are oriented when stored (see EigenvectorUpdater). addNorm drops the section, as it replaces the norms
+ * the vectors were computed with.
+ * <p>
+ * Layout (little endian, strings null terminated):
+ * nVectors x (chromosome name, unit, bin size, eigenvector number, normalization type, nValues, nValues x float)
+ */
+public class StoredEigenvectors {
+
+    public static final String MASTER_INDEX_KEY = "eigenvectors";
+    private final Map<String, Vector> vectors = new LinkedHashMap<>();
+
+    public static StoredEigenvectors read(byte[] bytes) throws IOException {
+        StoredEigenvectors storedEigenvectors = new StoredEigenvectors();
+        LittleEndianInputStream dis = new LittleEndianInputStream(new ByteArrayInputStream(bytes));
+        int nVectors = dis.readInt();
+        for (int i = 0; i < nVectors; i++) {
+            String chrName = dis.readString();
+            String unit = dis.readString();
+            int binSize = dis.readInt();
+            int number = dis.readInt();
+            String type = dis.readString();
+            float[] values = new float[dis.readInt()];
+            for (int j = 0; j < values.length; j++) {
+                values[j] = dis.readFloat();
+            }
+            Vector vector = new Vector(chrName, unit, binSize, number, type, values);
+            storedEigenvectors.vectors.put(vector.getKey(), vector);
+        }
+        return storedEigenvectors;
+    }
+
+    public static String getKey(String chrName, HiCZoom zoom, int number, String type) {
+        return chrName + "_" + zoom.getUnit() + "_" + zoom.getBinSize() + "_" + number + "_" + type;
+    }
+
+    /**
+     * @param number which eigenvector; 0 is principal
+     */
+    public synchronized void put(String chrName, HiCZoom zoom, int number, String type, double[] eigenvector) {
+        float[] values = new float[eigenvector.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (float) eigenvector[i];
+        }
+        Vector vector = new Vector(chrName, zoom.getUnit().toString(), zoom.getBinSize(), number, type, values);
+        vectors.put(vector.getKey(), vector);
+    }
+
+    /**
+     * Adds the vectors of other that this one does not have
+     */
+    public synchronized void addMissing(StoredEigenvectors other) {
+        for (Map.Entry<String, Vector> entry : other.vectors.entrySet()) {
+            if (!vectors.containsKey(entry.getKey())) {
+                vectors.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the stored eigenvector, or null if none was stored
+     */
+    public synchronized double[] get(String chrName, HiCZoom zoom, int number, String type) {
+        Vector vector = vectors.get(getKey(chrName, zoom, number, type));
+        if (vector == null) return null;
+        double[] eigenvector = new double[vector.values.length];
+        for (int i = 0; i < eigenvector.length; i++) {
+            eigenvector[i] = vector.values[i];
+        }
+        return eigenvector;
+    }
+
+    public synchronized boolean isEmpty() {
+        return vectors.isEmpty();
+    }
+
+    public synchronized byte[] getBytes() {
+        BufferedByteWriter buffer = new BufferedByteWriter();
+        buffer.putInt(vectors.size());
+        for (Vector vector : vectors.values()) {
+            buffer.putNullTerminatedString(vector.chrName);
+            buffer.putNullTerminatedString(vector.unit);
+            buffer.putInt(vector.binSize);
+            buffer.putInt(vector.number);
+            buffer.putNullTerminatedString(vector.type);
+            buffer.putInt(vector.values.length);
+            for (float value : vector.values) {
+                buffer.putFloat(value);
+            }
+        }
+        return buffer.getBytes();
+    }
+
+    private static class Vector {
+        private final String chrName;
+        private final String unit;
+        private final int binSize;
+        private final int number;
+        private final String type;
+        private final float[] values;
+
+        Vector(String chrName, String unit, int binSize, int number, String type, float[] values) {
+            this.chrName = chrName;
+            this.unit = unit;
+            this.binSize = binSize;
+            this.number = number;
+            this.type = type;
+            this.values = values;
+        }
+
+        String getKey() {
+            return chrName + "_" + unit + "_" + binSize + "_" + number + "_" + type;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2021 Broad Institute, Aiden Lab, Rice University, Baylor College of Medicine
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.data;
+
+import juicebox.HiCGlobals;
+import juicebox.data.basics.Chromosome;
+import juicebox.tools.dev.ParallelizedJuicerTools;
+import juicebox.windowui.MatrixType;
+import juicebox.windowui.NormalizationType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Sparse matrix dump that decodes blocks on a pool of worker threads but emits them in block order.
+ * Each worker filters its block and encodes it into a reusable byte buffer, so the writing thread
+ * only copies finished chunks to the output.
+ * <p>
+ * Output formats:
+ * <ul>
+ * <li>TEXT: "x\ty\tvalue" lines in genomic coordinates, identical to the PrintWriter output</li>
+ * <li>COO: raw little-endian records of (int binX, int binY, float value)</li>
+ * <li>COLUMNAR: a little-endian header (see {@link #COLUMNAR_MAGIC}) followed by one chunk per block of
+ * (int n, int[n] binX, int[n] binY, float[n] value) and a terminating chunk with n = 0</li>
+ * </ul>
+ */
+public class StreamingMatrixDump {
+
+    public static final byte[] COLUMNAR_MAGIC = "HICDCOL1".getBytes(StandardCharsets.US_ASCII);
+    private static final int BLOCKS_IN_FLIGHT_PER_THREAD = 4;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    public static int numThreads = HiCGlobals.getIdealThreadCount();
+    private final MatrixZoomData zd;
+    private final DatasetReader reader;
+    private final NormalizationType norm;
+    private final MatrixType matrixType;
+    private final boolean useRegionIndices;
+    private final long[] regionIndices;
+    private final ExpectedValueFunction df;
+    private final Format format;
+    private final ConcurrentLinkedQueue<ByteChunk> bufferPool = new ConcurrentLinkedQueue<>();
+
+    public StreamingMatrixDump(MatrixZoomData zd, DatasetReader reader, NormalizationType norm, MatrixType matrixType,
+                               boolean useRegionIndices, long[] regionIndices, ExpectedValueFunction df, Format format) {
+        this.zd = zd;
+        this.reader = reader;
+        this.norm = norm;
+        this.matrixType = matrixType;
+        this.useRegionIndices = useRegionIndices;
+        this.regionIndices = regionIndices;
+        this.df = df;
+        this.format = format;
+    }
+
+    public static Format formatForFile(String path) {
+        if (path != null) {
+            String lower = path.toLowerCase();
+            if (lower.endsWith(".bin") || lower.endsWith(".coo")) {
+                return Format.COO;
+            } else if (lower.endsWith(".col")) {
+                return Format.COLUMNAR;
+            }
+        }
+        return Format.TEXT;
+    }
+
+    /**
+     * Writes the given blocks to the stream; the stream is flushed but not closed.
+     */
+    public void write(List<Integer> blockNumbers, final OutputStream out) throws IOException {
+        if (format == Format.COLUMNAR) {
+            ByteChunk header = new ByteChunk(COLUMNAR_MAGIC.length + 12);
+            header.putBytes(COLUMNAR_MAGIC);
+            header.putIntLE(zd.getBinSize());
+            header.putIntLE(zd.getChr1Idx());
+            header.putIntLE(zd.getChr2Idx());
+            out.write(header.data, 0, header.size);
+        }
+        process(blockNumbers, new ChunkConsumer() {
+            @Override
+            public void accept(ByteChunk chunk) throws IOException {
+                out.write(chunk.data, 0, chunk.size);
+            }
+        });
+        if (format == Format.COLUMNAR) {
+            ByteChunk end = new ByteChunk(4);
+            end.putIntLE(0);
+            out.write(end.data, 0, end.size);
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the given blocks as text to a character stream; the writer is flushed but not closed.
+     */
+    public void write(List<Integer> blockNumbers, final Writer writer) throws IOException {
+        if (format != Format.TEXT) {
+            throw new IllegalArgumentException("Binary dump formats require an output stream");
+        }
+        process(blockNumbers, new ChunkConsumer() {
+            @Override
+            public void accept(ByteChunk chunk) throws IOException {
+                writer.write(new String(chunk.data, 0, chunk.size, StandardCharsets.US_ASCII));
+            }
+        });
+        writer.flush();
+    }
+
+    private void process(List<Integer> blockNumbers, ChunkConsumer consumer) throws IOException {
+        if (blockNumbers.isEmpty()) return;
+
+        int threads = Math.max(1, Math.min(numThreads, blockNumbers.size()));
+        int window = threads * BLOCKS_IN_FLIGHT_PER_THREAD;
+        Deque<Future<ByteChunk>> pending = new ArrayDeque<>();
+        Iterator<Integer> iterator = blockNumbers.iterator();
+
+        try {
+            while (iterator.hasNext() || !pending.isEmpty()) {
+                while (iterator.hasNext() && pending.size() < window) {
+                    final int blockNumber = iterator.next();
+                    pending.add(ParallelizedJuicerTools.submit(new Callable<ByteChunk>() {
+                        @Override
+                        public ByteChunk call() throws IOException {
+                            return encodeBlock(blockNumber);
+                        }
+                    }));
+                }
+                ByteChunk chunk = pending.poll().get();
+                if (chunk != null) {
+                    consumer.accept(chunk);
+                    chunk.size = 0;
+                    bufferPool.offer(chunk);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while dumping " + zd.getDescription(), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Unable to read block of " + zd.getDescription(), e.getCause());
+        } finally {
+            for (Future<?> future : pending) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private ByteChunk encodeBlock(int blockNumber) throws IOException {
+        Block b = reader.readNormalizedBlock(blockNumber, zd, norm);
+        if (b == null) return null;
+        List<ContactRecord> records = b.getContactRecords();
+        if (records == null || records.isEmpty()) return null;
+
+        final Chromosome chr1 = zd.getChr1();
+        final Chromosome chr2 = zd.getChr2();
+        final boolean isIntraChromosomal = chr1.getIndex() == chr2.getIndex();
+        final int binSize = zd.getBinSize();
+        double interExpected = zd.getAverageCount() > 0 ? zd.getAverageCount() : 1;
+
+        int n = 0;
+        int[] binXs = new int[records.size()];
+        int[] binYs = new int[records.size()];
+        float[] values = new float[records.size()];
+
+        for (ContactRecord rec : records) {
+            int x = rec.getBinX();
+            int y = rec.getBinY();
+            int xActual = x * binSize;
+            int yActual = y * binSize;
+            if (useRegionIndices &&
+                    // keep regions that overlap with upper left
+                    !(xActual >= regionIndices[0] && xActual <= regionIndices[1] &&
+                            yActual >= regionIndices[2] && yActual <= regionIndices[3]) &&
+                    // or regions that overlap with lower left
+                    !(isIntraChromosomal && yActual >= regionIndices[0] && yActual <= regionIndices[1] &&
+                            xActual >= regionIndices[2] && xActual <= regionIndices[3])) {
+                continue;
+            }
+
+            float value = rec.getCounts();
+            if (matrixType == MatrixType.OE) {
+                double expected = 0;
+                if (chr1 == chr2) {
+                    if (df != null) {
+                        expected = df.getExpectedValue(chr1.getIndex(), Math.abs(x - y));
+                    }
+                } else {
+                    expected = interExpected;
+                }
+                value = (float) (rec.getCounts() / expected); // Observed is already normalized
+            }
+            binXs[n] = x;
+            binYs[n] = y;
+            values[n] = value;
+            n++;
+        }
+        if (n == 0) return null;
+
+        ByteChunk chunk = bufferPool.poll();
+        if (chunk == null) {
+            chunk = new ByteChunk(n * 12 + 4);
+        }
+        switch (format) {
+            case COO:
+                chunk.ensureCapacity(n * 12);
+                for (int i = 0; i < n; i++) {
+                    chunk.putIntLE(binXs[i]);
+                    chunk.putIntLE(binYs[i]);
+                    chunk.putFloatLE(values[i]);
+                }
+                break;
+            case COLUMNAR:
+                chunk.ensureCapacity(n * 12 + 4);
+                chunk.putIntLE(n);
+                for (int i = 0; i < n; i++) chunk.putIntLE(binXs[i]);
+                for (int i = 0; i < n; i++) chunk.putIntLE(binYs[i]);
+                for (int i = 0; i < n; i++) chunk.putFloatLE(values[i]);
+                break;
+            case TEXT:
+            default:
+                for (int i = 0; i < n; i++) {
+                    chunk.putAsciiInt(binXs[i] * binSize);
+                    chunk.putByte((byte) '\t');
+                    chunk.putAsciiInt(binYs[i] * binSize);
+                    chunk.putByte((byte) '\t');
+                    chunk.putAscii(Float.toString(values[i]));
+                    chunk.putBytes(LINE_SEPARATOR);
+                }
+                break;
+        }
+        return chunk;
+    }
+
+    public enum Format {TEXT, COO, COLUMNAR}
+
+    private interface ChunkConsumer {
+        void accept(ByteChunk chunk) throws IOException;
+    }
+
+    /**
+     * Growable byte buffer; instances are recycled between blocks.
+     */
+    private static class ByteChunk {
+        private final byte[] digits = new byte[11];
+        private byte[] data;
+        private int size = 0;
+
+        ByteChunk(int capacity) {
+            data = new byte[Math.max(capacity, 64)];
+        }
+
+        void ensureCapacity(int extra) {
+            if (size + extra > data.length) {
+                int newLength = data.length;
+                while (size + extra > newLength) {
+                    newLength *= 2;
+                }
+                byte[] newData = new byte[newLength];
+                System.arraycopy(data, 0, newData, 0, size);
+                data = newData;
+            }
+        }
+
+        void putByte(byte b) {
+            ensureCapacity(1);
+            data[size++] = b;
+        }
+
+        void putBytes(byte[] bytes) {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, data, size, bytes.length);
+            size += bytes.length;
+        }
+
+        void putAscii(String s) {
+            int len = s.length();
+            ensureCapacity(len);
+            for (int i = 0; i < len; i++) {
+                data[size++] = (byte) s.charAt(i);
+            }
+        }
+
+        void putAsciiInt(int value) {
+            if (value == Integer.MIN_VALUE) {
+                putAscii(Integer.toString(value));
+                return;
+            }
+            ensureCapacity(11);
+            if (value < 0) {
+                data[size++] = '-';
+                value = -value;
+            }
+            int numDigits = 0;
+            do {
+                digits[numDigits++] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value > 0);
+            while (numDigits > 0) {
+                data[size++] = digits[--numDigits];
+            }
+        }
+
+        void putIntLE(int value) {
+            ensureCapacity(4);
+            data[size++] = (byte) value;
+            data[size++] = (byte) (value >>> 8);
+            data[size++] = (byte) (value >>> 16);
+            data[size++] = (byte) (value >>> 24);
+        }
+
+        void putFloatLE(float value) {
+            putIntLE(Float.floatToIntBits(value));
+        }
+    }
+}
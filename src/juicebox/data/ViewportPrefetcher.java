@@ -0,0 +1,317 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2021 Broad Institute, Aiden Lab, Rice University, Baylor College of Medicine
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.data;
+
+import juicebox.HiC;
+import juicebox.HiCGlobals;
+import juicebox.windowui.HiCZoom;
+import juicebox.windowui.NormalizationType;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Speculatively loads blocks the viewer is likely to paint next, so that panning and
+ * zooming do not always miss the block cache.
+ * <p>
+ * After every viewport change the ring of viewport-sized tiles around the current view
+ * (ordered so that tiles in the direction of recent motion come first) and the same
+ * region at the next finer and coarser resolution (ordered by the recent zoom history)
+ * are queued on a single low priority thread. A newer viewport change abandons any
+ * unfinished work, and each round stops once it has read its memory budget.
+ */
+public class ViewportPrefetcher {
+
+    // rough per-record footprint of a cached ContactRecord (object header, 2 ints, 1 float, list slot)
+    private static final int BYTES_PER_RECORD = 32;
+    private static final long MIN_FREE_MEMORY = 64L * 1024 * 1024;
+
+    private static final AtomicLong demandBlocks = new AtomicLong();
+    private static final AtomicLong demandMisses = new AtomicLong();
+    private static final AtomicLong prefetchHits = new AtomicLong();
+    private static final AtomicLong prefetchedBlocks = new AtomicLong();
+    private static final AtomicLong prefetchedBytes = new AtomicLong();
+
+    public static boolean enabled = true;
+    public static long memoryBudgetPerRound = 128L * 1024 * 1024;
+
+    private final ExecutorService service = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Juicebox-Prefetch");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private final AtomicInteger generation = new AtomicInteger();
+    private double lastDxBins = 0, lastDyBins = 0;
+
+    public static long estimateBlockSizeInBytes(Block b) {
+        List<ContactRecord> records = b.getContactRecords();
+        return records == null ? 0 : (long) records.size() * BYTES_PER_RECORD;
+    }
+
+    static void recordDemand(int numBlocks, int numPrefetchHits) {
+        demandBlocks.addAndGet(numBlocks);
+        prefetchHits.addAndGet(numPrefetchHits);
+    }
+
+    static void recordDemandMisses(int numBlocks) {
+        demandMisses.addAndGet(numBlocks);
+    }
+
+    /**
+     * @return fraction of blocks requested for painting that were served by an earlier prefetch
+     */
+    public static double getPrefetchHitRate() {
+        long total = demandBlocks.get();
+        return total > 0 ? (double) prefetchHits.get() / total : 0;
+    }
+
+    /**
+     * @return fraction of prefetched blocks that were subsequently painted
+     */
+    public static double getPrefetchUtilization() {
+        long total = prefetchedBlocks.get();
+        return total > 0 ? (double) prefetchHits.get() / total : 0;
+    }
+
+    public static String getStatistics() {
+        return String.format("Prefetch: %d blocks (%.1f MB) loaded; %d/%d painted blocks were prefetched " +
+                        "(hit rate %.1f%%, utilization %.1f%%); %d painted blocks read on demand",
+                prefetchedBlocks.get(), prefetchedBytes.get() / 1048576.0, prefetchHits.get(), demandBlocks.get(),
+                100 * getPrefetchHitRate(), 100 * getPrefetchUtilization(), demandMisses.get());
+    }
+
+    public static void resetStatistics() {
+        demandBlocks.set(0);
+        demandMisses.set(0);
+        prefetchHits.set(0);
+        prefetchedBlocks.set(0);
+        prefetchedBytes.set(0);
+    }
+
+    /**
+     * Record a pan so the next round favors tiles in the direction of motion.
+     *
+     * @param dxBins -- delta x in bins
+     * @param dyBins -- delta y in bins
+     */
+    public void recordMotion(double dxBins, double dyBins) {
+        lastDxBins = dxBins;
+        lastDyBins = dyBins;
+    }
+
+    /**
+     * Abandon any queued work, e.g. when a new dataset is loaded.
+     */
+    public void cancel() {
+        generation.incrementAndGet();
+        lastDxBins = 0;
+        lastDyBins = 0;
+    }
+
+    /**
+     * Snapshot the current view and queue the blocks around it.
+     * Must be called on the thread that modifies the view.
+     */
+    public void viewportChanged(HiC hic, double widthInBins, double heightInBins) {
+        final int currentGeneration = generation.incrementAndGet();
+        if (!enabled || !HiCGlobals.useCache || hic.getDataset() == null || hic.getXContext() == null
+                || hic.getZoom() == null || hic.isWholeGenome()) {
+            return;
+        }
+
+        final List<PrefetchRegion> regions = new ArrayList<>();
+        try {
+            addRegions(regions, hic.getMatrix(), hic.getDataset(), hic, hic.getObsNormalizationType(),
+                    widthInBins, heightInBins);
+            if (hic.isControlLoaded()) {
+                addRegions(regions, hic.getControlMatrix(), hic.getControlDataset(), hic,
+                        hic.getControlNormalizationType(), widthInBins, heightInBins);
+            }
+        } catch (Exception e) {
+            if (HiCGlobals.printVerboseComments) {
+                e.printStackTrace();
+            }
+            return;
+        }
+        if (regions.isEmpty()) return;
+
+        service.submit(() -> prefetch(regions, currentGeneration));
+    }
+
+    private void addRegions(List<PrefetchRegion> regions, Matrix matrix, Dataset dataset, HiC hic,
+                            NormalizationType norm, double widthInBins, double heightInBins) {
+        if (matrix == null) return;
+        HiCZoom zoom = hic.getZoom();
+        MatrixZoomData zd = matrix.getZoomData(zoom);
+        if (!isPrefetchable(zd)) return;
+
+        double originX = hic.getXContext().getBinOrigin();
+        double originY = hic.getYContext().getBinOrigin();
+
+        // neighbouring tiles, those along the direction of motion first
+        List<PrefetchRegion> ring = new ArrayList<>();
+        for (int i = -1; i <= 1; i++) {
+            for (int j = -1; j <= 1; j++) {
+                if (i == 0 && j == 0) continue;
+                double x1 = originX + i * widthInBins;
+                double y1 = originY + j * heightInBins;
+                PrefetchRegion region = PrefetchRegion.create(zd, norm, x1, y1, x1 + widthInBins, y1 + heightInBins,
+                        -(i * lastDxBins + j * lastDyBins));
+                if (region != null) ring.add(region);
+            }
+        }
+        Collections.sort(ring);
+
+        // same view at the neighbouring resolutions, in the direction the user has been zooming first
+        List<PrefetchRegion> zooms = new ArrayList<>();
+        if (zoom.getUnit() == HiC.Unit.BP) {
+            HiCZoom finer = null, coarser = null;
+            for (HiCZoom candidate : dataset.getBpZooms()) {
+                int binSize = candidate.getBinSize();
+                if (binSize < zoom.getBinSize() && (finer == null || binSize > finer.getBinSize())) {
+                    finer = candidate;
+                } else if (binSize > zoom.getBinSize() && (coarser == null || binSize < coarser.getBinSize())) {
+                    coarser = candidate;
+                }
+            }
+            boolean zoomingIn = isZoomingIn(hic.getZoomActionTracker());
+            double centerX = (originX + widthInBins / 2) * zoom.getBinSize();
+            double centerY = (originY + heightInBins / 2) * zoom.getBinSize();
+            addZoomRegion(zooms, matrix, finer, norm, centerX, centerY, widthInBins, heightInBins, zoomingIn ? 0 : 1);
+            addZoomRegion(zooms, matrix, coarser, norm, centerX, centerY, widthInBins, heightInBins, zoomingIn ? 1 : 0);
+            Collections.sort(zooms);
+        }
+
+        // the first neighbouring tile and the likely next zoom are the most valuable, then the rest of the ring
+        if (!ring.isEmpty()) regions.add(ring.remove(0));
+        if (!zooms.isEmpty()) regions.add(zooms.remove(0));
+        regions.addAll(ring);
+        regions.addAll(zooms);
+    }
+
+    private void addZoomRegion(List<PrefetchRegion> zooms, Matrix matrix, HiCZoom zoom, NormalizationType norm,
+                               double centerX, double centerY, double widthInBins, double heightInBins, int priority) {
+        if (zoom == null) return;
+        MatrixZoomData zd = matrix.getZoomData(zoom);
+        if (!isPrefetchable(zd)) return;
+        double binX = centerX / zoom.getBinSize();
+        double binY = centerY / zoom.getBinSize();
+        PrefetchRegion region = PrefetchRegion.create(zd, norm, binX - widthInBins / 2, binY - heightInBins / 2,
+                binX + widthInBins / 2, binY + heightInBins / 2, priority);
+        if (region != null) zooms.add(region);
+    }
+
+    private boolean isPrefetchable(MatrixZoomData zd) {
+        return zd != null && !(zd instanceof DynamicMatrixZoomData) && !(zd instanceof CustomMatrixZoomData);
+    }
+
+    private boolean isZoomingIn(ZoomActionTracker tracker) {
+        ZoomAction current = tracker.getCurrentZoomAction();
+        ZoomAction previous = tracker.getPreviousZoomAction();
+        if (current == null || previous == null) return true;
+        return current.getHiCZoom().getBinSize() <= previous.getHiCZoom().getBinSize();
+    }
+
+    private void prefetch(List<PrefetchRegion> regions, int currentGeneration) {
+        long bytesRead = 0;
+        for (PrefetchRegion region : regions) {
+            List<Integer> blockNumbers = region.zd.getUncachedBlockNumbersOverlapping(region.binX1, region.binY1,
+                    region.binX2, region.binY2, region.norm);
+            for (int blockNumber : blockNumbers) {
+                if (generation.get() != currentGeneration || bytesRead > memoryBudgetPerRound
+                        || Runtime.getRuntime().freeMemory() + Runtime.getRuntime().maxMemory()
+                        - Runtime.getRuntime().totalMemory() < MIN_FREE_MEMORY) {
+                    return;
+                }
+                try {
+                    long numBytes = region.zd.prefetchBlock(blockNumber, region.norm);
+                    if (numBytes > 0) {
+                        bytesRead += numBytes;
+                        prefetchedBlocks.incrementAndGet();
+                        prefetchedBytes.addAndGet(numBytes);
+                    }
+                } catch (IOException e) {
+                    if (HiCGlobals.printVerboseComments) {
+                        System.err.println("Unable to prefetch block " + blockNumber + " " + e.getLocalizedMessage());
+                    }
+                }
+            }
+        }
+        if (HiCGlobals.printVerboseComments) {
+            System.out.println(getStatistics());
+        }
+    }
+
+    private static class PrefetchRegion implements Comparable<PrefetchRegion> {
+        private final MatrixZoomData zd;
+        private final NormalizationType norm;
+        private final long binX1, binY1, binX2, binY2;
+        private final double priority;
+
+        private PrefetchRegion(MatrixZoomData zd, NormalizationType norm, long binX1, long binY1, long binX2,
+                               long binY2, double priority) {
+            this.zd = zd;
+            this.norm = norm;
+            this.binX1 = binX1;
+            this.binY1 = binY1;
+            this.binX2 = binX2;
+            this.binY2 = binY2;
+            this.priority = priority;
+        }
+
+        /**
+         * Clip the region to the matrix; intra-chromosomal regions are transposed above the diagonal,
+         * matching the convention used when painting.
+         *
+         * @return the region, or null if it lies entirely outside the matrix
+         */
+        static PrefetchRegion create(MatrixZoomData zd, NormalizationType norm, double x1, double y1,
+                                     double x2, double y2, double priority) {
+            long maxX = zd.getXGridAxis().getBinCount() - 1;
+            long maxY = zd.getYGridAxis().getBinCount() - 1;
+            long binX1 = Math.max(0, (long) x1);
+            long binY1 = Math.max(0, (long) y1);
+            long binX2 = Math.min(maxX, (long) Math.ceil(x2));
+            long binY2 = Math.min(maxY, (long) Math.ceil(y2));
+            if (binX1 > binX2 || binY1 > binY2) return null;
+            if (zd.getChr1Idx() == zd.getChr2Idx() && binX1 > binY1) {
+                return new PrefetchRegion(zd, norm, binY1, binX1, binY2, binX2, priority);
+            }
+            return new PrefetchRegion(zd, norm, binX1, binY1, binX2, binY2, priority);
+        }
+
+        @Override
+        public int compareTo(PrefetchRegion o) {
+            return Double.compare(priority, o.priority);
+        }
+    }
+}
@@ -32,6 +32,7 @@ import java.util.Stack;
 public class ZoomActionTracker {
     private final int stackSizeLimit = 100;
     private ZoomAction currentZoomAction;
+    private ZoomAction previousZoomAction;
     private final Stack<ZoomAction> undoZoomActions = new Stack<>();
     private final Stack<ZoomAction> redoZoomActions = new Stack<>();
 
@@ -68,6 +69,7 @@ public class ZoomActionTracker {
 
     public void clear() {
         this.currentZoomAction = null;
+        this.previousZoomAction = null;
         this.undoZoomActions.clear();
         this.redoZoomActions.clear();
     }
@@ -88,7 +90,15 @@ public class ZoomActionTracker {
         return this.currentZoomAction;
     }
 
+    /**
+     * @return the zoom action shown before the current one (including after an undo or redo), or null if there is none
+     */
+    public ZoomAction getPreviousZoomAction() {
+        return this.previousZoomAction;
+    }
+
     private void setCurrentZoomAction(ZoomAction zoomAction) {
+        this.previousZoomAction = this.currentZoomAction;
         this.currentZoomAction = zoomAction;
     }
 
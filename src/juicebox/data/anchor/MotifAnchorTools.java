@@ -29,6 +29,7 @@ import juicebox.data.ChromosomeHandler;
 import juicebox.data.basics.Chromosome;
 import juicebox.data.feature.FeatureFilter;
 import juicebox.data.feature.GenomeWideList;
+import juicebox.data.feature.IntervalIndex;
 import juicebox.gui.SuperAdapter;
 import juicebox.track.feature.Feature2D;
 import juicebox.track.feature.Feature2DList;
@@ -42,6 +43,28 @@ import java.util.*;
  */
 public class MotifAnchorTools {
 
+    private static final IntervalIndex.Bounds<MotifAnchor> ANCHOR_BOUNDS = new IntervalIndex.Bounds<MotifAnchor>() {
+        @Override
+        public String getChr(MotifAnchor anchor) {
+            return anchor.getChr();
+        }
+
+        @Override
+        public long getStart(MotifAnchor anchor) {
+            return anchor.getX1();
+        }
+
+        @Override
+        public long getEnd(MotifAnchor anchor) {
+            return anchor.getX2();
+        }
+
+        @Override
+        public String getLabel(MotifAnchor anchor) {
+            return anchor.getSequence();
+        }
+    };
+
     /**
      * @param features
      * @return anchor list from features (i.e. split anchor1 and anchor2)
@@ -264,65 +287,69 @@ public class MotifAnchorTools {
     }
 
     public static MotifAnchor searchForFeature(final String chrID, final String sequence, GenomeWideList<MotifAnchor> anchorList) {
-        final MotifAnchor[] anchor = new MotifAnchor[1];
-        anchorList.processLists(new juicebox.data.feature.FeatureFunction<MotifAnchor>() {
-            @Override
-            public void process(String chr, List<MotifAnchor> featureList) {
-                for (MotifAnchor motif : featureList) {
-                    if (motif.getChr().equalsIgnoreCase(chrID) && motif.getSequence().equals(sequence)) {
-                        anchor[0] = (MotifAnchor) motif.deepClone();
-                    }
-                }
-            }
-        });
-        return anchor[0];
+        IntervalIndex<MotifAnchor> index = anchorList.getChromosomeIndex(chrID, ANCHOR_BOUNDS);
+        return index == null ? null : deepCloneOrNull(index.getLastFeatureWithLabel(sequence));
     }
 
     public static MotifAnchor searchForFeature(final String chrID, final int start, final int end, GenomeWideList<MotifAnchor> anchorList) {
-        final MotifAnchor[] anchor = new MotifAnchor[1];
-        anchorList.processLists(new juicebox.data.feature.FeatureFunction<MotifAnchor>() {
-            @Override
-            public void process(String chr, List<MotifAnchor> featureList) {
-                for (MotifAnchor motif : featureList) {
-                    if (motif.getChr().equalsIgnoreCase(chrID) && motif.getX1() == start && motif.getX2() == end) {
-                        anchor[0] = (MotifAnchor) motif.deepClone();
-                    }
-                }
-            }
-        });
-        return anchor[0];
+        IntervalIndex<MotifAnchor> index = anchorList.getChromosomeIndex(chrID, ANCHOR_BOUNDS);
+        return index == null ? null : deepCloneOrNull(index.getLastExactMatch(start, end));
     }
 
     public static MotifAnchor searchForFeatureWithin(final String chrID, final int start, final int end, GenomeWideList<MotifAnchor> anchorList) {
-        final MotifAnchor[] anchor = new MotifAnchor[1];
-        anchorList.processLists(new juicebox.data.feature.FeatureFunction<MotifAnchor>() {
-            @Override
-            public void process(String chr, List<MotifAnchor> featureList) {
-                for (MotifAnchor motif : featureList) {
-                    if (motif.getChr().equalsIgnoreCase(chrID) && motif.getX1() >= start && motif.getX2() <= end) {
-                        anchor[0] = (MotifAnchor) motif.deepClone();
-                    }
-                }
-            }
-        });
-        return anchor[0];
+        IntervalIndex<MotifAnchor> index = anchorList.getChromosomeIndex(chrID, ANCHOR_BOUNDS);
+        return index == null ? null : deepCloneOrNull(index.getLastContainedFeature(start, end));
     }
 
     public static List<MotifAnchor> searchForFeaturesWithin(final String chrID, final int start, final int end, GenomeWideList<MotifAnchor> anchorList) {
         final List<MotifAnchor> anchors = new ArrayList<>();
-        anchorList.processLists(new juicebox.data.feature.FeatureFunction<MotifAnchor>() {
-            @Override
-            public void process(String chr, List<MotifAnchor> featureList) {
-                for (MotifAnchor motif : featureList) {
-                    if (motif.getChr().equalsIgnoreCase(chrID) && motif.getX1() >= start && motif.getX2() <= end) {
-                        anchors.add((MotifAnchor) motif.deepClone());
-                    }
-                }
+        IntervalIndex<MotifAnchor> index = anchorList.getChromosomeIndex(chrID, ANCHOR_BOUNDS);
+        if (index != null) {
+            for (MotifAnchor motif : index.getContainedFeatures(start, end)) {
+                anchors.add((MotifAnchor) motif.deepClone());
             }
-        });
+        }
         return anchors;
     }
 
+    private static MotifAnchor deepCloneOrNull(MotifAnchor anchor) {
+        return anchor == null ? null : (MotifAnchor) anchor.deepClone();
+    }
+
+    /**
+     * @return for each anchor in the base list, the top anchors overlapping it
+     */
+    private static Map<MotifAnchor, Set<MotifAnchor>> mapOverlappingAnchors(List<MotifAnchor> topAnchors, List<MotifAnchor> baseList) {
+        Map<MotifAnchor, Set<MotifAnchor>> bottomListToTopList = new HashMap<>();
+
+        for (MotifAnchor anchor : baseList) {
+            bottomListToTopList.put(anchor, new HashSet<>());
+        }
+
+        Map<String, List<MotifAnchor>> baseByChromosome = new HashMap<>();
+        for (MotifAnchor anchor : baseList) {
+            String chr = IntervalIndex.normalizeChromosome(anchor.getChr());
+            List<MotifAnchor> anchors = baseByChromosome.get(chr);
+            if (anchors == null) {
+                anchors = new ArrayList<>();
+                baseByChromosome.put(chr, anchors);
+            }
+            anchors.add(anchor);
+        }
+        Map<String, IntervalIndex<MotifAnchor>> baseIndex = new HashMap<>();
+        for (Map.Entry<String, List<MotifAnchor>> entry : baseByChromosome.entrySet()) {
+            baseIndex.put(entry.getKey(), new IntervalIndex<>(entry.getValue(), ANCHOR_BOUNDS));
+        }
+
+        for (MotifAnchor topAnchor : topAnchors) {
+            IntervalIndex<MotifAnchor> index = baseIndex.get(IntervalIndex.normalizeChromosome(topAnchor.getChr()));
+            if (index == null) continue;
+            for (MotifAnchor bottomAnchor : index.getOverlappingFeatures(topAnchor.getX1(), topAnchor.getX2())) {
+                bottomListToTopList.get(bottomAnchor).add(topAnchor);
+            }
+        }
+        return bottomListToTopList;
+    }
 
     public static void retainProteinsInLocus(final GenomeWideList<MotifAnchor> firstList, final GenomeWideList<MotifAnchor> secondList,
                                              final boolean retainUniqueSites, final boolean copyFeatureReferences) {
@@ -340,60 +367,7 @@ public class MotifAnchorTools {
 
     private static List<MotifAnchor> retainProteinsInLocus(List<MotifAnchor> topAnchors, List<MotifAnchor> baseList,
                                                            boolean retainUniqueSites, boolean copyFeatureReferences) {
-        Map<MotifAnchor, Set<MotifAnchor>> bottomListToTopList = new HashMap<>();
-
-        for (MotifAnchor anchor : baseList) {
-            bottomListToTopList.put(anchor, new HashSet<>());
-        }
-
-        int topIndex = 0;
-        int bottomIndex = 0;
-        int maxTopIndex = topAnchors.size();
-        int maxBottomIndex = baseList.size();
-        Collections.sort(topAnchors);
-        Collections.sort(baseList);
-
-
-        while (topIndex < maxTopIndex && bottomIndex < maxBottomIndex) {
-            MotifAnchor topAnchor = topAnchors.get(topIndex);
-            MotifAnchor bottomAnchor = baseList.get(bottomIndex);
-            if (topAnchor.hasOverlapWith(bottomAnchor) || bottomAnchor.hasOverlapWith(topAnchor)) {
-
-                bottomListToTopList.get(bottomAnchor).add(topAnchor);
-
-                // iterate over all possible intersections with top element
-                for (int i = bottomIndex; i < maxBottomIndex; i++) {
-                    MotifAnchor newAnchor = baseList.get(i);
-                    if (topAnchor.hasOverlapWith(newAnchor) || newAnchor.hasOverlapWith(topAnchor)) {
-                        bottomListToTopList.get(newAnchor).add(topAnchor);
-                    } else {
-                        break;
-                    }
-                }
-
-                // iterate over all possible intersections with bottom element
-                // start from +1 because +0 checked in the for loop above
-                for (int i = topIndex + 1; i < maxTopIndex; i++) {
-                    MotifAnchor newAnchor = topAnchors.get(i);
-                    if (bottomAnchor.hasOverlapWith(newAnchor) || newAnchor.hasOverlapWith(bottomAnchor)) {
-                        bottomListToTopList.get(bottomAnchor).add(newAnchor);
-                    } else {
-                        break;
-                    }
-                }
-
-                // increment both
-                topIndex++;
-                bottomIndex++;
-            } else if (topAnchor.isStrictlyToTheLeftOf(bottomAnchor)) {
-                topIndex++;
-            } else if (topAnchor.isStrictlyToTheRightOf(bottomAnchor)) {
-                bottomIndex++;
-            } else {
-                System.err.println("Error while intersecting anchors.");
-                System.err.println(topAnchor + " & " + bottomAnchor);
-            }
-        }
+        Map<MotifAnchor, Set<MotifAnchor>> bottomListToTopList = mapOverlappingAnchors(topAnchors, baseList);
 
         List<MotifAnchor> uniqueAnchors = new ArrayList<>();
 
@@ -453,60 +427,7 @@ public class MotifAnchorTools {
     }
 
     private static List<MotifAnchor> retainBestMotifsInLocus(List<MotifAnchor> topAnchors, List<MotifAnchor> baseList) {
-        Map<MotifAnchor, Set<MotifAnchor>> bottomListToTopList = new HashMap<>();
-
-        for (MotifAnchor anchor : baseList) {
-            bottomListToTopList.put(anchor, new HashSet<>());
-        }
-
-        int topIndex = 0;
-        int bottomIndex = 0;
-        int maxTopIndex = topAnchors.size();
-        int maxBottomIndex = baseList.size();
-        Collections.sort(topAnchors);
-        Collections.sort(baseList);
-
-
-        while (topIndex < maxTopIndex && bottomIndex < maxBottomIndex) {
-            MotifAnchor topAnchor = topAnchors.get(topIndex);
-            MotifAnchor bottomAnchor = baseList.get(bottomIndex);
-            if (topAnchor.hasOverlapWith(bottomAnchor) || bottomAnchor.hasOverlapWith(topAnchor)) {
-
-                bottomListToTopList.get(bottomAnchor).add(topAnchor);
-
-                // iterate over all possible intersections with top element
-                for (int i = bottomIndex; i < maxBottomIndex; i++) {
-                    MotifAnchor newAnchor = baseList.get(i);
-                    if (topAnchor.hasOverlapWith(newAnchor) || newAnchor.hasOverlapWith(topAnchor)) {
-                        bottomListToTopList.get(newAnchor).add(topAnchor);
-                    } else {
-                        break;
-                    }
-                }
-
-                // iterate over all possible intersections with bottom element
-                // start from +1 because +0 checked in the for loop above
-                for (int i = topIndex + 1; i < maxTopIndex; i++) {
-                    MotifAnchor newAnchor = topAnchors.get(i);
-                    if (bottomAnchor.hasOverlapWith(newAnchor) || newAnchor.hasOverlapWith(bottomAnchor)) {
-                        bottomListToTopList.get(bottomAnchor).add(newAnchor);
-                    } else {
-                        break;
-                    }
-                }
-
-                // increment both
-                topIndex++;
-                bottomIndex++;
-            } else if (topAnchor.isStrictlyToTheLeftOf(bottomAnchor)) {
-                topIndex++;
-            } else if (topAnchor.isStrictlyToTheRightOf(bottomAnchor)) {
-                bottomIndex++;
-            } else {
-                System.err.println("Error while intersecting anchors.");
-                System.err.println(topAnchor + " & " + bottomAnchor);
-            }
-        }
+        Map<MotifAnchor, Set<MotifAnchor>> bottomListToTopList = mapOverlappingAnchors(topAnchors, baseList);
 
         for (MotifAnchor anchor : bottomListToTopList.keySet()) {
             for (MotifAnchor anchor2 : bottomListToTopList.get(anchor)) {
@@ -43,6 +43,13 @@ public class GenomeWideList<T extends Feature> {
      */
     private final Map<String, List<T>> featureLists = new HashMap<>();
 
+    /**
+     * Per-chromosome interval index, built on demand and dropped whenever the list is modified
+     * through this class
+     */
+    private Map<String, IntervalIndex<T>> chromosomeIndex = null;
+    private IntervalIndex.Bounds<T> chromosomeIndexBounds = null;
+
     /** Constructors**/
 
     /**
@@ -103,6 +110,7 @@ public class GenomeWideList<T extends Feature> {
      * @param features
      */
     public synchronized void setFeatures(String key, List<T> features) {
+        chromosomeIndex = null;
         featureLists.put(key, features);
     }
 
@@ -130,6 +138,7 @@ public class GenomeWideList<T extends Feature> {
      */
     @SuppressWarnings("unchecked")
     public synchronized void addAll(List<T> features) {
+        chromosomeIndex = null;
         for (T feature : features) {
             featureLists.get(feature.getKey()).add((T) feature.deepClone());
         }
@@ -141,6 +150,7 @@ public class GenomeWideList<T extends Feature> {
      * @param filter
      */
     public synchronized void filterLists(FeatureFilter<T> filter) {
+        chromosomeIndex = null;
         for (String chr : featureLists.keySet()) {
             featureLists.put(chr, filter.filter(chr, featureLists.get(chr)));
         }
@@ -154,11 +164,34 @@ public class GenomeWideList<T extends Feature> {
      * @param function
      */
     public synchronized void processLists(FeatureFunction<T> function) {
+        chromosomeIndex = null;
         for (String key : featureLists.keySet()) {
             function.process(key, featureLists.get(key));
         }
     }
 
+    /**
+     * Features handed to processLists may be modified, so processing also drops the index.
+     * Callers that modify lists obtained from getFeatures must go through setFeatures afterwards.
+     *
+     * @param bounds coordinates of the features
+     * @return interval index for each chromosome (see IntervalIndex.normalizeChromosome)
+     */
+    public synchronized Map<String, IntervalIndex<T>> getChromosomeIndex(IntervalIndex.Bounds<T> bounds) {
+        if (chromosomeIndex == null || chromosomeIndexBounds != bounds) {
+            chromosomeIndex = IntervalIndex.indexByChromosome(this, bounds);
+            chromosomeIndexBounds = bounds;
+        }
+        return chromosomeIndex;
+    }
+
+    /**
+     * @return interval index of the features on the given chromosome, or null if there are none
+     */
+    public IntervalIndex<T> getChromosomeIndex(String chr, IntervalIndex.Bounds<T> bounds) {
+        return getChromosomeIndex(bounds).get(IntervalIndex.normalizeChromosome(chr));
+    }
+
     /**
      * @return deep copy of the anchor list
      */
@@ -197,6 +230,7 @@ public class GenomeWideList<T extends Feature> {
      * @param feature
      */
     public synchronized void addFeature(String key, T feature) {
+        chromosomeIndex = null;
         if (featureLists.containsKey(key)) {
             featureLists.get(key).add(feature);
         } else {
@@ -0,0 +1,215 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2021 Broad Institute, Aiden Lab, Rice University, Baylor College of Medicine
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.data.feature;
+
+import java.util.*;
+
+/**
+ * Immutable interval index over the features of one chromosome: starts are sorted, and a prefix
+ * array of the maximum end seen so far bounds overlap searches. Every feature also keeps its ordinal,
+ * i.e. its position in the order the features were supplied, so lookups can reproduce the results of
+ * a linear scan (e.g. "last match wins"). Features are expected to have start <= end.
+ * Safe to query from multiple threads.
+ */
+public class IntervalIndex<T> {
+
+    private final long[] starts;
+    private final long[] ends;
+    private final long[] maxEnds;
+    private final int[] ordinals;
+    private final List<T> features;
+    private final Map<String, T> lastFeatureByLabel;
+
+    /**
+     * @param features in scan order
+     */
+    public IntervalIndex(List<T> features, Bounds<T> bounds) {
+        int n = features.size();
+        Integer[] order = new Integer[n];
+        final long[] unsortedStarts = new long[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+            unsortedStarts[i] = bounds.getStart(features.get(i));
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                int c = Long.compare(unsortedStarts[o1], unsortedStarts[o2]);
+                return c != 0 ? c : Integer.compare(o1, o2);
+            }
+        });
+
+        starts = new long[n];
+        ends = new long[n];
+        maxEnds = new long[n];
+        ordinals = new int[n];
+        this.features = new ArrayList<>(n);
+        Map<String, T> labels = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            T feature = features.get(order[i]);
+            starts[i] = unsortedStarts[order[i]];
+            ends[i] = bounds.getEnd(feature);
+            maxEnds[i] = i > 0 ? Math.max(maxEnds[i - 1], ends[i]) : ends[i];
+            ordinals[i] = order[i];
+            this.features.add(feature);
+        }
+        for (T feature : features) {
+            String label = bounds.getLabel(feature);
+            if (label != null) {
+                labels.put(label, feature);
+            }
+        }
+        lastFeatureByLabel = labels;
+    }
+
+    /**
+     * Groups features by chromosome (case insensitive); ordinals follow the iteration order of the list
+     */
+    static <T extends Feature> Map<String, IntervalIndex<T>> indexByChromosome(GenomeWideList<T> list, Bounds<T> bounds) {
+        Map<String, List<T>> byChromosome = new HashMap<>();
+        for (String key : list.keySet()) {
+            for (T feature : list.getFeatures(key)) {
+                String chr = normalizeChromosome(bounds.getChr(feature));
+                List<T> features = byChromosome.get(chr);
+                if (features == null) {
+                    features = new ArrayList<>();
+                    byChromosome.put(chr, features);
+                }
+                features.add(feature);
+            }
+        }
+        Map<String, IntervalIndex<T>> indices = new HashMap<>();
+        for (Map.Entry<String, List<T>> entry : byChromosome.entrySet()) {
+            indices.put(entry.getKey(), new IntervalIndex<>(entry.getValue(), bounds));
+        }
+        return indices;
+    }
+
+    public static String normalizeChromosome(String chr) {
+        return chr.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return first index whose start is >= value
+     */
+    private int lowerBound(long value) {
+        int lo = 0, hi = starts.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] < value) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * @return the last feature (in scan order) with exactly these bounds, or null
+     */
+    public T getLastExactMatch(long start, long end) {
+        int best = -1;
+        for (int i = lowerBound(start); i < starts.length && starts[i] == start; i++) {
+            if (ends[i] == end && (best < 0 || ordinals[i] > ordinals[best])) {
+                best = i;
+            }
+        }
+        return best < 0 ? null : features.get(best);
+    }
+
+    /**
+     * @return features lying within [start, end], in scan order
+     */
+    public List<T> getContainedFeatures(long start, long end) {
+        List<Integer> found = new ArrayList<>();
+        for (int i = lowerBound(start); i < starts.length && starts[i] <= end; i++) {
+            if (ends[i] <= end) {
+                found.add(i);
+            }
+        }
+        return inScanOrder(found);
+    }
+
+    /**
+     * @return the last feature (in scan order) lying within [start, end], or null
+     */
+    public T getLastContainedFeature(long start, long end) {
+        int best = -1;
+        for (int i = lowerBound(start); i < starts.length && starts[i] <= end; i++) {
+            if (ends[i] <= end && (best < 0 || ordinals[i] > ordinals[best])) {
+                best = i;
+            }
+        }
+        return best < 0 ? null : features.get(best);
+    }
+
+    /**
+     * @return features intersecting the closed interval [start, end], in scan order
+     */
+    public List<T> getOverlappingFeatures(long start, long end) {
+        List<Integer> found = new ArrayList<>();
+        for (int i = lowerBound(end + 1) - 1; i >= 0 && maxEnds[i] >= start; i--) {
+            if (ends[i] >= start) {
+                found.add(i);
+            }
+        }
+        return inScanOrder(found);
+    }
+
+    /**
+     * @return the last feature (in scan order) with this label, or null
+     */
+    public T getLastFeatureWithLabel(String label) {
+        return lastFeatureByLabel.get(label);
+    }
+
+    private List<T> inScanOrder(List<Integer> indices) {
+        Collections.sort(indices, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Integer.compare(ordinals[o1], ordinals[o2]);
+            }
+        });
+        List<T> result = new ArrayList<>(indices.size());
+        for (int i : indices) {
+            result.add(features.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Coordinates of an indexed feature
+     */
+    public interface Bounds<T> {
+        String getChr(T feature);
+
+        long getStart(T feature);
+
+        long getEnd(T feature);
+
+        /**
+         * @return optional secondary lookup key (e.g. motif sequence), or null
+         */
+        String getLabel(T feature);
+    }
+}
@@ -70,6 +70,15 @@ public abstract class IteratorContainer {
         return matrixSize * 4 < Runtime.getRuntime().maxMemory();
     }
 
+    /**
+     * Same accounting as the in-RAM containers: 4 bytes per row for the row sums and
+     * 12 bytes (2 ints, 1 float) per contact record, for several calculations running at once
+     */
+    public static boolean getIsThereEnoughMemoryForNormCalculation(long matrixSize, long numberOfContactRecords,
+                                                                   int numConcurrentCalculations) {
+        return numConcurrentCalculations * (4 * matrixSize + 12 * numberOfContactRecords) < Runtime.getRuntime().maxMemory();
+    }
+
     public abstract ListOfFloatArrays sparseMultiply(ListOfFloatArrays vector, long vectorLength);
 
     public abstract void clear();
@@ -51,9 +51,7 @@ public class ListOfListIteratorContainer extends IteratorContainer {
 
     @Override
     public boolean getIsThereEnoughMemoryForNormCalculation() {
-        // float is 4 bytes; one for each row (row sums)
-        // 12 bytes (2 ints, 1 float) for contact record
-        return 4 * getMatrixSize() + 12 * getNumberOfContactRecords() < Runtime.getRuntime().maxMemory();
+        return getIsThereEnoughMemoryForNormCalculation(getMatrixSize(), getNumberOfContactRecords(), 1);
     }
 
     @Override
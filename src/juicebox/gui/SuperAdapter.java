@@ -381,11 +381,6 @@ public class SuperAdapter {
         hic.clearAllMatrixZoomDataCache();
     }
 
-    private void refreshMainOnly() {
-        mainViewPanel.getHeatmapPanel().clearTileCache();
-        repaint();
-    }
-
     private static boolean genomesAreCompatible(Dataset dataset1, Dataset dataset2) {
         if (dataset1.getGenomeId().equalsIgnoreCase(dataset2.getGenomeId())) {
             return true;
@@ -625,7 +620,9 @@ public class SuperAdapter {
         }
 
         hic.setDisplayOption(option);
-        refresh(); // necessary to invalidate minimap when changing view
+        // tiles are cached per display option, so only the minimap needs to be invalidated
+        mainViewPanel.updateThumbnail(hic);
+        repaint();
         return true;
     }
 
@@ -752,7 +749,8 @@ public class SuperAdapter {
             String value = (String) mainViewPanel.getObservedNormalizationComboBox().getSelectedItem();
             hic.setObsNormalizationType(value);
         }
-        refreshMainOnly();
+        // tiles are cached per normalization, so there is nothing to clear
+        repaint();
     }
 
     public MainViewPanel getMainViewPanel() {
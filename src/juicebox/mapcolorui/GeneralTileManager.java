@@ -209,6 +209,10 @@ public class GeneralTileManager {
         mapTileManager.clearTileCache();
     }
 
+    public void recolorTiles() {
+        mapTileManager.recolorTiles();
+    }
+
     static class ImageTile {
         final int bLeft;
         final int bTop;
@@ -352,7 +352,7 @@ public class HeatmapPanel extends JComponent {
 
     public void setNewDisplayRange(MatrixType displayOption, double min, double max, String key) {
         colorScaleHandler.setNewDisplayRange(displayOption, min, max, key);
-        clearTileCache();
+        tileManager.recolorTiles();
         repaint();
     }
 
@@ -27,6 +27,7 @@ package juicebox.mapcolorui;
 import juicebox.HiCGlobals;
 import juicebox.data.Block;
 import juicebox.data.ContactRecord;
+import juicebox.data.ContactRecordIndex;
 import juicebox.data.ExpectedValueFunction;
 import juicebox.data.MatrixZoomData;
 import juicebox.gui.SuperAdapter;
@@ -375,10 +376,10 @@ public class HeatmapRenderer {
                 Collection<ContactRecord> recs = b.getContactRecords();
                 if (recs != null) {
 
-                    Map<String, ContactRecord> controlRecords = linkRecords(zd, controlNormalizationType, controlBlocks, b);
+                    ContactRecordIndex controlRecords = linkRecords(zd, controlBlocks, b);
 
                     for (ContactRecord rec : recs) {
-                        ContactRecord ctrlRecord = controlRecords.get(rec.getKey(controlNormalizationType));
+                        ContactRecord ctrlRecord = controlRecords.get(rec);
                         if (ctrlRecord != null) {
                             float num = rec.getCounts();
                             float den = ctrlRecord.getCounts();
@@ -398,13 +399,13 @@ public class HeatmapRenderer {
                 Collection<ContactRecord> recs = b.getContactRecords();
                 if (recs != null) {
 
-                    Map<String, ContactRecord> controlRecords = linkRecords(zd, controlNormalizationType, controlBlocks, b);
+                    ContactRecordIndex controlRecords = linkRecords(zd, controlBlocks, b);
 
                     float obsExpected = (averageCount > 0 ? averageCount : 1);
                     float ctrlExpected = (ctrlAverageCount > 0 ? ctrlAverageCount : 1);
 
                     for (ContactRecord rec : recs) {
-                        ContactRecord ctrlRecord = controlRecords.get(rec.getKey(controlNormalizationType));
+                        ContactRecord ctrlRecord = controlRecords.get(rec);
                         if (ctrlRecord != null) {
                             float num = rec.getCounts();
                             float den = ctrlRecord.getCounts();
@@ -439,11 +440,11 @@ public class HeatmapRenderer {
         for (Block b : blocks) {
             Collection<ContactRecord> recs = b.getContactRecords();
 
-            Map<String, ContactRecord> controlRecords = linkRecords(zd, controlNormalizationType, controlBlocks, b);
+            ContactRecordIndex controlRecords = linkRecords(zd, controlBlocks, b);
 
             if (recs != null) {
                 for (ContactRecord rec : recs) {
-                    ContactRecord ctrlRecord = controlRecords.get(rec.getKey(controlNormalizationType));
+                    ContactRecord ctrlRecord = controlRecords.get(rec);
                     if (ctrlRecord != null) {
                         float num = (float) Math.log(rec.getCounts() / averageCount + 1);
                         float den = (float) Math.log(ctrlRecord.getCounts() / ctrlAverageCount + 1);
@@ -467,17 +468,17 @@ public class HeatmapRenderer {
         for (Block b : blocks) {
             Collection<ContactRecord> recs = b.getContactRecords();
 
-            Map<String, ContactRecord> controlRecords = linkRecords(zd, controlNormalizationType, controlBlocks, b);
+            ContactRecordIndex controlRecords = linkRecords(zd, controlBlocks, b);
 
             if (recs != null) {
                 for (ContactRecord rec : recs) {
-                    ContactRecord ctrlRecord = controlRecords.get(rec.getKey(controlNormalizationType));
+                    ContactRecord ctrlRecord = controlRecords.get(rec);
                     if (ctrlRecord != null) {
                         float num = rec.getCounts() / averageCount;
                         float den = ctrlRecord.getCounts() / ctrlAverageCount;
                         float score = (num - den) * averageAcrossMapAndControl;
                         if (Float.isNaN(score) || Float.isInfinite(score)) continue;
-                        setColor(cs.getColor(score));
+                        setColorFromScore(cs, score);
                         intraPainting2(originX, originY, width, height, sameChr, rec);
                     }
                 }
@@ -497,11 +498,11 @@ public class HeatmapRenderer {
         for (Block b : blocks) {
             Collection<ContactRecord> recs = b.getContactRecords();
 
-            Map<String, ContactRecord> controlRecords = linkRecords(zd, controlNormalizationType, controlBlocks, b);
+            ContactRecordIndex controlRecords = linkRecords(zd, controlBlocks, b);
 
             if (recs != null) {
                 for (ContactRecord rec : recs) {
-                    ContactRecord ctrlRecord = controlRecords.get(rec.getKey(controlNormalizationType));
+                    ContactRecord ctrlRecord = controlRecords.get(rec);
                     if (ctrlRecord != null) {
                         float num = ((rec.getCounts() + pseudoCountObs) / (getExpectedValue(df, chr1, 0, 0) + pseudoCountObs));
                         float den = ((ctrlRecord.getCounts() + pseudoCountCtrl) / (getExpectedValue(controlDF, chr1, 0, 0) + pseudoCountCtrl));
@@ -525,11 +526,11 @@ public class HeatmapRenderer {
         for (Block b : blocks) {
             Collection<ContactRecord> recs = b.getContactRecords();
 
-            Map<String, ContactRecord> controlRecords = linkRecords(zd, controlNormalizationType, controlBlocks, b);
+            ContactRecordIndex controlRecords = linkRecords(zd, controlBlocks, b);
 
             if (recs != null) {
                 for (ContactRecord rec : recs) {
-                    ContactRecord ctrlRecord = controlRecords.get(rec.getKey(controlNormalizationType));
+                    ContactRecord ctrlRecord = controlRecords.get(rec);
                     if (ctrlRecord != null) {
                         float num = (rec.getCounts() + pseudoCountObs) / (averageCount + pseudoCountObs);
                         float den = (ctrlRecord.getCounts() + pseudoCountCtrl) / (ctrlAverageCount + pseudoCountCtrl);
@@ -556,10 +557,10 @@ public class HeatmapRenderer {
                 Collection<ContactRecord> recs = b.getContactRecords();
                 if (recs != null) {
 
-                    Map<String, ContactRecord> controlRecords = linkRecords(zd, controlNormalizationType, controlBlocks, b);
+                    ContactRecordIndex controlRecords = linkRecords(zd, controlBlocks, b);
 
                     for (ContactRecord rec : recs) {
-                        ContactRecord ctrlRecord = controlRecords.get(rec.getKey(controlNormalizationType));
+                        ContactRecord ctrlRecord = controlRecords.get(rec);
                         if (ctrlRecord != null) {
                             float num = rec.getCounts() + pseudoCountObs;
                             float den = ctrlRecord.getCounts() + pseudoCountCtrl;
@@ -570,7 +571,7 @@ public class HeatmapRenderer {
                             float score = (num / obsExpected) - (den / ctrlExpected);
                             if (Float.isNaN(score) || Float.isInfinite(score)) continue;
 
-                            setColor(cs.getColor(score));
+                            setColorFromScore(cs, score);
 
                             intraPainting(originX, originY, width, height, rec);
                         }
@@ -582,7 +583,7 @@ public class HeatmapRenderer {
                 Collection<ContactRecord> recs = b.getContactRecords();
                 if (recs != null) {
 
-                    Map<String, ContactRecord> controlRecords = linkRecords(zd, controlNormalizationType, controlBlocks, b);
+                    ContactRecordIndex controlRecords = linkRecords(zd, controlBlocks, b);
 
                     float obsExpected = (averageCount > 0 ? averageCount : 1);
                     float ctrlExpected = (ctrlAverageCount > 0 ? ctrlAverageCount : 1);
@@ -590,7 +591,7 @@ public class HeatmapRenderer {
                     ctrlExpected += pseudoCountCtrl;
 
                     for (ContactRecord rec : recs) {
-                        ContactRecord ctrlRecord = controlRecords.get(rec.getKey(controlNormalizationType));
+                        ContactRecord ctrlRecord = controlRecords.get(rec);
                         if (ctrlRecord != null) {
                             float num = rec.getCounts() + pseudoCountObs;
                             float den = ctrlRecord.getCounts() + pseudoCountCtrl;
@@ -598,7 +599,7 @@ public class HeatmapRenderer {
                             float score = (num / obsExpected) - (den / ctrlExpected);
                             if (Float.isNaN(score) || Float.isInfinite(score)) continue;
 
-                            setColor(cs.getColor(score));
+                            setColorFromScore(cs, score);
 
                             aboveDiagonalPainting(originX, originY, width, height, rec);
                         }
@@ -608,15 +609,8 @@ public class HeatmapRenderer {
         }
     }
 
-    private Map<String, ContactRecord> linkRecords(MatrixZoomData zd, NormalizationType controlNormalizationType, Map<String, Block> controlBlocks, Block b) {
-        Map<String, ContactRecord> controlRecords = new HashMap<>();
-        Block cb = controlBlocks.get(zd.getNormLessBlockKey(b));
-        if (cb != null) {
-            for (ContactRecord ctrlRec : cb.getContactRecords()) {
-                controlRecords.put(ctrlRec.getKey(controlNormalizationType), ctrlRec);
-            }
-        }
-        return controlRecords;
+    private ContactRecordIndex linkRecords(MatrixZoomData zd, Map<String, Block> controlBlocks, Block b) {
+        return ContactRecordIndex.create(controlBlocks.get(zd.getNormLessBlockKey(b)));
     }
 
     private void renderOERatioMap(List<Block> blocks, List<Block> ctrlBlocks,
@@ -632,10 +626,10 @@ public class HeatmapRenderer {
                 Collection<ContactRecord> recs = b.getContactRecords();
                 if (recs != null) {
 
-                    Map<String, ContactRecord> controlRecords = linkRecords(zd, controlNormalizationType, controlBlocks, b);
+                    ContactRecordIndex controlRecords = linkRecords(zd, controlBlocks, b);
 
                     for (ContactRecord rec : recs) {
-                        ContactRecord ctrlRecord = controlRecords.get(rec.getKey(controlNormalizationType));
+                        ContactRecord ctrlRecord = controlRecords.get(rec);
                         if (ctrlRecord != null) {
                             float num = rec.getCounts() + pseudoCountObs;
                             float den = ctrlRecord.getCounts() + pseudoCountCtrl;
@@ -646,7 +640,7 @@ public class HeatmapRenderer {
                             float score = (num / obsExpected) / (den / ctrlExpected);
                             if (Float.isNaN(score) || Float.isInfinite(score)) continue;
 
-                            setColor(cs.getColor(score));
+                            setColorFromScore(cs, score);
 
                             intraPainting(originX, originY, width, height, rec);
                         }
@@ -665,10 +659,10 @@ public class HeatmapRenderer {
                 Collection<ContactRecord> recs = b.getContactRecords();
                 if (recs != null) {
 
-                    Map<String, ContactRecord> controlRecords = linkRecords(zd, controlNormalizationType, controlBlocks, b);
+                    ContactRecordIndex controlRecords = linkRecords(zd, controlBlocks, b);
 
                     for (ContactRecord rec : recs) {
-                        ContactRecord ctrlRecord = controlRecords.get(rec.getKey(controlNormalizationType));
+                        ContactRecord ctrlRecord = controlRecords.get(rec);
                         if (ctrlRecord != null) {
                             float num = rec.getCounts() + pseudoCountObs;
                             float den = ctrlRecord.getCounts() + pseudoCountCtrl;
@@ -676,7 +670,7 @@ public class HeatmapRenderer {
                             float score = (num / obsExpected) / (den / ctrlExpected);
                             if (Float.isNaN(score) || Float.isInfinite(score)) continue;
 
-                            setColor(cs.getColor(score));
+                            setColorFromScore(cs, score);
 
                             aboveDiagonalPainting(originX, originY, width, height, rec);
                         }
@@ -699,7 +693,7 @@ public class HeatmapRenderer {
                             float score = (float) Math.exp((Math.log(rec.getCounts() + 1) / Math.log(expected + 1)));
                             if (Float.isNaN(score) || Float.isInfinite(score)) continue;
 
-                            setColor(cs.getColor(score));
+                            setColorFromScore(cs, score);
 
                             intraPainting(originX, originY, width, height, rec);
                         }
@@ -717,7 +711,7 @@ public class HeatmapRenderer {
                         float score = (float) Math.exp((Math.log(rec.getCounts() + 1) / Math.log(expected + 1)));
                         if (Float.isNaN(score) || Float.isInfinite(score)) continue;
 
-                        setColor(cs.getColor(score));
+                        setColorFromScore(cs, score);
 
                         interPainting(originX, originY, width, height, rec);
                     }
@@ -736,7 +730,7 @@ public class HeatmapRenderer {
                         int binX = px + originX;
                         int binY = py + originY;
                         float expected = getExpectedValue(df, chr1, binX, binY);
-                        setColor(cs.getColor(expected));
+                        setColorFromScore(cs, expected);
                         directPixelPainting(px, py);
                     }
                 }
@@ -744,7 +738,7 @@ public class HeatmapRenderer {
         } else {
             float averageCount = (float) zd.getAverageCount();
             float expected = (averageCount > 0 ? averageCount : 1);
-            setColor(cs.getColor(expected));
+            setColorFromScore(cs, expected);
             for (int px = 0; px <= width; px++) {
                 for (int py = 0; py <= height; py++) {
                     directPixelPainting(px, py);
@@ -768,7 +762,7 @@ public class HeatmapRenderer {
 
                         float expected = getExpectedValue(df, chr1, rec);
                         score = rec.getCounts() - expected;
-                        setColor(cs.getColor(score));
+                        setColorFromScore(cs, score);
 
                         aboveDiagonalPainting(originX, originY, width, height, rec);
                     }
@@ -791,7 +785,7 @@ public class HeatmapRenderer {
                             float expected = getExpectedValue(controlDF, chr1, rec);
                             score = rec.getCounts() - expected;
 
-                            setColor(cs.getColor(score));
+                            setColorFromScore(cs, score);
                             belowDiagonalPainting(originX, originY, width, height, rec);
                         }
                     }
@@ -812,7 +806,7 @@ public class HeatmapRenderer {
                         float expected = getExpectedValue(df, chr1, rec);
                         float score = (float) (Math.log(rec.getCounts() + 1) / Math.log(expected + 1));
                         if (Float.isNaN(score) || Float.isInfinite(score)) continue;
-                        setColor(cs.getColor(score));
+                        setColorFromScore(cs, score);
 
                         aboveDiagonalPainting(originX, originY, width, height, rec);
                     }
@@ -832,7 +826,7 @@ public class HeatmapRenderer {
                             float score = (float) (Math.log(rec.getCounts() + 1) / Math.log(expected + 1));
                             if (Float.isNaN(score) || Float.isInfinite(score)) continue;
 
-                            setColor(cs.getColor(score));
+                            setColorFromScore(cs, score);
                             belowDiagonalPainting(originX, originY, width, height, rec);
                         }
                     }
@@ -858,7 +852,7 @@ public class HeatmapRenderer {
                         float score = (float) Math.log(averageAcrossMapAndControl * (rec.getCounts() / averageCount) + 1);
                         if (Float.isNaN(score) || Float.isInfinite(score)) continue;
 
-                        setColor(cs.getColor(score));
+                        setColorFromScore(cs, score);
 
                         aboveDiagonalPainting(originX, originY, width, height, rec);
                     }
@@ -874,7 +868,7 @@ public class HeatmapRenderer {
                         float score = (float) Math.log(averageAcrossMapAndControl * (rec.getCounts() / ctrlAverageCount) + 1);
                         if (Float.isNaN(score) || Float.isInfinite(score)) continue;
 
-                        setColor(cs.getColor(score));
+                        setColorFromScore(cs, score);
 
                         belowDiagonalPainting(originX, originY, width, height, rec);
                     }
@@ -901,7 +895,7 @@ public class HeatmapRenderer {
                         if (Float.isNaN(score) || Float.isInfinite(score)) continue;
                         score = (score / averageCount) * averageAcrossMapAndControl;
 
-                        setColor(cs.getColor(score));
+                        setColorFromScore(cs, score);
 
                         aboveDiagonalPainting(originX, originY, width, height, rec);
                     }
@@ -918,7 +912,7 @@ public class HeatmapRenderer {
                         if (Float.isNaN(score) || Float.isInfinite(score)) continue;
                         score = (score / ctrlAverageCount) * averageAcrossMapAndControl;
 
-                        setColor(cs.getColor(score));
+                        setColorFromScore(cs, score);
                         belowDiagonalPainting(originX, originY, width, height, rec);
                     }
                 }
@@ -940,7 +934,7 @@ public class HeatmapRenderer {
                             float score = (float) (Math.log(rec.getCounts() + 1) / Math.log(expected + 1));
                             if (Float.isNaN(score) || Float.isInfinite(score)) continue;
 
-                            setColor(cs.getColor(score));
+                            setColorFromScore(cs, score);
 
                             intraPainting(originX, originY, width, height, rec);
                         }
@@ -958,7 +952,7 @@ public class HeatmapRenderer {
                         float score = (float) (Math.log(rec.getCounts() + 1) / Math.log(expected + 1));
                         if (Float.isNaN(score) || Float.isInfinite(score)) continue;
 
-                        setColor(cs.getColor(score));
+                        setColorFromScore(cs, score);
 
                         interPainting(originX, originY, width, height, rec);
                     }
@@ -984,7 +978,7 @@ public class HeatmapRenderer {
                         float expected = getExpectedValue(df, chromosome, rec);
                         score = (rec.getCounts() + pseudoCountObs) / (expected + pseudoCountObs);
 
-                        setColor(cs.getColor(score));
+                        setColorFromScore(cs, score);
                         aboveDiagonalPainting(originX, originY, width, height, rec);
                     }
                 }
@@ -1006,7 +1000,7 @@ public class HeatmapRenderer {
                             float expected = getExpectedValue(controlDF, chromosome, rec);
                             score = (rec.getCounts() + pseudoCountCtrl) / (expected + pseudoCountCtrl);
 
-                            setColor(cs.getColor(score));
+                            setColorFromScore(cs, score);
                             belowDiagonalPainting(originX, originY, width, height, rec);
                         }
                     }
@@ -1038,7 +1032,7 @@ public class HeatmapRenderer {
                             float score = (rec.getCounts() + pseudoCount) / (expected + pseudoCount);
                             if (Float.isNaN(score) || Float.isInfinite(score)) continue;
 
-                            setColor(cs.getColor(score));
+                            setColorFromScore(cs, score);
 
                             intraPainting(originX, originY, width, height, rec);
                         }
@@ -1056,7 +1050,7 @@ public class HeatmapRenderer {
                         float score = (rec.getCounts() + pseudoCount) / (expected + pseudoCount);
                         if (Float.isNaN(score) || Float.isInfinite(score)) continue;
 
-                        setColor(cs.getColor(score));
+                        setColorFromScore(cs, score);
 
                         interPainting(originX, originY, width, height, rec);
                     }
@@ -1175,16 +1169,14 @@ public class HeatmapRenderer {
             for (int col = originX; col < endX; col++) {
 
                 float score = bm1.getEntry(row, col);
-                Color color = colorScaleHandler.getDenseMatrixColor(key, score, colorScale, cs);
-                setColor(color);
+                setDenseColorFromScore(key, score, colorScale, cs);
 
                 directDensePainting(originX, originY, col, row);
                 // Assuming same chromosome
                 if (col != row) {
                     if (bm2 != null) {
                         float controlScore = bm2.getEntry(row, col);
-                        Color controlColor = colorScaleHandler.getDenseMatrixColor(key, controlScore, colorScale, cs);
-                        setColor(controlColor);
+                        setDenseColorFromScore(key, controlScore, colorScale, cs);
                     }
                     directDensePainting(originX, originY, row, col);
                 }
@@ -1202,7 +1194,7 @@ public class HeatmapRenderer {
 
     private void simplePainting(ColorScale cs, int width, int height, boolean sameChr, int originX, int originY, ContactRecord rec, float score) {
         if (Float.isNaN(score) || Float.isInfinite(score)) return;
-        setColor(cs.getColor(score));
+        setColorFromScore(cs, score);
 
         aboveDiagonalPainting(originX, originY, width, height, rec);
         if (sameChr) belowDiagonalPainting(originX, originY, width, height, rec);
@@ -1211,14 +1203,14 @@ public class HeatmapRenderer {
     private boolean logPainting(ColorScale cs, float num, float den, float obsExpected, float ctrlExpected) {
         float score = (float) ((Math.log(num + 1) / Math.log(obsExpected + 1)) / (Math.log(den + 1) / Math.log(ctrlExpected + 1)));
         if (Float.isNaN(score) || Float.isInfinite(score)) return true;
-        setColor(cs.getColor(score));
+        setColorFromScore(cs, score);
         return false;
     }
 
     private void ratioPainting(int originX, int originY, int width, int height, ColorScale cs, boolean sameChr, ContactRecord rec, float num, float den) {
         float score = num / den;
         if (Float.isNaN(score) || Float.isInfinite(score)) return;
-        setColor(cs.getColor(score));
+        setColorFromScore(cs, score);
         intraPainting2(originX, originY, width, height, sameChr, rec);
     }
 
@@ -1264,6 +1256,14 @@ public class HeatmapRenderer {
         g.setColor(color);
     }
 
+    protected void setColorFromScore(ColorScale cs, float score) {
+        setColor(cs.getColor(score));
+    }
+
+    protected void setDenseColorFromScore(String key, float score, PearsonColorScale pearsonColorScale, ColorScale cs) {
+        setColor(colorScaleHandler.getDenseMatrixColor(key, score, pearsonColorScale, cs));
+    }
+
     protected void directPixelPainting(int px, int py) {
         g.fillRect(px, py, PIXEL_WIDTH, PIXEL_HEIGHT);
     }
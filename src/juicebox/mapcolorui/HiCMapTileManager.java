@@ -25,37 +25,47 @@
 package juicebox.mapcolorui;
 
 import juicebox.HiC;
-import juicebox.HiCGlobals;
 import juicebox.data.ExpectedValueFunction;
 import juicebox.data.MatrixZoomData;
 import juicebox.gui.SuperAdapter;
 import juicebox.windowui.MatrixType;
 import juicebox.windowui.NormalizationType;
-import org.broad.igv.util.ObjectCache;
 
 import javax.swing.*;
-import java.awt.*;
-import java.awt.image.BufferedImage;
 
 public class HiCMapTileManager {
     private static final int imageTileWidth = 500;
-    private final ObjectCache<String, GeneralTileManager.ImageTile> tileCache = new ObjectCache<>(30);
+    private static final long DEFAULT_TILE_CACHE_BUDGET = 256L * 1024 * 1024;
+    // one budget across all maps (observed, control, and comparisons) being viewed
+    private static final TileRasterCache tileCache = new TileRasterCache(DEFAULT_TILE_CACHE_BUDGET);
     private final ColorScaleHandler colorScaleHandler;
 
     public HiCMapTileManager(ColorScaleHandler colorScaleHandler) {
         this.colorScaleHandler = colorScaleHandler;
     }
 
+    public static void setTileCacheBudgetInBytes(long budgetInBytes) {
+        tileCache.setBudgetInBytes(budgetInBytes);
+    }
+
     public void clearTileCache() {
         tileCache.clear();
     }
 
+    /**
+     * Recolor cached tiles on their next use, e.g. after the color range has changed.
+     * The underlying scores remain cached.
+     */
+    public void recolorTiles() {
+        tileCache.invalidateImages();
+    }
+
     public GeneralTileManager.ImageTile getImageTile(MatrixZoomData zd, MatrixZoomData controlZd, int tileRow, int tileColumn, MatrixType displayOption,
                                                      NormalizationType obsNormalizationType, NormalizationType ctrlNormalizationType,
                                                      HiC hic, JComponent parent) {
 
-        String key = zd.getTileKey(tileRow, tileColumn, displayOption);
-        GeneralTileManager.ImageTile tile = tileCache.get(key);
+        String key = zd.getTileKey(tileRow, tileColumn, displayOption) + "_" + obsNormalizationType + "_" + ctrlNormalizationType;
+        ScoreRasterTile tile = tileCache.get(key);
 
         if (tile == null) {
 
@@ -71,36 +81,30 @@ public class HiCMapTileManager {
             final int bx0 = tileColumn * imageTileWidth;
             final int by0 = tileRow * imageTileWidth;
 
-            Image image = renderDataWithCPU(parent, bx0, by0, imageWidth, imageHeight,
+            tile = renderScoresWithCPU(bx0, by0, imageWidth, imageHeight,
                     zd, controlZd, displayOption, obsNormalizationType, ctrlNormalizationType,
                     hic.getExpectedValues(), hic.getExpectedControlValues());
+            if (tile == null) return null;
 
-            // if (scaleFactor > 0.999 && scaleFactor < 1.001) {
-            tile = new GeneralTileManager.ImageTile(image, bx0, by0);
             tileCache.put(key, tile);
         }
-        return tile;
+        return tile.getImageTile(parent);
     }
 
-    private BufferedImage renderDataWithCPU(JComponent parent, int bx0, int by0, int imageWidth, int imageHeight,
-                                            MatrixZoomData zd, MatrixZoomData controlZd, MatrixType displayOption,
-                                            NormalizationType obsNormalizationType, NormalizationType ctrlNormalizationType,
-                                            ExpectedValueFunction expectedValues, ExpectedValueFunction expectedControlValues) {
-        BufferedImage image = (BufferedImage) parent.createImage(imageWidth, imageHeight);
-        Graphics2D g2D = (Graphics2D) image.getGraphics();
-        if (HiCGlobals.isDarkulaModeEnabled) {
-            g2D.setColor(Color.darkGray);
-            g2D.fillRect(0, 0, imageWidth, imageHeight);
-        }
+    private ScoreRasterTile renderScoresWithCPU(int bx0, int by0, int imageWidth, int imageHeight,
+                                                MatrixZoomData zd, MatrixZoomData controlZd, MatrixType displayOption,
+                                                NormalizationType obsNormalizationType, NormalizationType ctrlNormalizationType,
+                                                ExpectedValueFunction expectedValues, ExpectedValueFunction expectedControlValues) {
+        ScoreRasterTile tile = new ScoreRasterTile(colorScaleHandler, bx0, by0, imageWidth, imageHeight);
 
-        HeatmapRenderer renderer = new HeatmapRenderer(g2D, colorScaleHandler);
+        HeatmapRenderer renderer = new ScoreRasterRenderer(colorScaleHandler, tile);
         if (!renderer.render(bx0, by0, imageWidth, imageHeight,
                 zd, controlZd, displayOption,
                 obsNormalizationType, ctrlNormalizationType,
                 expectedValues, expectedControlValues, true)) {
             return null;
         }
-        return image;
+        return tile;
     }
 
     public void updateColorSliderFromColorScale(SuperAdapter superAdapter, MatrixType displayOption, String cacheKey) {
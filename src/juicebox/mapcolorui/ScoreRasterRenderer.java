@@ -0,0 +1,74 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2021 Broad Institute, Aiden Lab, Rice University, Baylor College of Medicine
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.mapcolorui;
+
+import org.broad.igv.renderer.ColorScale;
+
+import java.awt.*;
+
+/**
+ * Renders into a {@link ScoreRasterTile} instead of a graphics context; each painted pixel
+ * records the score and color scale rather than the resulting color. Pixels painted with a plain
+ * color keep that color, since there is no score to recolor.
+ */
+class ScoreRasterRenderer extends HeatmapRenderer {
+
+    private final ScoreRasterTile raster;
+    private float currentScore;
+    private Color currentColor = null;
+
+    ScoreRasterRenderer(ColorScaleHandler colorScaleHandler, ScoreRasterTile raster) {
+        super(null, colorScaleHandler);
+        this.raster = raster;
+    }
+
+    @Override
+    protected void setColor(Color color) {
+        currentColor = color;
+    }
+
+    @Override
+    protected void setColorFromScore(ColorScale cs, float score) {
+        raster.setColorScale(cs);
+        currentScore = score;
+        currentColor = null;
+    }
+
+    @Override
+    protected void setDenseColorFromScore(String key, float score, PearsonColorScale pearsonColorScale, ColorScale cs) {
+        raster.setDenseColorScale(key, pearsonColorScale, cs);
+        currentScore = score;
+        currentColor = null;
+    }
+
+    @Override
+    protected void directPixelPainting(int px, int py) {
+        if (currentColor != null) {
+            raster.setFixedColor(px, py, currentColor);
+        } else {
+            raster.setScore(px, py, currentScore);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2021 Broad Institute, Aiden Lab, Rice University, Baylor College of Medicine
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.mapcolorui;
+
+import juicebox.HiCGlobals;
+import org.broad.igv.renderer.ColorScale;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A rendered tile kept as the per-pixel scores that were mapped to colors, so that the tile
+ * can be recolored after a color range change without reloading or recomputing any blocks.
+ * The colorized image is built lazily and dropped by {@link #invalidateImage()}.
+ */
+class ScoreRasterTile {
+    private final int bLeft, bTop, width, height;
+    private final float[] scores;
+    private final BitSet painted;
+    // pixels painted with a plain color rather than a score; the map is only created when needed
+    private final BitSet fixed;
+    private Map<Integer, Color> fixedColors = null;
+    private final ColorScaleHandler colorScaleHandler;
+    // color scales are mutated in place when the range changes, so holding the reference is enough to recolor
+    private ColorScale colorScale;
+    private PearsonColorScale pearsonColorScale;
+    private String denseKey;
+    private boolean isDense = false;
+    private volatile GeneralTileManager.ImageTile imageTile = null;
+
+    ScoreRasterTile(ColorScaleHandler colorScaleHandler, int bLeft, int bTop, int width, int height) {
+        this.colorScaleHandler = colorScaleHandler;
+        this.bLeft = bLeft;
+        this.bTop = bTop;
+        this.width = width;
+        this.height = height;
+        this.scores = new float[width * height];
+        this.painted = new BitSet(width * height);
+        this.fixed = new BitSet(width * height);
+    }
+
+    void setColorScale(ColorScale cs) {
+        colorScale = cs;
+        isDense = false;
+    }
+
+    void setDenseColorScale(String key, PearsonColorScale pearsonColorScale, ColorScale cs) {
+        this.denseKey = key;
+        this.pearsonColorScale = pearsonColorScale;
+        this.colorScale = cs;
+        isDense = true;
+    }
+
+    void setScore(int px, int py, float score) {
+        if (px < 0 || py < 0 || px >= width || py >= height) return;
+        int index = py * width + px;
+        scores[index] = score;
+        painted.set(index);
+        fixed.clear(index);
+    }
+
+    void setFixedColor(int px, int py, Color color) {
+        if (px < 0 || py < 0 || px >= width || py >= height) return;
+        int index = py * width + px;
+        if (fixedColors == null) {
+            fixedColors = new HashMap<>();
+        }
+        fixedColors.put(index, color);
+        painted.set(index);
+        fixed.set(index);
+    }
+
+    long getSizeInBytes() {
+        // scores, painted and fixed flags and the colorized image
+        return 8L * width * height + width * height / 4 + (fixedColors == null ? 0 : 48L * fixedColors.size());
+    }
+
+    void invalidateImage() {
+        imageTile = null;
+    }
+
+    GeneralTileManager.ImageTile getImageTile(JComponent parent) {
+        GeneralTileManager.ImageTile tile = imageTile;
+        if (tile == null) {
+            tile = new GeneralTileManager.ImageTile(colorize(parent), bLeft, bTop);
+            imageTile = tile;
+        }
+        return tile;
+    }
+
+    private BufferedImage colorize(JComponent parent) {
+        BufferedImage image = (BufferedImage) parent.createImage(width, height);
+        if (HiCGlobals.isDarkulaModeEnabled) {
+            Graphics2D g2D = (Graphics2D) image.getGraphics();
+            g2D.setColor(Color.darkGray);
+            g2D.fillRect(0, 0, width, height);
+            g2D.dispose();
+        }
+
+        for (int index = painted.nextSetBit(0); index >= 0; index = painted.nextSetBit(index + 1)) {
+            Color color;
+            if (fixed.get(index)) {
+                color = fixedColors.get(index);
+            } else if (isDense) {
+                color = colorScaleHandler.getDenseMatrixColor(denseKey, scores[index], pearsonColorScale, colorScale);
+            } else {
+                color = colorScale.getColor(scores[index]);
+            }
+            image.setRGB(index % width, index / width, color.getRGB());
+        }
+        return image;
+    }
+}
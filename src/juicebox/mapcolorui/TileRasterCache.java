@@ -0,0 +1,89 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2021 Broad Institute, Aiden Lab, Rice University, Baylor College of Medicine
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.mapcolorui;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of rendered tiles, bounded by the total size of the tiles in bytes
+ * rather than by the number of tiles.
+ */
+class TileRasterCache {
+
+    private final LinkedHashMap<String, ScoreRasterTile> tiles = new LinkedHashMap<>(64, 0.75f, true);
+    private long budgetInBytes;
+    private long sizeInBytes = 0;
+
+    TileRasterCache(long budgetInBytes) {
+        this.budgetInBytes = budgetInBytes;
+    }
+
+    synchronized ScoreRasterTile get(String key) {
+        return tiles.get(key);
+    }
+
+    synchronized void put(String key, ScoreRasterTile tile) {
+        ScoreRasterTile previous = tiles.put(key, tile);
+        if (previous != null) {
+            sizeInBytes -= previous.getSizeInBytes();
+        }
+        sizeInBytes += tile.getSizeInBytes();
+        evictToBudget();
+    }
+
+    synchronized void setBudgetInBytes(long budgetInBytes) {
+        this.budgetInBytes = budgetInBytes;
+        evictToBudget();
+    }
+
+    /**
+     * Drop the colorized images, keeping the scores so tiles can be recolored on demand.
+     */
+    synchronized void invalidateImages() {
+        for (ScoreRasterTile tile : tiles.values()) {
+            tile.invalidateImage();
+        }
+    }
+
+    synchronized void clear() {
+        tiles.clear();
+        sizeInBytes = 0;
+    }
+
+    synchronized long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    private void evictToBudget() {
+        Iterator<Map.Entry<String, ScoreRasterTile>> iterator = tiles.entrySet().iterator();
+        // always keep the most recent tile, even if it alone exceeds the budget
+        while (sizeInBytes > budgetInBytes && tiles.size() > 1 && iterator.hasNext()) {
+            sizeInBytes -= iterator.next().getValue().getSizeInBytes();
+            iterator.remove();
+        }
+    }
+}
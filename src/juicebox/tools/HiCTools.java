@@ -32,6 +32,8 @@ import juicebox.tools.clt.CommandLineParserForJuicer;
 import juicebox.tools.clt.JuiceboxCLT;
 import org.broad.igv.Globals;
 
+import java.io.File;
+
 
 /**
  * Command line tool handling through factory model
@@ -71,6 +73,12 @@ public class HiCTools {
         help = parser.getHelpOption();
         version = parser.getVersionOption();
         HiCGlobals.printVerboseComments = parser.getVerboseOption();
+        if (parser.getIndexCacheOption() != null) {
+            HiCGlobals.hicIndexCacheDirectory = new File(parser.getIndexCacheOption());
+        }
+        if (parser.getCombinedCacheOption() != null) {
+            HiCGlobals.combinedBlockCacheDirectory = new File(parser.getCombinedCacheOption());
+        }
 
         String[] args = parser.getRemainingArgs();
 
@@ -52,8 +52,11 @@ public class CLTFactory {
             //        "pairsToBin",   "pairsToBin <input_HiC_file> <output_HiC_file> <genomeID>",
             //        "db",           "db <frag|annot|update> [items]",
             Dump.getUsage(),
+            Cohort.getUsage(),
             PreProcessing.getBasicUsage(),
             AddNorm.getBasicUsage(),
+            AddResolutions.getBasicUsage(),
+            AddEigenvectors.getBasicUsage(),
             Pearsons.getBasicUsage(),
             Eigenvector.getUsage(),
             APA.getBasicUsage(),
@@ -72,6 +75,8 @@ public class CLTFactory {
         System.out.println("\t" + "-h, --help print help");
         System.out.println("\t" + "-v, --verbose verbose mode");
         System.out.println("\t" + "-V, --version print version");
+        System.out.println("\t" + "--index-cache <dir> reuse parsed .hic indexes from sidecar files kept in <dir>");
+        System.out.println("\t" + "--combined-cache <dir> keep the merged blocks of \"+\"-summed files in <dir> for later runs");
         System.out.println("Type juicer_tools <commandName> for more detailed usage instructions");
     }
 
@@ -82,12 +87,18 @@ public class CLTFactory {
             return new PreProcessing();
         } else if (cmd.equals("dump")) {
             return new Dump();
+        } else if (cmd.equals("cohort")) {
+            return new Cohort();
         } else if (cmd.equals("compare-vectors")) {
             return new CompareVectors();
         } else if (cmd.equals("validate")) {
             return new ValidateFile();
         } else if (cmd.equals("addnorm")) {
             return new AddNorm();
+        } else if (cmd.equals("addres") || cmd.equals("materialize")) {
+            return new AddResolutions();
+        } else if (cmd.equals("addeigenvectors")) {
+            return new AddEigenvectors();
         } else if (cmd.equals("apa")) {
             return new APA();
         } else if (cmd.equals("compare")) {
@@ -55,6 +55,9 @@ public class CommandLineParser extends CmdLineParser {
     private final Option throwIntraFragOption = addBooleanOption("skip-intra-frag");
     private final Option useMinRAM = addBooleanOption("conserve-ram");
     private final Option checkMemory = addBooleanOption("check-ram-usage");
+    private final Option fuseStatisticsOption = addBooleanOption("fuse-statistics");
+    private final Option blockChecksumsOption = addBooleanOption("block-checksums");
+    private final Option deepValidationOption = addBooleanOption("deep");
 
     // String
     private final Option fragmentOption = addStringOption('f', "restriction-fragment-site-file");
@@ -67,9 +70,12 @@ public class CommandLineParser extends CmdLineParser {
     private final Option mndIndexOption = addStringOption('i', "mndindex");
     private final Option ligationOption = addStringOption("ligation");
     private final Option shellOption = addStringOption("shell");
+    private final Option indexCacheOption = addStringOption("index-cache");
+    private final Option combinedCacheOption = addStringOption("combined-cache");
 
     // ints
     private final Option blockCapacityOption = addIntegerOption("block-capacity");
+    private final Option memoryBudgetOption = addIntegerOption("memory-budget");
     private final Option countThresholdOption = addIntegerOption('m', "min-count");
     private final Option mapqOption = addIntegerOption('q', "mapq");
     private final Option genomeWideOption = addIntegerOption('w', "genomewide");
@@ -136,6 +142,18 @@ public class CommandLineParser extends CmdLineParser {
         return optionToBoolean(randomizePositionOption);
     }
 
+    public boolean getFuseStatisticsOption() {
+        return optionToBoolean(fuseStatisticsOption);
+    }
+
+    public boolean getBlockChecksumsOption() {
+        return optionToBoolean(blockChecksumsOption);
+    }
+
+    public boolean getDeepValidationOption() {
+        return optionToBoolean(deepValidationOption);
+    }
+
     public boolean getThrowIntraFragOption() {
         return optionToBoolean(throwIntraFragOption);
     }
@@ -190,6 +208,14 @@ public class CommandLineParser extends CmdLineParser {
         return optionToString(shellOption);
     }
 
+    public String getIndexCacheOption() {
+        return optionToString(indexCacheOption);
+    }
+
+    public String getCombinedCacheOption() {
+        return optionToString(combinedCacheOption);
+    }
+
     public Alignment getAlignmentOption() {
         int alignmentInt = optionToInt(alignmentFilterOption);
 
@@ -223,6 +249,13 @@ public class CommandLineParser extends CmdLineParser {
         return optionToInt(blockCapacityOption);
     }
 
+    /**
+     * @return memory budget in MB, or 0 if not set
+     */
+    public int getMemoryBudgetOption() {
+        return optionToInt(memoryBudgetOption);
+    }
+
     public int getCountThresholdOption() {
         return optionToInt(countThresholdOption);
     }
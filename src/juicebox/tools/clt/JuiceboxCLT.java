@@ -27,6 +27,7 @@ package juicebox.tools.clt;
 import juicebox.data.Dataset;
 import juicebox.data.HiCFileTools;
 import juicebox.data.iterator.IteratorContainer;
+import juicebox.tools.dev.ParallelizedJuicerTools;
 import juicebox.windowui.NormalizationType;
 
 import java.util.Arrays;
@@ -94,12 +95,15 @@ public abstract class JuiceboxCLT {
     protected void updateNumberOfCPUThreads(CommandLineParser parser, int numDefaultThreads) {
         int numThreads = parser.getNumThreads();
         numCPUThreads = getAppropriateNumberOfThreads(numThreads, numDefaultThreads);
+        ParallelizedJuicerTools.setNumThreads(numCPUThreads);
         System.out.println("Using " + numCPUThreads + " CPU thread(s) for primary task");
     }
 
     protected void updateSecondaryNumberOfCPUThreads(CommandLineParser parser, int numDefaultThreads) {
         int numMThreads = parser.getNumMatrixOperationThreads();
         numCPUThreadsForSecondTask = getAppropriateNumberOfThreads(numMThreads, numDefaultThreads);
+        // both stages share the pool, so it is sized for the larger of the two
+        ParallelizedJuicerTools.setNumThreads(Math.max(numCPUThreads, numCPUThreadsForSecondTask));
         System.out.println("Using " + IteratorContainer.numCPUMatrixThreads + " CPU thread(s) for secondary task");
     }
 }
@@ -47,6 +47,16 @@ import java.util.*;
  */
 class UnitTests {
 
+    /**
+     * Runs the self-contained checks; the others depend on local .hic files
+     */
+    public static void main(String[] args) {
+        if (!controlRecordJoinBenchmark()) {
+            System.err.println("Packed key join does not match the String key join");
+            System.exit(1);
+        }
+    }
+
     public static void pearsonsAndEigenvector() {
 
         List<String> files = new ArrayList<>();
@@ -85,6 +95,58 @@ class UnitTests {
         return vals;
     }
 
+    /**
+     * Compares joining observed and control records through String keys (the old comparison map
+     * rendering) against the packed coordinate index now used by HeatmapRenderer.
+     *
+     * @return true if both joins matched the same records
+     */
+    public static boolean controlRecordJoinBenchmark() {
+        int numBlocks = 20, recordsPerBlock = 200000, numRepeats = 10;
+        Random generator = new Random(0);
+        List<Block> blocks = new ArrayList<>(), ctrlBlocks = new ArrayList<>();
+        for (int b = 0; b < numBlocks; b++) {
+            List<ContactRecord> records = new ArrayList<>(), ctrlRecords = new ArrayList<>();
+            for (int i = 0; i < recordsPerBlock; i++) {
+                int binX = generator.nextInt(1000), binY = binX + generator.nextInt(1000);
+                records.add(new ContactRecord(binX, binY, generator.nextFloat()));
+                ctrlRecords.add(new ContactRecord(binX, binY, generator.nextFloat()));
+            }
+            blocks.add(new Block(b, records, "obs"));
+            ctrlBlocks.add(new Block(b, ctrlRecords, "ctrl"));
+        }
+
+        double stringSum = 0, packedSum = 0;
+        long time0 = System.nanoTime();
+        for (int k = 0; k < numRepeats; k++) {
+            for (int b = 0; b < numBlocks; b++) {
+                Map<String, ContactRecord> controlRecords = new HashMap<>();
+                for (ContactRecord ctrlRec : ctrlBlocks.get(b).getContactRecords()) {
+                    controlRecords.put(ctrlRec.getKey(NormalizationHandler.NONE), ctrlRec);
+                }
+                for (ContactRecord rec : blocks.get(b).getContactRecords()) {
+                    ContactRecord ctrlRecord = controlRecords.get(rec.getKey(NormalizationHandler.NONE));
+                    if (ctrlRecord != null) stringSum += rec.getCounts() / ctrlRecord.getCounts();
+                }
+            }
+        }
+        long time1 = System.nanoTime();
+        for (int k = 0; k < numRepeats; k++) {
+            for (int b = 0; b < numBlocks; b++) {
+                ContactRecordIndex controlRecords = ContactRecordIndex.create(ctrlBlocks.get(b));
+                for (ContactRecord rec : blocks.get(b).getContactRecords()) {
+                    ContactRecord ctrlRecord = controlRecords.get(rec);
+                    if (ctrlRecord != null) packedSum += rec.getCounts() / ctrlRecord.getCounts();
+                }
+            }
+        }
+        long time2 = System.nanoTime();
+
+        System.out.println("String key join: " + (time1 - time0) * 1e-9 + "s (checksum " + stringSum + ")");
+        System.out.println("Packed key join: " + (time2 - time1) * 1e-9 + "s (checksum " + packedSum + ")");
+        return stringSum == packedSum;
+    }
+
     private static void testingMergerOfHiCCUPSPostprocessing() {
         HiCGlobals.printVerboseComments = true;
 
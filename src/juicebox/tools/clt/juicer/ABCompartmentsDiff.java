@@ -40,6 +40,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * Created by muhammadsaadshamim on 6/2/16.
@@ -74,8 +75,9 @@ public class ABCompartmentsDiff extends JuicerCLT {
             System.exit(1);
         }
 
-        ds1 = HiCFileTools.extractDatasetForCLT(Arrays.asList(args[1].split("\\+")), true);
-        ds2 = HiCFileTools.extractDatasetForCLT(Arrays.asList(args[2].split("\\+")), true);
+        List<Dataset> datasets = HiCFileTools.extractDatasetsForCLT(Arrays.asList(args[1], args[2]), true);
+        ds1 = datasets.get(0);
+        ds2 = datasets.get(1);
 
         if (!(ds1.getGenomeId().equals(ds2.getGenomeId()))) {
             System.err.println("Hi-C maps must be from the same genome");
@@ -34,6 +34,7 @@ import juicebox.data.MatrixZoomData;
 import juicebox.data.basics.Chromosome;
 import juicebox.tools.clt.CommandLineParserForJuicer;
 import juicebox.tools.clt.JuicerCLT;
+import juicebox.tools.dev.ParallelizedJuicerTools;
 import juicebox.tools.utils.juicer.apa.APADataStack;
 import juicebox.tools.utils.juicer.apa.APARegionStatistics;
 import juicebox.tools.utils.juicer.apa.APAUtils;
@@ -48,8 +49,6 @@ import org.apache.commons.math.linear.RealMatrix;
 import java.io.File;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -290,86 +289,77 @@ public class APA extends JuicerCLT {
 
                 final AtomicInteger chromosomePair = new AtomicInteger(1);
 
-                ExecutorService executor = Executors.newFixedThreadPool(numCPUThreads);
                 APADataStack.initializeDataSaveFolder(outputDirectory,"" + resolution);
 
-                for (int l = 0; l < numCPUThreads; l++) {
-                    Runnable worker = new Runnable() {
-                        @Override
-                        public void run() {
-                            int threadPair = chromosomePair.getAndIncrement();
-                            while (threadPair < chromosomePairCounter) {
-                                Chromosome chr1 = chromosomePairs.get(threadPair)[0];
-                                Chromosome chr2 = chromosomePairs.get(threadPair)[1];
-                                if ((chr2.getIndex() > chr1.getIndex() && includeInterChr) || (chr2.getIndex() == chr1.getIndex())) {
-                                    APADataStack apaDataStack = new APADataStack(L, outputDirectory, "" + resolution);
-
-                                    MatrixZoomData zd;
-                                    synchronized (key) {
-                                        zd = HiCFileTools.getMatrixZoomData(ds, chr1, chr2, zoom);
-                                    }
+                Runnable worker = new Runnable() {
+                    @Override
+                    public void run() {
+                        int threadPair = chromosomePair.getAndIncrement();
+                        while (threadPair < chromosomePairCounter) {
+                            Chromosome chr1 = chromosomePairs.get(threadPair)[0];
+                            Chromosome chr2 = chromosomePairs.get(threadPair)[1];
+                            if ((chr2.getIndex() > chr1.getIndex() && includeInterChr) || (chr2.getIndex() == chr1.getIndex())) {
+                                APADataStack apaDataStack = new APADataStack(L, outputDirectory, "" + resolution);
+
+                                MatrixZoomData zd;
+                                synchronized (key) {
+                                    zd = HiCFileTools.getMatrixZoomData(ds, chr1, chr2, zoom);
+                                }
 
-                                    if (zd == null) {
-                                        threadPair = chromosomePair.getAndIncrement();
-                                        continue;
-                                    }
+                                if (zd == null) {
+                                    threadPair = chromosomePair.getAndIncrement();
+                                    continue;
+                                }
 
-                                    if (HiCGlobals.printVerboseComments) {
-                                        System.out.println("CHR " + chr1.getName() + " " + chr1.getIndex() + " CHR " + chr2.getName() + " " + chr2.getIndex());
-                                    }
+                                if (HiCGlobals.printVerboseComments) {
+                                    System.out.println("CHR " + chr1.getName() + " " + chr1.getIndex() + " CHR " + chr2.getName() + " " + chr2.getIndex());
+                                }
 
-                                    List<Feature2D> loops = loopList.get(chr1.getIndex(), chr2.getIndex());
-                                    if (loops == null || loops.size() == 0) {
-                                        if (HiCGlobals.printVerboseComments) {
-                                            System.out.println("CHR " + chr1.getName() + " CHR " + chr2.getName() + " - no loops, check loop filtering constraints");
-                                        }
-                                        threadPair = chromosomePair.getAndIncrement();
-                                        continue;
+                                List<Feature2D> loops = loopList.get(chr1.getIndex(), chr2.getIndex());
+                                if (loops == null || loops.size() == 0) {
+                                    if (HiCGlobals.printVerboseComments) {
+                                        System.out.println("CHR " + chr1.getName() + " CHR " + chr2.getName() + " - no loops, check loop filtering constraints");
                                     }
+                                    threadPair = chromosomePair.getAndIncrement();
+                                    continue;
+                                }
 
-                                    Integer[] peakNumbers = filterMetrics.get(Feature2DList.getKey(chr1, chr2));
+                                Integer[] peakNumbers = filterMetrics.get(Feature2DList.getKey(chr1, chr2));
 
-                                    if (loops.size() != peakNumbers[0])
-                                        System.err.println("Error reading statistics from " + chr1 + chr2);
+                                if (loops.size() != peakNumbers[0])
+                                    System.err.println("Error reading statistics from " + chr1 + chr2);
 
-                                    for (int i = 0; i < peakNumbers.length; i++) {
-                                        gwPeakNumbers[i].addAndGet(peakNumbers[i]);
-                                    }
+                                for (int i = 0; i < peakNumbers.length; i++) {
+                                    gwPeakNumbers[i].addAndGet(peakNumbers[i]);
+                                }
 
-                                    for (Feature2D loop : loops) {
-                                        try {
-                                            RealMatrix newData;
-                                            synchronized (key) {
-                                                newData = APAUtils.extractLocalizedData(zd, loop, L, resolution, window, norm);
-                                            }
-                                            apaDataStack.addData(newData);
-                                            //apaDataStack.addData(APAUtils.extractLocalizedData(zd, loop, L, resolution, window, norm));
-                                        } catch (Exception e) {
-                                            System.err.println(e.getMessage());
-                                            System.err.println("Unable to find data for loop: " + loop);
+                                for (Feature2D loop : loops) {
+                                    try {
+                                        RealMatrix newData;
+                                        synchronized (key) {
+                                            newData = APAUtils.extractLocalizedData(zd, loop, L, resolution, window, norm);
                                         }
+                                        apaDataStack.addData(newData);
+                                        //apaDataStack.addData(APAUtils.extractLocalizedData(zd, loop, L, resolution, window, norm));
+                                    } catch (Exception e) {
+                                        System.err.println(e.getMessage());
+                                        System.err.println("Unable to find data for loop: " + loop);
                                     }
+                                }
 
-                                    apaDataStack.updateGenomeWideData();
-                                    if (saveAllData) {
-                                        apaDataStack.exportDataSet(chr1.getName() + 'v' + chr2.getName(), peakNumbers, finalCurrentRegionWidth, saveAllData, dontIncludePlots);
-                                    }
-                                    if (chr2.getIndex() == chr1.getIndex()) {
-                                        System.out.print(((int) Math.floor((100.0 * currentProgressStatus.incrementAndGet()) / maxProgressStatus)) + "% ");
-                                    }
+                                apaDataStack.updateGenomeWideData();
+                                if (saveAllData) {
+                                    apaDataStack.exportDataSet(chr1.getName() + 'v' + chr2.getName(), peakNumbers, finalCurrentRegionWidth, saveAllData, dontIncludePlots);
+                                }
+                                if (chr2.getIndex() == chr1.getIndex()) {
+                                    System.out.print(((int) Math.floor((100.0 * currentProgressStatus.incrementAndGet()) / maxProgressStatus)) + "% ");
                                 }
-                                threadPair = chromosomePair.getAndIncrement();
                             }
+                            threadPair = chromosomePair.getAndIncrement();
                         }
-                    };
-                    executor.execute(worker);
-                }
-
-                executor.shutdown();
-
-                // Wait until all threads finish
-                while (!executor.isTerminated()) {
-                }
+                    }
+                };
+                ParallelizedJuicerTools.launchParallelizedCode("APA at " + resolution, numCPUThreads, worker);
 
                 System.out.println("Exporting APA results...");
                 //save data as int array
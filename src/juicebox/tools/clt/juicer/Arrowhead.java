@@ -30,6 +30,7 @@ import juicebox.data.*;
 import juicebox.data.basics.Chromosome;
 import juicebox.tools.clt.CommandLineParserForJuicer;
 import juicebox.tools.clt.JuicerCLT;
+import juicebox.tools.dev.ParallelizedJuicerTools;
 import juicebox.tools.utils.juicer.arrowhead.ArrowheadScoreList;
 import juicebox.tools.utils.juicer.arrowhead.BlockBuster;
 import juicebox.tools.utils.juicer.hiccups.HiCCUPSUtils;
@@ -40,10 +41,9 @@ import juicebox.windowui.NormalizationHandler;
 import juicebox.windowui.NormalizationType;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -239,8 +239,7 @@ public class Arrowhead extends JuicerCLT {
         final AtomicInteger currentProgressStatus = new AtomicInteger(0);
         System.out.println("max " + maxProgressStatus);
 
-        ExecutorService executor = Executors.newFixedThreadPool(numCPUThreads);
-
+        List<Runnable> workers = new ArrayList<>();
         for (final Chromosome chr : chromosomeHandler.getChromosomeArrayWithoutAllByAll()) {
 
             Runnable worker = new Runnable() {
@@ -266,13 +265,9 @@ public class Arrowhead extends JuicerCLT {
                     }
                 }
             };
-            executor.execute(worker);
-        }
-
-        executor.shutdown();
-        // Wait until all threads finish
-        while (!executor.isTerminated()) {
+            workers.add(worker);
         }
+        ParallelizedJuicerTools.runAll("Arrowhead", workers);
 
         // save the data on local machine
         contactDomainsGenomeWide.exportFeatureList(outputBlockFile, true, Feature2DList.ListFormat.ARROWHEAD);
@@ -36,6 +36,7 @@ import juicebox.data.basics.Chromosome;
 import juicebox.mapcolorui.Feature2DHandler;
 import juicebox.tools.clt.CommandLineParserForJuicer;
 import juicebox.tools.clt.JuicerCLT;
+import juicebox.tools.dev.ParallelizedJuicerTools;
 import juicebox.tools.utils.common.ArrayTools;
 import juicebox.tools.utils.juicer.hiccups.*;
 import juicebox.track.feature.Feature2D;
@@ -55,8 +56,6 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -406,24 +405,15 @@ public class HiCCUPS extends JuicerCLT {
             final AtomicInteger currentProgressStatus = new AtomicInteger(0);
             final AtomicInteger indexOfHiCCUPSRegion = new AtomicInteger(0);
 
-            ExecutorService executor = Executors.newFixedThreadPool(numCPUThreads);
-            for (int l = 0; l < numCPUThreads; l++) {
-                Runnable worker = new Runnable() {
-                    @Override
-                    public void run() {
-                        runCoreCodeForHiCCUPS(conf, indexOfHiCCUPSRegion, currentProgressStatus, regionHandler, matrixSize,
-                                thresholdBL, thresholdDonut, thresholdH, thresholdV, norm, zoom,
-                                histBL, histDonut, histH, histV, runNum, fdrLogBL, fdrLogDonut, fdrLogH, fdrLogV,
-                                inputListFeature2DHandler, requestedList, globalList);
-                    }
-                };
-                executor.execute(worker);
-            }
-            executor.shutdown();
-
-            // Wait until all threads finish
-            while (!executor.isTerminated()) {
-            }
+            ParallelizedJuicerTools.launchParallelizedCode("HiCCUPS pass " + (runNum + 1), numCPUThreads, new Runnable() {
+                @Override
+                public void run() {
+                    runCoreCodeForHiCCUPS(conf, indexOfHiCCUPSRegion, currentProgressStatus, regionHandler, matrixSize,
+                            thresholdBL, thresholdDonut, thresholdH, thresholdV, norm, zoom,
+                            histBL, histDonut, histH, histV, runNum, fdrLogBL, fdrLogDonut, fdrLogH, fdrLogV,
+                            inputListFeature2DHandler, requestedList, globalList);
+                }
+            });
 
             if (runNum == 0) {
 
@@ -92,8 +92,9 @@ public class HiCCUPSDiff extends JuicerCLT {
 
         outputDirectory = HiCFileTools.createValidDirectory(args[5]);
 
-        Dataset ds1 = HiCFileTools.extractDatasetForCLT(Arrays.asList(args[1].split("\\+")), true);
-        Dataset ds2 = HiCFileTools.extractDatasetForCLT(Arrays.asList(args[2].split("\\+")), true);
+        List<Dataset> datasets = HiCFileTools.extractDatasetsForCLT(Arrays.asList(args[1], args[2]), true);
+        Dataset ds1 = datasets.get(0);
+        Dataset ds2 = datasets.get(1);
 
         if (!(ds1.getGenomeId().equals(ds2.getGenomeId()))) {
             System.err.println("Hi-C maps must be from the same genome");
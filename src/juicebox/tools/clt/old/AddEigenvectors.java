@@ -0,0 +1,91 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2021 Broad Institute, Aiden Lab, Rice University, Baylor College of Medicine
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package juicebox.tools.clt.old;
+
+import juicebox.HiCGlobals;
+import juicebox.tools.clt.CommandLineParser;
+import juicebox.tools.clt.JuiceboxCLT;
+import juicebox.tools.utils.original.EigenvectorUpdater;
+import juicebox.windowui.NormalizationType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Precomputes compartment eigenvectors and stores them in .hic files, so the eigenvector track and
+ * compartment comparisons read them instead of computing them on every request.
+ */
+public class AddEigenvectors extends JuiceboxCLT {
+
+    private final List<String> files = new ArrayList<>();
+    private List<Integer> resolutions = null;
+    private List<NormalizationType> norms;
+
+    public AddEigenvectors() {
+        super(getBasicUsage() + "\n"
+                + "           : -r comma-separated bp resolutions; default is every resolution from " + HiCGlobals.MAX_EIGENVECTOR_ZOOM + " up\n"
+                + "           : -k comma-separated normalizations; those missing from a file are skipped\n"
+                + "           : -j number of CPU threads to use; chromosomes are processed in parallel\n"
+                + "           : eigenvectors of later files are oriented to agree with those of the first"
+        );
+    }
+
+    public static String getBasicUsage() {
+        return "addEigenvectors [-r resolution(s)] [-k normalization(s)] <input_HiC_file(s)>";
+    }
+
+    @Override
+    public void readArguments(String[] args, CommandLineParser parser) {
+        if (parser.getHelpOption() || args.length < 2) {
+            printUsageAndExit();
+        }
+
+        List<String> resolutionOptions = parser.getResolutionOption();
+        if (resolutionOptions != null && !resolutionOptions.isEmpty()) {
+            resolutions = new ArrayList<>();
+            for (String res : resolutionOptions) {
+                try {
+                    resolutions.add(Integer.parseInt(res));
+                } catch (NumberFormatException e) {
+                    System.err.println("Invalid resolution " + res);
+                    printUsageAndExit();
+                }
+            }
+        }
+
+        norms = parser.getAllNormalizationTypesOption();
+        updateNumberOfCPUThreads(parser, HiCGlobals.getIdealThreadCount());
+        files.addAll(Arrays.asList(args).subList(1, args.length));
+    }
+
+    @Override
+    public void run() {
+        try {
+            EigenvectorUpdater.updateHicFiles(files, resolutions, norms);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -29,6 +29,7 @@ import juicebox.data.iterator.IteratorContainer;
 import juicebox.tools.clt.CommandLineParser;
 import juicebox.tools.clt.JuiceboxCLT;
 import juicebox.tools.utils.norm.CustomNormVectorFileHandler;
+import juicebox.tools.utils.norm.MultithreadedNormalizationVectorUpdater;
 import juicebox.tools.utils.norm.NormalizationVectorUpdater;
 import juicebox.windowui.NormalizationHandler;
 import juicebox.windowui.NormalizationType;
@@ -79,7 +80,8 @@ public class AddNorm extends JuiceboxCLT {
                               boolean noFragNorm, int numCPUThreads,
                               Map<NormalizationType, Integer> resolutionsToBuildTo) throws IOException {
         HiCGlobals.useCache = false;
-        NormalizationVectorUpdater updater = new NormalizationVectorUpdater();
+        NormalizationVectorUpdater updater = numCPUThreads > 1 ? new MultithreadedNormalizationVectorUpdater(numCPUThreads)
+                : new NormalizationVectorUpdater();
         updater.updateHicFile(outputFile, normalizationTypes, resolutionsToBuildTo, genomeWide, noFragNorm);
     }
 
@@ -0,0 +1,86 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2021 Broad Institute, Aiden Lab, Rice University, Baylor College of Medicine
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package juicebox.tools.clt.old;
+
+import juicebox.HiCGlobals;
+import juicebox.tools.clt.CommandLineParser;
+import juicebox.tools.clt.JuiceboxCLT;
+import juicebox.tools.utils.original.ResolutionUpdater;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adds bp resolutions to a .hic file by binning a finer resolution already in it, so the
+ * original contacts do not need to be run through pre again. Also used to write dynamic
+ * resolutions permanently into the file ("materialize").
+ */
+public class AddResolutions extends JuiceboxCLT {
+
+    private String file;
+    private final List<Integer> resolutions = new ArrayList<>();
+
+    public AddResolutions() {
+        super(getBasicUsage() + "\n"
+                + "           : -r comma-separated bp resolutions to add; each must be a multiple of a resolution in the file\n"
+                + "           : -j number of CPU threads to use; chromosome pairs are processed in parallel"
+        );
+    }
+
+    public static String getBasicUsage() {
+        return "addres -r <resolution(s)> <input_HiC_file>";
+    }
+
+    @Override
+    public void readArguments(String[] args, CommandLineParser parser) {
+        if (parser.getHelpOption() || args.length != 2) {
+            printUsageAndExit();
+        }
+
+        List<String> resolutionOptions = parser.getResolutionOption();
+        if (resolutionOptions == null || resolutionOptions.isEmpty()) {
+            printUsageAndExit();
+        }
+        for (String res : resolutionOptions) {
+            try {
+                resolutions.add(Integer.parseInt(res));
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid resolution " + res);
+                printUsageAndExit();
+            }
+        }
+
+        updateNumberOfCPUThreads(parser, HiCGlobals.getIdealThreadCount());
+        file = args[1];
+    }
+
+    @Override
+    public void run() {
+        try {
+            ResolutionUpdater.updateHicFile(file, resolutions, numCPUThreads);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -29,6 +29,7 @@ import juicebox.data.basics.Chromosome;
 import juicebox.data.iterator.IteratorContainer;
 import juicebox.tools.clt.CommandLineParser;
 import juicebox.tools.clt.JuiceboxCLT;
+import juicebox.tools.dev.ParallelizedJuicerTools;
 import juicebox.tools.utils.common.MatrixTools;
 import juicebox.tools.utils.norm.NormalizationCalculations;
 import juicebox.windowui.HiCZoom;
@@ -39,8 +40,6 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.PrintWriter;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 public class CalcMatrixSum extends JuiceboxCLT {
 
@@ -82,9 +81,7 @@ public class CalcMatrixSum extends JuiceboxCLT {
     @Override
     public void run() {
 
-        int numCPUThreads = Runtime.getRuntime().availableProcessors();
-        ExecutorService executor = Executors.newFixedThreadPool(numCPUThreads);
-
+        List<Runnable> workers = new ArrayList<>();
         Map<String, Double[]> zoomToMatrixSumMap = new HashMap<>();
 
         for (Chromosome chromosome : chromosomeHandler.getChromosomeArrayWithoutAllByAll()) {
@@ -128,13 +125,10 @@ public class CalcMatrixSum extends JuiceboxCLT {
                          */
                     }
                 };
-                executor.execute(worker);
+                workers.add(worker);
             }
         }
-
-        executor.shutdown();
-        while (!executor.isTerminated()) {
-        }
+        ParallelizedJuicerTools.runAll("Matrix sums", workers);
 
         printWriter.println("Normalization Type: " + norm);
         List<double[]> matrixFormat = new ArrayList<>();
@@ -0,0 +1,216 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2021 Broad Institute, Aiden Lab, Rice University, Baylor College of Medicine
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package juicebox.tools.clt.old;
+
+import htsjdk.tribble.util.LittleEndianOutputStream;
+import juicebox.HiC;
+import juicebox.HiCGlobals;
+import juicebox.data.ChromosomeHandler;
+import juicebox.data.CohortQuery;
+import juicebox.data.Dataset;
+import juicebox.data.HiCFileTools;
+import juicebox.data.basics.Chromosome;
+import juicebox.tools.clt.CommandLineParser;
+import juicebox.tools.clt.JuiceboxCLT;
+import juicebox.track.feature.Feature2DList;
+import juicebox.track.feature.Feature2DParser;
+import juicebox.windowui.HiCZoom;
+import juicebox.windowui.MatrixType;
+import juicebox.windowui.NormalizationType;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Dumps the same region, or the same list of 2D features, from every .hic file of a cohort in one pass,
+ * with one value column per file. See CohortQuery.
+ */
+public class Cohort extends JuiceboxCLT {
+
+    private final List<String> fileGroups = new ArrayList<>();
+    private MatrixType matrixType;
+    private String normString;
+    private String chr1, chr2;
+    private long[] regionIndices = null;
+    private String featureFile = null;
+    private int binSize;
+    private String outputFile;
+    private long memoryBudget;
+
+    public Cohort() {
+        super(getUsage() + "\n"
+                + "           : <hicFiles> is a comma-separated list, or a file with one per line; files joined by + are summed\n"
+                + "           : outfile ending in .col is written as chunked columns (see CohortQuery), otherwise as text\n"
+                + "           : -j number of CPU threads to use; files are queried in parallel\n"
+                + "           : --memory-budget MB for the values held at once across all files; default is half the heap"
+        );
+    }
+
+    public static String getUsage() {
+        return "cohort <observed/oe> <NONE/VC/VC_SQRT/KR/SCALE> <hicFiles> <chr1>[:x1:x2] <chr2>[:y1:y2] <binsize> <outfile>\n" +
+                "\tcohort <observed/oe> <NONE/VC/VC_SQRT/KR/SCALE> <hicFiles> <features.bedpe> <binsize> <outfile>";
+    }
+
+    @Override
+    public void readArguments(String[] args, CommandLineParser parser) {
+        if (parser.getHelpOption() || (args.length != 7 && args.length != 8)) {
+            printUsageAndExit();
+        }
+
+        matrixType = MatrixType.enumValueFromString(args[1].toLowerCase());
+        if (matrixType != MatrixType.OBSERVED && matrixType != MatrixType.OE) {
+            System.err.println("Matrix must be one of \"observed\" or \"oe\".");
+            System.exit(15);
+        }
+        normString = args[2];
+        fileGroups.addAll(readFileGroups(args[3]));
+
+        if (args.length == 8) {
+            chr1 = args[4];
+            chr2 = args[5];
+        } else {
+            featureFile = args[4];
+        }
+        try {
+            binSize = Integer.parseInt(args[args.length - 2]);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid bin size " + args[args.length - 2]);
+            printUsageAndExit();
+        }
+        outputFile = args[args.length - 1];
+
+        int budgetMB = parser.getMemoryBudgetOption();
+        memoryBudget = budgetMB > 0 ? budgetMB * 1024L * 1024L : Runtime.getRuntime().maxMemory() / 2;
+        updateNumberOfCPUThreads(parser, HiCGlobals.getIdealThreadCount());
+    }
+
+    private List<String> readFileGroups(String arg) {
+        List<String> groups = new ArrayList<>();
+        File listFile = new File(arg);
+        if (!arg.contains(",") && !arg.toLowerCase().endsWith(".hic") && listFile.isFile()) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(listFile))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.length() > 0 && !line.startsWith("#")) {
+                        groups.add(line);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Unable to read list of files " + arg);
+                System.exit(1);
+            }
+        } else {
+            groups.addAll(Arrays.asList(arg.split(",")));
+        }
+        if (groups.isEmpty()) {
+            System.err.println("No .hic files given");
+            printUsageAndExit();
+        }
+        return groups;
+    }
+
+    @Override
+    public void run() {
+        HiCGlobals.allowDynamicBlockIndex = false;
+        List<Dataset> datasets = HiCFileTools.extractDatasetsForCLT(fileGroups, false);
+        NormalizationType norm = datasets.get(0).getNormalizationHandler().getNormTypeFromString(normString);
+        if (norm == null) {
+            System.err.println("Normalization type " + normString + " unrecognized");
+            System.exit(16);
+        }
+
+        ChromosomeHandler handler = datasets.get(0).getChromosomeHandler();
+        HiCZoom zoom = new HiCZoom(HiC.Unit.BP, binSize);
+        CohortQuery query = new CohortQuery(datasets, norm, matrixType, memoryBudget);
+
+        CohortQuery.Sink sink = null;
+        try {
+            if (outputFile.toLowerCase().endsWith(".col")) {
+                sink = new CohortQuery.ColumnarSink(new LittleEndianOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(outputFile), HiCGlobals.bufferSize)), datasets.size());
+            } else {
+                sink = new CohortQuery.TextSink(new PrintWriter(new BufferedWriter(new FileWriter(outputFile))), fileGroups);
+            }
+
+            if (featureFile != null) {
+                Feature2DList features = Feature2DParser.loadFeatures(featureFile, handler, false, null, false);
+                query.queryFeatures(features, zoom, sink);
+            } else {
+                Chromosome chromosome1 = getChromosome(handler, chr1, 0);
+                Chromosome chromosome2 = getChromosome(handler, chr2, 2);
+                query.queryRegion(chromosome1.getName(), chromosome2.getName(), zoom,
+                        regionIndices[0] / binSize, regionIndices[1] / binSize + 1,
+                        regionIndices[2] / binSize, regionIndices[3] / binSize + 1, sink);
+            }
+        } catch (IOException e) {
+            System.err.println("Unable to write " + outputFile + ": " + e.getMessage());
+            if (HiCGlobals.printVerboseComments) {
+                e.printStackTrace();
+            }
+            System.exit(1);
+        } finally {
+            if (sink != null) {
+                try {
+                    sink.close();
+                } catch (IOException e) {
+                    System.err.println("Unable to close " + outputFile);
+                }
+            }
+        }
+    }
+
+    /**
+     * Resolves "name" or "name:start:end" and sets regionIndices[offset], regionIndices[offset + 1] to the bp range
+     */
+    private Chromosome getChromosome(ChromosomeHandler handler, String region, int offset) {
+        if (regionIndices == null) {
+            regionIndices = new long[4];
+        }
+        String[] regionComponents = region.split(":");
+        Chromosome chromosome = handler.getChromosomeFromName(regionComponents[0]);
+        if (chromosome == null) {
+            System.err.println("Invalid chromosome " + regionComponents[0]);
+            System.exit(77);
+        }
+        if (regionComponents.length == 3) {
+            try {
+                regionIndices[offset] = Long.parseLong(regionComponents[1]);
+                regionIndices[offset + 1] = Long.parseLong(regionComponents[2]);
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid indices for " + region);
+                printUsageAndExit();
+            }
+        } else if (regionComponents.length == 1) {
+            regionIndices[offset] = 0;
+            regionIndices[offset + 1] = chromosome.getLength();
+        } else {
+            System.err.println("Invalid number of indices for " + region + ", should be 3 --> chromosome_name:start_index:end_index");
+            printUsageAndExit();
+        }
+        return chromosome;
+    }
+}
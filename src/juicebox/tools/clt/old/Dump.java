@@ -59,6 +59,8 @@ public class Dump extends JuiceboxCLT {
     private MatrixType matrixType = null;
     private PrintWriter pw = null;
     private LittleEndianOutputStream les = null;
+    private OutputStream outputStream = null;
+    private StreamingMatrixDump.Format format = StreamingMatrixDump.Format.TEXT;
     private HiCZoom zoom = null;
     private boolean includeIntra = false;
     private boolean dense = false;
@@ -70,7 +72,9 @@ public class Dump extends JuiceboxCLT {
     }
 
     public static String getUsage(){
-        return "dump <observed/oe> <NONE/VC/VC_SQRT/KR> <hicFile(s)> <chr1>[:x1:x2] <chr2>[:y1:y2] <BP/FRAG> <binsize> [outfile]\n" +
+        return "dump [-d] [-j threads] <observed/oe> <NONE/VC/VC_SQRT/KR> <hicFile(s)> <chr1>[:x1:x2] <chr2>[:y1:y2] <BP/FRAG> <binsize> [outfile]\n" +
+                "\t\toutfile ending in .bin or .coo is written as little-endian (int binX, int binY, float value) records;\n" +
+                "\t\t.col is written as chunked int/int/float columns\n" +
                 "\tdump <norm/expected> <NONE/VC/VC_SQRT/KR> <hicFile(s)> <chr> <BP/FRAG> <binsize> [outfile]\n" +
                 "\tdump <loops/domains> <hicFile URL> [outfile]";
     }
@@ -180,18 +184,14 @@ public class Dump extends JuiceboxCLT {
                 System.err.println("Norm not available at " + zoom + " " + norm);
                 System.exit(9);
             }
-            int count = 0;
-            long total = (chromosome.getLength() / zoom.getBinSize()) + 1;
+            long total = nv.getLength();
+            // Do not print out more entries than length of chromosome
+            if (zoom.getUnit() == HiC.Unit.BP) {
+                total = Math.min(total, (chromosome.getLength() / zoom.getBinSize()) + 1);
+            }
             // print out vector
-            for (double[] array : nv.getData().getValues()) {
-                for (double element : array) {
-                    pw.println(element);
-                    count++;
-                    // Do not print out more entries than length of chromosome
-                    if (zoom.getUnit() == HiC.Unit.BP) {
-                        if (count >= total) break;
-                    }
-                }
+            for (long i = 0; i < total; i++) {
+                pw.println(nv.get(i));
             }
             pw.close();
     
@@ -252,7 +252,12 @@ public class Dump extends JuiceboxCLT {
         if (MatrixType.isExpectedValueType(matrixType)) {
             df = dataset.getExpectedValuesOrExit(zd.getZoom(), norm, chromosome1, true);
         }
-        zd.dump(pw, les, norm, matrixType, useRegionIndices, regionIndices, df, dense);
+        if (dense) {
+            zd.dump(pw, les, norm, matrixType, useRegionIndices, regionIndices, df, true);
+        } else {
+            OutputStream out = outputStream != null ? outputStream : new BufferedOutputStream(System.out, HiCGlobals.bufferSize);
+            zd.dump(out, format, norm, matrixType, useRegionIndices, regionIndices, df);
+        }
 
     }
 
@@ -303,6 +308,11 @@ public class Dump extends JuiceboxCLT {
             // -n in pre means no norm, in dump means includeIntra for the whole genome
             includeIntra = parser.getNoNormOption();
 
+            int numThreads = parser.getNumThreads();
+            if (numThreads > 0) {
+                StreamingMatrixDump.numThreads = numThreads;
+            }
+
             if (args.length < 7) {
                 printUsageAndExit();
             }
@@ -375,16 +385,20 @@ public class Dump extends JuiceboxCLT {
 
         try {
             if (ofile != null && ofile.length() > 0) {
-                if (ofile.endsWith(".bin")) {
-                    BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(args[6]));
-                    les = new LittleEndianOutputStream(bos);
-                } else if (ofile.endsWith(".npy")) {
+                if (ofile.endsWith(".npy")) {
                     this.ofile = ofile;
                 } else {
-                    pw = new PrintWriter(new FileOutputStream(ofile));
+                    outputStream = new BufferedOutputStream(new FileOutputStream(ofile), HiCGlobals.bufferSize);
+                    format = StreamingMatrixDump.formatForFile(ofile);
+                    if (format == StreamingMatrixDump.Format.TEXT) {
+                        pw = new PrintWriter(outputStream);
+                    } else {
+                        les = new LittleEndianOutputStream(outputStream);
+                    }
                 }
             } else {
-                pw = new PrintWriter(System.out);
+                outputStream = new BufferedOutputStream(System.out, HiCGlobals.bufferSize);
+                pw = new PrintWriter(outputStream);
             }
         }
         catch (IOException error) {
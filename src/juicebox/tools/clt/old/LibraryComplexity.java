@@ -27,6 +27,7 @@ package juicebox.tools.clt.old;
 
 import juicebox.tools.clt.CommandLineParser;
 import juicebox.tools.clt.JuiceboxCLT;
+import juicebox.tools.dev.ParallelizedJuicerTools;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -171,8 +172,6 @@ public class LibraryComplexity extends JuiceboxCLT {
             final AtomicBoolean somethingFailed = new AtomicBoolean(false);
 
             try {
-                ExecutorService executor = Executors.newFixedThreadPool(3);
-
                 Callable<Long> taskOptDups = () -> {
                     File f = new File(localWorkingDirectory + "/opt_dups.txt");
                     if (f.exists()) {
@@ -227,9 +226,10 @@ public class LibraryComplexity extends JuiceboxCLT {
                     }
                 };
 
-                Future<Long> futureOptDups = executor.submit(taskOptDups);
-                Future<Long> futureUniqueReads = executor.submit(taskUniqueReads);
-                Future<Long> futureDupReadPairs = executor.submit(taskDupReadPairs);
+                // counted on the shared pool while the stats file is read here
+                Future<Long> futureOptDups = ParallelizedJuicerTools.submit(taskOptDups);
+                Future<Long> futureUniqueReads = ParallelizedJuicerTools.submit(taskUniqueReads);
+                Future<Long> futureDupReadPairs = ParallelizedJuicerTools.submit(taskDupReadPairs);
 
                 File f = new File(localWorkingDirectory + "/" + fileName);
                 if (f.exists()) {
@@ -253,7 +253,6 @@ public class LibraryComplexity extends JuiceboxCLT {
                 opticalDups = futureOptDups.get();
                 uniqueReadPairs = futureUniqueReads.get();
                 dupReadPairs = futureDupReadPairs.get();
-                executor.shutdown();
 
                 if (somethingFailed.get()) {
                     System.err.println("Something failed in a thread");
@@ -264,6 +263,7 @@ public class LibraryComplexity extends JuiceboxCLT {
                 System.err.println("Problem counting lines in merged_nodups and dups");
                 System.exit(1);
             } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
                 System.err.println("Threads interrupted exception");
                 System.exit(1);
             } catch (ExecutionException e) {
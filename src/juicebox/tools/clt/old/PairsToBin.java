@@ -35,7 +35,7 @@ public class PairsToBin extends JuiceboxCLT {
     private String ifile, ofile, genomeId;
 
     public PairsToBin() {
-        super("pairsToBin <input_mnd> <output_mnd_binary> <genomeID>");
+        super("pairsToBin [--threads numthreads] <input_mnd> <output_mnd_binary[.bin|.bn|.cbin]> <genomeID>");
     }
 
     @Override
@@ -46,13 +46,14 @@ public class PairsToBin extends JuiceboxCLT {
         ifile = args[1];
         ofile = args[2];
         genomeId = args[3];
+        updateNumberOfCPUThreads(parser, 1);
     }
 
     @Override
     public void run() {
         ChromosomeHandler chromosomeHandler = HiCFileTools.loadChromosomes(genomeId);
         try {
-            AsciiToBinConverter.convert(ifile, ofile, chromosomeHandler);
+            AsciiToBinConverter.convert(ifile, ofile, chromosomeHandler, numCPUThreads);
         } catch (Exception e) {
             System.err.println("Unable to convert from ascii to bin");
             e.printStackTrace();
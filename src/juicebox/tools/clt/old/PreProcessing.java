@@ -31,11 +31,15 @@ import juicebox.data.iterator.IteratorContainer;
 import juicebox.tools.clt.CommandLineParser;
 import juicebox.tools.clt.JuiceboxCLT;
 import juicebox.tools.utils.common.ShellCommandRunner;
+import juicebox.tools.utils.original.MndChunkIndexer;
 import juicebox.tools.utils.original.MultithreadedPreprocessor;
 import juicebox.tools.utils.original.Preprocessor;
+import juicebox.tools.utils.original.mnditerator.BGZFBlockIndex;
+import juicebox.tools.utils.original.mnditerator.CompressedBinPairFile;
 import juicebox.windowui.NormalizationType;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -63,6 +67,9 @@ public class PreProcessing extends JuiceboxCLT {
                 + "           : -t <tmpDir> Set a temporary directory for writing\n"
                 + "           : -s <statistics file> Add the text statistics file to the Hi-C file header\n"
                 + "           : -g <graphs file> Add the text graphs file to the Hi-C file header\n"
+                + "           : --fuse-statistics compute the statistics and graphs while binning contacts;\n"
+                + "           :     appends to the -s statistics file and embeds it in the header (uses -f, -q, --ligation)\n"
+                + "           : --block-checksums record a CRC32C of every block in the footer, checked by validate --deep\n"
                 + "           : -n Don't normalize the matrices\n"
                 + "           : -z <double> scale factor for hic file\n"
                 + "           : -a <1, 2, 3, 4, 5> filter based on inner, outer, left-left, right-right, tandem pairs respectively\n"
@@ -110,8 +117,19 @@ public class PreProcessing extends JuiceboxCLT {
             usingMultiThreadedVersion = false;
         } else {
             try {
+                if (inputFile.endsWith(".gz") && !BGZFBlockIndex.isBlockCompressed(inputFile)) {
+                    throw new IOException("Multithreading with a compressed mnd requires bgzip (BGZF) compression");
+                }
+                String mndIndexFile = parser.getMndIndexOption();
+                if (mndIndexFile == null || mndIndexFile.length() < 2) {
+                    if (inputFile.endsWith(CompressedBinPairFile.EXTENSION)) {
+                        mndIndexFile = inputFile;
+                    } else {
+                        mndIndexFile = MndChunkIndexer.getOrCreateMndIndex(inputFile, numCPUThreads);
+                    }
+                }
                 preprocessor = new MultithreadedPreprocessor(new File(outputFile), genomeId, chromHandler,
-                        hicFileScalingFactor, numCPUThreads, parser.getMndIndexOption());
+                        hicFileScalingFactor, numCPUThreads, mndIndexFile);
                 usingMultiThreadedVersion = true;
             } catch (Exception e) {
                 System.err.println(e.getLocalizedMessage() + "\nUsing single threaded preprocessor");
@@ -130,6 +148,8 @@ public class PreProcessing extends JuiceboxCLT {
         preprocessor.setTmpdir(tmpDir);
         preprocessor.setStatisticsFile(parser.getStatsOption());
         preprocessor.setGraphFile(parser.getGraphOption());
+        preprocessor.setFusedStatistics(parser.getFuseStatisticsOption(), parser.getLigationOption());
+        preprocessor.setRecordBlockChecksums(parser.getBlockChecksumsOption());
         preprocessor.setGenome(parser.getGenomeOption());
         preprocessor.setResolutions(parser.getResolutionOption());
         preprocessor.setAlignmentFilter(parser.getAlignmentOption());
@@ -31,6 +31,7 @@ import juicebox.tools.clt.JuiceboxCLT;
 import juicebox.tools.utils.original.Chunk;
 import juicebox.tools.utils.original.FragmentCalculation;
 import juicebox.tools.utils.original.MTIndexHandler;
+import juicebox.tools.utils.original.mnditerator.CompressedBinPairFile;
 import juicebox.tools.utils.original.stats.LoneStatisticsWorker;
 import juicebox.tools.utils.original.stats.ParallelStatistics;
 import juicebox.tools.utils.original.stats.StatisticsContainer;
@@ -62,6 +63,8 @@ public class Statistics extends JuiceboxCLT {
                 " --ligation: ligation junction\n" +
                 " --mapqs: mapping quality threshold(s), do not consider reads < threshold\n" +
                 " --mndindex: file of indices for merged nodups to read from\n" +
+                "             (defaults to the index left next to the infile by a multithreaded pre,\n" +
+                "             or the footer index of a .cbin infile)\n" +
                 " --threads: number of threads to be executed \n" +
                 " <site file>: list of HindIII restriction sites, one line per chromosome\n" +
                 " <stats file>: output file containing total reads, for library complexity\n" +
@@ -135,6 +138,14 @@ public class Statistics extends JuiceboxCLT {
         //multithreading flags
         updateNumberOfCPUThreads(parser, 1);
         mndIndexFile = parser.getMndIndexOption();
+        if ((mndIndexFile == null || mndIndexFile.length() < 2) && numCPUThreads > 1) {
+            if (inFile.endsWith(CompressedBinPairFile.EXTENSION)) {
+                mndIndexFile = inFile;
+            } else {
+                // reuse the index a multithreaded pre wrote next to the input
+                mndIndexFile = MTIndexHandler.getExistingSidecarIndex(inFile);
+            }
+        }
     }
 
     private void tryToReadLocalHandler(String genomeID) {
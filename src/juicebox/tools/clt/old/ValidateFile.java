@@ -29,26 +29,34 @@ import juicebox.data.*;
 import juicebox.data.basics.Chromosome;
 import juicebox.tools.clt.CommandLineParser;
 import juicebox.tools.clt.JuiceboxCLT;
+import juicebox.tools.dev.ParallelizedJuicerTools;
 import juicebox.windowui.HiCZoom;
 import juicebox.windowui.NormalizationType;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by muhammadsaadshamim on 6/2/16.
  */
 public class ValidateFile extends JuiceboxCLT {
 
+    private static final int BLOCKS_PER_TASK = 64;
+    private static final int MAX_ERRORS_SHOWN = 20;
+    private static final long PROGRESS_INTERVAL_MS = 10000;
     private String filePath;
+    private boolean deepValidation = false;
 
     public ValidateFile() {
         super(getUsage());
     }
 
     public static String getUsage() {
-        return "validate <hicFile>";
+        return "validate [--deep] [-j threads] <hicFile>\n"
+                + "           : --deep decompress and parse every block of every matrix, checking block checksums if the file has them";
     }
 
     @Override
@@ -57,6 +65,10 @@ public class ValidateFile extends JuiceboxCLT {
             printUsageAndExit();
         }
         filePath = args[1];
+        deepValidation = parser.getDeepValidationOption();
+        if (deepValidation) {
+            updateNumberOfCPUThreads(parser, HiCGlobals.getIdealThreadCount());
+        }
     }
 
     @Override
@@ -98,6 +110,9 @@ public class ValidateFile extends JuiceboxCLT {
                 }
                 System.out.println();
             }
+            if (deepValidation) {
+                validateAllBlocks(reader, ds);
+            }
             System.out.println("(-: Validation successful");
             System.exit(0);
             throw new IOException("t");
@@ -108,4 +123,114 @@ public class ValidateFile extends JuiceboxCLT {
             System.exit(1);
         }
     }
+
+    /**
+     * Reads, decompresses and parses every block of every zoom data in parallel. Each worker holds a single
+     * block at a time, so memory stays bounded by the thread count.
+     */
+    private void validateAllBlocks(DatasetReader reader, Dataset ds) throws IOException {
+        if (!(reader instanceof DatasetReaderV2)) {
+            throw new IOException("--deep validates one .hic file at a time");
+        }
+        final DatasetReaderV2 readerV2 = (DatasetReaderV2) reader;
+        if (readerV2.getBlockChecksums() != null) {
+            System.out.println("File has block checksums");
+        }
+
+        // matrices are loaded up front; the dataset caches them in a plain map
+        Set<MatrixZoomData> zds = new LinkedHashSet<>();
+        List<HiCZoom> zooms = new ArrayList<>(ds.getBpZooms());
+        if (ds.getFragZooms() != null) {
+            zooms.addAll(ds.getFragZooms());
+        }
+        Chromosome[] chromosomes = ds.getChromosomeHandler().getChromosomeArray();
+        for (int i = 0; i < chromosomes.length; i++) {
+            for (int j = i; j < chromosomes.length; j++) {
+                Matrix matrix = ds.getMatrix(chromosomes[i], chromosomes[j]);
+                if (matrix == null) continue;
+                for (HiCZoom zoom : zooms) {
+                    MatrixZoomData zd = matrix.getZoomData(zoom);
+                    if (zd != null) {
+                        zds.add(zd);
+                    }
+                }
+            }
+        }
+
+        final List<MatrixZoomData> taskZds = new ArrayList<>();
+        final List<int[]> taskBlocks = new ArrayList<>();
+        long numBlocks = 0;
+        for (MatrixZoomData zd : zds) {
+            List<Integer> blockNumbers = reader.getBlockNumbers(zd);
+            if (blockNumbers == null) continue;
+            Collections.sort(blockNumbers);
+            numBlocks += blockNumbers.size();
+            for (int start = 0; start < blockNumbers.size(); start += BLOCKS_PER_TASK) {
+                List<Integer> range = blockNumbers.subList(start, Math.min(start + BLOCKS_PER_TASK, blockNumbers.size()));
+                int[] blocks = new int[range.size()];
+                for (int k = 0; k < blocks.length; k++) {
+                    blocks[k] = range.get(k);
+                }
+                taskZds.add(zd);
+                taskBlocks.add(blocks);
+            }
+        }
+        System.out.println("Checking " + numBlocks + " blocks in " + zds.size() + " zoom levels on " + numCPUThreads + " thread(s)");
+
+        final long totalBlocks = numBlocks;
+        final AtomicInteger taskIndex = new AtomicInteger(0);
+        final AtomicLong blocksDone = new AtomicLong(0);
+        final AtomicLong bytesDone = new AtomicLong(0);
+        final AtomicLong lastReport = new AtomicLong(System.currentTimeMillis());
+        final long startTime = System.currentTimeMillis();
+        final Queue<String> errors = new ConcurrentLinkedQueue<>();
+
+        ParallelizedJuicerTools.launchParallelizedCode("Deep validation", numCPUThreads, new Runnable() {
+            @Override
+            public void run() {
+                int i = taskIndex.getAndIncrement();
+                while (i < taskZds.size()) {
+                    MatrixZoomData zd = taskZds.get(i);
+                    for (int blockNumber : taskBlocks.get(i)) {
+                        try {
+                            bytesDone.addAndGet(readerV2.verifyBlock(blockNumber, zd, true));
+                        } catch (IOException e) {
+                            errors.add(e.getMessage() + (e.getCause() == null ? "" : ": " + e.getCause()));
+                        }
+                        blocksDone.incrementAndGet();
+                    }
+                    reportProgress(lastReport, startTime, blocksDone.get(), totalBlocks, bytesDone.get());
+                    i = taskIndex.getAndIncrement();
+                }
+            }
+        });
+
+        long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+        System.out.println("Checked " + blocksDone.get() + " blocks (" + toMB(bytesDone.get()) + " MB) in "
+                + (elapsed / 1000.0) + "s, " + toMB(bytesDone.get() * 1000 / elapsed) + " MB/s");
+        if (!errors.isEmpty()) {
+            int shown = 0;
+            for (String error : errors) {
+                if (shown++ == MAX_ERRORS_SHOWN) {
+                    System.err.println("...");
+                    break;
+                }
+                System.err.println(error);
+            }
+            throw new IOException(errors.size() + " of " + totalBlocks + " blocks are corrupt");
+        }
+    }
+
+    private static void reportProgress(AtomicLong lastReport, long startTime, long blocksDone, long totalBlocks, long bytesDone) {
+        long now = System.currentTimeMillis();
+        long last = lastReport.get();
+        if (now - last >= PROGRESS_INTERVAL_MS && lastReport.compareAndSet(last, now)) {
+            long elapsed = Math.max(1, now - startTime);
+            System.out.println(blocksDone + "/" + totalBlocks + " blocks, " + toMB(bytesDone * 1000 / elapsed) + " MB/s");
+        }
+    }
+
+    private static long toMB(long bytes) {
+        return bytes / (1024 * 1024);
+    }
 }
\ No newline at end of file
@@ -25,12 +25,14 @@
 package juicebox.tools.dev;
 
 import juicebox.HiCGlobals;
+import juicebox.data.Block;
 import juicebox.data.ContactRecord;
 import juicebox.data.Dataset;
 import juicebox.data.HiCFileTools;
 import juicebox.data.MatrixZoomData;
 import juicebox.data.basics.Chromosome;
 import juicebox.tools.utils.common.ArrayTools;
+import juicebox.windowui.NormalizationHandler;
 
 import java.io.BufferedWriter;
 import java.io.File;
@@ -40,6 +42,8 @@ import java.util.*;
 
 public class ChromosomeCalculation {
 
+    private static final int DIAGONAL_WINDOW = 1000;
+
     public static void sum(int resolution, int slidingWindow, String filePath, String outputFolder) {
         ArrayList<String> files = new ArrayList<>();
         File outFolder = new File(outputFolder);
@@ -73,7 +77,7 @@ public class ChromosomeCalculation {
                 MatrixZoomData zd = HiCFileTools.getMatrixZoomData(ds, chromosome1, chromosome2, resolution); // 1,000,000 resolution
                 if (zd == null) continue;
                 // do the summing, iterate over contact records in matrixZoomData object
-                sumColumn(zd, chromosomeToColumnSumsMap, chromosomeToDiagonalValueMap, chromosome1, chromosome2);
+                sumColumn(ds, zd, chromosomeToColumnSumsMap, chromosomeToDiagonalValueMap, chromosome1, chromosome2);
             }
         }
 
@@ -142,7 +146,7 @@ public class ChromosomeCalculation {
     }
 
 
-    private static void sumColumn(MatrixZoomData zd,
+    private static void sumColumn(Dataset ds, MatrixZoomData zd,
                                   Map<Chromosome, Map<Integer, Float>> mapOfSums,
                                   Map<Chromosome, Map<Integer, Float>> mapOfDiagValues,
                                   Chromosome chrI,
@@ -152,21 +156,17 @@ public class ChromosomeCalculation {
             Map<Integer, Float> subMapOfSumsForChr = mapOfSums.getOrDefault(chrI, new HashMap<>());
             Map<Integer, Float> subMapOfDiagForChr = mapOfDiagValues.getOrDefault(chrI, new HashMap<>());
 
-            Iterator<ContactRecord> iterator = zd.getIteratorContainer().getNewContactRecordIterator();
-            while (iterator.hasNext()) {
-                ContactRecord contact = iterator.next();
-
-                float count = contact.getCounts();
-                int x = contact.getBinX();
-                int y = contact.getBinY();
-                if (x == y) {
-                    subMapOfSumsForChr.put(x, subMapOfSumsForChr.getOrDefault(x, 0f) + count);
-                    subMapOfDiagForChr.put(x, count);
-                } else {
-                    subMapOfSumsForChr.put(x, subMapOfSumsForChr.getOrDefault(x, 0f) + count);
-                    subMapOfSumsForChr.put(y, subMapOfSumsForChr.getOrDefault(y, 0f) + count);
+            // the row sums are the raw coverage vector, stored in the file by addNorm
+            double[] coverage = ds.getCoverageVector(chrI, zd.getZoom(), NormalizationHandler.NONE, true);
+            if (coverage != null) {
+                for (int x = 0; x < coverage.length; x++) {
+                    if (coverage[x] > 0) {
+                        subMapOfSumsForChr.put(x, subMapOfSumsForChr.getOrDefault(x, 0f) + (float) coverage[x]);
+                    }
                 }
             }
+            addDiagonalValues(zd, subMapOfDiagForChr);
+
             mapOfSums.put(chrI, subMapOfSumsForChr);
             mapOfDiagValues.put(chrI, subMapOfDiagForChr);
         } else {
@@ -180,7 +180,7 @@ public class ChromosomeCalculation {
                 int x = contact.getBinX();
                 int y = contact.getBinY();
                 subMap.put(x, subMap.getOrDefault(x, 0f) + count);
-                subMap2.put(y, subMap.getOrDefault(y, 0f) + count);
+                subMap2.put(y, subMap2.getOrDefault(y, 0f) + count);
             }
             mapOfSums.put(chrI, subMap);
             mapOfSums.put(chrJ, subMap2);
@@ -188,6 +188,25 @@ public class ChromosomeCalculation {
 
     }
 
+    /**
+     * Reads only the blocks along the diagonal, a window of bins at a time
+     */
+    private static void addDiagonalValues(MatrixZoomData zd, Map<Integer, Float> mapOfDiagValues) {
+        long numBins = zd.getChr1().getLength() / zd.getBinSize() + 1;
+        Set<Integer> blocksSeen = new HashSet<>();
+        for (long start = 0; start < numBins; start += DIAGONAL_WINDOW) {
+            long end = Math.min(start + DIAGONAL_WINDOW, numBins) - 1;
+            for (Block block : zd.getNormalizedBlocksOverlapping(start, start, end, end, NormalizationHandler.NONE, false, false)) {
+                if (block == null || !blocksSeen.add(block.getNumber())) continue;
+                for (ContactRecord contact : block.getContactRecords()) {
+                    if (contact.getBinX() == contact.getBinY()) {
+                        mapOfDiagValues.put(contact.getBinX(), contact.getCounts());
+                    }
+                }
+            }
+        }
+    }
+
     public static void calculateLogEnrichmentOfObservedOverExpected(Map<Chromosome, Map<Integer, Float>> map) {
         float total = 0;
         int size = 0;
@@ -24,6 +24,10 @@
 
 package juicebox.tools.dev;
 
+import juicebox.tools.utils.original.mnditerator.AlignmentPair;
+import juicebox.tools.utils.original.mnditerator.CompressedBinPairFile;
+import juicebox.tools.utils.original.mnditerator.CompressedBinPairWriter;
+
 import java.io.*;
 import java.util.*;
 
@@ -52,6 +56,11 @@ class HiCArtMNDWriter {
             //ignored.printStackTrace();
         }
 
+        if (newPath.endsWith(CompressedBinPairFile.EXTENSION)) {
+            writeCompressedBinaryFromTimeSeq(listPositions, distanceLimit, newPath);
+            return;
+        }
+
         try {
             PrintWriter p0 = new PrintWriter(new FileWriter(newPath));
             for (int i = 0; i < listPositions.size(); i++) {
@@ -72,4 +81,28 @@ class HiCArtMNDWriter {
             //ignored.printStackTrace();
         }
     }
+
+    private static void writeCompressedBinaryFromTimeSeq(List<Integer[]> listPositions, int distanceLimit, String newPath) {
+        try {
+            CompressedBinPairWriter writer = new CompressedBinPairWriter(newPath);
+            for (int i = 0; i < listPositions.size(); i++) {
+                Integer[] pos_xy_1 = listPositions.get(i);
+                for (int j = i; j < listPositions.size(); j++) {
+                    Integer[] pos_xy_2 = listPositions.get(j);
+                    double distance = Math.sqrt((pos_xy_1[0] - pos_xy_2[0]) ^ 2 + (pos_xy_1[1] - pos_xy_2[1]) ^ 2);
+                    if (distance < distanceLimit) {
+                        double value = 1. / Math.max(.5, distance);
+                        if (!Double.isNaN(value) && value > 0) {
+                            AlignmentPair pair = new AlignmentPair(true, 0, i, 0, false, 0, j, 1);
+                            pair.setScore((float) value);
+                            writer.add(pair);
+                        }
+                    }
+                }
+            }
+            writer.finish(Collections.singletonList("art"));
+        } catch (IOException ignored) {
+            //ignored.printStackTrace();
+        }
+    }
 }
@@ -24,30 +24,211 @@
 
 package juicebox.tools.dev;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import juicebox.HiCGlobals;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Shared compute runtime for the command line tools.
+ * <p>
+ * All parallel work runs on one fork-join pool sized by --threads (see JuiceboxCLT.updateNumberOfCPUThreads),
+ * so the number of busy threads on a shared node is the requested one no matter how many stages a tool runs
+ * or how they nest. Calls block until every task has finished without polling; the first task to fail
+ * cancels the tasks that have not started yet and its exception is rethrown to the caller. With verbose
+ * output on, named groups of tasks report their progress and timing.
+ */
 public class ParallelizedJuicerTools {
 
+    private static int numThreads = HiCGlobals.getIdealThreadCount();
+    private static ForkJoinPool pool;
+
+    public static synchronized int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * Resizes the shared pool; tasks already running on the old pool are left to finish there
+     */
+    public static synchronized void setNumThreads(int threads) {
+        threads = Math.max(1, threads);
+        if (threads != numThreads) {
+            numThreads = threads;
+            if (pool != null) {
+                pool.shutdown();
+                pool = null;
+            }
+        }
+    }
+
+    private static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(numThreads);
+        }
+        return pool;
+    }
+
     public static void launchParallelizedCode(Runnable runnable) {
-        launchParallelizedCode(Runtime.getRuntime().availableProcessors(), runnable);
+        launchParallelizedCode(getNumThreads(), runnable);
     }
 
-    public static void launchParallelizedCode(int numCPUThreads, Runnable runnable) {
-        ExecutorService executor = Executors.newFixedThreadPool(numCPUThreads);
-        for (int l = 0; l < numCPUThreads; l++) {
-            Runnable worker = new Runnable() {
+    public static void launchParallelizedCode(int numCopies, Runnable runnable) {
+        launchParallelizedCode(null, numCopies, runnable);
+    }
+
+    /**
+     * Runs copies of a worker loop (usually one pulling work off a shared AtomicInteger) and waits for all of them
+     */
+    public static void launchParallelizedCode(String taskName, int numCopies, Runnable runnable) {
+        runAll(taskName, Collections.nCopies(Math.max(1, numCopies), runnable));
+    }
+
+    public static void runAll(String taskName, List<? extends Runnable> runnables) {
+        List<Callable<Object>> tasks = new ArrayList<>(runnables.size());
+        for (Runnable runnable : runnables) {
+            tasks.add(Executors.callable(runnable));
+        }
+        invokeAll(taskName, tasks);
+    }
+
+    /**
+     * Runs the tasks on the shared pool and waits for all of them.
+     *
+     * @param taskName name used for progress and timing output, or null to run quietly
+     * @return the results, in the order of the tasks
+     */
+    public static <T> List<T> invokeAll(String taskName, List<? extends Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (tasks.isEmpty()) return results;
+
+        TaskGroup group = new TaskGroup(taskName, tasks.size());
+        ForkJoinPool currentPool = getPool();
+        boolean nested = ForkJoinTask.getPool() == currentPool;
+        List<ForkJoinTask<T>> submitted = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            ForkJoinTask<T> fjTask = ForkJoinTask.adapt(group.wrap(task));
+            if (nested) {
+                fjTask.fork();
+            } else {
+                currentPool.execute(fjTask);
+            }
+            submitted.add(fjTask);
+        }
+
+        // joining from a pool thread runs queued tasks instead of blocking it
+        for (ForkJoinTask<T> fjTask : submitted) {
+            fjTask.quietlyJoin();
+        }
+
+        Throwable failure = group.failure.get();
+        if (failure != null) {
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            throw new RuntimeException((taskName == null ? "Parallel task" : taskName) + " failed", failure);
+        }
+        for (ForkJoinTask<T> fjTask : submitted) {
+            results.add(fjTask.getRawResult());
+        }
+        group.reportTiming();
+        return results;
+    }
+
+    /**
+     * Hands a single task to the shared pool; for callers that consume results in order through a bounded
+     * window of futures
+     */
+    public static <T> Future<T> submit(Callable<T> task) {
+        return getPool().submit(task);
+    }
+
+    /**
+     * Waits for the latch; when called from a pool thread, the pool starts a spare thread in the meantime
+     * so tasks waiting on each other cannot starve it
+     */
+    public static void await(final CountDownLatch latch) throws InterruptedException {
+        ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+            @Override
+            public boolean block() throws InterruptedException {
+                latch.await();
+                return true;
+            }
+
+            @Override
+            public boolean isReleasable() {
+                return latch.getCount() == 0;
+            }
+        });
+    }
+
+    private static class TaskGroup {
+        private final String name;
+        private final int numTasks;
+        private final long startTime = System.nanoTime();
+        private final AtomicInteger numCompleted = new AtomicInteger(0);
+        private final AtomicLong longestTask = new AtomicLong(0);
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private volatile boolean cancelled = false;
+        private int lastReportedTenth = 0;
+
+        TaskGroup(String name, int numTasks) {
+            this.name = name;
+            this.numTasks = numTasks;
+        }
+
+        <T> Callable<T> wrap(final Callable<T> task) {
+            return new Callable<T>() {
                 @Override
-                public void run() {
-                    runnable.run();
+                public T call() throws Exception {
+                    if (cancelled) return null;
+                    long taskStart = System.nanoTime();
+                    try {
+                        return task.call();
+                    } catch (Exception | Error e) {
+                        failure.compareAndSet(null, e);
+                        cancelled = true;
+                        throw e;
+                    } finally {
+                        updateLongestTask(System.nanoTime() - taskStart);
+                        reportProgress(numCompleted.incrementAndGet());
+                    }
                 }
             };
-            executor.execute(worker);
         }
-        executor.shutdown();
 
-        // Wait until all threads finish
-        while (!executor.isTerminated()) {
+        private void updateLongestTask(long elapsed) {
+            long longest = longestTask.get();
+            while (elapsed > longest && !longestTask.compareAndSet(longest, elapsed)) {
+                longest = longestTask.get();
+            }
+        }
+
+        private boolean isReported() {
+            return name != null && HiCGlobals.printVerboseComments;
+        }
+
+        private synchronized void reportProgress(int completed) {
+            int tenth = completed * 10 / numTasks;
+            if (isReported() && numTasks >= 10 && completed < numTasks && tenth > lastReportedTenth) {
+                lastReportedTenth = tenth;
+                System.out.println(name + ": " + (tenth * 10) + "% of " + numTasks + " tasks done");
+            }
+        }
+
+        void reportTiming() {
+            if (isReported()) {
+                System.out.println(name + ": " + numTasks + " task(s) on " + getNumThreads() + " thread(s) in "
+                        + toSeconds(System.nanoTime() - startTime) + "s (longest task " + toSeconds(longestTask.get()) + "s)");
+            }
+        }
+
+        private static String toSeconds(long nanos) {
+            return String.format("%.2f", nanos / 1e9);
         }
     }
 }
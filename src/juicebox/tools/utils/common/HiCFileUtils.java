@@ -69,10 +69,8 @@ class HiCFileUtils {
             System.out.println(data[i]);
         }
         */
-        for (double[] array : nv.getData().getValues()) {
-            for (double datum : array) {
-                System.out.println(datum);
-            }
+        for (long i = 0; i < nv.getLength(); i++) {
+            System.out.println(nv.get(i));
         }
     }
 
@@ -213,11 +213,10 @@ public class HiCCUPSUtils {
         if (normVectorContainer == null) {
             HiCFileTools.triggerNormError(norm);
         } else {
-            double[] normalizationVector = normVectorContainer.getData().getValues().get(0);
             for (Feature2D feature : list) {
                 int index1 = (int) (feature.getStart1() / res);
                 int index2 = (int) (feature.getStart2() / res);
-                if (nearbyValuesClear(normalizationVector, index1) && nearbyValuesClear(normalizationVector, index2)) {
+                if (nearbyValuesClear(normVectorContainer, index1) && nearbyValuesClear(normVectorContainer, index2)) {
                     features.add(feature);
                 }
             }
@@ -226,78 +225,162 @@ public class HiCCUPSUtils {
         return features;
     }
 
-    private static boolean nearbyValuesClear(double[] normalizationVector, int index) {
+    private static boolean nearbyValuesClear(NormalizationVector normalizationVector, int index) {
         for (int i = index - HiCCUPS.krNeighborhood; i <= index + HiCCUPS.krNeighborhood; i++) {
-            if (Double.isNaN(normalizationVector[i]))
+            if (Double.isNaN(normalizationVector.get(i)))
                 return false;
         }
         return true;
     }
 
     /**
+     * Pixels are visited once in descending order of observed value (see Feature2D). Each unclaimed pixel
+     * seeds a cluster which absorbs, in that same order, every later pixel within the cluster radius of
+     * the running centroid; the radius grows with the cluster. Candidates are looked up through a grid
+     * with cells the size of the original radius, taking the next-ranked pixel in range each time, which
+     * gives the same clusters as scanning the whole remaining list.
+     *
      * @return list of pixels coalesced to centroid of enriched region
      */
     private static List<Feature2D> coalescePixelsToCentroid(int resolution, List<Feature2D> feature2DList,
                                                             int originalClusterRadius) {
-        // HashSet intermediate for removing duplicates; LinkedList used so that we can pop out highest obs values
-        LinkedList<Feature2D> featureLL = new LinkedList<>(new HashSet<>(feature2DList));
+        // HashSet intermediate for removing duplicates
+        List<Feature2D> pixels = new ArrayList<>(new HashSet<>(feature2DList));
+        // See Feature2D; highest obs values first
+        Collections.sort(pixels);
+        Collections.reverse(pixels);
+
+        int n = pixels.size();
+        long[] starts1 = new long[n];
+        long[] starts2 = new long[n];
+        for (int i = 0; i < n; i++) {
+            starts1[i] = pixels.get(i).getStart1();
+            starts2[i] = pixels.get(i).getStart2();
+        }
+        PixelGrid grid = new PixelGrid(starts1, starts2, Math.max(1, originalClusterRadius));
+        boolean[] claimed = new boolean[n];
+        int[] members = new int[n];
         List<Feature2D> coalesced = new ArrayList<>();
 
-        while (!featureLL.isEmpty()) {
-    
-            // See Feature2D
-            Collections.sort(featureLL);
-            Collections.reverse(featureLL);
-    
-            Feature2D pixel = featureLL.pollFirst();
-            featureLL.remove(pixel);
-            List<Feature2D> pixelList = new ArrayList<>();
-            pixelList.add(pixel);
-    
+        for (int seed = 0; seed < n; seed++) {
+            if (claimed[seed]) continue;
+            Feature2D pixel = pixels.get(seed);
+            claimed[seed] = true;
+            members[0] = seed;
+            int numMembers = 1;
+
+            // running sums are accumulated in the same order as the cluster's members
+            double totalX = starts1[seed];
+            double totalY = starts2[seed];
             int pixelListX = (int) pixel.getStart1();
             int pixelListY = (int) pixel.getStart2();
             double r = 0;
             double pixelClusterRadius = originalClusterRadius;
-    
-            for (Feature2D px : featureLL) {
-                // TODO should likely reduce radius or at least start with default?
-                //System.out.println("Radius " + HiCCUPS.pixelClusterRadius);
-                if (hypotenuse(pixelListX - px.getStart1(), pixelListY - px.getStart2()) <= pixelClusterRadius) {
-                    pixelList.add(px);
-                    pixelListX = mean(pixelList, 1);
-                    pixelListY = mean(pixelList, 2);
-
-                    List<Double> distances = new ArrayList<>();
-                    for (Feature2D px2 : pixelList) {
-                        double dist = hypotenuse(pixelListX - px2.getStart1(), pixelListY - px2.getStart2());
-                        if (Double.isNaN(dist) || dist < 0) {
-                            System.err.println("Invalid distance while merging centroid");
-                            System.exit(29);
-                        }
-                        distances.add(dist);
+
+            int rank = seed;
+            while ((rank = grid.nextWithinRadius(rank, pixelListX, pixelListY, pixelClusterRadius, claimed)) >= 0) {
+                claimed[rank] = true;
+                members[numMembers++] = rank;
+                totalX += starts1[rank];
+                totalY += starts2[rank];
+                pixelListX = (int) (totalX / numMembers);
+                pixelListY = (int) (totalY / numMembers);
+
+                double maxDistance = 0;
+                for (int m = 0; m < numMembers; m++) {
+                    double dist = hypotenuse(pixelListX - starts1[members[m]], pixelListY - starts2[members[m]]);
+                    if (Double.isNaN(dist) || dist < 0) {
+                        System.err.println("Invalid distance while merging centroid");
+                        System.exit(29);
                     }
-                    //System.out.println("Radii "+distances);
-                    r = Math.round(Collections.max(distances));
-            
-                    pixelClusterRadius = originalClusterRadius + r;
+                    maxDistance = Math.max(maxDistance, dist);
                 }
+                r = Math.round(maxDistance);
+
+                pixelClusterRadius = originalClusterRadius + r;
             }
-    
+
             pixel.setEnd1((int) pixel.getStart1() + resolution);
             pixel.setEnd2((int) pixel.getStart2() + resolution);
             pixel.addIntAttribute(RADIUS, (int) Math.round(r));
             pixel.addIntAttribute(CENTROID1, (pixelListX + resolution / 2));
             pixel.addIntAttribute(CENTROID2, (pixelListY + resolution / 2));
-            pixel.addIntAttribute(NUMCOLLAPSED, (pixelList.size()));
+            pixel.addIntAttribute(NUMCOLLAPSED, numMembers);
             setPixelColor(pixel);
             coalesced.add(pixel);
-    
-            featureLL.removeAll(pixelList);
         }
 
         return coalesced;
     }
 
+    /**
+     * Uniform grid over pixel positions; each cell holds the ranks of its pixels in ascending order.
+     */
+    private static class PixelGrid {
+        private final long[] starts1, starts2;
+        private final int cellSize;
+        private final Map<Long, int[]> cells = new HashMap<>();
+
+        PixelGrid(long[] starts1, long[] starts2, int cellSize) {
+            this.starts1 = starts1;
+            this.starts2 = starts2;
+            this.cellSize = cellSize;
+
+            Map<Long, Integer> counts = new HashMap<>();
+            for (int i = 0; i < starts1.length; i++) {
+                Long key = cellKey(cell(starts1[i]), cell(starts2[i]));
+                Integer count = counts.get(key);
+                counts.put(key, count == null ? 1 : count + 1);
+            }
+            Map<Long, Integer> filled = new HashMap<>();
+            for (Map.Entry<Long, Integer> entry : counts.entrySet()) {
+                cells.put(entry.getKey(), new int[entry.getValue()]);
+                filled.put(entry.getKey(), 0);
+            }
+            for (int i = 0; i < starts1.length; i++) {
+                Long key = cellKey(cell(starts1[i]), cell(starts2[i]));
+                int index = filled.get(key);
+                cells.get(key)[index] = i;
+                filled.put(key, index + 1);
+            }
+        }
+
+        private static long cellKey(long cellX, long cellY) {
+            return (cellX << 32) ^ (cellY & 0xFFFFFFFFL);
+        }
+
+        private long cell(long position) {
+            return Math.floorDiv(position, cellSize);
+        }
+
+        /**
+         * @return lowest unclaimed rank greater than afterRank within radius of (x, y), or -1 if none
+         */
+        int nextWithinRadius(int afterRank, int x, int y, double radius, boolean[] claimed) {
+            long reach = (long) Math.ceil(radius);
+            long minCellX = cell(x - reach), maxCellX = cell(x + reach);
+            long minCellY = cell(y - reach), maxCellY = cell(y + reach);
+            int best = -1;
+            for (long cx = minCellX; cx <= maxCellX; cx++) {
+                for (long cy = minCellY; cy <= maxCellY; cy++) {
+                    int[] ranks = cells.get(cellKey(cx, cy));
+                    if (ranks == null) continue;
+                    int k = Arrays.binarySearch(ranks, afterRank + 1);
+                    if (k < 0) k = -k - 1;
+                    for (; k < ranks.length; k++) {
+                        int rank = ranks[k];
+                        if (best >= 0 && rank >= best) break;
+                        if (!claimed[rank] && hypotenuse(x - starts1[rank], y - starts2[rank]) <= radius) {
+                            best = rank;
+                            break;
+                        }
+                    }
+                }
+            }
+            return best;
+        }
+    }
+
     private static void setPixelColor(Feature2D pixel) {
         Color c = HiCCUPS.defaultPeakColor;
         if (HiCCUPS.shouldColorBeScaledByFDR) {
@@ -353,18 +436,6 @@ public class HiCCUPSUtils {
 
 
 
-    private static int mean(List<Feature2D> pixelList, int i) {
-        int n = pixelList.size();
-        double total = 0;
-        for (Feature2D px : pixelList) {
-            if (i == 1)
-                total += px.getStart1();
-            else if (i == 2)
-                total += px.getStart2();
-        }
-        return (int) (total / n);
-    }
-
     public static double hypotenuse(double x, double y) {
         return Math.sqrt(x * x + y * y);
     }
@@ -30,6 +30,7 @@ import juicebox.data.*;
 import juicebox.data.basics.Chromosome;
 import juicebox.data.basics.ListOfDoubleArrays;
 import juicebox.gui.SuperAdapter;
+import juicebox.tools.dev.ParallelizedJuicerTools;
 import juicebox.tools.utils.original.ExpectedValueCalculation;
 import juicebox.windowui.HiCZoom;
 import juicebox.windowui.NormalizationHandler;
@@ -39,7 +40,6 @@ import org.broad.igv.tdf.BufferedByteWriter;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
 import java.util.zip.GZIPInputStream;
 
 public class CustomNormVectorFileHandler extends NormVectorUpdater {
@@ -52,7 +52,7 @@ public class CustomNormVectorFileHandler extends NormVectorUpdater {
         String[] vectorPaths = vectorPath.split(",");
         NormVectorInfo normVectorInfo = completeCalculationsNecessaryForUpdatingCustomNormalizations(ds, vectorPaths, true);
         writeNormsToUpdateFile(reader, path, false, null, normVectorInfo.getExpectedValueFunctionMap(),
-                normVectorInfo.getNormVectorIndices(), normVectorInfo.getNormVectorBuffers(), "Finished adding another normalization.");
+                normVectorInfo.getNormVectorIndices(), normVectorInfo.getNormVectorBuffers(), null, "Finished adding another normalization.");
 
         System.out.println("all custom norms added");
     }
@@ -136,7 +136,7 @@ public class CustomNormVectorFileHandler extends NormVectorUpdater {
             }
         }
 
-        ExecutorService executor = HiCGlobals.newFixedThreadPool();
+        List<Runnable> workers = new ArrayList<>();
         for (NormalizationType customNormType : normalizationVectorMap.keySet()) {
             final Map<String, NormalizationVector> normVectorsByChrAndZoom = normalizationVectorMap.get(customNormType);
             final Set<String> keySet = new HashSet<>(normVectorsByChrAndZoom.keySet());
@@ -167,15 +167,11 @@ public class CustomNormVectorFileHandler extends NormVectorUpdater {
                             }
                         }
                     };
-                    executor.execute(worker);
+                    workers.add(worker);
                 }
             }
         }
-
-        executor.shutdown();
-        // Wait until all threads finish
-        while (!executor.isTerminated()) {
-        }
+        ParallelizedJuicerTools.runAll("Scaling custom norms", workers);
 
         for (HiCZoom zoom : resolutions) {
             Map<String, Integer> fcm = zoom.getUnit() == HiC.Unit.FRAG ? fragCountMap : null;
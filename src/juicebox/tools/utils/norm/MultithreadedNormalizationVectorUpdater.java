@@ -29,6 +29,8 @@ import juicebox.HiCGlobals;
 import juicebox.data.*;
 import juicebox.data.basics.Chromosome;
 import juicebox.data.basics.ListOfFloatArrays;
+import juicebox.data.iterator.IteratorContainer;
+import juicebox.tools.dev.ParallelizedJuicerTools;
 import juicebox.tools.utils.original.ExpectedValueCalculation;
 import juicebox.windowui.HiCZoom;
 import juicebox.windowui.NormalizationHandler;
@@ -37,22 +39,22 @@ import org.broad.igv.tdf.BufferedByteWriter;
 
 import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Builds the intra-chromosomal normalizations of every zoom at once. Each (zoom, chromosome) matrix is one task;
+ * all tasks go into one queue, largest matrix first, so a big chromosome at a fine resolution starts early
+ * instead of holding up the end of its zoom while the other threads idle.
+ * <p>
+ * Each task holds one or more of numCPUThreads slots. Small matrices take a single slot; when the memory estimate
+ * says only a few matrices of a given size can be normalized at once, the task takes proportionally more slots,
+ * which both limits how many of them run together and gives its KR matrix-vector products the matching number
+ * of threads. Vectors and per-chromosome expected values are written afterwards in the same order as before.
+ */
 public class MultithreadedNormalizationVectorUpdater extends NormalizationVectorUpdater {
-    protected Set<Chromosome> synckrBPFailedChromosomes = Collections.synchronizedSet(krBPFailedChromosomes);
-    protected Set<Chromosome> synckrFragFailedChromosomes = Collections.synchronizedSet(krFragFailedChromosomes);
-    protected Set<Chromosome> syncmmbaBPFailedChromosomes = Collections.synchronizedSet(mmbaBPFailedChromosomes);
-    protected Set<Chromosome> syncmmbaFragFailedChromosomes = Collections.synchronizedSet(mmbaFragFailedChromosomes);
-
-    protected Map<HiCZoom, Set<Chromosome>> zoomSpecifickrBPFailedChromsomes = new ConcurrentHashMap<>();
-    protected Map<HiCZoom, Set<Chromosome>> zoomSpecifickrFragFailedChromsomes = new ConcurrentHashMap<>();
-    protected Map<HiCZoom, Set<Chromosome>> zoomSpecificmmbaBPFailedChromsomes = new ConcurrentHashMap<>();
-    protected Map<HiCZoom, Set<Chromosome>> zoomSpecificmmbaFragFailedChromsomes = new ConcurrentHashMap<>();
-
+    // rough upper bound for contacts per row, used to guess the size of a matrix before it is read
+    private static final long ESTIMATED_MAX_CONTACTS_PER_ROW = 1000;
 
     protected static int numCPUThreads = 1;
 
@@ -82,6 +84,10 @@ public class MultithreadedNormalizationVectorUpdater extends NormalizationVector
         reEvaluateWhichIntraNormsToBuild(normalizationsToBuild);
 
         normVectorBuffers.add(new BufferedByteWriter());
+
+        List<HiCZoom> zoomsToBuild = new ArrayList<>();
+        Map<HiCZoom, ZoomNormResults> allZoomResults = new HashMap<>();
+        List<NormalizationTask> tasks = new ArrayList<>();
         for (HiCZoom zoom : resolutions) {
             if (zoom.getBinSize() < minResolution) {
                 System.out.println("skipping zoom" + zoom);
@@ -89,15 +95,34 @@ public class MultithreadedNormalizationVectorUpdater extends NormalizationVector
             }
             if (noFrag && zoom.getUnit() == HiC.Unit.FRAG) continue;
 
+            zoomsToBuild.add(zoom);
+            allZoomResults.put(zoom, new ZoomNormResults());
+            Map<String, Integer> fcm = zoom.getUnit() == HiC.Unit.FRAG ? fragCountMap : null;
+            for (Chromosome chr : chromosomeHandler.getChromosomeArrayWithoutAllByAll()) {
+                tasks.add(new NormalizationTask(zoom, chr, getNumberOfRows(chr, zoom, fcm)));
+            }
+        }
+        tasks.sort((t1, t2) -> Long.compare(t2.numRows, t1.numRows));
+
+        System.out.println();
+        System.out.println("Calculating norms for " + tasks.size() + " matrices across " + zoomsToBuild.size() + " zooms");
+        runNormalizationTasks(path, tasks, allZoomResults, chromosomeHandler, fragCountMap, resolutionsToBuildTo);
+
+        // chromosomes that failed at a coarser zoom are not written at finer ones, regardless of which finished first
+        Set<Chromosome> krBPFailedAtCoarserZoom = new HashSet<>();
+        Set<Chromosome> krFragFailedAtCoarserZoom = new HashSet<>();
+        Set<Chromosome> mmbaBPFailedAtCoarserZoom = new HashSet<>();
+        Set<Chromosome> mmbaFragFailedAtCoarserZoom = new HashSet<>();
+
+        for (HiCZoom zoom : zoomsToBuild) {
+            ZoomNormResults results = allZoomResults.get(zoom);
+
             // compute genome-wide normalizations
             if (zoom.getUnit() == HiC.Unit.BP && zoom.getBinSize() >= genomeWideLowestResolutionAllowed) {
                 GenomeWideNormalizationVectorUpdater.updateHicFileForGWfromPreAddNormOnly(ds, zoom, normalizationsToBuild, resolutionsToBuildTo,
                         normVectorIndices, normVectorBuffers, expectedValueCalculations);
             }
 
-            System.out.println();
-            System.out.print("Calculating norms for zoom " + zoom);
-
             Map<String, Integer> fcm = zoom.getUnit() == HiC.Unit.FRAG ? fragCountMap : null;
 
             ExpectedValueCalculation evVC = new ExpectedValueCalculation(chromosomeHandler, zoom.getBinSize(), fcm, NormalizationHandler.VC);
@@ -105,102 +130,44 @@ public class MultithreadedNormalizationVectorUpdater extends NormalizationVector
             ExpectedValueCalculation evKR = new ExpectedValueCalculation(chromosomeHandler, zoom.getBinSize(), fcm, NormalizationHandler.KR);
             ExpectedValueCalculation evSCALE = new ExpectedValueCalculation(chromosomeHandler, zoom.getBinSize(), fcm, NormalizationHandler.SCALE);
 
-            Map<Integer, Double> withinZoomVCSumFactors = new ConcurrentHashMap<>();
-            Map<Integer, Double> withinZoomVCSQRTSumFactors = new ConcurrentHashMap<>();
-            Map<Integer, Double> withinZoomKRSumFactors = new ConcurrentHashMap<>();
-            Map<Integer, Double> withinZoomSCALESumFactors = new ConcurrentHashMap<>();
-            Map<Integer, ListOfFloatArrays> withinZoomVCVectors = new ConcurrentHashMap<>();
-            Map<Integer, ListOfFloatArrays> withinZoomVCSQRTVectors = new ConcurrentHashMap<>();
-            Map<Integer, ListOfFloatArrays> withinZoomKRVectors = new ConcurrentHashMap<>();
-            Map<Integer, ListOfFloatArrays> withinZoomSCALEVectors = new ConcurrentHashMap<>();
-
-            final AtomicInteger chromosomeIndex = new AtomicInteger(0);
-
-            Set<Chromosome> withinZoomSynckrBPFailedChromosomes = Collections.synchronizedSet(new HashSet<>());
-            Set<Chromosome> withinZoomSynckrFragFailedChromosomes = Collections.synchronizedSet(new HashSet<>());
-            Set<Chromosome> withinZoomSyncmmbaBPFailedChromosomes = Collections.synchronizedSet(new HashSet<>());
-            Set<Chromosome> withinZoomSyncmmbaFragFailedChromosomes = Collections.synchronizedSet(new HashSet<>());
-
-            Map<Integer, MatrixZoomData> allChrZoomData = new ConcurrentHashMap<>();
-
-            ExecutorService executor = Executors.newFixedThreadPool(numCPUThreads);
-            for (int l = 0; l < numCPUThreads; l++) {
-                final int threadNum = l;
-
-                Runnable worker = new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            DatasetReaderV2 localReader;
-                            Dataset localds;
-                            ChromosomeHandler localChromosomeHandler;
-                            synchronized(this){
-                                localReader = new DatasetReaderV2(path);
-                                localds = localReader.read();
-                                localChromosomeHandler = localds.getChromosomeHandler();
-                            }
-                            runIndividualChromosomeCode(chromosomeIndex, localds, localChromosomeHandler, zoom, resolutionsToBuildTo,
-                                    withinZoomVCSumFactors, withinZoomVCSQRTSumFactors, withinZoomKRSumFactors, withinZoomSCALESumFactors,
-                                    withinZoomVCVectors, withinZoomVCSQRTVectors, withinZoomKRVectors, withinZoomSCALEVectors,
-                                    withinZoomSynckrBPFailedChromosomes, withinZoomSynckrFragFailedChromosomes, withinZoomSyncmmbaBPFailedChromosomes,
-                                    withinZoomSyncmmbaFragFailedChromosomes, allChrZoomData, threadNum);
-                        } catch (IOException e) {
-                            System.err.println("Error: " + e);
-                        }
-                    }
-                    //}
-                };
-                executor.execute(worker);
-            }
-
-            executor.shutdown();
-
-            // Wait until all threads finish
-            while (!executor.isTerminated()) {
-            }
-
+            Set<Chromosome> krFailedAtCoarserZoom = zoom.getUnit() == HiC.Unit.FRAG ? krFragFailedAtCoarserZoom : krBPFailedAtCoarserZoom;
+            Set<Chromosome> mmbaFailedAtCoarserZoom = zoom.getUnit() == HiC.Unit.FRAG ? mmbaFragFailedAtCoarserZoom : mmbaBPFailedAtCoarserZoom;
+            Set<Chromosome> withinZoomFailureSetKR = zoom.getUnit() == HiC.Unit.FRAG ? results.krFragFailedChromosomes : results.krBPFailedChromosomes;
+            Set<Chromosome> withinZoomFailureSetMMBA = zoom.getUnit() == HiC.Unit.FRAG ? results.mmbaFragFailedChromosomes : results.mmbaBPFailedChromosomes;
 
             // Loop through chromosomes
             for (Chromosome chr : chromosomeHandler.getChromosomeArrayWithoutAllByAll()) {
 
-                if (allChrZoomData.get(chr.getIndex()) == null) continue;
-
+                if (!results.chromosomesWithData.contains(chr.getIndex())) continue;
+                addCoverageVector(chr.getIndex(), NormalizationHandler.NONE, zoom, results);
 
                 if (weShouldBuildVC && zoom.getBinSize() >= resolutionsToBuildTo.get(NormalizationHandler.VC)) {
-                    if (withinZoomVCSumFactors.get(chr.getIndex())!=null&&withinZoomVCVectors.get(chr.getIndex())!=null) {
-                        updateExpectedValueCalculationForChr(chr.getIndex(), withinZoomVCSumFactors.get(chr.getIndex()),
-                                withinZoomVCVectors.get(chr.getIndex()), NormalizationHandler.VC,
-                                zoom, allChrZoomData.get(chr.getIndex()), evVC, normVectorBuffers, normVectorIndices);
-                    }
+                    writeVectorForChr(chr.getIndex(), results.vcVectors, results.vcExpected, NormalizationHandler.VC, zoom, evVC, results);
                 }
                 if (weShouldBuildVCSqrt && zoom.getBinSize() >= resolutionsToBuildTo.get(NormalizationHandler.VC_SQRT)) {
-                    if (withinZoomVCSQRTSumFactors.get(chr.getIndex())!=null&&withinZoomVCSQRTVectors.get(chr.getIndex())!=null) {
-                        updateExpectedValueCalculationForChr(chr.getIndex(), withinZoomVCSQRTSumFactors.get(chr.getIndex()),
-                                withinZoomVCSQRTVectors.get(chr.getIndex()), NormalizationHandler.VC_SQRT,
-                                zoom, allChrZoomData.get(chr.getIndex()), evVCSqrt, normVectorBuffers, normVectorIndices);
-                    }
+                    writeVectorForChr(chr.getIndex(), results.vcSqrtVectors, results.vcSqrtExpected, NormalizationHandler.VC_SQRT, zoom, evVCSqrt, results);
                 }
 
                 // KR normalization
                 if (weShouldBuildKR && zoom.getBinSize() >= resolutionsToBuildTo.get(NormalizationHandler.KR)) {
-                    Set<Chromosome> withinZoomFailureSetKR = zoom.getUnit() == HiC.Unit.FRAG ? withinZoomSynckrFragFailedChromosomes : withinZoomSynckrBPFailedChromosomes;
-                    if (!withinZoomFailureSetKR.contains(chr)&&withinZoomKRSumFactors.get(chr.getIndex())!=null&&withinZoomKRVectors.get(chr.getIndex())!=null) {
-                        updateExpectedValueCalculationForChr(chr.getIndex(), withinZoomKRSumFactors.get(chr.getIndex()),
-                                withinZoomKRVectors.get(chr.getIndex()), NormalizationHandler.KR,
-                                zoom, allChrZoomData.get(chr.getIndex()), evKR, normVectorBuffers, normVectorIndices);
+                    if (krFailedAtCoarserZoom.contains(chr)) {
+                        withinZoomFailureSetKR.add(chr);
+                    } else if (!withinZoomFailureSetKR.contains(chr)) {
+                        writeVectorForChr(chr.getIndex(), results.krVectors, results.krExpected, NormalizationHandler.KR, zoom, evKR, results);
                     }
                 }
 
                 // Fast scaling normalization
                 if (weShouldBuildScale && zoom.getBinSize() >= resolutionsToBuildTo.get(NormalizationHandler.SCALE)) {
-                    Set<Chromosome> withinZoomFailureSetMMBA = zoom.getUnit() == HiC.Unit.FRAG ? withinZoomSyncmmbaFragFailedChromosomes : withinZoomSyncmmbaBPFailedChromosomes;
-                    if (!withinZoomFailureSetMMBA.contains(chr)&&withinZoomSCALESumFactors.get(chr.getIndex())!=null&&withinZoomSCALEVectors.get(chr.getIndex())!=null) {
-                        updateExpectedValueCalculationForChr(chr.getIndex(), withinZoomSCALESumFactors.get(chr.getIndex()),
-                                withinZoomSCALEVectors.get(chr.getIndex()), NormalizationHandler.SCALE,
-                                zoom, allChrZoomData.get(chr.getIndex()), evSCALE, normVectorBuffers, normVectorIndices);
+                    if (mmbaFailedAtCoarserZoom.contains(chr)) {
+                        withinZoomFailureSetMMBA.add(chr);
+                    } else if (!withinZoomFailureSetMMBA.contains(chr)) {
+                        writeVectorForChr(chr.getIndex(), results.scaleVectors, results.scaleExpected, NormalizationHandler.SCALE, zoom, evSCALE, results);
                     }
                 }
             }
+            krFailedAtCoarserZoom.addAll(withinZoomFailureSetKR);
+            mmbaFailedAtCoarserZoom.addAll(withinZoomFailureSetMMBA);
 
             if (weShouldBuildVC && evVC.hasData() && zoom.getBinSize() >= resolutionsToBuildTo.get(NormalizationHandler.VC)) {
                 expectedValueCalculations.add(evVC);
@@ -214,22 +181,87 @@ public class MultithreadedNormalizationVectorUpdater extends NormalizationVector
             if (weShouldBuildScale && evSCALE.hasData() && zoom.getBinSize() >= resolutionsToBuildTo.get(NormalizationHandler.SCALE)) {
                 expectedValueCalculations.add(evSCALE);
             }
-
-
         }
         writeNormsToUpdateFile(reader, path, true, expectedValueCalculations, null, normVectorIndices,
-                normVectorBuffers, "Finished writing norms");
+                normVectorBuffers, coverageVectors, "Finished writing norms");
 
     }
 
-    protected static void updateExpectedValueCalculationForChr(final int chrIdx, double factor, ListOfFloatArrays vec, NormalizationType type, HiCZoom zoom, MatrixZoomData zd,
-                                                               ExpectedValueCalculation ev, List<BufferedByteWriter> normVectorBuffers, List<NormalizationVectorIndexEntry> normVectorIndex) throws IOException {
-        vec.multiplyEverythingBy(factor);
+    private void runNormalizationTasks(String path, List<NormalizationTask> tasks, Map<HiCZoom, ZoomNormResults> allZoomResults,
+                                       ChromosomeHandler chromosomeHandler, Map<String, Integer> fragCountMap,
+                                       Map<NormalizationType, Integer> resolutionsToBuildTo) {
+        final AtomicInteger taskIndex = new AtomicInteger(0);
+        // fair, so a task waiting for several slots is not overtaken by the single-slot tasks behind it
+        final Semaphore slots = new Semaphore(numCPUThreads, true);
+        final Object readerLock = new Object();
+
+        ParallelizedJuicerTools.launchParallelizedCode("Normalization", numCPUThreads, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Dataset localds;
+                    synchronized (readerLock) {
+                        localds = new DatasetReaderV2(path).read();
+                    }
+                    int i = taskIndex.getAndIncrement();
+                    while (i < tasks.size()) {
+                        NormalizationTask task = tasks.get(i);
+                        slots.acquireUninterruptibly(task.numSlots);
+                        try {
+                            Map<String, Integer> fcm = task.zoom.getUnit() == HiC.Unit.FRAG ? fragCountMap : null;
+                            runNormalizationTask(task, localds, chromosomeHandler, fcm, resolutionsToBuildTo,
+                                    allZoomResults.get(task.zoom));
+                        } finally {
+                            slots.release(task.numSlots);
+                        }
+                        i = taskIndex.getAndIncrement();
+                    }
+                } catch (IOException e) {
+                    System.err.println("Error: " + e);
+                }
+            }
+        });
+    }
 
-        updateNormVectorIndexWithVector(normVectorIndex, normVectorBuffers, vec, chrIdx, type, zoom);
+    private static long getNumberOfRows(Chromosome chr, HiCZoom zoom, Map<String, Integer> fragCountMap) {
+        long length = chr.getLength();
+        if (fragCountMap != null) {
+            Integer numFrags = fragCountMap.get(chr.getName());
+            length = numFrags == null ? 0 : numFrags;
+        }
+        return length / zoom.getBinSize() + 1;
+    }
 
-        ev.addDistancesFromIterator(chrIdx, zd.getIteratorContainer(), vec);
+    /**
+     * @return how many of the numCPUThreads slots a matrix with this many rows should hold,
+     * so that the matrices running together are expected to fit in memory
+     */
+    private static int getNumberOfSlots(long numRows) {
+        long estimatedContacts = Math.min(numRows * (numRows + 1) / 2, numRows * ESTIMATED_MAX_CONTACTS_PER_ROW);
+        int numConcurrent = numCPUThreads;
+        while (numConcurrent > 1 &&
+                !IteratorContainer.getIsThereEnoughMemoryForNormCalculation(numRows, estimatedContacts, numConcurrent)) {
+            numConcurrent--;
+        }
+        return (numCPUThreads + numConcurrent - 1) / numConcurrent;
+    }
 
+    private void writeVectorForChr(int chrIdx, Map<Integer, ListOfFloatArrays> vectors,
+                                   Map<Integer, ExpectedValueCalculation> chrExpected, NormalizationType type,
+                                   HiCZoom zoom, ExpectedValueCalculation ev, ZoomNormResults results) throws IOException {
+        ListOfFloatArrays vec = vectors.get(chrIdx);
+        ExpectedValueCalculation evForChr = chrExpected.get(chrIdx);
+        if (vec == null || evForChr == null) return;
+        updateNormVectorIndexWithVector(normVectorIndices, normVectorBuffers, vec, chrIdx, type, zoom);
+        ev.merge(evForChr);
+        addCoverageVector(chrIdx, type, zoom, results);
+    }
+
+    private void addCoverageVector(int chrIdx, NormalizationType type, HiCZoom zoom, ZoomNormResults results) {
+        Map<NormalizationType, float[]> coverage = results.coverageVectors.get(chrIdx);
+        if (coverage != null && coverage.get(type) != null) {
+            coverageVectors.put(type, chrIdx, zoom, coverage.get(type));
+        }
     }
 
     protected void buildVCOrVCSQRT(boolean weShouldBuildVC, boolean weShouldBuildVCSqrt, Chromosome chr,
@@ -255,100 +287,169 @@ public class MultithreadedNormalizationVectorUpdater extends NormalizationVector
         printNormTiming("VC and VC_SQRT", chr, zoom, currentTime);
     }
 
+    /**
+     * Computes KR at every zoom; the write loop in updateHicFile drops chromosomes that failed at a coarser zoom,
+     * since tasks do not run coarse to fine
+     */
     protected void buildKR(Chromosome chr, NormalizationCalculations nc, HiCZoom zoom,
                            Map<Integer, Double> withinZoomKRSumFactors,
                            Map<Integer, ListOfFloatArrays> withinZoomKRVectors,
                            Set<Chromosome> withinZoomSynckrBPFailedChromosomes,
                            Set<Chromosome> withinZoomSynckrFragFailedChromosomes) throws IOException {
-        Set<Chromosome> failureSetKR = zoom.getUnit() == HiC.Unit.FRAG ? synckrFragFailedChromosomes : synckrBPFailedChromosomes;
         Set<Chromosome> withinZoomFailureSetKR = zoom.getUnit() == HiC.Unit.FRAG ? withinZoomSynckrFragFailedChromosomes : withinZoomSynckrBPFailedChromosomes;
         final int chrIdx = chr.getIndex();
 
         long currentTime = System.currentTimeMillis();
-        if (!failureSetKR.contains(chr)) {
-            ListOfFloatArrays kr = nc.computeKR();
-            if (kr == null) {
-                failureSetKR.add(chr);
-                withinZoomFailureSetKR.add(chr);
-                printNormTiming("FAILED KR", chr, zoom, currentTime);
-            } else {
-                withinZoomKRSumFactors.put(chrIdx, nc.getSumFactor(kr));
-                withinZoomKRVectors.put(chrIdx, kr);
-                printNormTiming("KR", chr, zoom, currentTime);
-            }
-        } else {
+        ListOfFloatArrays kr = nc.computeKR();
+        if (kr == null) {
             withinZoomFailureSetKR.add(chr);
+            printNormTiming("FAILED KR", chr, zoom, currentTime);
+        } else {
+            withinZoomKRSumFactors.put(chrIdx, nc.getSumFactor(kr));
+            withinZoomKRVectors.put(chrIdx, kr);
+            printNormTiming("KR", chr, zoom, currentTime);
         }
     }
 
+    /**
+     * Computes SCALE at every zoom; failures are carried from coarse to fine zooms when writing, as for KR
+     */
     protected void buildScale(Chromosome chr, NormalizationCalculations nc, HiCZoom zoom,
                               Map<Integer, Double> withinZoomSCALESumFactors,
                               Map<Integer, ListOfFloatArrays> withinZoomSCALEVectors,
                               Set<Chromosome> withinZoomSyncmmbaBPFailedChromosomes,
                               Set<Chromosome> withinZoomSyncmmbaFragFailedChromosomes) throws IOException {
-        Set<Chromosome> failureSetMMBA = zoom.getUnit() == HiC.Unit.FRAG ? syncmmbaFragFailedChromosomes : syncmmbaBPFailedChromosomes;
         Set<Chromosome> withinZoomFailureSetMMBA = zoom.getUnit() == HiC.Unit.FRAG ? withinZoomSyncmmbaFragFailedChromosomes : withinZoomSyncmmbaBPFailedChromosomes;
         final int chrIdx = chr.getIndex();
         long currentTime = System.currentTimeMillis();
 
-        if (!failureSetMMBA.contains(chr)) {
-            ListOfFloatArrays mmba = nc.computeMMBA();
-            if (mmba == null) {
-                failureSetMMBA.add(chr);
-                withinZoomFailureSetMMBA.add(chr);
-                printNormTiming("FAILED SCALE", chr, zoom, currentTime);
-            } else {
-                withinZoomSCALESumFactors.put(chrIdx, nc.getSumFactor(mmba));
-                withinZoomSCALEVectors.put(chrIdx, mmba);
-                printNormTiming("SCALE", chr, zoom, currentTime);
-            }
-        } else {
+        ListOfFloatArrays mmba = nc.computeMMBA();
+        if (mmba == null) {
             withinZoomFailureSetMMBA.add(chr);
+            printNormTiming("FAILED SCALE", chr, zoom, currentTime);
+        } else {
+            withinZoomSCALESumFactors.put(chrIdx, nc.getSumFactor(mmba));
+            withinZoomSCALEVectors.put(chrIdx, mmba);
+            printNormTiming("SCALE", chr, zoom, currentTime);
         }
     }
 
-    protected void runIndividualChromosomeCode(AtomicInteger chromosomeIndex,
-                                               Dataset ds, ChromosomeHandler chromosomeHandler, HiCZoom zoom, Map<NormalizationType, Integer> resolutionsToBuildTo,
-                                               Map<Integer, Double> withinZoomVCSumFactors, Map<Integer, Double> withinZoomVCSQRTSumFactors,
-                                               Map<Integer, Double> withinZoomKRSumFactors, Map<Integer, Double> withinZoomSCALESumFactors,
-                                               Map<Integer, ListOfFloatArrays> withinZoomVCVectors, Map<Integer, ListOfFloatArrays> withinZoomVCSQRTVectors,
-                                               Map<Integer, ListOfFloatArrays> withinZoomKRVectors, Map<Integer, ListOfFloatArrays> withinZoomSCALEVectors,
-                                               Set<Chromosome> withinZoomSynckrBPFailedChromosomes, Set<Chromosome> withinZoomSynckrFragFailedChromosomes,
-                                               Set<Chromosome> withinZoomSyncmmbaBPFailedChromosomes, Set<Chromosome> withinZoomSyncmmbaFragFailedChromosomes,
-                                               Map<Integer, MatrixZoomData> allChrZoomData, int threadnum) throws IOException {
-
-        int i = chromosomeIndex.getAndIncrement();
-        while (i < chromosomeHandler.getChromosomeArrayWithoutAllByAll().length) {
-            Chromosome chr = chromosomeHandler.getChromosomeArrayWithoutAllByAll()[i];
-            MatrixZoomData zd = HiCFileTools.getMatrixZoomData(ds, chr, chr, zoom);
-
-            if (zd == null) {
-                i = chromosomeIndex.getAndIncrement();
-                continue;
-            }
-            NormalizationCalculations nc = new NormalizationCalculations(zd.getIteratorContainer());
+    private void runNormalizationTask(NormalizationTask task, Dataset ds, ChromosomeHandler chromosomeHandler,
+                                      Map<String, Integer> fcm, Map<NormalizationType, Integer> resolutionsToBuildTo,
+                                      ZoomNormResults results) {
+        HiCZoom zoom = task.zoom;
+        Chromosome chr = task.chr;
+        MatrixZoomData zd = HiCFileTools.getMatrixZoomData(ds, chr, chr, zoom);
+        if (zd == null) return;
+
+        IteratorContainer ic = zd.getIteratorContainer();
+        try {
+            NormalizationCalculations nc = new NormalizationCalculations(ic);
             if (!nc.isEnoughMemory()) {
-                System.err.println("Not enough memory, skipping " + chr);
-                i = chromosomeIndex.getAndIncrement();
-                continue;
+                System.err.println("Not enough memory, skipping " + chr + " at " + zoom);
+                return;
             }
-            allChrZoomData.put(chr.getIndex(), zd);
+            nc.setNumMatrixThreads(task.numSlots);
+            results.chromosomesWithData.add(chr.getIndex());
 
             if (weShouldBuildVC || weShouldBuildVCSqrt) {
-
-                buildVCOrVCSQRT(weShouldBuildVC && zoom.getBinSize() >= resolutionsToBuildTo.get(NormalizationHandler.VC),
-                        weShouldBuildVCSqrt && zoom.getBinSize() >= resolutionsToBuildTo.get(NormalizationHandler.VC_SQRT),
-                        chr, nc, zoom, withinZoomVCSumFactors, withinZoomVCVectors, withinZoomVCSQRTSumFactors, withinZoomVCSQRTVectors);
+                boolean buildVC = weShouldBuildVC && zoom.getBinSize() >= resolutionsToBuildTo.get(NormalizationHandler.VC);
+                boolean buildVCSqrt = weShouldBuildVCSqrt && zoom.getBinSize() >= resolutionsToBuildTo.get(NormalizationHandler.VC_SQRT);
+                buildVCOrVCSQRT(buildVC, buildVCSqrt, chr, nc, zoom, results.vcSumFactors, results.vcVectors,
+                        results.vcSqrtSumFactors, results.vcSqrtVectors);
+                addExpectedForChr(chr.getIndex(), results.vcSumFactors, results.vcVectors, results.vcExpected,
+                        NormalizationHandler.VC, chromosomeHandler, zoom, fcm, ic);
+                addExpectedForChr(chr.getIndex(), results.vcSqrtSumFactors, results.vcSqrtVectors, results.vcSqrtExpected,
+                        NormalizationHandler.VC_SQRT, chromosomeHandler, zoom, fcm, ic);
             }
             if (weShouldBuildKR && zoom.getBinSize() >= resolutionsToBuildTo.get(NormalizationHandler.KR)) {
-                buildKR(chr, nc, zoom, withinZoomKRSumFactors, withinZoomKRVectors, withinZoomSynckrBPFailedChromosomes,
-                        withinZoomSynckrFragFailedChromosomes);
+                buildKR(chr, nc, zoom, results.krSumFactors, results.krVectors, results.krBPFailedChromosomes,
+                        results.krFragFailedChromosomes);
+                addExpectedForChr(chr.getIndex(), results.krSumFactors, results.krVectors, results.krExpected,
+                        NormalizationHandler.KR, chromosomeHandler, zoom, fcm, ic);
             }
             if (weShouldBuildScale && zoom.getBinSize() >= resolutionsToBuildTo.get(NormalizationHandler.SCALE)) {
-                buildScale(chr, nc, zoom, withinZoomSCALESumFactors, withinZoomSCALEVectors, withinZoomSyncmmbaBPFailedChromosomes,
-                        withinZoomSyncmmbaFragFailedChromosomes);
+                buildScale(chr, nc, zoom, results.scaleSumFactors, results.scaleVectors, results.mmbaBPFailedChromosomes,
+                        results.mmbaFragFailedChromosomes);
+                addExpectedForChr(chr.getIndex(), results.scaleSumFactors, results.scaleVectors, results.scaleExpected,
+                        NormalizationHandler.SCALE, chromosomeHandler, zoom, fcm, ic);
             }
-            i = chromosomeIndex.getAndIncrement();
+
+            // one more pass over the loaded records for the coverage; vectors that end up not written are ignored then
+            Map<NormalizationType, ListOfFloatArrays> normVectors = new LinkedHashMap<>();
+            addIfPresent(normVectors, NormalizationHandler.VC, results.vcVectors, chr.getIndex());
+            addIfPresent(normVectors, NormalizationHandler.VC_SQRT, results.vcSqrtVectors, chr.getIndex());
+            addIfPresent(normVectors, NormalizationHandler.KR, results.krVectors, chr.getIndex());
+            addIfPresent(normVectors, NormalizationHandler.SCALE, results.scaleVectors, chr.getIndex());
+            results.coverageVectors.put(chr.getIndex(), computeCoverageVectors(chr, zoom, fcm, ic, normVectors));
+        } catch (IOException e) {
+            System.err.println("Error: " + e);
+        } finally {
+            // the worker's dataset keeps its zoom data around; drop the contact records of this matrix
+            ic.clear();
         }
     }
+
+    /**
+     * Scales the vector by its sum factor and collects the chromosome's expected values while its contact
+     * records are still loaded; the per-chromosome results are merged in chromosome order when writing.
+     */
+    private static void addExpectedForChr(int chrIdx, Map<Integer, Double> sumFactors, Map<Integer, ListOfFloatArrays> vectors,
+                                          Map<Integer, ExpectedValueCalculation> chrExpected, NormalizationType type,
+                                          ChromosomeHandler chromosomeHandler, HiCZoom zoom, Map<String, Integer> fcm,
+                                          IteratorContainer ic) {
+        Double factor = sumFactors.get(chrIdx);
+        ListOfFloatArrays vec = vectors.get(chrIdx);
+        if (factor == null || vec == null) return;
+
+        vec.multiplyEverythingBy(factor);
+        ExpectedValueCalculation ev = new ExpectedValueCalculation(chromosomeHandler, zoom.getBinSize(), fcm, type);
+        ev.addDistancesFromIterator(chrIdx, ic, vec);
+        chrExpected.put(chrIdx, ev);
+    }
+
+    private static void addIfPresent(Map<NormalizationType, ListOfFloatArrays> normVectors, NormalizationType type,
+                                     Map<Integer, ListOfFloatArrays> vectors, int chrIdx) {
+        ListOfFloatArrays vec = vectors.get(chrIdx);
+        if (vec != null) {
+            normVectors.put(type, vec);
+        }
+    }
+
+    private static class NormalizationTask {
+        private final HiCZoom zoom;
+        private final Chromosome chr;
+        private final long numRows;
+        private final int numSlots;
+
+        NormalizationTask(HiCZoom zoom, Chromosome chr, long numRows) {
+            this.zoom = zoom;
+            this.chr = chr;
+            this.numRows = numRows;
+            this.numSlots = getNumberOfSlots(numRows);
+        }
+    }
+
+    private static class ZoomNormResults {
+        private final Set<Integer> chromosomesWithData = ConcurrentHashMap.newKeySet();
+
+        private final Map<Integer, Double> vcSumFactors = new ConcurrentHashMap<>();
+        private final Map<Integer, Double> vcSqrtSumFactors = new ConcurrentHashMap<>();
+        private final Map<Integer, Double> krSumFactors = new ConcurrentHashMap<>();
+        private final Map<Integer, Double> scaleSumFactors = new ConcurrentHashMap<>();
+        private final Map<Integer, ListOfFloatArrays> vcVectors = new ConcurrentHashMap<>();
+        private final Map<Integer, ListOfFloatArrays> vcSqrtVectors = new ConcurrentHashMap<>();
+        private final Map<Integer, ListOfFloatArrays> krVectors = new ConcurrentHashMap<>();
+        private final Map<Integer, ListOfFloatArrays> scaleVectors = new ConcurrentHashMap<>();
+        private final Map<Integer, ExpectedValueCalculation> vcExpected = new ConcurrentHashMap<>();
+        private final Map<Integer, ExpectedValueCalculation> vcSqrtExpected = new ConcurrentHashMap<>();
+        private final Map<Integer, ExpectedValueCalculation> krExpected = new ConcurrentHashMap<>();
+        private final Map<Integer, ExpectedValueCalculation> scaleExpected = new ConcurrentHashMap<>();
+        private final Map<Integer, Map<NormalizationType, float[]>> coverageVectors = new ConcurrentHashMap<>();
+
+        private final Set<Chromosome> krBPFailedChromosomes = Collections.synchronizedSet(new HashSet<>());
+        private final Set<Chromosome> krFragFailedChromosomes = Collections.synchronizedSet(new HashSet<>());
+        private final Set<Chromosome> mmbaBPFailedChromosomes = Collections.synchronizedSet(new HashSet<>());
+        private final Set<Chromosome> mmbaFragFailedChromosomes = Collections.synchronizedSet(new HashSet<>());
+    }
 }
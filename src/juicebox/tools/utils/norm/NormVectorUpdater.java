@@ -25,9 +25,11 @@
 package juicebox.tools.utils.norm;
 
 import juicebox.HiC;
+import juicebox.data.CoverageVectors;
 import juicebox.data.DatasetReaderV2;
 import juicebox.data.ExpectedValueFunction;
 import juicebox.data.ExpectedValueFunctionImpl;
+import juicebox.data.StoredEigenvectors;
 import juicebox.data.basics.ListOfDoubleArrays;
 import juicebox.data.basics.ListOfFloatArrays;
 import juicebox.tools.utils.original.ExpectedValueCalculation;
@@ -139,10 +141,16 @@ public class NormVectorUpdater {
                                        List<ExpectedValueCalculation> expectedValueCalculations,
                                        Map<String, ExpectedValueFunction> expectedValueFunctionMap,
                                        List<NormalizationVectorIndexEntry> normVectorIndices,
-                                       List<BufferedByteWriter> normVectorBuffers, String message) throws IOException {
+                                       List<BufferedByteWriter> normVectorBuffers, CoverageVectors coverageVectors,
+                                       String message) throws IOException {
         int version = reader.getVersion();
         long filePosition = reader.getNormFilePosition();
         long nviHeaderPosition = reader.getNviHeaderPosition();
+        boolean normsReplaced = coverageVectors != null;
+        if (coverageVectors == null) {
+            // keep the stored ones; they are about to be overwritten along with the old norms
+            coverageVectors = reader.getCoverageVectors();
+        }
 
 
         try (RandomAccessFile raf = new RandomAccessFile(path, "rw")) {
@@ -158,11 +166,51 @@ public class NormVectorUpdater {
 
             writeExpectedToBuffer(raf, expectedBuffers, filePosition);
             writeNormsToBuffer(raf, normVectorIndices, normVectorBuffers, nviHeaderPosition);
+            writeCoverageVectors(raf, reader, coverageVectors);
+            if (normsReplaced) {
+                // stored eigenvectors were computed with the old norms
+                long eigenvectorEntryPosition = reader.getMasterIndexEntryPosition(StoredEigenvectors.MASTER_INDEX_KEY);
+                if (eigenvectorEntryPosition > -1) {
+                    updateMasterIndexEntry(raf, eigenvectorEntryPosition, 0, 0);
+                }
+            }
         }
 
         System.out.println(message);
     }
 
+    /**
+     * Appends the coverage vectors after the norm vectors and points the master index entry reserved by pre at
+     * them. Files from before pre reserved the entry get no stored vectors; readers compute them when needed.
+     */
+    private static void writeCoverageVectors(RandomAccessFile raf, DatasetReaderV2 reader, CoverageVectors coverageVectors) throws IOException {
+        long entryPosition = reader.getMasterIndexEntryPosition(CoverageVectors.MASTER_INDEX_KEY);
+        if (entryPosition < 0) {
+            if (coverageVectors != null && !coverageVectors.isEmpty()) {
+                System.out.println("Coverage vectors not stored; the file was written without space for them in its index");
+            }
+            return;
+        }
+
+        long position = 0;
+        int size = 0;
+        if (coverageVectors != null && !coverageVectors.isEmpty()) {
+            byte[] bytes = coverageVectors.getBytes();
+            position = raf.getChannel().position();
+            raf.write(bytes);
+            size = bytes.length;
+        }
+        updateMasterIndexEntry(raf, entryPosition, position, size);
+    }
+
+    private static void updateMasterIndexEntry(RandomAccessFile raf, long entryPosition, long position, int size) throws IOException {
+        BufferedByteWriter buffer = new BufferedByteWriter();
+        buffer.putLong(position);
+        buffer.putInt(size);
+        raf.getChannel().position(entryPosition);
+        raf.write(buffer.getBytes());
+    }
+
     private static void writeExpectedValues(List<BufferedByteWriter> expectedBuffers, List<ExpectedValueCalculation> expectedValueCalculations) throws IOException {
         BufferedByteWriter buffer = getBufferWithEnoughSpace(expectedBuffers, 4);
         buffer.putInt(expectedValueCalculations.size());
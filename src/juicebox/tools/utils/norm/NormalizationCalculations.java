@@ -24,6 +24,7 @@
 
 package juicebox.tools.utils.norm;
 
+import juicebox.HiCGlobals;
 import juicebox.data.ContactRecord;
 import juicebox.data.basics.ListOfDoubleArrays;
 import juicebox.data.basics.ListOfFloatArrays;
@@ -32,6 +33,7 @@ import juicebox.data.iterator.IteratorContainer;
 import juicebox.windowui.NormalizationType;
 import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
@@ -52,6 +54,35 @@ public class NormalizationCalculations {
     private final long matrixSize; // x and y symmetric
     private boolean isEnoughMemory = false;
     private final IteratorContainer ic;
+    private final List<KRIterationStats> krConvergenceHistory = new ArrayList<>();
+    private int numMatrixThreads = IteratorContainer.numCPUMatrixThreads;
+
+    /**
+     * Residual and timing of one outer (Newton) iteration of the KR solver.
+     */
+    public static class KRIterationStats {
+        public final int attempt;           // which of the computeKR attempts (rows are thrown out between attempts)
+        public final int iteration;         // outer iteration within the attempt
+        public final int innerSteps;        // CG steps in this iteration
+        public final int matrixVectorProducts;  // cumulative over the attempt
+        public final double residual;       // squared norm of diag(x)*A*x - 1
+        public final long elapsedMillis;    // time spent in this iteration
+
+        KRIterationStats(int attempt, int iteration, int innerSteps, int matrixVectorProducts, double residual, long elapsedMillis) {
+            this.attempt = attempt;
+            this.iteration = iteration;
+            this.innerSteps = innerSteps;
+            this.matrixVectorProducts = matrixVectorProducts;
+            this.residual = residual;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "KR attempt " + attempt + " iteration " + iteration + ": residual " + residual + ", " + innerSteps +
+                    " CG steps, " + matrixVectorProducts + " matrix-vector products, " + elapsedMillis + " ms";
+        }
+    }
 
     public NormalizationCalculations(IteratorContainer ic) {
         this.ic = ic;
@@ -103,8 +134,27 @@ public class NormalizationCalculations {
         if nargin < 3, x0 = e; end
         if nargin < 2, tol = 1e-6; end
     */
-    private ListOfDoubleArrays computeKRNormVector(ListOfIntArrays offset, double tol, ListOfDoubleArrays x0, double delta) {
+    private ListOfDoubleArrays computeKRNormVector(ListOfIntArrays offset, double tol, ListOfDoubleArrays x0, double delta,
+                                                   int attempt) {
+
+        long n = x0.getLength();
+        long startTime = System.currentTimeMillis();
+        SymmetricCSRMatrix matrix = SymmetricCSRMatrix.create(ic, offset, (int) n, numMatrixThreads);
+        if (HiCGlobals.printVerboseComments && matrix != null) {
+            System.out.println("KR attempt " + attempt + ": built CSR matrix with " + matrix.getNumberOfEntries() +
+                    " entries for " + n + " rows in " + (System.currentTimeMillis() - startTime) + " ms");
+        }
+        try {
+            return computeKRNormVector(matrix, offset, tol, x0, delta, attempt);
+        } finally {
+            if (matrix != null) {
+                matrix.close();
+            }
+        }
+    }
 
+    private ListOfDoubleArrays computeKRNormVector(SymmetricCSRMatrix matrix, ListOfIntArrays offset, double tol,
+                                                   ListOfDoubleArrays x0, double delta, int attempt) {
         long n = x0.getLength();
         ListOfDoubleArrays e = new ListOfDoubleArrays(n, 1);
 
@@ -114,7 +164,7 @@ public class NormalizationCalculations {
 
         double rt = Math.pow(tol, 2);
 
-        ListOfDoubleArrays v = sparseMultiplyFromContactRecords(offset, getIterator(), x0);
+        ListOfDoubleArrays v = sparseMultiply(matrix, offset, x0);
         ListOfDoubleArrays rk = new ListOfDoubleArrays(v.getLength());
         for (long i = 0; i < v.getLength(); i++) {
             v.multiplyBy(i, x0.get(i));
@@ -131,7 +181,10 @@ public class NormalizationCalculations {
         int MVP = 0;  // We'll count matrix vector products.
 
         int not_changing = 0;
+        int outerIteration = 0;
         while (rout > rt && not_changing < 100) {    // Outer iteration
+            long iterationStartTime = System.currentTimeMillis();
+            outerIteration++;
             int k = 0;
             ListOfDoubleArrays y = e.deepClone();
             ListOfDoubleArrays ynew = new ListOfDoubleArrays(e.getLength());
@@ -169,7 +222,7 @@ public class NormalizationCalculations {
                 for (long i = 0; i < tmp.getLength(); i++) {
                     tmp.set(i, x0.get(i) * p.get(i));
                 }
-                tmp = sparseMultiplyFromContactRecords(offset, getIterator(), tmp);
+                tmp = sparseMultiply(matrix, offset, tmp);
                 alpha = 0;
                 // Update search direction efficiently.
                 for (long i = 0; i < tmp.getLength(); i++) {
@@ -219,7 +272,7 @@ public class NormalizationCalculations {
             for (long i = 0; i < x0.getLength(); i++) {
                 x0.multiplyBy(i, y.get(i));
             }
-            v = sparseMultiplyFromContactRecords(offset, getIterator(), x0);
+            v = sparseMultiply(matrix, offset, x0);
             rho_km1 = 0;
             for (long i = 0; i < v.getLength(); i++) {
                 v.multiplyBy(i, x0.get(i));
@@ -233,6 +286,12 @@ public class NormalizationCalculations {
             }
             rout = rho_km1;
             MVP = MVP + k + 1;
+            KRIterationStats stats = new KRIterationStats(attempt, outerIteration, k, MVP, rout,
+                    System.currentTimeMillis() - iterationStartTime);
+            krConvergenceHistory.add(stats);
+            if (HiCGlobals.printVerboseComments) {
+                System.out.println(stats);
+            }
             //  Update inner iteration stopping criterion.
             double rat = rout / rold;
             rold = rout;
@@ -250,10 +309,32 @@ public class NormalizationCalculations {
         return x0;
     }
 
+    private ListOfDoubleArrays sparseMultiply(SymmetricCSRMatrix matrix, ListOfIntArrays offset, ListOfDoubleArrays vector) {
+        if (matrix != null) {
+            return matrix.multiply(vector);
+        }
+        return sparseMultiplyFromContactRecords(offset, getIterator(), vector);
+    }
+
+    /**
+     * @return residual and timing of every outer KR iteration run so far, across all computeKR attempts
+     */
+    public List<KRIterationStats> getKRConvergenceHistory() {
+        return krConvergenceHistory;
+    }
+
     private Iterator<ContactRecord> getIterator() {
         return ic.getNewContactRecordIterator();
     }
 
+    /**
+     * Caps the threads used for the KR matrix-vector products of this matrix,
+     * e.g. when several matrices are normalized at the same time
+     */
+    public void setNumMatrixThreads(int numMatrixThreads) {
+        this.numMatrixThreads = Math.max(1, numMatrixThreads);
+    }
+
     boolean isEnoughMemory() {
         return isEnoughMemory;
     }
@@ -373,7 +454,7 @@ public class NormalizationCalculations {
             // initialize x0 for call the compute KR norm
             ListOfDoubleArrays x0 = new ListOfDoubleArrays(newSize, 1);
             
-            x0 = computeKRNormVector(offset, 0.000001, x0, 0.1);
+            x0 = computeKRNormVector(offset, 0.000001, x0, 0.1, iteration);
 
             // assume all went well and we don't need to recalculate
             recalculate = false;
@@ -29,6 +29,7 @@ import juicebox.HiCGlobals;
 import juicebox.data.*;
 import juicebox.data.basics.Chromosome;
 import juicebox.data.basics.ListOfFloatArrays;
+import juicebox.data.iterator.IteratorContainer;
 import juicebox.tools.utils.original.ExpectedValueCalculation;
 import juicebox.windowui.HiCZoom;
 import juicebox.windowui.NormalizationHandler;
@@ -49,6 +50,9 @@ public class NormalizationVectorUpdater extends NormVectorUpdater {
     protected List<BufferedByteWriter> normVectorBuffers = new ArrayList<>();
     protected List<NormalizationVectorIndexEntry> normVectorIndices = new ArrayList<>();
     protected List<ExpectedValueCalculation> expectedValueCalculations = new ArrayList<>();
+    protected CoverageVectors coverageVectors = new CoverageVectors();
+    // intra-chromosomal vectors built for the current chromosome, for its coverage vectors
+    private final Map<NormalizationType, ListOfFloatArrays> vectorsForChr = new LinkedHashMap<>();
 
     // Keep track of chromosomes that fail to converge, so we don't try them at higher resolutions.
     protected Set<Chromosome> krBPFailedChromosomes = new HashSet<>();
@@ -68,16 +72,36 @@ public class NormalizationVectorUpdater extends NormVectorUpdater {
         }
     }
 
-    protected static void updateExpectedValueCalculationForChr(final int chrIdx, NormalizationCalculations nc, ListOfFloatArrays vec, NormalizationType type, HiCZoom zoom, MatrixZoomData zd,
+    protected void updateExpectedValueCalculationForChr(final int chrIdx, NormalizationCalculations nc, ListOfFloatArrays vec, NormalizationType type, HiCZoom zoom, MatrixZoomData zd,
                                                                ExpectedValueCalculation ev, List<BufferedByteWriter> normVectorBuffers, List<NormalizationVectorIndexEntry> normVectorIndex) throws IOException {
         double factor = nc.getSumFactor(vec);
         vec.multiplyEverythingBy(factor);
 
         updateNormVectorIndexWithVector(normVectorIndex, normVectorBuffers, vec, chrIdx, type, zoom);
+        vectorsForChr.put(type, vec);
 
         ev.addDistancesFromIterator(chrIdx, zd.getIteratorContainer(), vec);
     }
 
+    /**
+     * Raw and normalized coverage of an intra-chromosomal matrix, in one more pass over its loaded records
+     *
+     * @param normVectors the chromosome's norm vectors, already scaled
+     */
+    protected static Map<NormalizationType, float[]> computeCoverageVectors(Chromosome chr, HiCZoom zoom, Map<String, Integer> fcm,
+                                                                           IteratorContainer ic, Map<NormalizationType, ListOfFloatArrays> normVectors) {
+        List<NormalizationType> types = new ArrayList<>(normVectors.keySet());
+        float[][] marginals = CoverageVectors.computeMarginals(ic.getNewContactRecordIterator(),
+                CoverageVectors.getNumberOfBins(chr, zoom, fcm), new ArrayList<>(normVectors.values()));
+
+        Map<NormalizationType, float[]> coverage = new HashMap<>();
+        coverage.put(NormalizationHandler.NONE, marginals[0]);
+        for (int k = 0; k < types.size(); k++) {
+            coverage.put(types.get(k), marginals[k + 1]);
+        }
+        return coverage;
+    }
+
     protected void reEvaluateWhichIntraNormsToBuild(List<NormalizationType> normalizationsToBuild) {
         weShouldBuildVC = normalizationsToBuild.contains(NormalizationHandler.VC);
         weShouldBuildVCSqrt = normalizationsToBuild.contains(NormalizationHandler.VC_SQRT);
@@ -203,6 +227,12 @@ public class NormalizationVectorUpdater extends NormVectorUpdater {
                     buildScale(chr, nc, zoom, zd, evSCALE);
                 }
 
+                for (Map.Entry<NormalizationType, float[]> entry : computeCoverageVectors(chr, zoom, fcm,
+                        zd.getIteratorContainer(), vectorsForChr).entrySet()) {
+                    coverageVectors.put(entry.getKey(), chr.getIndex(), zoom, entry.getValue());
+                }
+                vectorsForChr.clear();
+
                 zd.clearCache(false);
             }
 
@@ -222,7 +252,7 @@ public class NormalizationVectorUpdater extends NormVectorUpdater {
             ds.clearCache(false, zoom);
         }
         writeNormsToUpdateFile(reader, path, true, expectedValueCalculations, null, normVectorIndices,
-                normVectorBuffers, "Finished writing norms");
+                normVectorBuffers, coverageVectors, "Finished writing norms");
     }
     
     protected void buildScale(Chromosome chr, NormalizationCalculations nc, HiCZoom zoom, MatrixZoomData zd, ExpectedValueCalculation evSCALE) throws IOException {
@@ -0,0 +1,209 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2021 Broad Institute, Aiden Lab, Rice University, Baylor College of Medicine
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package juicebox.tools.utils.norm;
+
+import juicebox.HiCGlobals;
+import juicebox.data.ContactRecord;
+import juicebox.data.basics.ListOfDoubleArrays;
+import juicebox.data.basics.ListOfIntArrays;
+import juicebox.data.iterator.IteratorContainer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Upper triangle of a symmetric contact matrix in compressed sparse row form, with rows and columns
+ * already mapped through a KR offset array (rows with offset -1 are dropped).
+ * Built once from the contact records, so repeated matrix-vector products do not have to walk the
+ * blocks again or look up offsets per record.
+ * <p>
+ * The product is split across threads by ranges of rows holding about the same number of entries;
+ * each thread scatters the mirrored (lower triangle) terms into its own partial vector, and the
+ * partial vectors are summed at the end. The worker threads are kept until close() is called,
+ * since a KR solve runs hundreds of products.
+ */
+class SymmetricCSRMatrix {
+
+    private static final double MAX_FRACTION_OF_FREE_MEMORY = 0.5;
+    private static final int MIN_ENTRIES_PER_THREAD = 1 << 18;
+    private final int n;
+    private final int[] rowStarts;
+    private final int[] columns;
+    private final float[] values;
+    private final int numThreads;
+    private final int[] threadRowCutoffs;
+    private final double[][] partials;
+    private final ExecutorService service;
+
+    private SymmetricCSRMatrix(int n, int[] rowStarts, int[] columns, float[] values, int numThreads) {
+        this.n = n;
+        this.rowStarts = rowStarts;
+        this.columns = columns;
+        this.values = values;
+        this.numThreads = numThreads;
+        this.threadRowCutoffs = createRowCutoffs(rowStarts, n, numThreads);
+        this.partials = new double[numThreads][];
+        this.service = numThreads > 1 ? Executors.newFixedThreadPool(numThreads) : null;
+    }
+
+    /**
+     * @return the matrix, or null if it has too many entries for int indexing or the available memory;
+     * callers then fall back to multiplying straight from the contact records
+     */
+    static SymmetricCSRMatrix create(IteratorContainer ic, ListOfIntArrays offset, int n, int maxThreads) {
+        int[] rowCounts = new int[n + 1];
+        long nnz = 0;
+        Iterator<ContactRecord> iterator = ic.getNewContactRecordIterator();
+        while (iterator.hasNext()) {
+            ContactRecord cr = iterator.next();
+            int row = offset.get(Math.min(cr.getBinX(), cr.getBinY()));
+            int col = offset.get(Math.max(cr.getBinX(), cr.getBinY()));
+            if (row != -1 && col != -1) {
+                rowCounts[row + 1]++;
+                nnz++;
+            }
+        }
+
+        int numThreads = (int) Math.max(1, Math.min(maxThreads, nnz / MIN_ENTRIES_PER_THREAD));
+        long bytesNeeded = nnz * 8 + (long) n * 8 * (numThreads + 1);
+        Runtime runtime = Runtime.getRuntime();
+        long freeMemory = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        if (nnz >= Integer.MAX_VALUE - 10 || bytesNeeded > freeMemory * MAX_FRACTION_OF_FREE_MEMORY) {
+            if (HiCGlobals.printVerboseComments) {
+                System.out.println("Not enough memory for a CSR matrix with " + nnz + " entries; KR will stream contact records");
+            }
+            return null;
+        }
+
+        int[] rowStarts = rowCounts;
+        for (int i = 0; i < n; i++) {
+            rowStarts[i + 1] += rowStarts[i];
+        }
+        int[] next = new int[n];
+        System.arraycopy(rowStarts, 0, next, 0, n);
+        int[] columns = new int[(int) nnz];
+        float[] values = new float[(int) nnz];
+
+        iterator = ic.getNewContactRecordIterator();
+        while (iterator.hasNext()) {
+            ContactRecord cr = iterator.next();
+            int row = offset.get(Math.min(cr.getBinX(), cr.getBinY()));
+            int col = offset.get(Math.max(cr.getBinX(), cr.getBinY()));
+            if (row != -1 && col != -1) {
+                int k = next[row]++;
+                columns[k] = col;
+                values[k] = cr.getCounts();
+            }
+        }
+
+        return new SymmetricCSRMatrix(n, rowStarts, columns, values, numThreads);
+    }
+
+    private static int[] createRowCutoffs(int[] rowStarts, int n, int numThreads) {
+        int[] cutoffs = new int[numThreads + 1];
+        long nnz = rowStarts[n];
+        int row = 0;
+        for (int t = 1; t < numThreads; t++) {
+            long target = nnz * t / numThreads;
+            while (row < n && rowStarts[row] < target) {
+                row++;
+            }
+            cutoffs[t] = row;
+        }
+        cutoffs[numThreads] = n;
+        return cutoffs;
+    }
+
+    int getNumberOfEntries() {
+        return rowStarts[n];
+    }
+
+    ListOfDoubleArrays multiply(ListOfDoubleArrays vector) {
+        ListOfDoubleArrays result = new ListOfDoubleArrays(n);
+        if (n == 0) return result;
+        final double[] x = vector.getValues().get(0);
+        final double[] y = result.getValues().get(0);
+
+        if (numThreads == 1) {
+            multiplyRows(0, n, x, y);
+            return result;
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>(numThreads);
+        for (int t = 0; t < numThreads; t++) {
+            final int threadIndex = t;
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    if (partials[threadIndex] == null) {
+                        partials[threadIndex] = new double[n];
+                    } else {
+                        Arrays.fill(partials[threadIndex], 0);
+                    }
+                    multiplyRows(threadRowCutoffs[threadIndex], threadRowCutoffs[threadIndex + 1], x, partials[threadIndex]);
+                    return null;
+                }
+            });
+        }
+        try {
+            for (Future<Void> future : service.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Sparse matrix multiplication failed", e);
+        }
+
+        for (double[] partial : partials) {
+            for (int i = 0; i < n; i++) {
+                y[i] += partial[i];
+            }
+        }
+        return result;
+    }
+
+    void close() {
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    private void multiplyRows(int startRow, int endRow, double[] x, double[] y) {
+        for (int row = startRow; row < endRow; row++) {
+            double xRow = x[row];
+            double sum = 0;
+            for (int k = rowStarts[row]; k < rowStarts[row + 1]; k++) {
+                int col = columns[k];
+                double value = values[k];
+                sum += value * x[col];
+                if (col != row) {
+                    y[col] += value * xRow;
+                }
+            }
+            y[row] += sum;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2021 Broad Institute, Aiden Lab, Rice University, Baylor College of Medicine
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package juicebox.tools.utils.original;
+
+import htsjdk.tribble.util.LittleEndianOutputStream;
+import juicebox.HiC;
+import juicebox.HiCGlobals;
+import juicebox.data.*;
+import juicebox.data.basics.Chromosome;
+import juicebox.data.basics.ListOfFloatArrays;
+import juicebox.tools.dev.ParallelizedJuicerTools;
+import juicebox.windowui.HiCZoom;
+import juicebox.windowui.NormalizationHandler;
+import juicebox.windowui.NormalizationType;
+import org.broad.igv.tdf.BufferedByteWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.*;
+import java.util.concurrent.Callable;
+
+/**
+ * Precomputes the principal eigenvector of each chromosome and stores it in the .hic (see StoredEigenvectors),
+ * so the eigenvector track and compartment tools read it instead of decomposing the Pearson's matrix again.
+ * <p>
+ * Chromosomes are computed in parallel. The sign of a vector is chosen so it correlates positively with the
+ * raw coverage of the chromosome (A compartments gather more contacts); when several files are given, the
+ * vectors of the later files are instead oriented to agree with those of the first, so they compare directly.
+ * The vectors are appended with a new footer, as ResolutionUpdater does; vectors already stored are kept
+ * unless recomputed.
+ */
+public class EigenvectorUpdater {
+
+    /**
+     * @param resolutions bp resolutions to compute, or null for every one from HiCGlobals.MAX_EIGENVECTOR_ZOOM up
+     */
+    public static void updateHicFiles(List<String> paths, List<Integer> resolutions, List<NormalizationType> norms) throws IOException {
+        HiCGlobals.useCache = false;
+        StoredEigenvectors reference = null;
+        for (String path : paths) {
+            StoredEigenvectors computed = updateHicFile(path, resolutions, norms, reference);
+            if (reference == null) {
+                reference = computed;
+            }
+        }
+    }
+
+    private static StoredEigenvectors updateHicFile(String path, List<Integer> resolutions, List<NormalizationType> norms,
+                                                    StoredEigenvectors reference) throws IOException {
+        DatasetReaderV2 reader = new DatasetReaderV2(path);
+        Dataset ds = reader.read();
+        HiCGlobals.verifySupportedHiCFileWritingVersion(reader.getVersion());
+
+        List<HiCZoom> zooms = new ArrayList<>();
+        for (HiCZoom zoom : ds.getBpZooms()) {
+            if (resolutions == null ? zoom.getBinSize() >= HiCGlobals.MAX_EIGENVECTOR_ZOOM
+                    : resolutions.contains(zoom.getBinSize())) {
+                zooms.add(zoom);
+            }
+        }
+        if (resolutions != null) {
+            for (int binSize : resolutions) {
+                if (!zooms.contains(new HiCZoom(HiC.Unit.BP, binSize))) {
+                    System.err.println("Resolution " + binSize + " is not in " + path + "; skipping");
+                }
+            }
+        }
+
+        StoredEigenvectors eigenvectors = new StoredEigenvectors();
+        for (HiCZoom zoom : zooms) {
+            for (NormalizationType norm : norms) {
+                ExpectedValueFunction df = ds.getExpectedValues(zoom, norm);
+                if (df == null) {
+                    System.err.println("No " + norm.getLabel() + " expected values at " + zoom.getBinSize() + " in " + path + "; skipping");
+                    continue;
+                }
+                computeEigenvectors(reader, ds, zoom, norm, df, reference, eigenvectors);
+            }
+        }
+
+        if (eigenvectors.isEmpty()) {
+            System.err.println("No eigenvectors computed for " + path);
+            return eigenvectors;
+        }
+        StoredEigenvectors existing = reader.getStoredEigenvectors();
+        if (existing != null) {
+            eigenvectors.addMissing(existing);
+        }
+        writeEigenvectors(path, reader, eigenvectors);
+        System.out.println("Added eigenvectors at " + zooms + " to " + path);
+        return eigenvectors;
+    }
+
+    private static void computeEigenvectors(final DatasetReaderV2 reader, Dataset ds, final HiCZoom zoom,
+                                            final NormalizationType norm, final ExpectedValueFunction df,
+                                            final StoredEigenvectors reference, StoredEigenvectors eigenvectors) {
+        final List<Chromosome> chromosomes = new ArrayList<>();
+        List<Callable<double[]>> tasks = new ArrayList<>();
+        for (final Chromosome chr : ds.getChromosomeHandler().getChromosomeArrayWithoutAllByAll()) {
+            // Dataset caches matrices in a plain map, so they are loaded here rather than by the tasks
+            Matrix matrix = ds.getMatrix(chr, chr);
+            if (matrix == null) continue;
+            final MatrixZoomData zd = matrix.getZoomData(zoom);
+            if (zd == null) continue;
+
+            chromosomes.add(chr);
+            tasks.add(new Callable<double[]>() {
+                @Override
+                public double[] call() throws IOException {
+                    return computeOrientedEigenvector(reader, chr, zd, zoom, norm, df, reference);
+                }
+            });
+        }
+
+        List<double[]> results = ParallelizedJuicerTools.invokeAll("Eigenvectors at " + zoom.getBinSize()
+                + " " + norm.getLabel(), tasks);
+        for (int i = 0; i < chromosomes.size(); i++) {
+            if (results.get(i) != null) {
+                eigenvectors.put(chromosomes.get(i).getName(), zoom, 0, norm.toString(), results.get(i));
+            }
+        }
+    }
+
+    private static double[] computeOrientedEigenvector(DatasetReaderV2 reader, Chromosome chr, MatrixZoomData zd,
+                                                       HiCZoom zoom, NormalizationType norm, ExpectedValueFunction df,
+                                                       StoredEigenvectors reference) throws IOException {
+        double[] eigenvector = zd.computeEigenvector(df, 0);
+        if (eigenvector == null) {
+            return null;
+        }
+
+        double[] referenceVector = reference == null ? null : reference.get(chr.getName(), zoom, 0, norm.toString());
+        boolean flip;
+        if (referenceVector != null) {
+            flip = getSignAgreement(eigenvector, referenceVector) < 0;
+        } else {
+            flip = getCorrelation(eigenvector, getRawCoverage(reader, chr, zd, zoom, eigenvector.length)) < 0;
+        }
+        if (flip) {
+            for (int i = 0; i < eigenvector.length; i++) {
+                eigenvector[i] = -eigenvector[i];
+            }
+        }
+        return eigenvector;
+    }
+
+    private static float[] getRawCoverage(DatasetReaderV2 reader, Chromosome chr, MatrixZoomData zd, HiCZoom zoom,
+                                          int numBins) throws IOException {
+        CoverageVectors stored = reader.getCoverageVectors();
+        if (stored != null) {
+            float[] coverage = stored.get(NormalizationHandler.NONE, chr.getIndex(), zoom);
+            if (coverage != null) {
+                return coverage;
+            }
+        }
+        return CoverageVectors.computeMarginals(zd.getIteratorContainer().getNewContactRecordIterator(), numBins,
+                new ArrayList<ListOfFloatArrays>())[0];
+    }
+
+    /**
+     * @return Pearson's correlation over the bins where both are defined
+     */
+    private static double getCorrelation(double[] eigenvector, float[] coverage) {
+        int n = Math.min(eigenvector.length, coverage.length);
+        double sumX = 0, sumY = 0, sumXY = 0, sumXX = 0, sumYY = 0;
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            double x = eigenvector[i];
+            double y = coverage[i];
+            if (Double.isNaN(x) || Double.isNaN(y)) continue;
+            sumX += x;
+            sumY += y;
+            sumXY += x * y;
+            sumXX += x * x;
+            sumYY += y * y;
+            count++;
+        }
+        if (count < 2) return 0;
+        double covariance = sumXY - sumX * sumY / count;
+        double denominator = Math.sqrt((sumXX - sumX * sumX / count) * (sumYY - sumY * sumY / count));
+        return denominator > 0 ? covariance / denominator : 0;
+    }
+
+    /**
+     * @return bins with the same sign minus bins with opposite signs, as in ABCompartmentsDiff
+     */
+    private static int getSignAgreement(double[] eigenvector, double[] referenceVector) {
+        int n = Math.min(eigenvector.length, referenceVector.length);
+        int agreement = 0;
+        for (int i = 0; i < n; i++) {
+            double product = eigenvector[i] * referenceVector[i];
+            if (product > 0) {
+                agreement++;
+            } else if (product < 0) {
+                agreement--;
+            }
+        }
+        return agreement;
+    }
+
+    private static void writeEigenvectors(String path, DatasetReaderV2 reader, StoredEigenvectors eigenvectors) throws IOException {
+        Map<String, IndexEntry> masterIndex = new LinkedHashMap<>(reader.getMasterIndex());
+        FooterAppender footer = new FooterAppender(reader);
+
+        try (RandomAccessFile input = new RandomAccessFile(path, "r")) {
+            long fileLength = input.length();
+            LittleEndianOutputStream los = new LittleEndianOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(path, true), HiCGlobals.bufferSize));
+            los.setWrittenCount(fileLength);
+            try {
+                byte[] bytes = eigenvectors.getBytes();
+                masterIndex.put(StoredEigenvectors.MASTER_INDEX_KEY, new IndexEntry(los.getWrittenCount(), bytes.length));
+                los.write(bytes);
+                footer.writeFooter(input, masterIndex, new ArrayList<BufferedByteWriter>(), los);
+            } finally {
+                los.close();
+            }
+        }
+
+        footer.updateHeader(path);
+    }
+}
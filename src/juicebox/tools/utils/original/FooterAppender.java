@@ -0,0 +1,134 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2021 Broad Institute, Aiden Lab, Rice University, Baylor College of Medicine
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package juicebox.tools.utils.original;
+
+import htsjdk.tribble.util.LittleEndianOutputStream;
+import juicebox.data.DatasetReaderV2;
+import org.broad.igv.tdf.BufferedByteWriter;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Appends a new footer to an existing .hic, so entries can be added to the master index without moving anything
+ * already in the file. The footer is written in the layout Preprocessor.writeFooter uses; the header is pointed
+ * at it last, so the file stays readable if writing stops part way.
+ */
+class FooterAppender {
+
+    private static final long MASTER_INDEX_POSITION_POSITION = 8; // after "HIC\0" and the version
+    private static final int COPY_BUFFER_SIZE = 1 << 20;
+
+    private final DatasetReaderV2 reader;
+    private long newMasterIndexPosition = -1;
+    private long newNviPosition = -1;
+
+    FooterAppender(DatasetReaderV2 reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Writes the master index and the expected values (the old ones copied, then the added ones), followed by
+     * a copy of the old normalized expected values and normalization vector index, which still point at the
+     * old vectors.
+     *
+     * @param addedExpected buffers of expected values to list after the old ones, in the layout of the footer
+     */
+    void writeFooter(RandomAccessFile input, Map<String, IndexEntry> masterIndex, List<BufferedByteWriter> addedExpected,
+                     LittleEndianOutputStream los) throws IOException {
+        long expectedPosition = reader.getExpectedValuesFilePosition();
+        long normPosition = reader.getNormFilePosition();
+        input.seek(expectedPosition);
+        int nOldExpected = Integer.reverseBytes(input.readInt());
+
+        BufferedByteWriter indexBuffer = new BufferedByteWriter();
+        indexBuffer.putInt(masterIndex.size());
+        for (Map.Entry<String, IndexEntry> entry : masterIndex.entrySet()) {
+            indexBuffer.putNullTerminatedString(entry.getKey());
+            indexBuffer.putLong(entry.getValue().position);
+            indexBuffer.putInt(entry.getValue().size);
+        }
+        indexBuffer.putInt(nOldExpected + addedExpected.size());
+
+        long nBytes = indexBuffer.bytesWritten() + (normPosition - expectedPosition - 4);
+        for (BufferedByteWriter buffer : addedExpected) {
+            nBytes += buffer.bytesWritten();
+        }
+
+        newMasterIndexPosition = los.getWrittenCount();
+        los.writeLong(nBytes);
+        los.write(indexBuffer.getBytes());
+        copyRange(input, expectedPosition + 4, normPosition, los);
+        for (BufferedByteWriter buffer : addedExpected) {
+            los.write(buffer.getBytes());
+        }
+
+        long nviPosition = reader.getNviPosition();
+        long nviSize = reader.getNviSize();
+        if (nviPosition < normPosition || nviSize <= 0) {
+            if (input.length() > normPosition) {
+                System.err.println("Normalization vector index not found in header; run addNorm to rebuild normalizations");
+            }
+            return;
+        }
+        long newNormPosition = los.getWrittenCount();
+        copyRange(input, normPosition, nviPosition + nviSize, los);
+        newNviPosition = newNormPosition + (nviPosition - normPosition);
+    }
+
+    /**
+     * Points the header at the footer written by writeFooter
+     */
+    void updateHeader(String path) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(path, "rw")) {
+            BufferedByteWriter buffer = new BufferedByteWriter();
+            buffer.putLong(newMasterIndexPosition);
+            raf.getChannel().position(MASTER_INDEX_POSITION_POSITION);
+            raf.write(buffer.getBytes());
+            if (newNviPosition > -1) {
+                buffer = new BufferedByteWriter();
+                buffer.putLong(newNviPosition);
+                raf.getChannel().position(reader.getNviHeaderPosition());
+                raf.write(buffer.getBytes());
+            }
+        }
+    }
+
+    static void copyRange(RandomAccessFile input, long start, long end, LittleEndianOutputStream los) throws IOException {
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        input.seek(start);
+        long remaining = end - start;
+        while (remaining > 0) {
+            int n = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (n < 0) {
+                throw new EOFException("Unexpected end of file while copying " + start + "-" + end);
+            }
+            los.write(buffer, 0, n);
+            remaining -= n;
+        }
+    }
+}
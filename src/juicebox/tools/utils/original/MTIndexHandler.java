@@ -26,25 +26,66 @@ package juicebox.tools.utils.original;
 
 import juicebox.HiCGlobals;
 import juicebox.data.ChromosomeHandler;
+import juicebox.tools.utils.original.mnditerator.CompressedBinPairFile;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.io.*;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class MTIndexHandler {
+    private static final int BINARY_INDEX_MAGIC = 0x4d4e4449; // "MNDI"
+    private static final int BINARY_INDEX_VERSION = 1;
+
     public static Map<Integer, List<Chunk>> readMndIndex(String mndIndexFile,
                                                          Map<Integer, String> chromosomePairIndexes) {
-        FileInputStream is = null;
-        Map<String, List<Chunk>> tempIndex = new HashMap<>();
-        Map<Integer, List<Chunk>> mndIndex = new ConcurrentHashMap<>();
+        Map<String, List<Chunk>> tempIndex = null;
         try {
-            is = new FileInputStream(mndIndexFile);
-            BufferedReader reader = new BufferedReader(new InputStreamReader(is), HiCGlobals.bufferSize);
+            if (CompressedBinPairFile.isCompressedBinPairFile(mndIndexFile)) {
+                // compressed binary pairs carry their own chunk index in the footer
+                tempIndex = CompressedBinPairFile.open(mndIndexFile).getChunkIndex();
+            } else {
+                tempIndex = readBinaryMndIndex(mndIndexFile, null);
+            }
+        } catch (IOException e) {
+            System.err.println("Unable to read merged nodups index");
+            System.exit(70);
+        }
+        if (tempIndex == null) {
+            tempIndex = readTextMndIndex(mndIndexFile);
+        }
+        if (tempIndex.isEmpty()) {
+            System.err.println("Intermediate MNDIndex is empty or could not be read");
+            System.exit(44);
+        }
+
+        Map<Integer, List<Chunk>> mndIndex = new ConcurrentHashMap<>();
+        for (Map.Entry<Integer, String> entry : chromosomePairIndexes.entrySet()) {
+            String reverseName = entry.getValue().split("-")[1] + "-" + entry.getValue().split("-")[0];
+            List<Chunk> chunks = new ArrayList<>();
+            if (tempIndex.containsKey(entry.getValue())) {
+                chunks.addAll(tempIndex.get(entry.getValue()));
+            }
+            if (!reverseName.equals(entry.getValue()) && tempIndex.containsKey(reverseName)) {
+                chunks.addAll(tempIndex.get(reverseName));
+            }
+            if (chunks.size() > 0) {
+                mndIndex.put(entry.getKey(), chunks);
+            } else if (!reverseName.equalsIgnoreCase("all")) {
+                System.err.println("Unable to find " + entry.getValue() + "  or  " + reverseName);
+            }
+        }
+
+        if (mndIndex.isEmpty()) {
+            System.err.println("MNDIndex is empty or could not be read");
+            System.exit(43);
+        }
+
+        return mndIndex;
+    }
+
+    private static Map<String, List<Chunk>> readTextMndIndex(String mndIndexFile) {
+        Map<String, List<Chunk>> tempIndex = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(mndIndexFile)), HiCGlobals.bufferSize)) {
             String nextLine;
             while ((nextLine = reader.readLine()) != null) {
                 String[] nextEntry = nextLine.split(",");
@@ -60,32 +101,79 @@ public class MTIndexHandler {
                     System.exit(70);
                 }
             }
-            if (tempIndex.isEmpty()) {
-                System.err.println("Intermediate MNDIndex is empty or could not be read");
-                System.exit(44);
-            }
         } catch (Exception e) {
             System.err.println("Unable to read merged nodups index");
             System.exit(70);
         }
+        return tempIndex;
+    }
 
-        for (Map.Entry<Integer, String> entry : chromosomePairIndexes.entrySet()) {
-            String reverseName = entry.getValue().split("-")[1] + "-" + entry.getValue().split("-")[0];
-            if (tempIndex.containsKey(entry.getValue())) {
-                mndIndex.put(entry.getKey(), tempIndex.get(entry.getValue()));
-            } else if (tempIndex.containsKey(reverseName)) {
-                mndIndex.put(entry.getKey(), tempIndex.get(reverseName));
-            } else if (!reverseName.equalsIgnoreCase("all")) {
-                System.err.println("Unable to find " + entry.getValue() + "  or  " + reverseName);
+    /**
+     * Binary layout: magic, version, length and modification time of the indexed file,
+     * number of chromosome pairs, then per pair its name, number of chunks, and (offset, size) per chunk.
+     *
+     * @param source if not null, the index is only returned if it was built for this file as it is now
+     * @return the index by chromosome pair name, or null if the file is not a (current) binary index
+     */
+    static Map<String, List<Chunk>> readBinaryMndIndex(String mndIndexFile, File source) throws IOException {
+        File file = new File(mndIndexFile);
+        if (!file.isFile() || file.length() < 8) return null;
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file), HiCGlobals.bufferSize))) {
+            if (dis.readInt() != BINARY_INDEX_MAGIC) return null;
+            if (dis.readInt() != BINARY_INDEX_VERSION) return null;
+            long sourceLength = dis.readLong();
+            long sourceLastModified = dis.readLong();
+            if (source != null && (source.length() != sourceLength || source.lastModified() != sourceLastModified)) {
+                return null;
+            }
+            int numPairs = dis.readInt();
+            Map<String, List<Chunk>> index = new LinkedHashMap<>();
+            for (int i = 0; i < numPairs; i++) {
+                String name = dis.readUTF();
+                int numChunks = dis.readInt();
+                List<Chunk> chunks = new ArrayList<>(numChunks);
+                for (int k = 0; k < numChunks; k++) {
+                    chunks.add(new Chunk(dis.readLong(), dis.readInt()));
+                }
+                index.put(name, chunks);
             }
+            return index;
         }
+    }
 
-        if (mndIndex.isEmpty()) {
-            System.err.println("MNDIndex is empty or could not be read");
-            System.exit(43);
+    static void writeBinaryMndIndex(String mndIndexFile, File source, Map<String, List<Chunk>> index) throws IOException {
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mndIndexFile), HiCGlobals.bufferSize))) {
+            dos.writeInt(BINARY_INDEX_MAGIC);
+            dos.writeInt(BINARY_INDEX_VERSION);
+            dos.writeLong(source.length());
+            dos.writeLong(source.lastModified());
+            dos.writeInt(index.size());
+            for (Map.Entry<String, List<Chunk>> entry : index.entrySet()) {
+                dos.writeUTF(entry.getKey());
+                dos.writeInt(entry.getValue().size());
+                for (Chunk chunk : entry.getValue()) {
+                    dos.writeLong(chunk.mndIndex);
+                    dos.writeInt(chunk.mndChunk);
+                }
+            }
         }
+    }
 
-        return mndIndex;
+    /**
+     * @return the sidecar index written by an earlier run for this input, if it is still current
+     */
+    public static String getExistingSidecarIndex(String inputFile) {
+        String sidecar = inputFile + MndChunkIndexer.SIDECAR_EXTENSION;
+        try {
+            if (readBinaryMndIndex(sidecar, new File(inputFile)) != null) {
+                return sidecar;
+            }
+        } catch (IOException e) {
+            if (HiCGlobals.printVerboseComments) {
+                e.printStackTrace();
+            }
+        }
+        return null;
     }
 
     public static Map<String, Integer> populateChromosomeIndexes(ChromosomeHandler chromosomeHandler, int numCPUThreads) {
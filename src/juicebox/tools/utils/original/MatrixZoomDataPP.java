@@ -27,9 +27,11 @@ package juicebox.tools.utils.original;
 import htsjdk.tribble.util.LittleEndianInputStream;
 import htsjdk.tribble.util.LittleEndianOutputStream;
 import juicebox.HiC;
+import juicebox.data.BlockChecksums;
 import juicebox.data.ContactRecord;
 import juicebox.data.basics.Chromosome;
 import juicebox.data.v9depth.V9Depth;
+import juicebox.tools.dev.ParallelizedJuicerTools;
 import juicebox.windowui.HiCZoom;
 import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.broad.igv.tdf.BufferedByteWriter;
@@ -40,8 +42,6 @@ import java.io.*;
 import java.util.List;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.zip.Deflater;
 
 public class MatrixZoomDataPP {
@@ -67,6 +67,7 @@ public class MatrixZoomDataPP {
     private double percent95;
     private int BLOCK_CAPACITY = 1000;
     private final V9Depth v9Depth;
+    private BlockChecksums blockChecksums = null;
 
     /**
      * Representation of MatrixZoomData used for preprocessing
@@ -134,6 +135,17 @@ public class MatrixZoomDataPP {
         return isFrag ? HiC.Unit.FRAG : HiC.Unit.BP;
     }
 
+    /**
+     * @return the key the reader's MatrixZoomData has for this zoom data
+     */
+    String getKey() {
+        return chr1.getName() + "_" + chr2.getName() + "_" + getUnit() + "_" + binSize;
+    }
+
+    void setBlockChecksums(BlockChecksums blockChecksums) {
+        this.blockChecksums = blockChecksums;
+    }
+
     double getSum() {
         return sum;
     }
@@ -496,7 +508,7 @@ public class MatrixZoomDataPP {
         }
         int numCPUThreads = (losArray.length - 1) / numResolutions;
 
-        ExecutorService executor = Executors.newFixedThreadPool(numCPUThreads);
+        List<Runnable> workers = new ArrayList<>(numCPUThreads);
         Map<Integer, Long> blockChunkSizes = new ConcurrentHashMap<>(numCPUThreads);
         Map<Integer, List<IndexEntry>> chunkBlockIndexes = new ConcurrentHashMap<>(numCPUThreads);
 
@@ -540,17 +552,9 @@ public class MatrixZoomDataPP {
                     chunkBlockIndexes.put(whichLos,indexEntries);
                 }
             };
-            executor.execute(worker);
-        }
-        executor.shutdown();
-        // Wait until all threads finish
-        while (!executor.isTerminated()) {
-            try {
-                Thread.sleep(50);
-            } catch (InterruptedException e) {
-                System.err.println(e.getLocalizedMessage());
-            }
+            workers.add(worker);
         }
+        ParallelizedJuicerTools.runAll(null, workers);
 
         long adjust = 0;
         for (int i = 0; i < losArray.length; i++) {
@@ -923,6 +927,9 @@ public class MatrixZoomDataPP {
         byte[] bytes = buffer.getBytes();
         byte[] compressedBytes = compress(bytes, compressor);
         los.write(compressedBytes);
+        if (blockChecksums != null) {
+            blockChecksums.add(getKey(), block.getNumber(), BlockChecksums.compute(compressedBytes));
+        }
 
     }
 
@@ -0,0 +1,322 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2021 Broad Institute, Aiden Lab, Rice University, Baylor College of Medicine
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package juicebox.tools.utils.original;
+
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import juicebox.HiCGlobals;
+import juicebox.tools.clt.JuiceboxCLT;
+import juicebox.tools.dev.ParallelizedJuicerTools;
+import juicebox.tools.utils.original.mnditerator.BGZFBlockIndex;
+import juicebox.tools.utils.original.mnditerator.MNDFileParser;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * Builds the chunk index of a merged nodups file that the multithreaded preprocessor and statistics read,
+ * instead of relying on an index made by a separate script.
+ * <p>
+ * The file is cut into byte ranges that are scanned in parallel; each range reports the runs of consecutive
+ * lines with the same chromosome pair, and runs continuing across range boundaries are joined afterwards.
+ * Offsets are in bytes of the uncompressed text, so bgzip-compressed files are indexed the same way.
+ * The result is saved next to the input in the binary sidecar format read by MTIndexHandler.
+ */
+public class MndChunkIndexer {
+
+    public static final String SIDECAR_EXTENSION = ".mndidx";
+    // keeps a chromosome pair split into several chunks, so large pairs are spread over threads
+    private static final int MAX_CHUNK_SIZE = 128 * 1024 * 1024;
+    private static final int RANGES_PER_THREAD = 4;
+    private static final int MIN_RANGE_SIZE = 16 * 1024 * 1024;
+    private static final int READ_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * @return path of a sidecar index for the input, reusing one from an earlier run if the input is unchanged
+     */
+    public static String getOrCreateMndIndex(String inputFile, int numCPUThreads) throws IOException {
+        File input = new File(inputFile);
+        if (!input.isFile()) {
+            throw new IOException("Cannot index " + inputFile + "; an mnd index needs a regular file");
+        }
+        String sidecar = inputFile + SIDECAR_EXTENSION;
+        if (MTIndexHandler.readBinaryMndIndex(sidecar, input) != null) {
+            System.out.println("Using mnd index " + sidecar);
+            return sidecar;
+        }
+
+        long startTime = System.currentTimeMillis();
+        Map<String, List<Chunk>> index = createMndIndex(inputFile, numCPUThreads);
+        MTIndexHandler.writeBinaryMndIndex(sidecar, input, index);
+        System.out.println("Indexed " + index.size() + " chromosome pairs of " + inputFile + " in " +
+                (System.currentTimeMillis() - startTime) / 1000 + " seconds");
+        return sidecar;
+    }
+
+    public static Map<String, List<Chunk>> createMndIndex(String inputFile, int numCPUThreads) throws IOException {
+        final boolean isCompressed = inputFile.endsWith(".gz");
+        if (isCompressed && !BGZFBlockIndex.isBlockCompressed(inputFile)) {
+            throw new IOException("Cannot index " + inputFile + "; compressed mnd files need bgzip (BGZF) compression");
+        }
+        final long length = isCompressed ? BGZFBlockIndex.get(inputFile).getUncompressedLength() : new File(inputFile).length();
+        final int[] chrColumns = getChromosomeColumns(inputFile, isCompressed);
+
+        int numThreads = Math.max(1, numCPUThreads);
+        int numRanges = (int) Math.max(1, Math.min((long) numThreads * RANGES_PER_THREAD, length / MIN_RANGE_SIZE));
+        long rangeSize = length / numRanges + 1;
+
+        List<Future<List<Run>>> futures = new ArrayList<>(numRanges);
+        for (int r = 0; r < numRanges; r++) {
+            final long start = Math.min(length, r * rangeSize);
+            final long end = Math.min(length, start + rangeSize);
+            futures.add(ParallelizedJuicerTools.submit(() -> scanRange(inputFile, isCompressed, start, end, chrColumns)));
+        }
+
+        Map<String, List<Chunk>> index = new LinkedHashMap<>();
+        Run previous = null;
+        try {
+            for (Future<List<Run>> future : futures) {
+                for (Run run : future.get()) {
+                    if (previous != null && previous.canAppend(run)) {
+                        previous.append(run);
+                        continue;
+                    }
+                    if (previous != null) {
+                        addToIndex(index, previous);
+                    }
+                    previous = run;
+                }
+            }
+        } catch (Exception e) {
+            for (Future<List<Run>> future : futures) {
+                future.cancel(true);
+            }
+            throw new IOException("Unable to index " + inputFile, e);
+        }
+        if (previous != null) {
+            addToIndex(index, previous);
+        }
+        if (index.isEmpty()) {
+            throw new IOException("No contacts found while indexing " + inputFile);
+        }
+        return index;
+    }
+
+    private static void addToIndex(Map<String, List<Chunk>> index, Run run) {
+        List<Chunk> chunks = index.get(run.key);
+        if (chunks == null) {
+            chunks = new ArrayList<>();
+            index.put(run.key, chunks);
+        }
+        chunks.add(new Chunk(run.start, (int) run.size));
+    }
+
+    private static InputStream openAt(String inputFile, boolean isCompressed, long position) throws IOException {
+        if (isCompressed) {
+            BlockCompressedInputStream stream = new BlockCompressedInputStream(new File(inputFile));
+            stream.seek(BGZFBlockIndex.get(inputFile).getVirtualOffset(position));
+            return stream;
+        }
+        FileInputStream stream = new FileInputStream(inputFile);
+        stream.getChannel().position(position);
+        return stream;
+    }
+
+    private static int[] getChromosomeColumns(String inputFile, boolean isCompressed) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(openAt(inputFile, isCompressed, 0),
+                StandardCharsets.UTF_8), HiCGlobals.bufferSize)) {
+            String nextLine;
+            while ((nextLine = reader.readLine()) != null) {
+                if (nextLine.startsWith("#")) {
+                    // chunks of a pairs file would be read without its header, which defines the columns
+                    throw new IOException("Cannot index " + inputFile + "; files with a header are read single threaded");
+                }
+                if (nextLine.trim().length() > 0) {
+                    return MNDFileParser.getChromosomeColumns(JuiceboxCLT.splitToList(nextLine).length, nextLine);
+                }
+            }
+        }
+        throw new IOException("No contacts found while indexing " + inputFile);
+    }
+
+    /**
+     * Scans the lines starting in [start, end); the line crossing end is read to its end.
+     * Sizes are counted the way AsciiPairIterator counts them: characters without the line terminator, plus one.
+     */
+    private static List<Run> scanRange(String inputFile, boolean isCompressed, long start, long end,
+                                       int[] chrColumns) throws IOException {
+        List<Run> runs = new ArrayList<>();
+        if (start >= end) return runs;
+
+        try (InputStream is = openAt(inputFile, isCompressed, start > 0 ? start - 1 : 0)) {
+            LineScanner scanner = new LineScanner(chrColumns[0], chrColumns[1], runs);
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            long position = start > 0 ? start - 1 : 0;
+            // a range starts at the first line beginning at or after start
+            boolean skipping = start > 0;
+            boolean done = false;
+            int numRead;
+            while (!done && (numRead = is.read(buffer)) > 0) {
+                for (int i = 0; i < numRead && !done; i++, position++) {
+                    byte b = buffer[i];
+                    if (b == '\n') {
+                        if (skipping) {
+                            skipping = false;
+                        } else {
+                            scanner.endLine(position);
+                        }
+                        scanner.lineStart = position + 1;
+                        done = position + 1 >= end;
+                    } else if (!skipping) {
+                        scanner.add(b);
+                    }
+                }
+            }
+            if (!done && !skipping && scanner.lineStart < end) {
+                // last line of the file without a newline
+                scanner.endLine(position);
+            }
+            scanner.finish();
+        }
+        return runs;
+    }
+
+    private static class LineScanner {
+        private final int chr1Column, chr2Column;
+        private final List<Run> runs;
+        private final byte[][] key = new byte[2][64];
+        private final int[] keyLength = new int[2];
+        private final byte[][] previousKey = new byte[2][64];
+        private final int[] previousKeyLength = new int[2];
+        private long lineStart;
+        private int column = -1;
+        private boolean inToken = false;
+        private boolean isHeader = false;
+        private boolean endsWithReturn = false;
+        private Run current = null;
+
+        LineScanner(int chr1Column, int chr2Column, List<Run> runs) {
+            this.chr1Column = chr1Column;
+            this.chr2Column = chr2Column;
+            this.runs = runs;
+        }
+
+        void add(byte b) {
+            endsWithReturn = b == '\r';
+            if (column < 0 && !inToken && b == '#') {
+                isHeader = true;
+            }
+            if (b == ' ' || b == '\t' || b == '\r') {
+                inToken = false;
+                return;
+            }
+            if (!inToken) {
+                inToken = true;
+                column++;
+            }
+            int k = column == chr1Column ? 0 : column == chr2Column ? 1 : -1;
+            if (k >= 0) {
+                if (keyLength[k] == key[k].length) {
+                    key[k] = Arrays.copyOf(key[k], 2 * keyLength[k]);
+                }
+                key[k][keyLength[k]++] = b;
+            }
+        }
+
+        void endLine(long lineEnd) {
+            long size = lineEnd - lineStart + (endsWithReturn ? 0 : 1);
+            if (isHeader || column < chr2Column) {
+                // headers and blank lines are not part of any chunk
+                finishRun();
+            } else if (current != null && sameKey() && current.end == lineStart && current.size + size <= MAX_CHUNK_SIZE) {
+                current.size += size;
+                current.end = lineEnd + 1;
+            } else {
+                finishRun();
+                for (int k = 0; k < 2; k++) {
+                    previousKey[k] = Arrays.copyOf(key[k], keyLength[k]);
+                    previousKeyLength[k] = keyLength[k];
+                }
+                String name = new String(key[0], 0, keyLength[0], StandardCharsets.UTF_8) + "-" +
+                        new String(key[1], 0, keyLength[1], StandardCharsets.UTF_8);
+                current = new Run(name, lineStart, lineEnd + 1, size);
+            }
+            keyLength[0] = 0;
+            keyLength[1] = 0;
+            column = -1;
+            inToken = false;
+            isHeader = false;
+            endsWithReturn = false;
+        }
+
+        private boolean sameKey() {
+            for (int k = 0; k < 2; k++) {
+                if (keyLength[k] != previousKeyLength[k]) return false;
+                for (int i = 0; i < keyLength[k]; i++) {
+                    if (key[k][i] != previousKey[k][i]) return false;
+                }
+            }
+            return true;
+        }
+
+        private void finishRun() {
+            if (current != null) {
+                runs.add(current);
+                current = null;
+            }
+        }
+
+        void finish() {
+            finishRun();
+        }
+    }
+
+    private static class Run {
+        private final String key;
+        private final long start;
+        private long end;
+        private long size;
+
+        Run(String key, long start, long end, long size) {
+            this.key = key;
+            this.start = start;
+            this.end = end;
+            this.size = size;
+        }
+
+        boolean canAppend(Run next) {
+            return key.equals(next.key) && end == next.start && size + next.size <= MAX_CHUNK_SIZE;
+        }
+
+        void append(Run next) {
+            end = next.end;
+            size += next.size;
+        }
+    }
+}
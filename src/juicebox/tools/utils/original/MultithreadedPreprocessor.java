@@ -27,17 +27,17 @@ package juicebox.tools.utils.original;
 import htsjdk.tribble.util.LittleEndianOutputStream;
 import juicebox.HiCGlobals;
 import juicebox.data.ChromosomeHandler;
+import juicebox.tools.dev.ParallelizedJuicerTools;
 import juicebox.tools.utils.original.mnditerator.AlignmentPair;
-import juicebox.tools.utils.original.mnditerator.AsciiPairIterator;
 import juicebox.tools.utils.original.mnditerator.PairIterator;
+import juicebox.tools.utils.original.stats.FusedStatisticsWorker;
 import juicebox.windowui.NormalizationHandler;
 import org.broad.igv.util.Pair;
 
 import java.io.*;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.Deflater;
 
@@ -63,7 +63,7 @@ public class MultithreadedPreprocessor extends Preprocessor {
     private final AtomicInteger totalChrPairsWritten = new AtomicInteger(0);
     private final ConcurrentHashMap<Integer, AtomicInteger> completedChunksPerChrPair = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<Integer, Integer> numChunksPerChrPair = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<Integer, AtomicInteger> chrPairCompleted = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, CountDownLatch> chrPairCompleted = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<Integer, AtomicInteger> chrPairAvailableThreads = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<Integer, Integer> chrPairBlockCapacities = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<Integer, Integer> chunkCounterToChrPairMap = new ConcurrentHashMap<>();
@@ -147,6 +147,7 @@ public class MultithreadedPreprocessor extends Preprocessor {
 
 
         MatrixPP wholeGenomeMatrix = getInitialGenomeWideMatrixPP(chromosomeHandler);
+        FusedStatisticsWorker statisticsWorker = getStatisticsWorker(threadNum);
         int i = chunkNumber;
         int chunksProcessed = 0;
 
@@ -170,11 +171,12 @@ public class MultithreadedPreprocessor extends Preprocessor {
                 System.err.println("No index for merged nodups file.");
                 System.exit(67);
             } else {
-                iter = new AsciiPairIterator(inputFile, chromosomeIndexes, chunkPositions.get(chrChunk),
+                iter = PairIterator.getIterator(inputFile, chromosomeIndexes, chunkPositions.get(chrChunk),
                         chromosomeHandler);
             }
             while (iter.hasNext()) {
                 AlignmentPair pair = iter.next();
+                if (statisticsWorker != null) statisticsWorker.process(pair);
                 // skip pairs that mapped to contigs
                 if (!pair.isContigPair()) {
                     if (shouldSkipContact(pair)) continue;
@@ -262,7 +264,7 @@ public class MultithreadedPreprocessor extends Preprocessor {
                 totalChrPairToWrite++;
                 completedChunksPerChrPair.put(chrPair, new AtomicInteger(0));
                 numChunksPerChrPair.put(chrPair, numOfChunks);
-                chrPairCompleted.put(chrPair, new AtomicInteger(0));
+                chrPairCompleted.put(chrPair, new CountDownLatch(1));
                 chrPairAvailableThreads.put(chrPair, new AtomicInteger(0));
                 chrPairBlockCapacities.put(chrPair, BLOCK_CAPACITY/Math.min(numCPUThreads,numOfChunks));
                 threadSpecificChrPairMatrices.put(chrPair, new ConcurrentHashMap<>());
@@ -276,7 +278,7 @@ public class MultithreadedPreprocessor extends Preprocessor {
             }
         }
 
-        ExecutorService executor = Executors.newFixedThreadPool(numCPUThreads);
+        List<Runnable> workers = new ArrayList<>();
         for (int i = 1; i < numCPUThreads; i++) {
             int threadNum = i;
             Runnable worker = new Runnable() {
@@ -334,15 +336,13 @@ public class MultithreadedPreprocessor extends Preprocessor {
                                 WriteIndividualMatrix(currentChrPair, currentAvailableThreads);
                                 finalChrMatrices.remove(currentChrPair);
                                 threadSpecificChrPairMatrices.remove(currentChrPair);
-                                chrPairCompleted.get(currentChrPair).getAndIncrement();
+                                chrPairCompleted.get(currentChrPair).countDown();
                                 //System.err.println(currentChrPair + " " + Duration.between(D,E).toMillis());
                             }
-                            while (chrPairCompleted.get(currentChrPair).get() == 0) {
-                                try {
-                                    Thread.sleep(1000);
-                                } catch (InterruptedException e) {
-                                    System.err.println(e.getLocalizedMessage());
-                                }
+                            try {
+                                ParallelizedJuicerTools.await(chrPairCompleted.get(currentChrPair));
+                            } catch (InterruptedException e) {
+                                System.err.println(e.getLocalizedMessage());
                             }
 
                         }
@@ -352,18 +352,9 @@ public class MultithreadedPreprocessor extends Preprocessor {
                     }
                 }
             };
-            executor.execute(worker);
-        }
-        executor.shutdown();
-
-        // Wait until all threads finish
-        while (!executor.isTerminated()) {
-            try {
-                Thread.sleep(50);
-            } catch (InterruptedException e) {
-                System.err.println(e.getLocalizedMessage());
-            }
+            workers.add(worker);
         }
+        ParallelizedJuicerTools.runAll("Pre chunks", workers);
 
 
         if (expectedVectorFile == null) {
@@ -29,17 +29,22 @@ package juicebox.tools.utils.original;
 import htsjdk.tribble.util.LittleEndianOutputStream;
 import juicebox.HiC;
 import juicebox.HiCGlobals;
+import juicebox.data.BlockChecksums;
+import juicebox.data.CoverageVectors;
 import juicebox.data.ChromosomeHandler;
 import juicebox.data.basics.Chromosome;
 import juicebox.data.basics.ListOfDoubleArrays;
 import juicebox.tools.clt.CommandLineParser.Alignment;
 import juicebox.tools.utils.original.mnditerator.AlignmentPair;
 import juicebox.tools.utils.original.mnditerator.PairIterator;
+import juicebox.tools.utils.original.stats.FusedStatisticsWorker;
+import juicebox.tools.utils.original.stats.StatisticsContainer;
 import juicebox.windowui.NormalizationHandler;
 import org.broad.igv.tdf.BufferedByteWriter;
 import org.broad.igv.util.Pair;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.Deflater;
@@ -62,6 +67,9 @@ public class Preprocessor {
     public static final String SOFTWARE = "software";
     protected static final String NVI_INDEX = "nviIndex";
     protected static final String NVI_LENGTH = "nviLength";
+    // space reserved in the header for statistics computed while the body is written
+    private static final int FUSED_STATISTICS_BYTES = 64 * 1024;
+    private static final int FUSED_GRAPHS_BYTES = 256 * 1024;
 
     protected final ChromosomeHandler chromosomeHandler;
     protected Map<String, Integer> chromosomeIndexes;
@@ -110,6 +118,11 @@ public class Preprocessor {
     protected long normVectorLengthPosition;
     protected Map<String, ExpectedValueCalculation> expectedValueCalculations;
     protected File tmpDir;
+    protected boolean computeFusedStatistics = false;
+    protected String ligationJunction = "none";
+    protected final Map<Integer, FusedStatisticsWorker> statisticsWorkers = new ConcurrentHashMap<>();
+    private long statisticsPosition = -1, graphsPosition = -1;
+    protected BlockChecksums blockChecksums = null;
     
     public Preprocessor(File outputFile, String genomeId, ChromosomeHandler chromosomeHandler, double hicFileScalingFactor) {
         this.genomeId = genomeId;
@@ -345,43 +358,20 @@ public class Preprocessor {
                 System.err.println("Position randomizer seed not set, disregarding map options");
             }
 
-            if (statsFileName != null) {
-                FileInputStream is = null;
-                try {
-                    is = new FileInputStream(statsFileName);
-                    BufferedReader reader = new BufferedReader(new InputStreamReader(is), HiCGlobals.bufferSize);
-                    stats = new StringBuilder();
-                    String nextLine;
-                    while ((nextLine = reader.readLine()) != null) {
-                        stats.append(nextLine).append("\n");
-                    }
-                } catch (IOException e) {
-                    System.err.println("Error while reading stats file: " + e);
-                    stats = null;
-                } finally {
-                    if (is != null) {
-                        is.close();
-                    }
-                }
-
+            if (computeFusedStatistics && statsFileName == null) {
+                System.err.println("Computing statistics in pre requires a statistics file (-s); skipping statistics");
+                computeFusedStatistics = false;
             }
-            if (graphFileName != null) {
-                FileInputStream is = null;
-                try {
-                    is = new FileInputStream(graphFileName);
-                    BufferedReader reader = new BufferedReader(new InputStreamReader(is), HiCGlobals.bufferSize);
-                    graphs = new StringBuilder();
-                    String nextLine;
-                    while ((nextLine = reader.readLine()) != null) {
-                        graphs.append(nextLine).append("\n");
-                    }
-                } catch (IOException e) {
-                    System.err.println("Error while reading graphs file: " + e);
-                    graphs = null;
-                } finally {
-                    if (is != null) {
-                        is.close();
-                    }
+            if (computeFusedStatistics) {
+                // placeholders in the header, filled in once the body has been written
+                stats = new StringBuilder(getReservedAttribute(FUSED_STATISTICS_BYTES));
+                graphs = new StringBuilder(getReservedAttribute(FUSED_GRAPHS_BYTES));
+            } else {
+                if (statsFileName != null) {
+                    stats = readAttributeFile(statsFileName, "stats");
+                }
+                if (graphFileName != null) {
+                    graphs = readAttributeFile(graphFileName, "graphs");
                 }
             }
 
@@ -449,6 +439,9 @@ public class Preprocessor {
             }
         }
 
+        if (computeFusedStatistics) {
+            writeFusedStatistics(headerFile);
+        }
         updateMasterIndex(headerFile);
         System.out.println("\nFinished preprocess");
     }
@@ -495,10 +488,12 @@ public class Preprocessor {
         los.writeString("Juicer Tools Version " + HiCGlobals.versionNum);
         if (stats != null) {
             los.writeString(STATISTICS);
+            statisticsPosition = los.getWrittenCount();
             los.writeString(stats.toString());
         }
         if (graphs != null) {
             los.writeString(GRAPHS);
+            graphsPosition = los.getWrittenCount();
             los.writeString(graphs.toString());
         }
         if (hicFileScaling != null) {
@@ -677,6 +672,7 @@ public class Preprocessor {
         PairIterator iter = PairIterator.getIterator(inputFile, chromosomeIndexes, chromosomeHandler);
 
         Set<String> writtenMatrices = Collections.synchronizedSet(new HashSet<>());
+        FusedStatisticsWorker statisticsWorker = getStatisticsWorker(0);
 
         int currentChr1 = -1;
         int currentChr2 = -1;
@@ -685,6 +681,7 @@ public class Preprocessor {
 
         while (iter.hasNext()) {
             AlignmentPair pair = iter.next();
+            if (statisticsWorker != null) statisticsWorker.process(pair);
             // skip pairs that mapped to contigs
             if (!pair.isContigPair()) {
                 if (shouldSkipContact(pair)) continue;
@@ -871,6 +868,17 @@ public class Preprocessor {
 
     protected void writeFooter(LittleEndianOutputStream[] los) throws IOException {
 
+        // Block checksums go just ahead of the master index, which then starts after them
+        if (blockChecksums != null) {
+            byte[] checksumBytes = blockChecksums.getBytes();
+            los[0].write(checksumBytes);
+            matrixPositions.put(BlockChecksums.MASTER_INDEX_KEY, new IndexEntry(masterIndexPosition, checksumBytes.length));
+            masterIndexPosition += checksumBytes.length;
+        }
+
+        // Empty entry for the coverage vectors; addNorm writes them after the norms and fills it in
+        matrixPositions.put(CoverageVectors.MASTER_INDEX_KEY, new IndexEntry(0, 0));
+
         // Index
         List<BufferedByteWriter> bufferList = new ArrayList<>();
         bufferList.add(new BufferedByteWriter());
@@ -1018,6 +1026,7 @@ public class Preprocessor {
         for (int i = 0; i < matrix.getZoomData().length; i++) {
             MatrixZoomDataPP zd = matrix.getZoomData()[i];
             if (zd != null) {
+                zd.setBlockChecksums(blockChecksums);
                 List<IndexEntry> blockIndex = null;
                 if (doMultiThreadedBehavior) {
                     if (losArray.length > 1) {
@@ -1116,4 +1125,92 @@ public class Preprocessor {
     public void setStatisticsFile(String statsOption) {
         statsFileName = statsOption;
     }
+
+    /**
+     * Compute the statistics and graphs during the pass that bins contacts, instead of reading the
+     * statistics (-s) and graphs (-g) files. Results are appended to the statistics file as the
+     * statistics command would, and embedded in the header.
+     */
+    public void setFusedStatistics(boolean computeFusedStatistics, String ligationJunction) {
+        this.computeFusedStatistics = computeFusedStatistics;
+        if (ligationJunction != null && ligationJunction.length() > 1) {
+            this.ligationJunction = ligationJunction;
+        }
+    }
+
+    public void setRecordBlockChecksums(boolean recordBlockChecksums) {
+        blockChecksums = recordBlockChecksums ? new BlockChecksums() : null;
+    }
+
+    /**
+     * @return the statistics worker for this thread, or null when statistics are not computed in pre
+     */
+    protected FusedStatisticsWorker getStatisticsWorker(int threadNum) {
+        if (!computeFusedStatistics) return null;
+        FusedStatisticsWorker worker = statisticsWorkers.get(threadNum);
+        if (worker == null) {
+            worker = new FusedStatisticsWorker(fragmentFileName == null ? "none" : fragmentFileName,
+                    Collections.singletonList(statsFileName), Collections.singletonList(mapqThreshold),
+                    ligationJunction, chromosomeHandler, fragmentCalculation);
+            statisticsWorkers.put(threadNum, worker);
+        }
+        return worker;
+    }
+
+    private void writeFusedStatistics(String headerFile) throws IOException {
+        StatisticsContainer container = new StatisticsContainer();
+        for (FusedStatisticsWorker worker : statisticsWorkers.values()) {
+            container.add(worker.getResultsContainer(), 1);
+        }
+        List<String> statsFiles = Collections.singletonList(statsFileName);
+        container.calculateConvergence(1);
+        container.outputStatsFile(statsFiles);
+        container.writeHistFile(statsFiles);
+
+        StringBuilder stats = readAttributeFile(statsFileName, "stats");
+        StringBuilder graphs = readAttributeFile(StatisticsContainer.getHistFileName(statsFileName), "graphs");
+        try (RandomAccessFile raf = new RandomAccessFile(headerFile, "rw")) {
+            fillReservedAttribute(raf, statisticsPosition, FUSED_STATISTICS_BYTES, stats, STATISTICS);
+            fillReservedAttribute(raf, graphsPosition, FUSED_GRAPHS_BYTES, graphs, GRAPHS);
+        }
+    }
+
+    private static void fillReservedAttribute(RandomAccessFile raf, long position, int reservedBytes,
+                                              StringBuilder value, String key) throws IOException {
+        if (value == null) return;
+        byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+        if (bytes.length >= reservedBytes) {
+            throw new IOException("The " + key + " (" + bytes.length + " bytes) do not fit in the " + (reservedBytes - 1)
+                    + " bytes reserved for them by --fuse-statistics; run pre without --fuse-statistics");
+        }
+        raf.seek(position);
+        raf.write(bytes);
+    }
+
+    private static String getReservedAttribute(int reservedBytes) {
+        char[] padding = new char[reservedBytes - 1]; // writeString adds the terminating null
+        Arrays.fill(padding, ' ');
+        return new String(padding);
+    }
+
+    private static StringBuilder readAttributeFile(String fileName, String description) throws IOException {
+        FileInputStream is = null;
+        try {
+            is = new FileInputStream(fileName);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(is), HiCGlobals.bufferSize);
+            StringBuilder contents = new StringBuilder();
+            String nextLine;
+            while ((nextLine = reader.readLine()) != null) {
+                contents.append(nextLine).append("\n");
+            }
+            return contents;
+        } catch (IOException e) {
+            System.err.println("Error while reading " + description + " file: " + e);
+            return null;
+        } finally {
+            if (is != null) {
+                is.close();
+            }
+        }
+    }
 }
@@ -0,0 +1,380 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2021 Broad Institute, Aiden Lab, Rice University, Baylor College of Medicine
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package juicebox.tools.utils.original;
+
+import htsjdk.tribble.util.LittleEndianOutputStream;
+import juicebox.HiC;
+import juicebox.HiCGlobals;
+import juicebox.data.*;
+import juicebox.data.basics.Chromosome;
+import juicebox.data.basics.ListOfDoubleArrays;
+import juicebox.tools.dev.ParallelizedJuicerTools;
+import juicebox.windowui.HiCZoom;
+import juicebox.windowui.NormalizationHandler;
+import org.broad.igv.tdf.BufferedByteWriter;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.Deflater;
+
+/**
+ * Writes new bp resolutions into an existing .hic file by binning the records of a finer resolution
+ * already in the file, instead of re-running pre on the original contacts.
+ * <p>
+ * Nothing already in the file is moved. New blocks, new matrix metadata (the old zoom headers plus
+ * the new ones), the list of added resolutions and a new footer are appended; the header's master
+ * index pointer and normalization vector index pointer are patched last. Existing normalization
+ * vectors are kept; the new resolutions have none until addNorm is run again.
+ * <p>
+ * Chromosome pairs are binned and compressed in parallel, each into its own temporary block file;
+ * the block files are appended to the .hic in master index order.
+ */
+public class ResolutionUpdater {
+
+    private static final int COPY_BUFFER_SIZE = 1 << 20;
+    private static final int MATRICES_IN_FLIGHT_PER_THREAD = 2;
+
+    /**
+     * Adds each resolution, binned from the coarsest existing resolution that divides it.
+     * Counts are summed exactly, so any dividing resolution gives the same result;
+     * the coarsest has the fewest records to read.
+     */
+    public static void updateHicFile(String path, List<Integer> resolutions, int numThreads) throws IOException {
+        HiCGlobals.useCache = false;
+        HiCGlobals.allowDynamicBlockIndex = false;
+        DatasetReaderV2 reader = new DatasetReaderV2(path);
+        Dataset ds = reader.read();
+        HiCGlobals.verifySupportedHiCFileWritingVersion(reader.getVersion());
+
+        List<Integer> existing = new ArrayList<>();
+        for (HiCZoom zoom : ds.getBpZooms()) {
+            existing.add(zoom.getBinSize());
+        }
+
+        Map<Integer, List<Integer>> resolutionsBySource = new TreeMap<>();
+        for (int newRes : new TreeSet<>(resolutions)) {
+            if (existing.contains(newRes)) {
+                System.err.println("Resolution " + newRes + " is already in " + path + "; skipping");
+                continue;
+            }
+            int highRes = -1;
+            for (int potentialRes : existing) {
+                if (potentialRes < newRes && potentialRes > highRes && newRes % potentialRes == 0) {
+                    highRes = potentialRes;
+                }
+            }
+            if (highRes < 0) {
+                System.err.println("No suitable higher resolution found for " + newRes + "; skipping");
+                continue;
+            }
+            if (!resolutionsBySource.containsKey(highRes)) {
+                resolutionsBySource.put(highRes, new ArrayList<Integer>());
+            }
+            resolutionsBySource.get(highRes).add(newRes);
+        }
+
+        if (resolutionsBySource.isEmpty()) {
+            System.err.println("No resolutions to add");
+            return;
+        }
+        new ResolutionUpdater(path, reader, ds, resolutionsBySource).writeResolutions(Math.max(1, numThreads));
+    }
+
+    private final String path;
+    private final DatasetReaderV2 reader;
+    private final Dataset ds;
+    private final ChromosomeHandler chromosomeHandler;
+    private final Map<Integer, List<Integer>> resolutionsBySource;
+    private final Map<String, ExpectedValueCalculation> expectedValueCalculations = new LinkedHashMap<>();
+
+    private ResolutionUpdater(String path, DatasetReaderV2 reader, Dataset ds, Map<Integer, List<Integer>> resolutionsBySource) {
+        this.path = path;
+        this.reader = reader;
+        this.ds = ds;
+        this.chromosomeHandler = ds.getChromosomeHandler();
+        this.resolutionsBySource = resolutionsBySource;
+    }
+
+    private void writeResolutions(int numThreads) throws IOException {
+        List<Integer> addedResolutions = new ArrayList<>();
+        for (int binSize : reader.getAddedBpResolutions()) {
+            addedResolutions.add(binSize);
+        }
+        for (List<Integer> newResolutions : resolutionsBySource.values()) {
+            for (int binSize : newResolutions) {
+                expectedValueCalculations.put("BP_" + binSize, createExpectedValueCalculation(binSize));
+                addedResolutions.add(binSize);
+            }
+        }
+
+        Map<String, IndexEntry> masterIndex = new LinkedHashMap<>(reader.getMasterIndex());
+        List<String> matrixKeys = new ArrayList<>();
+        for (String key : masterIndex.keySet()) {
+            String[] indices = key.split("_");
+            if (indices.length == 2 && indices[0].matches("\\d+") && indices[1].matches("\\d+")
+                    && !indices[0].equals("0") && !indices[1].equals("0")) {
+                matrixKeys.add(key);
+            }
+        }
+        FooterAppender footer = new FooterAppender(reader);
+
+        try (RandomAccessFile input = new RandomAccessFile(path, "r")) {
+            long fileLength = input.length();
+            LittleEndianOutputStream los = new LittleEndianOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(path, true), HiCGlobals.bufferSize));
+            los.setWrittenCount(fileLength);
+            try {
+                writeMatrices(matrixKeys, numThreads, input, masterIndex, los);
+
+                long addedResolutionsPosition = los.getWrittenCount();
+                los.writeInt(addedResolutions.size());
+                for (int binSize : addedResolutions) {
+                    los.writeInt(binSize);
+                }
+                masterIndex.put(DatasetReaderV2.ADDED_BP_RESOLUTIONS_KEY, new IndexEntry(addedResolutionsPosition,
+                        (int) (los.getWrittenCount() - addedResolutionsPosition)));
+
+                List<BufferedByteWriter> expectedBuffers = new ArrayList<>();
+                for (ExpectedValueCalculation ev : expectedValueCalculations.values()) {
+                    expectedBuffers.add(getExpectedValueBuffer(ev));
+                }
+                footer.writeFooter(input, masterIndex, expectedBuffers, los);
+            } finally {
+                los.close();
+            }
+        }
+
+        footer.updateHeader(path);
+        System.out.println("Added resolutions " + resolutionsBySource.values() + " to " + path);
+    }
+
+    private ExpectedValueCalculation createExpectedValueCalculation(int binSize) {
+        return new ExpectedValueCalculation(chromosomeHandler, binSize, null, NormalizationHandler.NONE);
+    }
+
+    /**
+     * Bins up to MATRICES_IN_FLIGHT_PER_THREAD chromosome pairs per thread ahead of the writer,
+     * which appends them in order as they complete.
+     */
+    private void writeMatrices(List<String> matrixKeys, int numThreads, RandomAccessFile input,
+                               Map<String, IndexEntry> masterIndex, LittleEndianOutputStream los) throws IOException {
+        Deque<Future<BinnedMatrix>> pending = new ArrayDeque<>();
+        Iterator<String> iterator = matrixKeys.iterator();
+
+        try {
+            while (iterator.hasNext() || !pending.isEmpty()) {
+                while (iterator.hasNext() && pending.size() < numThreads * MATRICES_IN_FLIGHT_PER_THREAD) {
+                    final String key = iterator.next();
+                    String[] indices = key.split("_");
+                    final Chromosome chr1 = chromosomeHandler.getChromosomeFromIndex(Integer.parseInt(indices[0]));
+                    final Chromosome chr2 = chromosomeHandler.getChromosomeFromIndex(Integer.parseInt(indices[1]));
+                    // Dataset caches matrices in a plain map, so they are fetched here rather than by the workers
+                    final Matrix matrix = ds.getMatrix(chr1, chr2);
+                    pending.add(ParallelizedJuicerTools.submit(new Callable<BinnedMatrix>() {
+                        @Override
+                        public BinnedMatrix call() throws IOException {
+                            return binMatrix(key, chr1, chr2, matrix);
+                        }
+                    }));
+                }
+                BinnedMatrix binned = pending.poll().get();
+                try {
+                    masterIndex.put(binned.key, writeMatrix(input, masterIndex.get(binned.key), binned, los));
+                    for (Map.Entry<String, ExpectedValueCalculation> entry : binned.expectedValueCalculations.entrySet()) {
+                        expectedValueCalculations.get(entry.getKey()).merge(entry.getValue());
+                    }
+                } finally {
+                    if (!binned.blockFile.delete()) {
+                        System.err.println("Unable to delete " + binned.blockFile);
+                    }
+                }
+                System.out.print(".");
+            }
+            System.out.println();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while adding resolutions to " + path, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Unable to add resolutions to " + path, e.getCause());
+        } finally {
+            for (Future<?> future : pending) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * New zoom data of one chromosome pair, with its blocks already compressed into blockFile.
+     * Block index positions are relative to the start of blockFile.
+     */
+    private static class BinnedMatrix {
+        final String key;
+        final File blockFile;
+        final List<MatrixZoomDataPP> zoomData = new ArrayList<>();
+        final List<List<IndexEntry>> blockIndexes = new ArrayList<>();
+        final Map<String, ExpectedValueCalculation> expectedValueCalculations = new HashMap<>();
+
+        BinnedMatrix(String key, File blockFile) {
+            this.key = key;
+            this.blockFile = blockFile;
+        }
+    }
+
+    /**
+     * Streams every block of each source resolution through a MatrixPP holding the resolutions
+     * derived from it, then writes the new blocks with MatrixZoomDataPP.mergeAndWriteBlocks.
+     */
+    private BinnedMatrix binMatrix(String key, Chromosome chr1, Chromosome chr2, Matrix matrix) throws IOException {
+        BinnedMatrix binned = new BinnedMatrix(key, File.createTempFile("resolutions", ".bin"));
+        binned.blockFile.deleteOnExit();
+        Deflater compressor = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        LittleEndianOutputStream blockLos = new LittleEndianOutputStream(new BufferedOutputStream(
+                new FileOutputStream(binned.blockFile), HiCGlobals.bufferSize));
+        try {
+            for (Map.Entry<Integer, List<Integer>> entry : resolutionsBySource.entrySet()) {
+                HiCZoom sourceZoom = new HiCZoom(HiC.Unit.BP, entry.getKey());
+                MatrixZoomData zd = matrix == null ? null : matrix.getZoomData(sourceZoom);
+                if (zd == null) continue;
+
+                List<Integer> newResolutions = entry.getValue();
+                int[] binSizes = new int[newResolutions.size()];
+                Map<String, ExpectedValueCalculation> evs = null;
+                if (chr1.getIndex() == chr2.getIndex()) {
+                    evs = new HashMap<>();
+                }
+                for (int i = 0; i < binSizes.length; i++) {
+                    binSizes[i] = newResolutions.get(i);
+                    if (evs != null) {
+                        evs.put("BP_" + binSizes[i], createExpectedValueCalculation(binSizes[i]));
+                    }
+                }
+                MatrixPP matrixPP = new MatrixPP(chr1.getIndex(), chr2.getIndex(), chromosomeHandler, binSizes,
+                        null, null, 0, reader.getDepthBase(), Preprocessor.BLOCK_CAPACITY);
+
+                List<Integer> blockNumbers = reader.getBlockNumbers(zd);
+                if (blockNumbers != null) {
+                    for (int blockNumber : blockNumbers) {
+                        Block block = reader.readNormalizedBlock(blockNumber, zd, NormalizationHandler.NONE);
+                        if (block == null) continue;
+                        for (ContactRecord record : block.getContactRecords()) {
+                            matrixPP.incrementCount(record, evs, null, sourceZoom);
+                        }
+                    }
+                }
+                matrixPP.parsingComplete();
+
+                for (MatrixZoomDataPP newZD : matrixPP.getZoomData()) {
+                    binned.zoomData.add(newZD);
+                    if (newZD.blockNumbers.isEmpty()) {
+                        binned.blockIndexes.add(new ArrayList<IndexEntry>());
+                    } else {
+                        binned.blockIndexes.add(newZD.mergeAndWriteBlocks(blockLos, compressor));
+                    }
+                }
+                if (evs != null) {
+                    binned.expectedValueCalculations.putAll(evs);
+                }
+            }
+        } finally {
+            blockLos.close();
+            compressor.end();
+        }
+        return binned;
+    }
+
+    /**
+     * Appends the blocks of the new zoom data, then the matrix metadata: the old zoom headers
+     * (with their block indexes) copied verbatim, followed by the new zoom headers.
+     */
+    private IndexEntry writeMatrix(RandomAccessFile input, IndexEntry oldEntry, BinnedMatrix binned,
+                                   LittleEndianOutputStream los) throws IOException {
+        long blockFileStart = los.getWrittenCount();
+        try (InputStream blocks = new FileInputStream(binned.blockFile)) {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int n;
+            while ((n = blocks.read(buffer)) > 0) {
+                los.write(buffer, 0, n);
+            }
+        }
+
+        input.seek(oldEntry.position);
+        int chr1Idx = Integer.reverseBytes(input.readInt());
+        int chr2Idx = Integer.reverseBytes(input.readInt());
+        int nResolutions = Integer.reverseBytes(input.readInt());
+
+        long position = los.getWrittenCount();
+        los.writeInt(chr1Idx);
+        los.writeInt(chr2Idx);
+        los.writeInt(nResolutions + binned.zoomData.size());
+        FooterAppender.copyRange(input, oldEntry.position + 12, oldEntry.position + oldEntry.size, los);
+        for (int i = 0; i < binned.zoomData.size(); i++) {
+            writeZoomHeader(binned.zoomData.get(i), binned.blockIndexes.get(i), blockFileStart, los);
+        }
+        return new IndexEntry(position, (int) (los.getWrittenCount() - position));
+    }
+
+    private void writeZoomHeader(MatrixZoomDataPP zd, List<IndexEntry> blockIndex, long blockFileStart,
+                                 LittleEndianOutputStream los) throws IOException {
+        los.writeString(zd.getUnit().toString());
+        los.writeInt(zd.getZoom());
+        los.writeFloat((float) zd.getSum());
+        los.writeFloat((float) zd.getOccupiedCellCount());
+        los.writeFloat((float) zd.getPercent5());
+        los.writeFloat((float) zd.getPercent95());
+        los.writeInt(zd.getBinSize());
+        los.writeInt(zd.getBlockBinCount());
+        los.writeInt(zd.getBlockColumnCount());
+        los.writeInt(blockIndex.size());
+        for (IndexEntry entry : blockIndex) {
+            los.writeInt(entry.id);
+            los.writeLong(blockFileStart + entry.position);
+            los.writeInt(entry.size);
+        }
+    }
+
+    private BufferedByteWriter getExpectedValueBuffer(ExpectedValueCalculation ev) throws IOException {
+        ev.computeDensity();
+        BufferedByteWriter buffer = new BufferedByteWriter();
+        buffer.putNullTerminatedString(HiC.Unit.BP.toString());
+        buffer.putInt(ev.getGridSize());
+        ListOfDoubleArrays expectedValues = ev.getDensityAvg();
+        buffer.putLong(expectedValues.getLength());
+        for (double[] expectedArray : expectedValues.getValues()) {
+            for (double value : expectedArray) {
+                buffer.putFloat((float) value);
+            }
+        }
+        Map<Integer, Double> normalizationFactors = ev.getChrScaleFactors();
+        buffer.putInt(normalizationFactors.size());
+        for (Map.Entry<Integer, Double> normFactor : normalizationFactors.entrySet()) {
+            buffer.putInt(normFactor.getKey());
+            buffer.putFloat(normFactor.getValue().floatValue());
+        }
+        return buffer;
+    }
+}
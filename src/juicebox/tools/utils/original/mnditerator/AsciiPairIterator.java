@@ -25,6 +25,7 @@
 package juicebox.tools.utils.original.mnditerator;
 
 
+import htsjdk.samtools.util.BlockCompressedInputStream;
 import juicebox.HiCGlobals;
 import juicebox.data.ChromosomeHandler;
 import juicebox.tools.utils.original.Chunk;
@@ -59,16 +60,22 @@ public class AsciiPairIterator extends GenericPairIterator implements PairIterat
                              ChromosomeHandler handler) throws IOException {
         super(new MNDFileParser(new ComplexLineParser(chromosomeOrdinals, handler, false, false)));
         if (path.endsWith(".gz")) {
-            System.err.println("Multithreading with indexed mnd currently only works with unzipped mnd");
-            System.exit(70);
+            if (!BGZFBlockIndex.isBlockCompressed(path)) {
+                System.err.println("Multithreading with indexed mnd only works with unzipped or bgzip-compressed mnd");
+                System.exit(70);
+            }
+            // index offsets refer to the uncompressed text; each chunk inflates only its own blocks
+            BlockCompressedInputStream bgzfStream = new BlockCompressedInputStream(new File(path));
+            bgzfStream.seek(BGZFBlockIndex.get(path).getVirtualOffset(chunk.mndIndex));
+            this.reader = new BufferedReader(new InputStreamReader(bgzfStream, StandardCharsets.UTF_8), HiCGlobals.bufferSize);
         } else {
             FileInputStream fis = new FileInputStream(path);
             fis.getChannel().position(chunk.mndIndex);
             this.reader = new BufferedReader(new InputStreamReader(fis), HiCGlobals.bufferSize);
             //this.mndStart = chunk.mndIndex;
-            this.mndChunkSize = chunk.mndChunk;
-            this.stopAfterChunk = true;
         }
+        this.mndChunkSize = chunk.mndChunk;
+        this.stopAfterChunk = true;
         advance();
     }
 
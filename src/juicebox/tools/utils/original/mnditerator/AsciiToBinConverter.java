@@ -25,12 +25,17 @@
 package juicebox.tools.utils.original.mnditerator;
 
 import htsjdk.tribble.util.LittleEndianOutputStream;
+import juicebox.HiCGlobals;
 import juicebox.data.ChromosomeHandler;
 import juicebox.data.basics.Chromosome;
+import juicebox.tools.dev.ParallelizedJuicerTools;
+import juicebox.tools.utils.original.Chunk;
+import juicebox.tools.utils.original.MndChunkIndexer;
 
 import java.io.*;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.Deflater;
 
 /**
  * Utility class for converting an asscii "pair" file to a compact binary format.  Can greatly speed up calculation
@@ -43,18 +48,46 @@ import java.util.Map;
  */
 public class AsciiToBinConverter {
 
+    private static final int CHUNKS_IN_FLIGHT_PER_THREAD = 2;
+
     /**
      * @param inputPath
      * @param outputFile
      * @param chromosomeHandler
      */
     public static void convert(String inputPath, String outputFile, ChromosomeHandler chromosomeHandler) throws IOException {
+        convert(inputPath, outputFile, chromosomeHandler, 1);
+    }
+
+    /**
+     * Output ending in .cbin is written in the compressed binary pairs format; with more than one thread the
+     * input is indexed into chromosome-pair chunks which are parsed and compressed in parallel.
+     */
+    public static void convert(String inputPath, String outputFile, ChromosomeHandler chromosomeHandler,
+                               int numThreads) throws IOException {
 
         Map<String, Integer> chromosomeOrdinals = new HashMap<>();
         for (Chromosome c : chromosomeHandler.getChromosomeArray()) {
             chromosomeOrdinals.put(c.getName(), c.getIndex());
         }
 
+        if (outputFile.endsWith(CompressedBinPairFile.EXTENSION)) {
+            if (numThreads > 1) {
+                Map<String, List<Chunk>> mndIndex = null;
+                try {
+                    mndIndex = MndChunkIndexer.createMndIndex(inputPath, numThreads);
+                } catch (IOException e) {
+                    System.err.println("Unable to index " + inputPath + " (" + e.getMessage() + "); converting on a single thread");
+                }
+                if (mndIndex != null) {
+                    convertToCompressedBinary(inputPath, outputFile, chromosomeHandler, chromosomeOrdinals, mndIndex, numThreads);
+                    return;
+                }
+            }
+            convertToCompressedBinary(inputPath, outputFile, chromosomeHandler, chromosomeOrdinals);
+            return;
+        }
+
         AsciiPairIterator iter = null;
         BufferedOutputStream bos = null;
         try {
@@ -76,6 +109,113 @@ public class AsciiToBinConverter {
         }
     }
 
+    private static void convertToCompressedBinary(String inputPath, String outputFile, ChromosomeHandler chromosomeHandler,
+                                                  Map<String, Integer> chromosomeOrdinals) throws IOException {
+        final CompressedBinPairWriter writer = new CompressedBinPairWriter(outputFile);
+        Deflater deflater = new Deflater();
+        AsciiPairIterator iter = new AsciiPairIterator(inputPath, chromosomeOrdinals, chromosomeHandler, true);
+        try {
+            CompressedBinPairWriter.encode(iter, deflater, new CompressedBinPairWriter.BlockConsumer() {
+                @Override
+                public void accept(CompressedBinPairWriter.EncodedBlock block) throws IOException {
+                    writer.write(block);
+                }
+            });
+        } finally {
+            iter.close();
+            deflater.end();
+        }
+        // new chromosomes were added to the ordinals as the parser met them
+        writer.finish(getChromosomeNames(chromosomeOrdinals));
+    }
+
+    /**
+     * Chunks are parsed and compressed on worker threads and written in index order; only a bounded
+     * window of chunks is held in memory. Pairs on chromosomes missing from the genome are dropped, as in pre.
+     */
+    private static void convertToCompressedBinary(final String inputPath, String outputFile,
+                                                  final ChromosomeHandler chromosomeHandler,
+                                                  final Map<String, Integer> chromosomeOrdinals,
+                                                  Map<String, List<Chunk>> mndIndex, int numThreads) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        for (List<Chunk> pairChunks : mndIndex.values()) {
+            chunks.addAll(pairChunks);
+        }
+
+        int threads = Math.max(1, Math.min(numThreads, chunks.size()));
+        int window = threads * CHUNKS_IN_FLIGHT_PER_THREAD;
+        Deque<Future<List<CompressedBinPairWriter.EncodedBlock>>> pending = new ArrayDeque<>();
+        Iterator<Chunk> iterator = chunks.iterator();
+        CompressedBinPairWriter writer = new CompressedBinPairWriter(outputFile);
+
+        try {
+            while (iterator.hasNext() || !pending.isEmpty()) {
+                while (iterator.hasNext() && pending.size() < window) {
+                    final Chunk chunk = iterator.next();
+                    pending.add(ParallelizedJuicerTools.submit(new Callable<List<CompressedBinPairWriter.EncodedBlock>>() {
+                        @Override
+                        public List<CompressedBinPairWriter.EncodedBlock> call() throws IOException {
+                            return encodeChunk(inputPath, chromosomeHandler, chromosomeOrdinals, chunk);
+                        }
+                    }));
+                }
+                for (CompressedBinPairWriter.EncodedBlock block : pending.poll().get()) {
+                    writer.write(block);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while converting " + inputPath, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Unable to convert chunk of " + inputPath, e.getCause());
+        } finally {
+            for (Future<?> future : pending) {
+                future.cancel(true);
+            }
+        }
+
+        writer.finish(getChromosomeNames(chromosomeOrdinals));
+        if (HiCGlobals.printVerboseComments) {
+            System.out.println("Converted " + chunks.size() + " chunks of " + inputPath + " on " + threads + " threads");
+        }
+    }
+
+    private static List<String> getChromosomeNames(Map<String, Integer> chromosomeOrdinals) {
+        int maxIndex = -1;
+        for (Integer index : chromosomeOrdinals.values()) {
+            maxIndex = Math.max(maxIndex, index);
+        }
+        String[] names = new String[maxIndex + 1];
+        Arrays.fill(names, "");
+        for (Map.Entry<String, Integer> entry : chromosomeOrdinals.entrySet()) {
+            names[entry.getValue()] = entry.getKey();
+        }
+        return Arrays.asList(names);
+    }
+
+    private static List<CompressedBinPairWriter.EncodedBlock> encodeChunk(String inputPath, ChromosomeHandler chromosomeHandler,
+                                                                          Map<String, Integer> chromosomeOrdinals,
+                                                                          Chunk chunk) throws IOException {
+        final List<CompressedBinPairWriter.EncodedBlock> blocks = new ArrayList<>();
+        Deflater deflater = new Deflater();
+        AsciiPairIterator iter = new AsciiPairIterator(inputPath, chromosomeOrdinals, chunk, chromosomeHandler);
+        try {
+            CompressedBinPairWriter.encode(iter, deflater, new CompressedBinPairWriter.BlockConsumer() {
+                @Override
+                public void accept(CompressedBinPairWriter.EncodedBlock block) {
+                    blocks.add(block);
+                }
+            });
+        } finally {
+            iter.close();
+            deflater.end();
+        }
+        return blocks;
+    }
+
     private static void writeOutShortBinaryFormat(AsciiPairIterator iter, LittleEndianOutputStream les) throws IOException {
         while (iter.hasNext()) {
             AlignmentPair pair = iter.next();
@@ -107,8 +247,10 @@ public class AsciiToBinConverter {
             File f = new File(outputFile);
             FileWriter fw = new FileWriter(f);
             pw = new PrintWriter(fw);
-            BinPairIterator iter;
-            if (inputPath.endsWith(".bn")) {
+            PairIterator iter;
+            if (inputPath.endsWith(CompressedBinPairFile.EXTENSION)) {
+                iter = new CompressedBinPairIterator(inputPath, null);
+            } else if (inputPath.endsWith(".bn")) {
                 iter = new ShortBinPairIterator(inputPath);
             } else {
                 iter = new BinPairIterator(inputPath);
@@ -118,6 +260,7 @@ public class AsciiToBinConverter {
                 AlignmentPair pair = iter.next();
                 pw.println(pair);
             }
+            iter.close();
         } finally {
             if (pw != null) {
                 pw.close();
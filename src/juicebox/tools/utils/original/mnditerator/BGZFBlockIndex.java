@@ -0,0 +1,164 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2021 Broad Institute, Aiden Lab, Rice University, Baylor College of Medicine
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package juicebox.tools.utils.original.mnditerator;
+
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import juicebox.HiCGlobals;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps offsets in the uncompressed text of a bgzip-compressed (BGZF) file to BGZF virtual offsets,
+ * so an mnd index written against the plain text can be used on the compressed file.
+ * Read from the .gzi written by "bgzip -i" when present, otherwise built by walking the block headers.
+ */
+public class BGZFBlockIndex {
+
+    private static final Map<String, BGZFBlockIndex> loadedIndices = new ConcurrentHashMap<>();
+    private static final int BGZF_HEADER_SIZE = 18;
+    private final long[] compressedOffsets;
+    private final long[] uncompressedOffsets;
+    private final long uncompressedLength;
+
+    private BGZFBlockIndex(long[] compressedOffsets, long[] uncompressedOffsets, long uncompressedLength) {
+        this.compressedOffsets = compressedOffsets;
+        this.uncompressedOffsets = uncompressedOffsets;
+        this.uncompressedLength = uncompressedLength;
+    }
+
+    public static boolean isBlockCompressed(String path) throws IOException {
+        try (InputStream is = new BufferedInputStream(new FileInputStream(path))) {
+            return BlockCompressedInputStream.isValidFile(is);
+        }
+    }
+
+    /**
+     * Shared across the chunk iterators of one file, so the blocks are only indexed once
+     */
+    public static synchronized BGZFBlockIndex get(String path) throws IOException {
+        BGZFBlockIndex index = loadedIndices.get(path);
+        if (index == null) {
+            File gzi = new File(path + ".gzi");
+            index = gzi.exists() ? readGziFile(gzi, path) : scanBlocks(path);
+            loadedIndices.put(path, index);
+        }
+        return index;
+    }
+
+    public long getUncompressedLength() {
+        return uncompressedLength;
+    }
+
+    public long getVirtualOffset(long uncompressedOffset) {
+        int i = Arrays.binarySearch(uncompressedOffsets, uncompressedOffset);
+        if (i < 0) {
+            i = -i - 2;
+        } else {
+            // the empty EOF block shares its start with the end of the last real block
+            while (i > 0 && uncompressedOffsets[i - 1] == uncompressedOffset) i--;
+        }
+        return (compressedOffsets[i] << 16) | (uncompressedOffset - uncompressedOffsets[i]);
+    }
+
+    /**
+     * .gzi layout: number of entries, then (compressed offset, uncompressed offset) per block after the first,
+     * all little-endian unsigned 64-bit
+     */
+    private static BGZFBlockIndex readGziFile(File gzi, String path) throws IOException {
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(gzi)))) {
+            int n = (int) Long.reverseBytes(dis.readLong());
+            long[] compressed = new long[n + 1];
+            long[] uncompressed = new long[n + 1];
+            for (int i = 1; i <= n; i++) {
+                compressed[i] = Long.reverseBytes(dis.readLong());
+                uncompressed[i] = Long.reverseBytes(dis.readLong());
+            }
+            // the .gzi has no total, so add the size of the last block
+            try (FileChannel channel = new FileInputStream(path).getChannel()) {
+                long lastBlockStart = compressed[n];
+                ByteBuffer header = ByteBuffer.allocate(BGZF_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                ByteBuffer footer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(channel, header, lastBlockStart);
+                readFully(channel, footer, lastBlockStart + (header.getShort(16) & 0xffff) + 1 - 4);
+                return new BGZFBlockIndex(compressed, uncompressed, uncompressed[n] + (footer.getInt(0) & 0xffffffffL));
+            }
+        }
+    }
+
+    private static BGZFBlockIndex scanBlocks(String path) throws IOException {
+        long startTime = System.currentTimeMillis();
+        long[] compressed = new long[1024];
+        long[] uncompressed = new long[1024];
+        int n = 0;
+        long uncompressedPosition = 0;
+
+        try (FileChannel channel = new FileInputStream(path).getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(BGZF_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer footer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            long fileSize = channel.size();
+            long compressedPosition = 0;
+            while (compressedPosition < fileSize) {
+                header.clear();
+                readFully(channel, header, compressedPosition);
+                // bgzip writes the BC subfield first, so the block size sits at a fixed position
+                if (header.get(0) != (byte) 31 || header.get(1) != (byte) 139 || header.get(12) != 'B' || header.get(13) != 'C') {
+                    throw new IOException("Not a BGZF block at offset " + compressedPosition + " of " + path);
+                }
+                int blockSize = (header.getShort(16) & 0xffff) + 1;
+                footer.clear();
+                readFully(channel, footer, compressedPosition + blockSize - 4);
+
+                if (n == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, 2 * n);
+                    uncompressed = Arrays.copyOf(uncompressed, 2 * n);
+                }
+                compressed[n] = compressedPosition;
+                uncompressed[n] = uncompressedPosition;
+                n++;
+
+                compressedPosition += blockSize;
+                uncompressedPosition += footer.getInt(0) & 0xffffffffL;
+            }
+        }
+        if (HiCGlobals.printVerboseComments) {
+            System.out.println("Indexed " + n + " BGZF blocks of " + path + " in " + (System.currentTimeMillis() - startTime) + " ms");
+        }
+        return new BGZFBlockIndex(Arrays.copyOf(compressed, n), Arrays.copyOf(uncompressed, n), uncompressedPosition);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Truncated BGZF block at offset " + position);
+            }
+        }
+    }
+}
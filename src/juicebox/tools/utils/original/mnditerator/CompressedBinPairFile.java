@@ -0,0 +1,382 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2021 Broad Institute, Aiden Lab, Rice University, Baylor College of Medicine
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package juicebox.tools.utils.original.mnditerator;
+
+import htsjdk.tribble.util.LittleEndianInputStream;
+import htsjdk.tribble.util.LittleEndianOutputStream;
+import juicebox.HiCGlobals;
+import juicebox.tools.utils.original.Chunk;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Block-compressed, chunk-indexed binary pairs file (.cbin).
+ * <p>
+ * Layout, little-endian like the .hic format:
+ * header: magic "CBIN", version, footer position (long);
+ * body: blocks of up to RECORDS_PER_BLOCK contacts from a single chromosome pair, each stored as
+ * uncompressed size, compressed size and deflated bytes;
+ * footer: chromosome names, then the number of blocks and chr1, chr2, file position, size on disk
+ * and number of records per block.
+ * The chromosome names live in the footer so a sequential conversion can add chromosomes as it meets them.
+ * <p>
+ * Inside a block the contacts are stored by column, positions and fragments as zigzag varint deltas.
+ * Strand, fragment, MAPQ and score columns are only stored when some contact in the block differs from
+ * the AlignmentPair defaults, so short-format input costs just the two position columns.
+ */
+public class CompressedBinPairFile {
+
+    public static final String EXTENSION = ".cbin";
+    public static final int RECORDS_PER_BLOCK = 65536;
+    private static final int MAGIC = 0x4e494243; // "CBIN"
+    private static final int VERSION = 1;
+    private static final int FOOTER_POSITION_OFFSET = 8;
+    static final int HEADER_SIZE = 16;
+    // consecutive blocks of a pair grouped into one chunk for the multithreaded readers
+    private static final int MAX_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    private static final byte HAS_STRANDS = 1, HAS_FRAGMENTS = 2, HAS_MAPQS = 4, HAS_SCORES = 8;
+
+    private final List<String> chromosomeNames;
+    private final List<BlockEntry> blocks;
+
+    private CompressedBinPairFile(List<String> chromosomeNames, List<BlockEntry> blocks) {
+        this.chromosomeNames = chromosomeNames;
+        this.blocks = blocks;
+    }
+
+    public static boolean isCompressedBinPairFile(String path) {
+        File file = new File(path);
+        if (!file.isFile() || file.length() < 4) return false;
+        try (LittleEndianInputStream is = new LittleEndianInputStream(new FileInputStream(file))) {
+            return is.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public static CompressedBinPairFile open(String path) throws IOException {
+        long footerPosition;
+        try (LittleEndianInputStream is = new LittleEndianInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            if (is.readInt() != MAGIC) {
+                throw new IOException(path + " is not a compressed binary pairs file");
+            }
+            int version = is.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported compressed binary pairs version " + version + " in " + path);
+            }
+            footerPosition = is.readLong();
+        }
+        if (footerPosition < HEADER_SIZE) {
+            throw new IOException(path + " is incomplete (no footer index)");
+        }
+
+        List<String> names = new ArrayList<>();
+        List<BlockEntry> blocks = new ArrayList<>();
+        try (FileInputStream fis = new FileInputStream(path)) {
+            fis.getChannel().position(footerPosition);
+            LittleEndianInputStream is = new LittleEndianInputStream(new BufferedInputStream(fis, HiCGlobals.bufferSize));
+            int nChromosomes = is.readInt();
+            for (int i = 0; i < nChromosomes; i++) {
+                names.add(is.readString());
+            }
+            int nBlocks = is.readInt();
+            for (int i = 0; i < nBlocks; i++) {
+                blocks.add(new BlockEntry(is.readInt(), is.readInt(), is.readLong(), is.readInt(), is.readInt()));
+            }
+        }
+        return new CompressedBinPairFile(Collections.unmodifiableList(names), Collections.unmodifiableList(blocks));
+    }
+
+    public List<String> getChromosomeNames() {
+        return chromosomeNames;
+    }
+
+    public List<BlockEntry> getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * @return chunks by chromosome pair name ("chr1-chr2" as stored), in the same form as an mnd index,
+     * so the multithreaded preprocessor and statistics can hand them to PairIterator.getIterator
+     */
+    public Map<String, List<Chunk>> getChunkIndex() {
+        Map<String, List<Chunk>> index = new LinkedHashMap<>();
+        BlockEntry first = null;
+        long size = 0;
+        for (int i = 0; i <= blocks.size(); i++) {
+            BlockEntry block = i < blocks.size() ? blocks.get(i) : null;
+            if (first != null && (block == null || block.chr1 != first.chr1 || block.chr2 != first.chr2
+                    || first.position + size != block.position || size + block.size > MAX_CHUNK_SIZE)) {
+                String key = chromosomeNames.get(first.chr1) + "-" + chromosomeNames.get(first.chr2);
+                List<Chunk> chunks = index.get(key);
+                if (chunks == null) {
+                    chunks = new ArrayList<>();
+                    index.put(key, chunks);
+                }
+                chunks.add(new Chunk(first.position, (int) size));
+                first = null;
+            }
+            if (block != null && first == null) {
+                first = block;
+                size = 0;
+            }
+            if (block != null) {
+                size += block.size;
+            }
+        }
+        return index;
+    }
+
+    static void writeHeader(LittleEndianOutputStream los) throws IOException {
+        los.writeInt(MAGIC);
+        los.writeInt(VERSION);
+        los.writeLong(0); // footer position, filled in by updateFooterPosition once the blocks are written
+    }
+
+    static void writeFooter(LittleEndianOutputStream los, List<String> chromosomeNames, List<BlockEntry> blocks) throws IOException {
+        los.writeInt(chromosomeNames.size());
+        for (String name : chromosomeNames) {
+            los.writeString(name);
+        }
+        los.writeInt(blocks.size());
+        for (BlockEntry block : blocks) {
+            los.writeInt(block.chr1);
+            los.writeInt(block.chr2);
+            los.writeLong(block.position);
+            los.writeInt(block.size);
+            los.writeInt(block.numRecords);
+        }
+    }
+
+    static void updateFooterPosition(String path, long footerPosition) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(path, "rw")) {
+            raf.seek(FOOTER_POSITION_OFFSET);
+            raf.write(ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(footerPosition).array());
+        }
+    }
+
+    /**
+     * @return the block as stored on disk: uncompressed size, compressed size, deflated columns
+     */
+    static byte[] encodeBlock(int chr1, int chr2, List<AlignmentPair> pairs, Deflater deflater) {
+        int n = pairs.size();
+        byte flags = 0;
+        for (AlignmentPair pair : pairs) {
+            if (!pair.getStrand1() || pair.getStrand2()) flags |= HAS_STRANDS;
+            if (pair.getFrag1() != 0 || pair.getFrag2() != 1) flags |= HAS_FRAGMENTS;
+            if (pair.getMapq1() != 1000 || pair.getMapq2() != 1000) flags |= HAS_MAPQS;
+            if (pair.getScore() != 1.0f) flags |= HAS_SCORES;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(13 + n * 42).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(n).putInt(chr1).putInt(chr2).put(flags);
+        int previous = 0;
+        for (AlignmentPair pair : pairs) {
+            putVarInt(buffer, pair.getPos1() - previous);
+            previous = pair.getPos1();
+        }
+        previous = 0;
+        for (AlignmentPair pair : pairs) {
+            putVarInt(buffer, pair.getPos2() - previous);
+            previous = pair.getPos2();
+        }
+        if ((flags & HAS_STRANDS) != 0) {
+            for (int i = 0; i < n; i += 4) {
+                int packed = 0;
+                for (int k = 0; k < 4 && i + k < n; k++) {
+                    AlignmentPair pair = pairs.get(i + k);
+                    packed |= ((pair.getStrand1() ? 1 : 0) | (pair.getStrand2() ? 2 : 0)) << (2 * k);
+                }
+                buffer.put((byte) packed);
+            }
+        }
+        if ((flags & HAS_FRAGMENTS) != 0) {
+            previous = 0;
+            for (AlignmentPair pair : pairs) {
+                putVarInt(buffer, pair.getFrag1() - previous);
+                previous = pair.getFrag1();
+            }
+            for (AlignmentPair pair : pairs) {
+                putVarInt(buffer, pair.getFrag2() - pair.getFrag1());
+            }
+        }
+        if ((flags & HAS_MAPQS) != 0) {
+            for (AlignmentPair pair : pairs) {
+                putVarInt(buffer, pair.getMapq1());
+                putVarInt(buffer, pair.getMapq2());
+            }
+        }
+        if ((flags & HAS_SCORES) != 0) {
+            for (AlignmentPair pair : pairs) {
+                buffer.putFloat(pair.getScore());
+            }
+        }
+
+        int rawSize = buffer.position();
+        deflater.reset();
+        deflater.setInput(buffer.array(), 0, rawSize);
+        deflater.finish();
+        byte[] compressed = new byte[8 + rawSize + rawSize / 100 + 64];
+        int compressedSize = 0;
+        while (!deflater.finished()) {
+            if (8 + compressedSize == compressed.length) {
+                compressed = Arrays.copyOf(compressed, 2 * compressed.length);
+            }
+            compressedSize += deflater.deflate(compressed, 8 + compressedSize, compressed.length - 8 - compressedSize);
+        }
+        ByteBuffer.wrap(compressed).order(ByteOrder.LITTLE_ENDIAN).putInt(rawSize).putInt(compressedSize);
+        return Arrays.copyOf(compressed, 8 + compressedSize);
+    }
+
+    /**
+     * @param chromosomeMap file chromosome index to caller's index, or null to keep the stored indices;
+     *                      pairs on chromosomes mapped to -1 come back as contig pairs
+     */
+    static List<AlignmentPair> decodeBlock(byte[] raw, int[] chromosomeMap) {
+        ByteBuffer buffer = ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN);
+        int n = buffer.getInt();
+        int chr1 = buffer.getInt();
+        int chr2 = buffer.getInt();
+        byte flags = buffer.get();
+        if (chromosomeMap != null) {
+            chr1 = chromosomeMap[chr1];
+            chr2 = chromosomeMap[chr2];
+        }
+
+        int[] pos1 = new int[n];
+        int[] pos2 = new int[n];
+        int previous = 0;
+        for (int i = 0; i < n; i++) {
+            previous += getVarInt(buffer);
+            pos1[i] = previous;
+        }
+        previous = 0;
+        for (int i = 0; i < n; i++) {
+            previous += getVarInt(buffer);
+            pos2[i] = previous;
+        }
+        byte[] strands = null;
+        if ((flags & HAS_STRANDS) != 0) {
+            strands = new byte[(n + 3) / 4];
+            buffer.get(strands);
+        }
+        int[] frag1 = null, frag2 = null;
+        if ((flags & HAS_FRAGMENTS) != 0) {
+            frag1 = new int[n];
+            frag2 = new int[n];
+            previous = 0;
+            for (int i = 0; i < n; i++) {
+                previous += getVarInt(buffer);
+                frag1[i] = previous;
+            }
+            for (int i = 0; i < n; i++) {
+                frag2[i] = frag1[i] + getVarInt(buffer);
+            }
+        }
+        int[] mapqs = null;
+        if ((flags & HAS_MAPQS) != 0) {
+            mapqs = new int[2 * n];
+            for (int i = 0; i < 2 * n; i++) {
+                mapqs[i] = getVarInt(buffer);
+            }
+        }
+
+        List<AlignmentPair> pairs = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            if (chr1 < 0 || chr2 < 0) {
+                pairs.add(new AlignmentPair());
+                continue;
+            }
+            int strandBits = strands == null ? 1 : strands[i / 4] >> (2 * (i % 4));
+            AlignmentPair pair = new AlignmentPair((strandBits & 1) != 0, chr1, pos1[i], frag1 == null ? 0 : frag1[i],
+                    mapqs == null ? 1000 : mapqs[2 * i], (strandBits & 2) != 0, chr2, pos2[i],
+                    frag2 == null ? 1 : frag2[i], mapqs == null ? 1000 : mapqs[2 * i + 1]);
+            pairs.add(pair);
+        }
+        if ((flags & HAS_SCORES) != 0) {
+            for (AlignmentPair pair : pairs) {
+                pair.setScore(buffer.getFloat());
+            }
+        }
+        return pairs;
+    }
+
+    static byte[] inflate(byte[] compressed, int rawSize, Inflater inflater) throws IOException {
+        byte[] raw = new byte[rawSize];
+        inflater.reset();
+        inflater.setInput(compressed);
+        try {
+            int n = 0;
+            while (n < rawSize && !inflater.finished()) {
+                n += inflater.inflate(raw, n, rawSize - n);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed pairs block", e);
+        }
+        return raw;
+    }
+
+    private static void putVarInt(ByteBuffer buffer, int value) {
+        int zigzag = (value << 1) ^ (value >> 31);
+        while ((zigzag & ~0x7f) != 0) {
+            buffer.put((byte) ((zigzag & 0x7f) | 0x80));
+            zigzag >>>= 7;
+        }
+        buffer.put((byte) zigzag);
+    }
+
+    private static int getVarInt(ByteBuffer buffer) {
+        int result = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            result |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (result >>> 1) ^ -(result & 1);
+    }
+
+    public static class BlockEntry {
+        public final int chr1, chr2;
+        public final long position;
+        public final int size;
+        public final int numRecords;
+
+        BlockEntry(int chr1, int chr2, long position, int size, int numRecords) {
+            this.chr1 = chr1;
+            this.chr2 = chr2;
+            this.position = position;
+            this.size = size;
+            this.numRecords = numRecords;
+        }
+    }
+}
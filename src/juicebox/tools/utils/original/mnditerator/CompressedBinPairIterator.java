@@ -0,0 +1,141 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2021 Broad Institute, Aiden Lab, Rice University, Baylor College of Medicine
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package juicebox.tools.utils.original.mnditerator;
+
+import juicebox.HiCGlobals;
+import juicebox.tools.utils.original.Chunk;
+
+import java.io.*;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a compressed binary pairs (.cbin) file, either whole or one footer-index chunk at a time.
+ * Chromosome indices stored in the file are remapped by name onto the caller's chromosome indexes;
+ * pairs on chromosomes the caller does not know come back as contig pairs, as with the ascii iterator.
+ */
+public class CompressedBinPairIterator implements PairIterator {
+
+    private final DataInputStream is;
+    private final List<String> chromosomeNames;
+    private final int[] chromosomeMap;
+    private final Inflater inflater = new Inflater();
+    private long bytesRemaining;
+    private Iterator<AlignmentPair> currentBlock = null;
+    private AlignmentPair next;
+
+    public CompressedBinPairIterator(String path, Map<String, Integer> chromosomeIndexes) throws IOException {
+        this(path, chromosomeIndexes, null);
+    }
+
+    /**
+     * @param chunk a chunk from CompressedBinPairFile.getChunkIndex, or null to read every block
+     */
+    public CompressedBinPairIterator(String path, Map<String, Integer> chromosomeIndexes, Chunk chunk) throws IOException {
+        CompressedBinPairFile file = CompressedBinPairFile.open(path);
+        List<String> names = file.getChromosomeNames();
+        chromosomeNames = names;
+        if (chromosomeIndexes == null) {
+            chromosomeMap = null;
+        } else {
+            chromosomeMap = new int[names.size()];
+            for (int i = 0; i < names.size(); i++) {
+                Integer index = chromosomeIndexes.get(names.get(i));
+                chromosomeMap[i] = index == null ? -1 : index;
+            }
+        }
+
+        FileInputStream fis = new FileInputStream(path);
+        if (chunk == null) {
+            List<CompressedBinPairFile.BlockEntry> blocks = file.getBlocks();
+            long start = blocks.isEmpty() ? CompressedBinPairFile.HEADER_SIZE : blocks.get(0).position;
+            CompressedBinPairFile.BlockEntry last = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+            fis.getChannel().position(start);
+            bytesRemaining = last == null ? 0 : last.position + last.size - start;
+        } else {
+            fis.getChannel().position(chunk.mndIndex);
+            bytesRemaining = chunk.mndChunk;
+        }
+        is = new DataInputStream(new BufferedInputStream(fis, HiCGlobals.bufferSize));
+        advance();
+    }
+
+    /**
+     * Only meaningful when the iterator keeps the stored chromosome indices (no chromosome indexes given)
+     */
+    public String getChromosomeNameFromIndex(int chrIndex) {
+        return chromosomeNames.get(chrIndex);
+    }
+
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    public AlignmentPair next() {
+        AlignmentPair retValue = next;
+        advance();
+        return retValue;
+    }
+
+    public void remove() {
+        // Not implemented
+    }
+
+    public void close() {
+        inflater.end();
+        try {
+            is.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void advance() {
+        while (currentBlock == null || !currentBlock.hasNext()) {
+            if (bytesRemaining <= 0) {
+                next = null;
+                return;
+            }
+            try {
+                currentBlock = readBlock().iterator();
+            } catch (IOException e) {
+                e.printStackTrace();
+                next = null;
+                return;
+            }
+        }
+        next = currentBlock.next();
+    }
+
+    private List<AlignmentPair> readBlock() throws IOException {
+        int rawSize = Integer.reverseBytes(is.readInt());
+        int compressedSize = Integer.reverseBytes(is.readInt());
+        byte[] compressed = new byte[compressedSize];
+        is.readFully(compressed);
+        bytesRemaining -= 8 + compressedSize;
+        return CompressedBinPairFile.decodeBlock(CompressedBinPairFile.inflate(compressed, rawSize, inflater), chromosomeMap);
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2021 Broad Institute, Aiden Lab, Rice University, Baylor College of Medicine
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package juicebox.tools.utils.original.mnditerator;
+
+import htsjdk.tribble.util.LittleEndianOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a compressed binary pairs (.cbin) file, either pair by pair through add or as blocks
+ * encoded elsewhere. Blocks are appended in the order they are handed over, so callers encoding
+ * blocks on several threads only need to pass them back in file order.
+ */
+public class CompressedBinPairWriter {
+
+    private final String path;
+    private final LittleEndianOutputStream los;
+    private final List<CompressedBinPairFile.BlockEntry> blocks = new ArrayList<>();
+    private final List<AlignmentPair> run = new ArrayList<>();
+    private Deflater deflater = null;
+
+    public CompressedBinPairWriter(String path) throws IOException {
+        this.path = path;
+        los = new LittleEndianOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+        CompressedBinPairFile.writeHeader(los);
+    }
+
+    /**
+     * Pairs should arrive grouped by chromosome pair; a new block starts whenever the pair changes.
+     */
+    public void add(AlignmentPair pair) throws IOException {
+        if (!run.isEmpty() && (run.size() == CompressedBinPairFile.RECORDS_PER_BLOCK
+                || pair.getChr1() != run.get(0).getChr1() || pair.getChr2() != run.get(0).getChr2())) {
+            writeRun();
+        }
+        run.add(pair);
+    }
+
+    private void writeRun() throws IOException {
+        if (deflater == null) {
+            deflater = new Deflater();
+        }
+        AlignmentPair first = run.get(0);
+        flush(first.getChr1(), first.getChr2(), run, deflater, new BlockConsumer() {
+            @Override
+            public void accept(EncodedBlock block) throws IOException {
+                write(block);
+            }
+        });
+    }
+
+    void write(EncodedBlock block) throws IOException {
+        blocks.add(new CompressedBinPairFile.BlockEntry(block.chr1, block.chr2, los.getWrittenCount(),
+                block.data.length, block.numRecords));
+        los.write(block.data);
+    }
+
+    /**
+     * @param chromosomeNames names of the chromosome indices used by the pairs, in index order
+     */
+    public void finish(List<String> chromosomeNames) throws IOException {
+        if (!run.isEmpty()) {
+            writeRun();
+        }
+        if (deflater != null) {
+            deflater.end();
+        }
+        long footerPosition = los.getWrittenCount();
+        CompressedBinPairFile.writeFooter(los, chromosomeNames, blocks);
+        los.close();
+        CompressedBinPairFile.updateFooterPosition(path, footerPosition);
+    }
+
+    /**
+     * Splits a stream of pairs into blocks of one chromosome pair each; contig pairs and
+     * pairs from malformed lines are dropped.
+     */
+    static void encode(PairIterator iter, Deflater deflater, BlockConsumer consumer) throws IOException {
+        List<AlignmentPair> run = new ArrayList<>();
+        int chr1 = -1, chr2 = -1;
+        while (iter.hasNext()) {
+            AlignmentPair pair = iter.next();
+            if (pair.isContigPair() || !pair.isValid()) continue;
+            if (pair.getChr1() != chr1 || pair.getChr2() != chr2 || run.size() == CompressedBinPairFile.RECORDS_PER_BLOCK) {
+                flush(chr1, chr2, run, deflater, consumer);
+                chr1 = pair.getChr1();
+                chr2 = pair.getChr2();
+            }
+            run.add(pair);
+        }
+        flush(chr1, chr2, run, deflater, consumer);
+    }
+
+    private static void flush(int chr1, int chr2, List<AlignmentPair> run, Deflater deflater,
+                              BlockConsumer consumer) throws IOException {
+        if (run.isEmpty()) return;
+        consumer.accept(new EncodedBlock(chr1, chr2, run.size(),
+                CompressedBinPairFile.encodeBlock(chr1, chr2, run, deflater)));
+        run.clear();
+    }
+
+    interface BlockConsumer {
+        void accept(EncodedBlock block) throws IOException;
+    }
+
+    static class EncodedBlock {
+        final int chr1, chr2, numRecords;
+        final byte[] data;
+
+        EncodedBlock(int chr1, int chr2, int numRecords, byte[] data) {
+            this.chr1 = chr1;
+            this.chr2 = chr2;
+            this.numRecords = numRecords;
+            this.data = data;
+        }
+    }
+}
@@ -59,6 +59,19 @@ public class MNDFileParser {
         }
     }
 
+    /**
+     * @return the columns holding the two chromosome names, for a file whose pair lines have nTokens columns
+     */
+    public static int[] getChromosomeColumns(int nTokens, String nextLine) throws IOException {
+        Format format = getFileFormat(nTokens, nextLine);
+        if (format == Format.SUPER_SHORT || format == Format.SUPER_SHORT_WITH_SCORE) {
+            return new int[]{0, 2};
+        } else if (format == Format.MEDIUM) {
+            return new int[]{2, 6};
+        }
+        return new int[]{1, 5};
+    }
+
     /**
      * formats detailed: https://github.com/aidenlab/juicer/wiki/Pre#file-format
      */
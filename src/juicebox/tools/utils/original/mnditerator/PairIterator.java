@@ -26,6 +26,7 @@
 package juicebox.tools.utils.original.mnditerator;
 
 import juicebox.data.ChromosomeHandler;
+import juicebox.tools.utils.original.Chunk;
 
 import java.io.IOException;
 import java.util.Iterator;
@@ -46,7 +47,9 @@ public interface PairIterator extends Iterator<AlignmentPair> {
     void close();
 
     static PairIterator getIterator(String file, Map<String, Integer> chromosomeIndexes, ChromosomeHandler chromosomeHandler) throws IOException {
-        if (file.endsWith(".bin")) {
+        if (file.endsWith(CompressedBinPairFile.EXTENSION)) {
+            return new CompressedBinPairIterator(file, chromosomeIndexes);
+        } else if (file.endsWith(".bin")) {
             return new BinPairIterator(file);
         } else if (file.endsWith(".bn")) {
             return new ShortBinPairIterator(file);
@@ -54,4 +57,17 @@ public interface PairIterator extends Iterator<AlignmentPair> {
             return new AsciiPairIterator(file, chromosomeIndexes, chromosomeHandler, false);
         }
     }
+
+    /**
+     * Iterator over one chunk of an indexed input: an mnd index chunk for ascii input, or a footer index
+     * chunk for compressed binary pairs
+     */
+    static PairIterator getIterator(String file, Map<String, Integer> chromosomeIndexes, Chunk chunk,
+                                    ChromosomeHandler chromosomeHandler) throws IOException {
+        if (file.endsWith(CompressedBinPairFile.EXTENSION)) {
+            return new CompressedBinPairIterator(file, chromosomeIndexes, chunk);
+        } else {
+            return new AsciiPairIterator(file, chromosomeIndexes, chunk, chromosomeHandler);
+        }
+    }
 }
@@ -0,0 +1,55 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2021 Broad Institute, Aiden Lab, Rice University, Baylor College of Medicine
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package juicebox.tools.utils.original.stats;
+
+import juicebox.data.ChromosomeHandler;
+import juicebox.tools.utils.original.FragmentCalculation;
+import juicebox.tools.utils.original.mnditerator.AlignmentPair;
+
+import java.util.List;
+
+/**
+ * Statistics worker fed pair by pair from the preprocessor's own pass over the input,
+ * so pre can produce the statistics and graphs without a separate read of the file.
+ * Each preprocessing thread keeps its own worker; containers are merged once at the end.
+ */
+public class FusedStatisticsWorker extends StatisticsWorker {
+
+    private final ChromosomeHandler handler;
+
+    public FusedStatisticsWorker(String siteFile, List<String> statsFiles, List<Integer> mapqThresholds,
+                                 String ligationJunction, ChromosomeHandler handler,
+                                 FragmentCalculation fragmentCalculation) {
+        super(siteFile, statsFiles, mapqThresholds, ligationJunction, null, fragmentCalculation);
+        this.handler = handler;
+    }
+
+    public void process(AlignmentPair pair) {
+        processSingleEntry(pair, "", false);
+    }
+
+    protected String getChromosomeNameFromIndex(int chr) {
+        return handler.getChromosomeFromIndex(chr).getName();
+    }
+}
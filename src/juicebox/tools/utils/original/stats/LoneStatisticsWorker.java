@@ -25,6 +25,8 @@
 package juicebox.tools.utils.original.stats;
 
 import juicebox.tools.utils.original.FragmentCalculation;
+import juicebox.tools.utils.original.mnditerator.CompressedBinPairFile;
+import juicebox.tools.utils.original.mnditerator.CompressedBinPairIterator;
 import juicebox.tools.utils.original.mnditerator.SimpleAsciiPairIterator;
 
 import java.io.IOException;
@@ -33,6 +35,7 @@ import java.util.List;
 public class LoneStatisticsWorker extends StatisticsWorker {
 
     private SimpleAsciiPairIterator fileIterator;
+    private CompressedBinPairIterator binaryIterator;
 
     public LoneStatisticsWorker(String siteFile, List<String> statsFiles, List<Integer> mapqThresholds, String ligationJunction,
                                 String inFile, FragmentCalculation fragmentCalculation) {
@@ -41,6 +44,14 @@ public class LoneStatisticsWorker extends StatisticsWorker {
 
     public void infileStatistics() {
         try {
+            if (inFile.endsWith(CompressedBinPairFile.EXTENSION)) {
+                binaryIterator = new CompressedBinPairIterator(inFile, null);
+                while (binaryIterator.hasNext()) {
+                    processSingleEntry(binaryIterator.next(), "", false);
+                }
+                binaryIterator.close();
+                return;
+            }
             fileIterator = new SimpleAsciiPairIterator(inFile);
             while (fileIterator.hasNext()) {
                 processSingleEntry(fileIterator.next(), "", false);
@@ -51,6 +62,9 @@ public class LoneStatisticsWorker extends StatisticsWorker {
     }
 
     protected String getChromosomeNameFromIndex(int chr) {
+        if (binaryIterator != null) {
+            return binaryIterator.getChromosomeNameFromIndex(chr);
+        }
         return fileIterator.getChromosomeNameFromIndex(chr);
     }
 }
@@ -25,17 +25,16 @@
 package juicebox.tools.utils.original.stats;
 
 import juicebox.data.ChromosomeHandler;
+import juicebox.tools.dev.ParallelizedJuicerTools;
 import juicebox.tools.utils.original.Chunk;
 import juicebox.tools.utils.original.FragmentCalculation;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class ParallelStatistics {
 
-    private final static Object mergerLock = new Object();
     private final int numThreads;
     private final StatisticsContainer mergedContainer;
     private final AtomicInteger threadCounter = new AtomicInteger();
@@ -65,31 +64,43 @@ public class ParallelStatistics {
     }
 
     public void launchThreads() {
-        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        // each thread accumulates into its own worker's container; no locking until the final reduction
+        StatisticsContainer[] threadContainers = new StatisticsContainer[numThreads];
+        List<Runnable> workers = new ArrayList<>(numThreads);
         for (int l = 0; l < numThreads; l++) {
-            executor.execute(() -> runParallelizedStatistics(mergedContainer));
-        }
-        executor.shutdown();
-        // Wait until all threads finish
-        while (!executor.isTerminated()) {
+            final ParallelStatisticsWorker runner = new ParallelStatisticsWorker(siteFile, statsFiles, mapqThresholds,
+                    ligationJunction, inFile, localHandler, fragmentCalculation);
+            threadContainers[l] = runner.getResultsContainer();
+            workers.add(() -> runParallelizedStatistics(runner));
         }
+        ParallelizedJuicerTools.runAll("Statistics", workers);
+        mergedContainer.add(reduce(threadContainers), statsFiles.size());
     }
 
-    public void runParallelizedStatistics(final StatisticsContainer mergedContainer) {
+    private void runParallelizedStatistics(ParallelStatisticsWorker runner) {
         int currentCount = threadCounter.getAndIncrement();
         while (currentCount < mndChunks.size()) {
-            Chunk chunk = mndChunks.get(currentCount);
             try {
-                ParallelStatisticsWorker runner = new ParallelStatisticsWorker(siteFile, statsFiles, mapqThresholds,
-                        ligationJunction, inFile, localHandler, fragmentCalculation);
-                runner.infileStatistics(chunk);
-                synchronized (mergerLock) {
-                    mergedContainer.add(runner.getResultsContainer(), statsFiles.size());
-                }
+                runner.infileStatistics(mndChunks.get(currentCount));
             } catch (Exception e2) {
                 e2.printStackTrace();
             }
             currentCount = threadCounter.getAndIncrement();
         }
     }
+
+    /**
+     * Pairwise tree reduction of the per-thread containers; the merges of each level run concurrently.
+     */
+    private StatisticsContainer reduce(final StatisticsContainer[] containers) {
+        for (int stride = 1; stride < containers.length; stride *= 2) {
+            List<Runnable> merges = new ArrayList<>();
+            for (int i = 0; i + stride < containers.length; i += 2 * stride) {
+                final int target = i, source = i + stride;
+                merges.add(() -> containers[target].add(containers[source], statsFiles.size()));
+            }
+            ParallelizedJuicerTools.runAll(null, merges);
+        }
+        return containers[0];
+    }
 }
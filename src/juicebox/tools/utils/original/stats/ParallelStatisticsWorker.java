@@ -27,8 +27,8 @@ package juicebox.tools.utils.original.stats;
 import juicebox.data.ChromosomeHandler;
 import juicebox.tools.utils.original.Chunk;
 import juicebox.tools.utils.original.FragmentCalculation;
-import juicebox.tools.utils.original.mnditerator.AlignmentPairLong;
-import juicebox.tools.utils.original.mnditerator.AsciiPairIterator;
+import juicebox.tools.utils.original.mnditerator.AlignmentPair;
+import juicebox.tools.utils.original.mnditerator.PairIterator;
 
 import java.io.IOException;
 import java.util.HashMap;
@@ -49,24 +49,25 @@ public class ParallelStatisticsWorker extends StatisticsWorker {
     public void infileStatistics(Chunk chunk) {
         //read in infile and calculate statistics
         try {
-            //create index for AsciiIterator
+            //create index for the pair iterator
             Map<String, Integer> chromosomeIndexes = new HashMap<>();
             for (int i = 0; i < localHandler.size(); i++) {
                 chromosomeIndexes.put(localHandler.getChromosomeFromIndex(i).getName(), i);
             }
             //iterate through input file
-            AsciiPairIterator files = new AsciiPairIterator(inFile, chromosomeIndexes, chunk, localHandler);
+            PairIterator files = PairIterator.getIterator(inFile, chromosomeIndexes, chunk, localHandler);
             if (files.hasNext()) {
-                AlignmentPairLong firstPair = (AlignmentPairLong) files.next();
+                AlignmentPair firstPair = files.next();
                 String previousBlock = firstPair.getChr1() + "_" + firstPair.getChr2();
                 processSingleEntry(firstPair, previousBlock, true);
                 while (files.hasNext()) {
-                    AlignmentPairLong pair = (AlignmentPairLong) files.next();
+                    AlignmentPair pair = files.next();
                     if (processSingleEntry(pair, previousBlock, true)) {
                         break;
                     }
                 }
             }
+            files.close();
 
         } catch (IOException e) {
             e.printStackTrace();
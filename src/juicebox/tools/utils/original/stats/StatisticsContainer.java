@@ -40,15 +40,19 @@ public class StatisticsContainer {
     private final static int NUM_TO_READ = 7;
     private final NumberFormat nf = NumberFormat.getNumberInstance(Locale.US);
 
+    public static final int MAX_HINDIII_DISTANCE = 2000;
+    public static final int MAX_MAPQ = 200;
+
     //Variables for calculating statistics
-    public final List<Map<Integer, Long>> hindIII = new ArrayList<>();
-    public final List<Map<Integer, Long>> mapQ = new ArrayList<>();
-    public final List<Map<Integer, Long>> mapQInter = new ArrayList<>();
-    public final List<Map<Integer, Long>> mapQIntra = new ArrayList<>();
-    public final List<Map<Integer, Long>> innerM = new ArrayList<>();
-    public final List<Map<Integer, Long>> outerM = new ArrayList<>();
-    public final List<Map<Integer, Long>> rightM = new ArrayList<>();
-    public final List<Map<Integer, Long>> leftM = new ArrayList<>();
+    //dense histograms per mapq threshold: hindIII by distance, mapQ by value, L-I-O-R by log distance bin
+    public final long[][] hindIII = new long[2][MAX_HINDIII_DISTANCE + 1];
+    public final long[][] mapQ = new long[2][MAX_MAPQ + 1];
+    public final long[][] mapQInter = new long[2][MAX_MAPQ + 1];
+    public final long[][] mapQIntra = new long[2][MAX_MAPQ + 1];
+    public final long[][] innerM = new long[2][bins.length + 1];
+    public final long[][] outerM = new long[2][bins.length + 1];
+    public final long[][] rightM = new long[2][bins.length + 1];
+    public final long[][] leftM = new long[2][bins.length + 1];
     private final List<Integer> convergenceIndices = new ArrayList<>();
 
     public long unique = 0;
@@ -81,37 +85,19 @@ public class StatisticsContainer {
 
     private static final long[] bins = {10, 12, 15, 19, 23, 28, 35, 43, 53, 66, 81, 100, 123, 152, 187, 231, 285, 351, 433, 534, 658, 811, 1000, 1233, 1520, 1874, 2310, 2848, 3511, 4329, 5337, 6579, 8111, 10000, 12328, 15199, 18738, 23101, 28480, 35112, 43288, 53367, 65793, 81113, 100000, 123285, 151991, 187382, 231013, 284804, 351119, 432876, 533670, 657933, 811131, 1000000, 1232847, 1519911, 1873817, 2310130, 2848036, 3511192, 4328761, 5336699, 6579332, 8111308, 10000000, 12328467, 15199111, 18738174, 23101297, 28480359, 35111917, 43287613, 53366992, 65793322, 81113083, 100000000, 123284674, 151991108, 187381742, 231012970, 284803587, 351119173, 432876128, 533669923, 657933225, 811130831, 1000000000, 1232846739, 1519911083, 1873817423, 2310129700L, 2848035868L, 3511191734L, 4328761281L, 5336699231L, 6579332247L, 8111308308L, 10000000000L};
 
-    public StatisticsContainer() {
-        for (int i = 0; i < 2; i++) {
-            hindIII.add(new HashMap<>());
-            mapQ.add(new HashMap<>());
-            mapQInter.add(new HashMap<>());
-            mapQIntra.add(new HashMap<>());
-            innerM.add(new HashMap<>());
-            outerM.add(new HashMap<>());
-            rightM.add(new HashMap<>());
-            leftM.add(new HashMap<>());
-        }
-    }
-    
     public void add(StatisticsContainer individualContainer, int numberOfMapQValues) {
         unique += individualContainer.unique;
 
         for (int j=0; j<numberOfMapQValues; j++) {
-            for (int i = 1; i <= 2000; i++) {
-                hindIII.get(j).put(i, hindIII.get(j).getOrDefault(i, 0L) + individualContainer.hindIII.get(j).getOrDefault(i, 0L));
-            }
-            for (int i = 1; i <= 200; i++) {
-                mapQ.get(j).put(i, mapQ.get(j).getOrDefault(i, 0L) + individualContainer.mapQ.get(j).getOrDefault(i, 0L));
-                mapQInter.get(j).put(i, mapQInter.get(j).getOrDefault(i, 0L) + individualContainer.mapQInter.get(j).getOrDefault(i, 0L));
-                mapQIntra.get(j).put(i, mapQIntra.get(j).getOrDefault(i, 0L) + individualContainer.mapQIntra.get(j).getOrDefault(i, 0L));
-            }
-            for (int i = 1; i <= 100; i++) {
-                innerM.get(j).put(i, innerM.get(j).getOrDefault(i, 0L) + individualContainer.innerM.get(j).getOrDefault(i, 0L));
-                outerM.get(j).put(i, outerM.get(j).getOrDefault(i, 0L) + individualContainer.outerM.get(j).getOrDefault(i, 0L));
-                rightM.get(j).put(i, rightM.get(j).getOrDefault(i, 0L) + individualContainer.rightM.get(j).getOrDefault(i, 0L));
-                leftM.get(j).put(i, leftM.get(j).getOrDefault(i, 0L) + individualContainer.leftM.get(j).getOrDefault(i, 0L));
-            }
+            // same ranges as the map based merge, so merged output is unchanged (L-I-O-R bin 0 is not merged)
+            addHistogram(hindIII[j], individualContainer.hindIII[j], MAX_HINDIII_DISTANCE);
+            addHistogram(mapQ[j], individualContainer.mapQ[j], MAX_MAPQ);
+            addHistogram(mapQInter[j], individualContainer.mapQInter[j], MAX_MAPQ);
+            addHistogram(mapQIntra[j], individualContainer.mapQIntra[j], MAX_MAPQ);
+            addHistogram(innerM[j], individualContainer.innerM[j], bins.length);
+            addHistogram(outerM[j], individualContainer.outerM[j], bins.length);
+            addHistogram(rightM[j], individualContainer.rightM[j], bins.length);
+            addHistogram(leftM[j], individualContainer.leftM[j], bins.length);
         }
 
         for(int i=0;i<numberOfMapQValues;i++) {
@@ -143,6 +129,12 @@ public class StatisticsContainer {
         }
     }
     
+    private static void addHistogram(long[] histogram, long[] other, int last) {
+        for (int i = 1; i <= last; i++) {
+            histogram[i] += other[i];
+        }
+    }
+
     private String commify(long value) {
         return nf.format(value);
     }
@@ -329,39 +321,43 @@ public class StatisticsContainer {
         }
     }
 
+    public static String getHistFileName(String statsFile) {
+        //separate stats file name
+        int index = statsFile.lastIndexOf("\\");
+        String statsFilePath = statsFile.substring(0, index + 1); //directories
+        String statsFileName = statsFile.substring(index + 1).replaceAll(".txt", ""); //filename
+        return statsFilePath + statsFileName + "_hists.m";
+    }
+
     public void writeHistFile(List<String> statsFiles) {
         //write for mapq if file exists
         for (int j = 0; j < statsFiles.size(); j++) {
             if (new File(statsFiles.get(j)).exists()) {
-                //separate stats file name
-                int index = statsFiles.get(j).lastIndexOf("\\");
-                String statsFilePath = statsFiles.get(j).substring(0, index + 1); //directories
-                String statsFileName = statsFiles.get(j).substring(index + 1).replaceAll(".txt", ""); //filename
-                String histsFile = statsFilePath + statsFileName + "_hists.m";
+                String histsFile = getHistFileName(statsFiles.get(j));
                 try {
                     BufferedWriter hist = new BufferedWriter(new FileWriter(histsFile, false));
                     hist.write("A = [\n");
                     for (int i = 1; i <= 2000; i++) {
-                        long tmp = hindIII.get(j).getOrDefault(i, 0L);
+                        long tmp = hindIII[j][i];
                         hist.write(tmp + " ");
                     }
                     hist.write("\n];\n");
 
                     hist.write("B = [\n");
                     for (int i = 1; i <= 200; i++) {
-                        long tmp = mapQ.get(j).getOrDefault(i, 0L);
-                        long tmp2 = mapQIntra.get(j).getOrDefault(i, 0L);
-                        long tmp3 = mapQInter.get(j).getOrDefault(i, 0L);
+                        long tmp = mapQ[j][i];
+                        long tmp2 = mapQIntra[j][i];
+                        long tmp3 = mapQInter[j][i];
                         hist.write(tmp + " " + tmp2 + " " + tmp3 + "\n");
                     }
                     hist.write("\n];\n");
 
                     hist.write("D = [\n");
                     for (int i = 0; i < bins.length; i++) {
-                        long tmp = innerM.get(j).getOrDefault(i, 0L);
-                        long tmp2 = outerM.get(j).getOrDefault(i, 0L);
-                        long tmp3 = rightM.get(j).getOrDefault(i, 0L);
-                        long tmp4 = leftM.get(j).getOrDefault(i, 0L);
+                        long tmp = innerM[j][i];
+                        long tmp2 = outerM[j][i];
+                        long tmp3 = rightM[j][i];
+                        long tmp4 = leftM[j][i];
                         hist.write(tmp + " " + tmp2 + " " + tmp3 + " " + tmp4 + "\n");
                     }
                     hist.write("\n];");
@@ -406,10 +402,10 @@ public class StatisticsContainer {
 
     private double getConvergenceError(int q, int i) {
         long[] vals = new long[]{
-                innerM.get(q).getOrDefault(i, 0L),
-                outerM.get(q).getOrDefault(i, 0L),
-                rightM.get(q).getOrDefault(i, 0L),
-                leftM.get(q).getOrDefault(i, 0L)};
+                innerM[q][i],
+                outerM[q][i],
+                rightM[q][i],
+                leftM[q][i]};
         double total = 0.0;
         for (long val : vals) {
             total += val;
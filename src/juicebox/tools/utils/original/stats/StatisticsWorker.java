@@ -29,14 +29,13 @@ import juicebox.tools.utils.original.mnditerator.AlignmentPair;
 import juicebox.tools.utils.original.mnditerator.AlignmentPairLong;
 
 import java.util.List;
-import java.util.Map;
 
 public abstract class StatisticsWorker {
     protected static final int TWENTY_KB = 20000;
     protected static final int FIVE_HUNDRED_BP = 500;
     protected static final int FIVE_KB = 5000;
-    protected static final int distThreshold = 2000;
-    protected static final int mapqValThreshold = 200;
+    protected static final int distThreshold = StatisticsContainer.MAX_HINDIII_DISTANCE;
+    protected static final int mapqValThreshold = StatisticsContainer.MAX_MAPQ;
     protected static final long[] bins = {10, 12, 15, 19, 23, 28, 35, 43, 53, 66, 81, 100, 123, 152, 187, 231, 285, 351, 433, 534, 658, 811, 1000, 1233, 1520, 1874, 2310, 2848, 3511, 4329, 5337, 6579, 8111, 10000, 12328, 15199, 18738, 23101, 28480, 35112, 43288, 53367, 65793, 81113, 100000, 123285, 151991, 187382, 231013, 284804, 351119, 432876, 533670, 657933, 811131, 1000000, 1232847, 1519911, 1873817, 2310130, 2848036, 3511192, 4328761, 5336699, 6579332, 8111308, 10000000, 12328467, 15199111, 18738174, 23101297, 28480359, 35111917, 43287613, 53366992, 65793322, 81113083, 100000000, 123284674, 151991108, 187381742, 231012970, 284803587, 351119173, 432876128, 533669923, 657933225, 811130831, 1000000000, 1232846739, 1519911083, 1873817423, 2310129700L, 2848035868L, 3511191734L, 4328761281L, 5336699231L, 6579332247L, 8111308308L, 10000000000L};
     //variables for getting parameters of input file, flags set to default initially
     protected final String siteFile;
@@ -160,11 +159,11 @@ public abstract class StatisticsWorker {
                     if ((seq1 != null && seq2 != null) && (mapq1 >= 0 && mapq2 >= 0)) {
                         int mapqVal = Math.min(mapq1, mapq2);
                         if (mapqVal <= mapqValThreshold) {
-                            resultsContainer.mapQ.get(ind).put(mapqVal, resultsContainer.mapQ.get(ind).getOrDefault(mapqVal, 0L) + 1);
+                            resultsContainer.mapQ[ind][mapqVal]++;
                             if (chr1 == chr2) {
-                                resultsContainer.mapQIntra.get(ind).put(mapqVal, resultsContainer.mapQIntra.get(ind).getOrDefault(mapqVal, 0L) + 1);
+                                resultsContainer.mapQIntra[ind][mapqVal]++;
                             } else {
-                                resultsContainer.mapQInter.get(ind).put(mapqVal, resultsContainer.mapQInter.get(ind).getOrDefault(mapqVal, 0L) + 1);
+                                resultsContainer.mapQInter[ind][mapqVal]++;
                             }
                         }
                         //read pair contains ligation junction
@@ -179,11 +178,11 @@ public abstract class StatisticsWorker {
                         boolean report = ((chr1 != chr2) || (posDist >= TWENTY_KB));
                         int dist = distHindIII(str1, chr1, pos1, frag1, report, ind);
                         if (dist <= distThreshold) {
-                            resultsContainer.hindIII.get(ind).put(dist, resultsContainer.hindIII.get(ind).getOrDefault(dist, 0L) + 1);
+                            resultsContainer.hindIII[ind][dist]++;
                         }
                         dist = distHindIII(str2, chr2, pos2, frag2, report, ind);
                         if (dist <= distThreshold) {
-                            resultsContainer.hindIII.get(ind).put(dist, resultsContainer.hindIII.get(ind).getOrDefault(dist, 0L) + 1);
+                            resultsContainer.hindIII[ind][dist]++;
                         }
                     } catch (Exception e) {
                        // System.err.println(e.getLocalizedMessage());
@@ -230,11 +229,11 @@ public abstract class StatisticsWorker {
         }
     }
 
-    private void populateLIOR(boolean distGT20KB, long[] array, List<Map<Integer, Long>> arrayM, int ind, int histDist) {
+    private void populateLIOR(boolean distGT20KB, long[] array, long[][] arrayM, int ind, int histDist) {
         if (distGT20KB) {
             array[ind]++;
         }
-        arrayM.get(ind).put(histDist, arrayM.get(ind).getOrDefault(histDist, 0L) + 1);
+        arrayM[ind][histDist]++;
     }
 
     /*
@@ -27,9 +27,9 @@ package juicebox.track;
 import juicebox.HiC;
 import juicebox.data.Dataset;
 import juicebox.data.MatrixZoomData;
-import juicebox.data.NormalizationVector;
 import juicebox.data.basics.Chromosome;
 import juicebox.windowui.HiCZoom;
+import juicebox.windowui.NormalizationHandler;
 import juicebox.windowui.NormalizationType;
 import org.apache.commons.math.stat.StatUtils;
 import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
@@ -55,7 +55,7 @@ public class HiCCoverageDataSource implements HiCDataSource {
     private final boolean isControl;
 
     public HiCCoverageDataSource(HiC hic, NormalizationType no, boolean isControl) {
-        this.name = no.getDescription();
+        this.name = no.equals(NormalizationHandler.NONE) ? "Raw coverage" : no.getDescription();
         if (isControl) {
             this.name += " (Control)";
         }
@@ -74,13 +74,13 @@ public class HiCCoverageDataSource implements HiCDataSource {
         }
 
         if (zd != null) {
-            int chrIdx = zd.getChr1Idx();
-            HiCZoom zoom = zd.getZoom();
-            NormalizationVector nv = hic.getDataset().getNormalizationVector(chrIdx, zoom, normalizationType);
-            if (nv == null) {
+            Dataset dataset = hic.getDataset();
+            Chromosome chr = dataset.getChromosomeHandler().getChromosomeFromIndex(zd.getChr1Idx());
+            double[] data = getVector(dataset, chr, zd.getZoom());
+            if (data == null) {
                 setDataRange(new DataRange(0, 1));
             } else {
-                DescriptiveStatistics stats = new DescriptiveStatistics(nv.getData().getValues().get(0));
+                DescriptiveStatistics stats = new DescriptiveStatistics(data);
                 double max = stats.getPercentile(95);
                 setDataRange(new DataRange(0, (float) max));
             }
@@ -131,6 +131,15 @@ public class HiCCoverageDataSource implements HiCDataSource {
         return new ArrayList<>();
     }
 
+    /**
+     * Row sums of the intra-chromosomal matrix, raw for NONE or normalized by the track's type. Read from the
+     * marginals stored in the file by pre/addNorm, or computed once and cached at coarse resolutions; at finer
+     * ones without a stored vector the track is empty
+     */
+    private double[] getVector(Dataset dataset, Chromosome chr, HiCZoom zoom) {
+        return dataset.getCoverageVector(chr, zoom, normalizationType);
+    }
+
     public HiCDataPoint[] getData(Chromosome chr, int startBin, int endBin, HiCGridAxis gridAxis,
                                   double scaleFactor, WindowFunction windowFunction) {
 
@@ -148,10 +157,8 @@ public class HiCCoverageDataSource implements HiCDataSource {
             return null;
         }
 
-        NormalizationVector nv = dataset.getNormalizationVector(chr.getIndex(), zoom, normalizationType);
-        if (nv == null) return null;
-    
-        double[] data = nv.getData().getValues().get(0);
+        double[] data = getVector(dataset, chr, zoom);
+        if (data == null) return null;
 
         CoverageDataPoint[] dataPoints = new CoverageDataPoint[endBin - startBin + 1];
 
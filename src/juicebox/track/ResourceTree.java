@@ -27,6 +27,7 @@ package juicebox.track;
 import juicebox.HiC;
 import juicebox.HiCGlobals;
 import juicebox.gui.SuperAdapter;
+import juicebox.windowui.NormalizationHandler;
 import juicebox.windowui.NormalizationType;
 import org.broad.igv.ui.color.ColorUtilities;
 import org.broad.igv.ui.util.FileDialogUtils;
@@ -409,7 +410,11 @@ public class ResourceTree {
                 normNode.setUserObject(resource);
                 normNode.setAllowsChildren(true);
 
-                for (NormalizationType t : hic.getDataset().getNormalizationTypes()) {
+                // None shows the raw coverage
+                Set<NormalizationType> coverageTypes = new LinkedHashSet<>();
+                coverageTypes.add(NormalizationHandler.NONE);
+                coverageTypes.addAll(hic.getDataset().getNormalizationTypes());
+                for (NormalizationType t : coverageTypes) {
 
                     String label = t.getDescription();
                     locator = new ResourceLocator(label);
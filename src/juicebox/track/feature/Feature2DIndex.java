@@ -0,0 +1,134 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2021 Broad Institute, Aiden Lab, Rice University, Baylor College of Medicine
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.track.feature;
+
+import gnu.trove.procedure.TIntProcedure;
+import net.sf.jsi.Rectangle;
+import net.sf.jsi.SpatialIndex;
+import net.sf.jsi.rtree.RTree;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * R-tree over the features of one chromosome pair, used by the list operations in Feature2DList and
+ * Feature2DTools in place of nested loops over both lists.
+ * The tree stores float coordinates, so queries are padded and only narrow down the candidates;
+ * every match is confirmed with the same Feature2D comparison the nested loops used.
+ * Not thread safe; build one index per chromosome pair and per thread.
+ */
+class Feature2DIndex {
+
+    private final SpatialIndex rTree = new RTree();
+    private final List<Feature2D> features = new ArrayList<>();
+    private Set<Feature2D> exactFeatures = null;
+
+    Feature2DIndex(List<Feature2D> features) {
+        rTree.init(null);
+        if (features != null) {
+            for (Feature2D feature : features) {
+                add(feature);
+            }
+        }
+    }
+
+    /**
+     * @return padding which covers the rounding of a coordinate near this value to float
+     */
+    private static float slack(long coordinate) {
+        return 2 * Math.ulp((float) Math.abs(coordinate)) + 1;
+    }
+
+    void add(Feature2D feature) {
+        rTree.add(new Rectangle((float) feature.getStart1(), (float) feature.getStart2(),
+                (float) feature.getEnd1(), (float) feature.getEnd2()), features.size());
+        features.add(feature);
+        if (exactFeatures != null) {
+            exactFeatures.add(feature);
+        }
+    }
+
+    /**
+     * @return features whose extent intersects the box; a superset of the exact answer
+     */
+    List<Feature2D> getCandidates(long x1, long x2, long y1, long y2) {
+        final List<Feature2D> candidates = new ArrayList<>();
+        float padX = slack(Math.max(Math.abs(x1), Math.abs(x2)));
+        float padY = slack(Math.max(Math.abs(y1), Math.abs(y2)));
+        rTree.intersects(new Rectangle(x1 - padX, y1 - padY, x2 + padX, y2 + padY), new TIntProcedure() {
+            @Override
+            public boolean execute(int i) {
+                candidates.add(features.get(i));
+                return true;
+            }
+        });
+        return candidates;
+    }
+
+    /**
+     * @return features whose start point might lie within the given distance of the feature's start point
+     */
+    List<Feature2D> getCandidatesNearStart(Feature2D feature, double radius) {
+        long reach = (long) Math.ceil(radius);
+        return getCandidates(feature.getStart1() - reach, feature.getStart1() + reach,
+                feature.getStart2() - reach, feature.getStart2() + reach);
+    }
+
+    /**
+     * Equivalent to List.contains, i.e. feature.equals(f) for some indexed f (see Feature2D.tolerance)
+     */
+    boolean contains(Feature2D feature) {
+        if (Feature2D.tolerance == 0) {
+            if (exactFeatures == null) {
+                exactFeatures = new HashSet<>(features);
+            }
+            return exactFeatures.contains(feature);
+        }
+        for (Feature2D candidate : getCandidatesNearStart(feature, Feature2D.tolerance)) {
+            if (feature.equals(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Equivalent to Feature2DTools.doesOverlap(feature, indexed features)
+     */
+    boolean anyOverlaps(Feature2D feature) {
+        long window1 = (feature.getEnd1() - feature.getStart1()) / 2;
+        long window2 = (feature.getEnd2() - feature.getStart2()) / 2;
+        long mid1 = feature.getMidPt1();
+        long mid2 = feature.getMidPt2();
+        for (Feature2D candidate : getCandidates(mid1 - window1, mid1 + window1, mid2 - window2, mid2 + window2)) {
+            if (candidate.overlapsWith(feature)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
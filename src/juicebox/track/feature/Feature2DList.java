@@ -27,14 +27,14 @@ package juicebox.track.feature;
 import juicebox.HiCGlobals;
 import juicebox.data.HiCFileTools;
 import juicebox.data.basics.Chromosome;
+import juicebox.tools.dev.ParallelizedJuicerTools;
 
 import java.awt.*;
 import java.io.File;
 import java.io.PrintWriter;
 import java.util.List;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * List of two-dimensional features.  Hashtable for each chromosome for quick viewing.
@@ -55,21 +55,42 @@ public class Feature2DList {
 
     private Map<String, String> defaultAttributes = new HashMap<>();
 
-    public void parallelizedProcessLists(FeatureFunction featureFunction) {
+    public void parallelizedProcessLists(final FeatureFunction featureFunction) {
         List<String> keys = new ArrayList<>(featureList.keySet());
         Collections.sort(keys);
-        ExecutorService executor = Executors.newFixedThreadPool(keys.size());
-        for (String key : keys) {
-            Runnable worker = new Runnable() {
+        List<Runnable> workers = new ArrayList<>(keys.size());
+        for (final String key : keys) {
+            workers.add(new Runnable() {
                 @Override
                 public void run() {
                     featureFunction.process(key, featureList.get(key));
                 }
-            };
-            executor.execute(worker);
+            });
         }
-        executor.shutdown();
-        while (!executor.isTerminated()) {
+        ParallelizedJuicerTools.runAll(null, workers);
+    }
+
+    /**
+     * Same as filterLists, but the chromosome pairs are filtered concurrently
+     *
+     * @param filter
+     */
+    public synchronized void parallelizedFilterLists(final FeatureFilter filter) {
+        List<String> keys = new ArrayList<>(featureList.keySet());
+        final Map<String, List<Feature2D>> filtered = new ConcurrentHashMap<>();
+        List<Runnable> workers = new ArrayList<>(keys.size());
+        for (final String key : keys) {
+            final List<Feature2D> features = featureList.get(key);
+            workers.add(new Runnable() {
+                @Override
+                public void run() {
+                    filtered.put(key, filter.filter(key, features));
+                }
+            });
+        }
+        ParallelizedJuicerTools.runAll(null, workers);
+        for (String key : keys) {
+            featureList.put(key, filtered.get(key));
         }
     }
 
@@ -137,14 +158,15 @@ public class Feature2DList {
     public static Feature2DList getIntersection(final Feature2DList listA, Feature2DList listB) {
 
         Feature2DList commonFeatures = new Feature2DList(listB);
-        commonFeatures.filterLists(new FeatureFilter() {
+        commonFeatures.parallelizedFilterLists(new FeatureFilter() {
             @Override
             public List<Feature2D> filter(String chr, List<Feature2D> feature2DList) {
                 List<Feature2D> commonVals = new ArrayList<>();
                 if (listA.containsKey(chr)) {
+                    Feature2DIndex index = new Feature2DIndex(feature2DList);
                     List<Feature2D> listAFeatures = listA.getFeatureList(chr);
                     for (Feature2D feature : listAFeatures) {
-                        if (feature2DList.contains(feature)) {
+                        if (index.contains(feature)) {
                             commonVals.add(feature);
                         }
                     }
@@ -159,12 +181,13 @@ public class Feature2DList {
     }
 
     // Iterate through new features and see if there is any overlap
-    // TODO: implement this more efficiently, maybe rtree
     private synchronized static void addAllUnique(List<Feature2D> inputFeatures, List<Feature2D> existingFeatures) {
+        Feature2DIndex index = new Feature2DIndex(existingFeatures);
         for (Feature2D inputFeature : inputFeatures) {
             // Compare input with existing points
-            if (!Feature2DTools.doesOverlap(inputFeature, existingFeatures)) {
+            if (!index.anyOverlaps(inputFeature)) {
                 existingFeatures.add(inputFeature);
+                index.add(inputFeature);
             }
         }
     }
@@ -477,8 +500,9 @@ public class Feature2DList {
             // there are features in both lists
 
             if (featureList.containsKey(inputKey)) {
+                Feature2DIndex index = new Feature2DIndex(inputFeatures);
                 for (Feature2D myFeature : featureList.get(inputKey)) {
-                    if (Feature2DTools.doesOverlap(myFeature, inputFeatures)) {
+                    if (index.anyOverlaps(myFeature)) {
                         output.addByKey(inputKey, myFeature);
                     }
                 }
@@ -28,6 +28,7 @@ import juicebox.HiCGlobals;
 import juicebox.tools.clt.juicer.CompareLists;
 import juicebox.tools.utils.juicer.hiccups.HiCCUPSUtils;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -125,22 +126,19 @@ public class Feature2DTools {
 
         final Feature2DList centroids = new Feature2DList();
 
-        secondFeatureList.processLists(new FeatureFunction() {
+        secondFeatureList.parallelizedProcessLists(new FeatureFunction() {
             @Override
             public void process(String chr, List<Feature2D> secondFeature2DList) {
                 if (firstFeatureList.containsKey(chr)) {
-                    List<Feature2D> base1FeatureList = firstFeatureList.getFeatureList(chr);
+                    Feature2DIndex base1Index = new Feature2DIndex(firstFeatureList.getFeatureList(chr));
                     for (Feature2D f2 : secondFeature2DList) {
-                        for (Feature2D f1 : base1FeatureList) {
-							int dx = (int) (f1.getStart1() - f2.getStart1());
-							int dy = (int) (f1.getStart2() - f2.getStart2());
-							double d = HiCCUPSUtils.hypotenuse(dx, dy);
-							if (d <= radius) {
-								//f2.setAttribute(HiCCUPSUtils.centroidAttr, "" + d);
-								centroids.addByKey(chr, f2);
-								break;
-							}
-						}
+                        for (Feature2D f1 : base1Index.getCandidatesNearStart(f2, radius)) {
+                            if (startDistance(f1, f2) <= radius) {
+                                //f2.setAttribute(HiCCUPSUtils.centroidAttr, "" + d);
+                                centroids.addByKey(chr, f2);
+                                break;
+                            }
+                        }
                     }
                 }
             }
@@ -152,23 +150,20 @@ public class Feature2DTools {
 
         final Feature2DList centroids = new Feature2DList();
 
-        secondFeatureList.processLists(new FeatureFunction() {
+        secondFeatureList.parallelizedProcessLists(new FeatureFunction() {
             @Override
             public void process(String chr, List<Feature2D> secondFeature2DList) {
                 if (firstFeatureList.containsKey(chr)) {
-                    List<Feature2D> base1FeatureList = firstFeatureList.getFeatureList(chr);
+                    Feature2DIndex base1Index = new Feature2DIndex(firstFeatureList.getFeatureList(chr));
                     for (Feature2D f2 : secondFeature2DList) {
+                        // only the nearest feature within the radius can pass, so farther ones are not searched
                         double lowestDistance = -1;
-                        //Feature2D overlap = null;
-                        for (Feature2D f1 : base1FeatureList) {
-							int dx = (int) (f1.getStart1() - f2.getStart1());
-							int dy = (int) (f1.getStart2() - f2.getStart2());
-							double d = HiCCUPSUtils.hypotenuse(dx, dy);
-							if (d < lowestDistance || lowestDistance == -1) {
-								//overlap = f1;
-								lowestDistance = d;
-							}
-						}
+                        for (Feature2D f1 : base1Index.getCandidatesNearStart(f2, radius)) {
+                            double d = startDistance(f1, f2);
+                            if (d < lowestDistance || lowestDistance == -1) {
+                                lowestDistance = d;
+                            }
+                        }
                         if (lowestDistance != -1) {
                             double f = lowestDistance / (f2.getStart2() - f2.getStart1());
                             if (lowestDistance <= radius && f <= fraction) {
@@ -182,6 +177,12 @@ public class Feature2DTools {
         return centroids;
     }
 
+    private static double startDistance(Feature2D f1, Feature2D f2) {
+        int dx = (int) (f1.getStart1() - f2.getStart1());
+        int dy = (int) (f1.getStart2() - f2.getStart2());
+        return HiCCUPSUtils.hypotenuse(dx, dy);
+    }
+
     /**
      * @return peaks within radius of diagonal
      */
@@ -231,23 +232,17 @@ public class Feature2DTools {
         Feature2DList featuresUniqueToA = new Feature2DList(listA);
         Feature2DList featuresUniqueToB = new Feature2DList(listB);
 
-        featuresUniqueToA.filterLists(new FeatureFilter() {
+        featuresUniqueToA.parallelizedFilterLists(new FeatureFilter() {
             @Override
             public List<Feature2D> filter(String chr, List<Feature2D> feature2DList) {
-                if (listB.containsKey(chr)) {
-                    feature2DList.removeAll(listB.getFeatureList(chr));
-                }
-                return feature2DList;
+                return removeAll(feature2DList, listB, chr);
             }
         });
 
-        featuresUniqueToB.filterLists(new FeatureFilter() {
+        featuresUniqueToB.parallelizedFilterLists(new FeatureFilter() {
             @Override
             public List<Feature2D> filter(String chr, List<Feature2D> feature2DList) {
-                if (listA.containsKey(chr)) {
-                    feature2DList.removeAll(listA.getFeatureList(chr));
-                }
-                return feature2DList;
+                return removeAll(feature2DList, listA, chr);
             }
         });
 
@@ -270,19 +265,33 @@ public class Feature2DTools {
 
     public static Feature2DList subtract(final Feature2DList listA, final Feature2DList listB) {
         Feature2DList result = new Feature2DList(listA);
-        result.filterLists(new FeatureFilter() {
+        result.parallelizedFilterLists(new FeatureFilter() {
             @Override
             public List<Feature2D> filter(String chr, List<Feature2D> feature2DList) {
-                if (listB.containsKey(chr)) {
-                    feature2DList.removeAll(listB.getFeatureList(chr));
-                }
-                return feature2DList;
+                return removeAll(feature2DList, listB, chr);
             }
         });
         result.removeDuplicates();
         return result;
     }
 
+    /**
+     * Same as feature2DList.removeAll(otherList.getFeatureList(chr)), using an index of the other list
+     */
+    private static List<Feature2D> removeAll(List<Feature2D> feature2DList, Feature2DList otherList, String chr) {
+        if (!otherList.containsKey(chr)) {
+            return feature2DList;
+        }
+        Feature2DIndex index = new Feature2DIndex(otherList.getFeatureList(chr));
+        List<Feature2D> remaining = new ArrayList<>(feature2DList.size());
+        for (Feature2D feature : feature2DList) {
+            if (!index.contains(feature)) {
+                remaining.add(feature);
+            }
+        }
+        return remaining;
+    }
+
 
     public static boolean loopIsUpstreamOfDomain(Feature2D loop, Feature2D domain, int threshold) {
         return loop.getEnd1() < domain.getStart1() - threshold &&
@@ -84,10 +84,8 @@ public class DumpDialog extends JFileChooser {
                         NormalizationVector nv = hic.getNormalizationVector(zd.getChr1Idx());
                         PrintWriter pw = new PrintWriter(getSelectedFile());
                         // print out vector
-                        for (double[] array : nv.getData().getValues()) {
-                            for (double element : array) {
-                                pw.println(element);
-                            }
+                        for (long i = 0; i < nv.getLength(); i++) {
+                            pw.println(nv.get(i));
                         }
                         pw.close();
                     }